@@ -0,0 +1,47 @@
+package ma.emsi.khairat.benchmarks;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Découpage récursif d'un document déjà extrait, avec les paramètres utilisés par les tests (300/30).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecoupageBenchmark {
+
+    @Param({"rag-2.pdf", "sport.pdf"})
+    public String document;
+
+    @Param({"300"})
+    public int tailleSegment;
+
+    @Param({"30"})
+    public int chevauchement;
+
+    private Document texte;
+    private DocumentSplitter splitter;
+
+    @Setup
+    public void preparer() {
+        texte = new ApacheTikaDocumentParser().parse(new ByteArrayInputStream(Ressources.lire(document)));
+        splitter = DocumentSplitters.recursive(tailleSegment, chevauchement);
+    }
+
+    @Benchmark
+    public List<TextSegment> decouper() {
+        return splitter.split(texte);
+    }
+}
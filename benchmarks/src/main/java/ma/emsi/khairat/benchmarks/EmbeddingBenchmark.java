@@ -0,0 +1,54 @@
+package ma.emsi.khairat.benchmarks;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MiniLM en local : une question seule, puis des lots de segments de la taille produite par le
+ * découpage (300 caractères). Le temps est donné par appel ; diviser par {@code lot} pour le coût
+ * par segment.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmbeddingBenchmark {
+
+    @Param({"1", "8", "32", "128"})
+    public int lot;
+
+    private EmbeddingModel embeddingModel;
+    private List<TextSegment> segments;
+
+    @Setup
+    public void preparer() {
+        embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+        String base = "La génération augmentée par récupération combine un moteur de recherche et un modèle de langage : "
+                + "les passages pertinents sont retrouvés dans une base vectorielle puis injectés dans le prompt. ";
+        segments = new ArrayList<>(lot);
+        for (int i = 0; i < lot; i++) {
+            // Textes distincts pour ne pas profiter d'un éventuel cache
+            segments.add(TextSegment.from(base + base.substring(0, 90) + " (" + i + ")"));
+        }
+    }
+
+    @Benchmark
+    public Embedding question() {
+        return embeddingModel.embed(Ressources.QUESTIONS[0]).content();
+    }
+
+    @Benchmark
+    public Response<List<Embedding>> lotDeSegments() {
+        return embeddingModel.embedAll(segments);
+    }
+}
@@ -0,0 +1,120 @@
+package ma.emsi.khairat.benchmarks;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import ma.emsi.khairat.recherche.RecuperateurHybride;
+import ma.emsi.khairat.store.MagasinVectoriel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recherche top-2 ({@code minScore} 0.5) sur un corpus synthétique : parcours dense complet
+ * ({@link EmbeddingStoreContentRetriever} sur {@link MagasinVectoriel}) contre
+ * {@link RecuperateurHybride} (présélection BM25 puis re-notation des seuls candidats).
+ *
+ * <p>Chaque segment compte 40 mots tirés d'un vocabulaire de 50 000 mots selon une loi proche de
+ * Zipf ; une question reprend trois mots d'un segment et un vecteur voisin du sien. Le modèle
+ * d'embeddings renvoie ces vecteurs précalculés : seul le coût de la recherche est mesuré.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class HybrideBenchmark {
+
+    private static final int DIMENSION = 384;
+    private static final int REQUETES = 64;
+    private static final int VOCABULAIRE = 50_000;
+    private static final int MOTS_PAR_SEGMENT = 40;
+
+    @Param({"10000", "100000", "1000000"})
+    public int taille;
+
+    @Param({"dense", "hybride"})
+    public String recherche;
+
+    private ContentRetriever retriever;
+    private Query[] requetes;
+    private int suivante;
+
+    @Setup
+    public void preparer() {
+        Random aleatoire = new Random(42);
+        float[][] vecteurs = Ressources.vecteurs(taille, DIMENSION, 42);
+        String[] textes = new String[taille];
+        MagasinVectoriel magasin = new MagasinVectoriel();
+        int lot = 10_000;
+        for (int debut = 0; debut < taille; debut += lot) {
+            int fin = Math.min(taille, debut + lot);
+            List<String> ids = new ArrayList<>(fin - debut);
+            List<Embedding> embeddings = new ArrayList<>(fin - debut);
+            List<TextSegment> segments = new ArrayList<>(fin - debut);
+            for (int i = debut; i < fin; i++) {
+                StringBuilder texte = new StringBuilder();
+                for (int m = 0; m < MOTS_PAR_SEGMENT; m++) {
+                    texte.append("mot").append(mot(aleatoire)).append(' ');
+                }
+                textes[i] = texte.toString();
+                ids.add("s" + i);
+                embeddings.add(Embedding.from(vecteurs[i]));
+                segments.add(TextSegment.from(textes[i]));
+            }
+            magasin.addAll(ids, embeddings, segments);
+        }
+
+        // Questions : trois mots d'un segment, vecteur du segment légèrement bruité
+        Map<String, float[]> vecteursQuestions = new HashMap<>();
+        requetes = new Query[REQUETES];
+        for (int q = 0; q < REQUETES; q++) {
+            int cible = aleatoire.nextInt(taille);
+            String[] mots = textes[cible].split(" ");
+            String question = mots[aleatoire.nextInt(mots.length)] + " " + mots[aleatoire.nextInt(mots.length)]
+                    + " " + mots[aleatoire.nextInt(mots.length)] + " ?" + q;
+            float[] vecteur = vecteurs[cible].clone();
+            for (int d = 0; d < DIMENSION; d++) {
+                vecteur[d] += (float) aleatoire.nextGaussian() * 0.02f;
+            }
+            vecteursQuestions.put(question, vecteur);
+            requetes[q] = Query.from(question);
+        }
+        EmbeddingModel questions = new EmbeddingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                return Response.from(segments.stream().map(s -> Embedding.from(vecteursQuestions.get(s.text()))).toList());
+            }
+        };
+
+        retriever = "dense".equals(recherche)
+                ? EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(magasin).embeddingModel(questions).maxResults(2).minScore(0.5).build()
+                : RecuperateurHybride.builder()
+                .embeddingStore(magasin).embeddingModel(questions).maxResults(2).minScore(0.5).build();
+    }
+
+    private static int mot(Random aleatoire) {
+        // Loi proche de Zipf : quelques mots très fréquents, une longue traîne de mots rares
+        double u = aleatoire.nextDouble();
+        return (int) (VOCABULAIRE * u * u * u);
+    }
+
+    @Benchmark
+    public List<Content> rechercher() {
+        Query requete = requetes[suivante];
+        suivante = (suivante + 1) % REQUETES;
+        return retriever.retrieve(requete);
+    }
+}
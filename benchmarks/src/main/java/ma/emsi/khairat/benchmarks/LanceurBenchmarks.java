@@ -0,0 +1,70 @@
+package ma.emsi.khairat.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point d'entrée du jar de benchmarks. Accepte les options habituelles de JMH (filtre, {@code -p},
+ * {@code -f}...) et écrit toujours les résultats en JSON dans
+ * {@code resultats/jmh-<commit>.json}, pour comparer deux commits avec un visualiseur JMH ou un
+ * simple diff.
+ */
+public class LanceurBenchmarks {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        Path resultats = Paths.get(System.getProperty("bench.resultats", "resultats"));
+        Files.createDirectories(resultats);
+        Path fichier = resultats.resolve("jmh-" + version() + ".json");
+
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .resultFormat(ResultFormatType.JSON)
+                .result(fichier.toString())
+                .build();
+        new Runner(options).run();
+        System.out.println("📊 Résultats JSON : " + fichier.toAbsolutePath());
+    }
+
+    /**
+     * Commit courant (abrégé, suffixé de {@code -modifie} si l'arbre n'est pas propre), sinon l'horodatage.
+     */
+    private static String version() {
+        try {
+            String commit = git("rev-parse", "--short", "HEAD");
+            if (commit.isEmpty()) {
+                throw new IOException("pas de commit");
+            }
+            return git("status", "--porcelain", "--untracked-files=no").isEmpty() ? commit : commit + "-modifie";
+        } catch (IOException e) {
+            return LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        }
+    }
+
+    private static String git(String... arguments) throws IOException, InterruptedException {
+        String[] commande = new String[arguments.length + 1];
+        commande[0] = "git";
+        System.arraycopy(arguments, 0, commande, 1, arguments.length);
+        Process processus = new ProcessBuilder(commande).redirectErrorStream(true).start();
+        String sortie = new String(processus.getInputStream().readAllBytes()).trim();
+        if (!processus.waitFor(10, TimeUnit.SECONDS) || processus.exitValue() != 0) {
+            throw new IOException("git a échoué : " + sortie);
+        }
+        return sortie;
+    }
+}
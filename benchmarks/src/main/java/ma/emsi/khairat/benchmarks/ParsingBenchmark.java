@@ -0,0 +1,37 @@
+package ma.emsi.khairat.benchmarks;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction du texte des PDF par Tika, document déjà en mémoire (pas d'E/S disque mesurée).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParsingBenchmark {
+
+    @Param({"rag-2.pdf", "sport.pdf"})
+    public String document;
+
+    private byte[] octets;
+    private ApacheTikaDocumentParser parser;
+
+    @Setup
+    public void preparer() {
+        octets = Ressources.lire(document);
+        parser = new ApacheTikaDocumentParser();
+    }
+
+    @Benchmark
+    public Document analyser() {
+        return parser.parse(new ByteArrayInputStream(octets));
+    }
+}
@@ -0,0 +1,75 @@
+package ma.emsi.khairat.benchmarks;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.emsi.khairat.store.MagasinVectoriel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recherche exacte top-3 sur des vecteurs synthétiques de dimension 384 (celle de MiniLM) :
+ * magasin en mémoire de LangChain4j contre {@link MagasinVectoriel}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class RechercheBenchmark {
+
+    private static final int DIMENSION = 384;
+    private static final int REQUETES = 64;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int taille;
+
+    @Param({"langchain4j", "vectoriel"})
+    public String magasin;
+
+    private EmbeddingStore<TextSegment> store;
+    private EmbeddingSearchRequest[] requetes;
+    private int suivante;
+
+    @Setup
+    public void preparer() {
+        store = "langchain4j".equals(magasin) ? new InMemoryEmbeddingStore<>() : new MagasinVectoriel();
+        float[][] vecteurs = Ressources.vecteurs(taille, DIMENSION, 42);
+        int lot = 10_000;
+        for (int debut = 0; debut < taille; debut += lot) {
+            int fin = Math.min(taille, debut + lot);
+            List<String> ids = new ArrayList<>(fin - debut);
+            List<Embedding> embeddings = new ArrayList<>(fin - debut);
+            List<TextSegment> segments = new ArrayList<>(fin - debut);
+            for (int i = debut; i < fin; i++) {
+                ids.add("s" + i);
+                embeddings.add(Embedding.from(vecteurs[i]));
+                segments.add(TextSegment.from("segment " + i));
+            }
+            store.addAll(ids, embeddings, segments);
+        }
+
+        requetes = new EmbeddingSearchRequest[REQUETES];
+        float[][] questions = Ressources.vecteurs(REQUETES, DIMENSION, 7);
+        for (int i = 0; i < REQUETES; i++) {
+            requetes[i] = EmbeddingSearchRequest.builder()
+                    .queryEmbedding(Embedding.from(questions[i]))
+                    .maxResults(3)
+                    .build();
+        }
+    }
+
+    @Benchmark
+    public EmbeddingSearchResult<TextSegment> rechercher() {
+        EmbeddingSearchRequest requete = requetes[suivante];
+        suivante = (suivante + 1) % REQUETES;
+        return store.search(requete);
+    }
+}
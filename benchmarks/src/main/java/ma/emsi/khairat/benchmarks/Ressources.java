@@ -0,0 +1,69 @@
+package ma.emsi.khairat.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Accès aux documents du projet (embarqués dans le jar de l'application) et vecteurs synthétiques
+ * reproductibles pour les benchmarks.
+ */
+final class Ressources {
+
+    static final String[] QUESTIONS = {
+            "Qu'est-ce que le RAG ?",
+            "Quelle est la différence entre RAG et fine-tuning ?",
+            "Comment découper un document avant de calculer les embeddings ?",
+            "À quoi sert une base de données vectorielle ?"
+    };
+
+    private Ressources() {
+    }
+
+    static byte[] lire(String document) {
+        try (InputStream flux = Ressources.class.getResourceAsStream("/" + document)) {
+            if (flux == null) {
+                throw new IllegalStateException("❌ Ressource introuvable : " + document);
+            }
+            return flux.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Copie le document dans un répertoire temporaire : {@code IndexEmbeddings} travaille sur des fichiers.
+     */
+    static Path copier(String document, Path repertoire) {
+        try {
+            Path fichier = repertoire.resolve(document);
+            Files.write(fichier, lire(document));
+            return fichier;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Vecteurs gaussiens normalisés, même graine d'un lancement à l'autre.
+     */
+    static float[][] vecteurs(int nombre, int dimension, long graine) {
+        Random aleatoire = new Random(graine);
+        float[][] vecteurs = new float[nombre][dimension];
+        for (float[] vecteur : vecteurs) {
+            double norme = 0;
+            for (int j = 0; j < dimension; j++) {
+                vecteur[j] = (float) aleatoire.nextGaussian();
+                norme += vecteur[j] * vecteur[j];
+            }
+            float inverse = (float) (1 / Math.sqrt(norme));
+            for (int j = 0; j < dimension; j++) {
+                vecteur[j] *= inverse;
+            }
+        }
+        return vecteurs;
+    }
+}
@@ -0,0 +1,79 @@
+package ma.emsi.khairat.benchmarks;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.khairat.index.IndexEmbeddings;
+import ma.emsi.khairat.memoire.MemoireBudgetJetons;
+import ma.emsi.khairat.serveur.ModeleChatSimule;
+import ma.emsi.khairat.test1_ragnaif_Et_test2.Assistant;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Un tour complet de l'assistant RAG naïf (embedding de la question, recherche, injection du
+ * contexte, mémoire, appel du modèle) sans réseau : Gemini est remplacé par un
+ * {@link ModeleChatSimule} sans délai, seul le coût local est donc mesuré.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class TourAssistantBenchmark {
+
+    private Path repertoire;
+    private Assistant assistant;
+    private int suivante;
+
+    @Setup
+    public void preparer() throws IOException {
+        repertoire = Files.createTempDirectory("bench-rag");
+        System.setProperty("rag.index.dir", repertoire.resolve("index").toString());
+        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+        Path document = Ressources.copier("rag-2.pdf", repertoire);
+        EmbeddingStore<TextSegment> store = IndexEmbeddings.chargerOuConstruire(document, 300, 30, embeddingModel);
+
+        EmbeddingStoreContentRetriever retriever = EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(store)
+                .embeddingModel(embeddingModel)
+                .maxResults(2)
+                .minScore(0.5)
+                .build();
+
+        ModeleChatSimule model = ModeleChatSimule.builder()
+                .premierJeton(Duration.ZERO)
+                .dispersion(0)
+                .entreJetons(Duration.ZERO)
+                .build();
+
+        assistant = AiServices.builder(Assistant.class)
+                .chatModel(model)
+                .chatMemory(MemoireBudgetJetons.builder().budgetJetons(4000).build())
+                .contentRetriever(retriever)
+                .build();
+    }
+
+    @Benchmark
+    public String tour() {
+        String question = Ressources.QUESTIONS[suivante];
+        suivante = (suivante + 1) % Ressources.QUESTIONS.length;
+        return assistant.chat(question);
+    }
+
+    @TearDown
+    public void nettoyer() throws IOException {
+        try (var fichiers = Files.walk(repertoire)) {
+            fichiers.sorted((a, b) -> b.compareTo(a)).forEach(fichier -> fichier.toFile().delete());
+        }
+    }
+}
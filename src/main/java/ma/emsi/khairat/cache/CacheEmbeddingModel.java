@@ -0,0 +1,306 @@
+package ma.emsi.khairat.cache;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Décorateur d'{@link EmbeddingModel} qui met en cache les embeddings des requêtes.
+ *
+ * <p>Le texte est normalisé avant la recherche : NFKC, minuscules, espaces regroupés et
+ * supprimés devant la ponctuation. Pour MiniLM (tokenizer non sensible à la casse, qui isole
+ * déjà la ponctuation), cette normalisation ne change pas l'embedding. Le cache mémoire est un
+ * LRU borné de {@code float[]}. Un fichier de débordement optionnel, en ajout seul, reçoit chaque
+ * nouvel embedding : il sert de second niveau après éviction et survit aux redémarrages.</p>
+ */
+public class CacheEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private static final Pattern ESPACES = Pattern.compile("\\s+");
+    private static final Pattern ESPACE_AVANT_PONCTUATION = Pattern.compile(" (?=[?!.,;:])");
+
+    private final EmbeddingModel delegue;
+    private final Map<String, float[]> memoire;
+    private final Debordement debordement;
+    private final LongAdder succesMemoire = new LongAdder();
+    private final LongAdder succesDisque = new LongAdder();
+    private final LongAdder echecs = new LongAdder();
+
+    private CacheEmbeddingModel(Builder builder) {
+        this.delegue = builder.embeddingModel;
+        this.debordement = builder.fichierDebordement == null ? null : new Debordement(builder.fichierDebordement);
+        int capacite = builder.capacite;
+        this.memoire = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> plusAncienne) {
+                return size() > capacite;
+            }
+        };
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static String normaliser(String texte) {
+        String normalise = Normalizer.normalize(texte, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        normalise = ESPACES.matcher(normalise).replaceAll(" ").trim();
+        return ESPACE_AVANT_PONCTUATION.matcher(normalise).replaceAll("");
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        int nombre = textSegments.size();
+        float[][] vecteurs = new float[nombre][];
+        Map<String, List<Integer>> manquants = new LinkedHashMap<>();
+        for (int i = 0; i < nombre; i++) {
+            String cle = normaliser(textSegments.get(i).text());
+            float[] vecteur = chercher(cle);
+            if (vecteur != null) {
+                vecteurs[i] = vecteur;
+            } else {
+                manquants.computeIfAbsent(cle, c -> new ArrayList<>()).add(i);
+            }
+        }
+
+        if (!manquants.isEmpty()) {
+            List<TextSegment> aCalculer = manquants.keySet().stream().map(TextSegment::from).toList();
+            List<Embedding> calcules = delegue.embedAll(aCalculer).content();
+            int rang = 0;
+            for (Map.Entry<String, List<Integer>> entree : manquants.entrySet()) {
+                float[] vecteur = calcules.get(rang++).vector().clone();
+                synchronized (memoire) {
+                    memoire.put(entree.getKey(), vecteur);
+                }
+                // Hors du verrou du LRU : l'écriture disque ne bloque pas les succès mémoire des autres threads
+                if (debordement != null) {
+                    debordement.ecrire(entree.getKey(), vecteur);
+                }
+                for (int i : entree.getValue()) {
+                    vecteurs[i] = vecteur;
+                }
+            }
+        }
+
+        // Copie défensive : Embedding.normalize() modifie le tableau sur place
+        List<Embedding> embeddings = new ArrayList<>(nombre);
+        for (float[] vecteur : vecteurs) {
+            embeddings.add(Embedding.from(vecteur.clone()));
+        }
+        return Response.from(embeddings);
+    }
+
+    private float[] chercher(String cle) {
+        float[] vecteur;
+        synchronized (memoire) {
+            vecteur = memoire.get(cle);
+        }
+        if (vecteur != null) {
+            succesMemoire.increment();
+            return vecteur;
+        }
+        if (debordement != null) {
+            vecteur = debordement.lire(cle);
+            if (vecteur != null) {
+                succesDisque.increment();
+                synchronized (memoire) {
+                    memoire.put(cle, vecteur);
+                }
+                return vecteur;
+            }
+        }
+        echecs.increment();
+        return null;
+    }
+
+    @Override
+    public int dimension() {
+        return delegue.dimension();
+    }
+
+    public long succesMemoire() {
+        return succesMemoire.sum();
+    }
+
+    public long succesDisque() {
+        return succesDisque.sum();
+    }
+
+    public long echecs() {
+        return echecs.sum();
+    }
+
+    public String statistiques() {
+        long succes = succesMemoire() + succesDisque();
+        long total = succes + echecs();
+        return String.format("🗃️ Cache embeddings : %d succès (%d mémoire, %d disque), %d échecs, taux %.1f %%",
+                succes, succesMemoire(), succesDisque(), echecs(), total == 0 ? 0.0 : 100.0 * succes / total);
+    }
+
+    @Override
+    public void close() {
+        if (debordement != null) {
+            debordement.fermer();
+        }
+    }
+
+    /**
+     * Fichier en ajout seul : [taille clé][clé UTF-8][dimension][floats]. L'index clé → position
+     * est reconstruit en mémoire à l'ouverture ; une fin d'enregistrement tronquée est ignorée.
+     * Indépendant du verrou du cache : les ajouts sont sérialisés entre eux, et une position n'est
+     * publiée qu'une fois son enregistrement écrit, si bien que les lectures positionnelles se font
+     * sans verrou.
+     */
+    private static final class Debordement {
+
+        private final FileChannel canal;
+        private final Map<String, Long> positions = new ConcurrentHashMap<>();
+        private long fin;
+
+        Debordement(Path fichier) {
+            try {
+                if (fichier.toAbsolutePath().getParent() != null) {
+                    Files.createDirectories(fichier.toAbsolutePath().getParent());
+                }
+                canal = FileChannel.open(fichier, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                indexer();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Fichier de débordement inutilisable : " + fichier, e);
+            }
+        }
+
+        private void indexer() throws IOException {
+            long taille = canal.size();
+            ByteBuffer entier = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            long position = 0;
+            while (position + 4 <= taille) {
+                int longueurCle = lireEntier(entier, position);
+                if (longueurCle < 0 || position + 4 + longueurCle + 4 > taille) break;
+                ByteBuffer cle = ByteBuffer.allocate(longueurCle);
+                lireTout(cle, position + 4);
+                int dimension = lireEntier(entier, position + 4 + longueurCle);
+                long suivante = position + 8 + longueurCle + 4L * dimension;
+                if (dimension < 0 || suivante > taille) break;
+                positions.put(new String(cle.array(), StandardCharsets.UTF_8), position);
+                position = suivante;
+            }
+            fin = position;
+            canal.truncate(fin);
+        }
+
+        private int lireEntier(ByteBuffer tampon, long position) throws IOException {
+            tampon.clear();
+            lireTout(tampon, position);
+            return tampon.getInt(0);
+        }
+
+        // Une lecture positionnelle peut rendre moins d'octets que demandé : on boucle comme pour l'écriture
+        private void lireTout(ByteBuffer tampon, long position) throws IOException {
+            while (tampon.hasRemaining()) {
+                int lus = canal.read(tampon, position);
+                if (lus < 0) {
+                    throw new EOFException("Enregistrement tronqué à la position " + position);
+                }
+                position += lus;
+            }
+        }
+
+        synchronized void ecrire(String cle, float[] vecteur) {
+            if (positions.containsKey(cle)) return;
+            byte[] octets = cle.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer tampon = ByteBuffer.allocate(8 + octets.length + 4 * vecteur.length).order(ByteOrder.LITTLE_ENDIAN);
+            tampon.putInt(octets.length).put(octets).putInt(vecteur.length);
+            for (float valeur : vecteur) {
+                tampon.putFloat(valeur);
+            }
+            tampon.flip();
+            try {
+                long position = fin;
+                while (tampon.hasRemaining()) {
+                    position += canal.write(tampon, position);
+                }
+                positions.put(cle, fin);
+                fin = position;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Écriture impossible dans le fichier de débordement", e);
+            }
+        }
+
+        float[] lire(String cle) {
+            Long position = positions.get(cle);
+            if (position == null) return null;
+            try {
+                int longueurCle = cle.getBytes(StandardCharsets.UTF_8).length;
+                ByteBuffer entier = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+                int dimension = lireEntier(entier, position + 4 + longueurCle);
+                ByteBuffer tampon = ByteBuffer.allocate(4 * dimension).order(ByteOrder.LITTLE_ENDIAN);
+                lireTout(tampon, position + 8 + longueurCle);
+                float[] vecteur = new float[dimension];
+                tampon.flip().asFloatBuffer().get(vecteur);
+                return vecteur;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Lecture impossible dans le fichier de débordement", e);
+            }
+        }
+
+        void fermer() {
+            try {
+                canal.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private EmbeddingModel embeddingModel;
+        private int capacite = 10_000;
+        private Path fichierDebordement;
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder capacite(int capacite) {
+            this.capacite = capacite;
+            return this;
+        }
+
+        public Builder fichierDebordement(Path fichierDebordement) {
+            this.fichierDebordement = fichierDebordement;
+            return this;
+        }
+
+        public CacheEmbeddingModel build() {
+            if (embeddingModel == null) {
+                throw new IllegalStateException("❌ embeddingModel est obligatoire");
+            }
+            if (capacite < 1) {
+                throw new IllegalArgumentException("❌ La capacité doit être positive");
+            }
+            return new CacheEmbeddingModel(this);
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package ma.emsi.khairat.cache;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+import ma.emsi.khairat.store.Similarite;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Décorateur de {@link WebSearchEngine} qui met en cache les résultats de recherche.
+ *
+ * <p>La clé est la requête normalisée (comme {@link CacheEmbeddingModel#normaliser(String)}) et le
+ * nombre de résultats demandé. Si un {@link EmbeddingModel} est fourni, une requête proche d'une
+ * requête déjà servie (cosinus ≥ seuil) réutilise ses résultats. Chaque entrée expire après son TTL ;
+ * le cache mémoire est un LRU borné. Un fichier en ajout seul reçoit chaque nouvelle entrée et est
+ * relu (puis compacté si besoin) à l'ouverture. Des requêtes identiques simultanées partagent un seul
+ * appel au moteur.</p>
+ */
+public class CacheRechercheWeb implements WebSearchEngine, AutoCloseable {
+
+    private final WebSearchEngine delegue;
+    private final EmbeddingModel embeddingModel;
+    private final double seuilSemantique;
+    private final long ttlMillis;
+    private final int capacite;
+    private final Map<String, Entree> memoire;
+    private final Map<String, CompletableFuture<WebSearchResults>> enVol = new ConcurrentHashMap<>();
+    private final Segment segment;
+    private final LongAdder succesExacts = new LongAdder();
+    private final LongAdder succesSemantiques = new LongAdder();
+    private final LongAdder partages = new LongAdder();
+    private final LongAdder appelsAmont = new LongAdder();
+
+    private CacheRechercheWeb(Builder builder) {
+        this.delegue = builder.moteur;
+        this.embeddingModel = builder.embeddingModel;
+        this.seuilSemantique = builder.seuilSemantique;
+        this.ttlMillis = builder.ttl.toMillis();
+        this.capacite = builder.capacite;
+        this.memoire = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entree> plusAncienne) {
+                return size() > capacite;
+            }
+        };
+        this.segment = builder.fichier == null ? null : new Segment(builder.fichier);
+        if (segment != null) {
+            for (Entree entree : segment.charger(capacite, System.currentTimeMillis())) {
+                memoire.put(entree.cle(), entree);
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public WebSearchResults search(WebSearchRequest webSearchRequest) {
+        String termes = CacheEmbeddingModel.normaliser(webSearchRequest.searchTerms());
+        int maxResults = webSearchRequest.maxResults() == null ? -1 : webSearchRequest.maxResults();
+        String cle = maxResults + "|" + termes;
+
+        Entree entree = chercher(cle);
+        if (entree != null) {
+            succesExacts.increment();
+            return entree.resultats();
+        }
+        float[] vecteur = null;
+        if (embeddingModel != null) {
+            vecteur = embeddingModel.embed(termes).content().vector();
+            entree = chercherProche(vecteur, maxResults);
+            if (entree != null) {
+                succesSemantiques.increment();
+                return entree.resultats();
+            }
+        }
+
+        CompletableFuture<WebSearchResults> appel = new CompletableFuture<>();
+        CompletableFuture<WebSearchResults> existant = enVol.putIfAbsent(cle, appel);
+        if (existant != null) {
+            partages.increment();
+            try {
+                return existant.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            appelsAmont.increment();
+            WebSearchResults resultats = delegue.search(webSearchRequest);
+            stocker(new Entree(cle, maxResults, vecteur, System.currentTimeMillis() + ttlMillis, resultats));
+            appel.complete(resultats);
+            return resultats;
+        } catch (RuntimeException e) {
+            appel.completeExceptionally(e);
+            throw e;
+        } finally {
+            enVol.remove(cle);
+        }
+    }
+
+    private Entree chercher(String cle) {
+        synchronized (memoire) {
+            Entree entree = memoire.get(cle);
+            if (entree != null && entree.expiration() <= System.currentTimeMillis()) {
+                memoire.remove(cle);
+                return null;
+            }
+            return entree;
+        }
+    }
+
+    private Entree chercherProche(float[] vecteur, int maxResults) {
+        float norme = Similarite.norme(vecteur);
+        long maintenant = System.currentTimeMillis();
+        Entree meilleure = null;
+        double meilleurScore = seuilSemantique;
+        synchronized (memoire) {
+            for (Entree entree : memoire.values()) {
+                if (entree.vecteur() == null || entree.maxResults() != maxResults
+                        || entree.vecteur().length != vecteur.length || entree.expiration() <= maintenant) {
+                    continue;
+                }
+                double score = Similarite.cosinus(Similarite.produitScalaire(vecteur, 0, entree.vecteur(), 0, vecteur.length),
+                        norme, Similarite.norme(entree.vecteur()));
+                if (score >= meilleurScore) {
+                    meilleurScore = score;
+                    meilleure = entree;
+                }
+            }
+            if (meilleure != null) {
+                memoire.get(meilleure.cle());
+            }
+        }
+        return meilleure;
+    }
+
+    private void stocker(Entree entree) {
+        synchronized (memoire) {
+            memoire.put(entree.cle(), entree);
+            if (segment != null) {
+                segment.ecrire(entree);
+            }
+        }
+    }
+
+    public String statistiques() {
+        long succes = succesExacts.sum() + succesSemantiques.sum();
+        long total = succes + partages.sum() + appelsAmont.sum();
+        return String.format("🌐 Cache web : %d succès (%d exacts, %d sémantiques), %d partagés, %d appels au moteur, taux %.1f %%",
+                succes, succesExacts.sum(), succesSemantiques.sum(), partages.sum(), appelsAmont.sum(),
+                total == 0 ? 0.0 : 100.0 * (succes + partages.sum()) / total);
+    }
+
+    @Override
+    public void close() {
+        if (segment != null) {
+            segment.fermer();
+        }
+    }
+
+    private record Entree(String cle, int maxResults, float[] vecteur, long expiration, WebSearchResults resultats) {
+    }
+
+    /**
+     * Fichier en ajout seul : [taille][enregistrement] où l'enregistrement contient l'expiration, la clé,
+     * le vecteur éventuel et les résultats (titre, URL, extrait, contenu). Relu en entier à l'ouverture :
+     * les entrées expirées sont ignorées, la dernière écriture d'une clé l'emporte, une fin tronquée est
+     * coupée. Si le fichier contient plus d'enregistrements morts que vivants, il est réécrit.
+     */
+    private static final class Segment {
+
+        private final Path fichier;
+        private FileChannel canal;
+        private long fin;
+
+        Segment(Path fichier) {
+            this.fichier = fichier;
+            try {
+                if (fichier.toAbsolutePath().getParent() != null) {
+                    Files.createDirectories(fichier.toAbsolutePath().getParent());
+                }
+                canal = FileChannel.open(fichier, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Fichier du cache web inutilisable : " + fichier, e);
+            }
+        }
+
+        List<Entree> charger(int capacite, long maintenant) {
+            try {
+                Map<String, Entree> vivantes = new LinkedHashMap<>();
+                int enregistrements = 0;
+                long taille = canal.size();
+                ByteBuffer entier = ByteBuffer.allocate(4);
+                long position = 0;
+                while (position + 4 <= taille) {
+                    entier.clear();
+                    canal.read(entier, position);
+                    int longueur = entier.getInt(0);
+                    if (longueur <= 0 || position + 4 + longueur > taille) break;
+                    ByteBuffer octets = ByteBuffer.allocate(longueur);
+                    canal.read(octets, position + 4);
+                    Entree entree;
+                    try {
+                        entree = decoder(octets.array());
+                    } catch (IOException | RuntimeException e) {
+                        break;
+                    }
+                    enregistrements++;
+                    vivantes.remove(entree.cle());
+                    if (entree.expiration() > maintenant) {
+                        vivantes.put(entree.cle(), entree);
+                    }
+                    position += 4 + longueur;
+                }
+                fin = position;
+                canal.truncate(fin);
+
+                List<Entree> entrees = new ArrayList<>(vivantes.values());
+                if (entrees.size() > capacite) {
+                    entrees = new ArrayList<>(entrees.subList(entrees.size() - capacite, entrees.size()));
+                }
+                if (enregistrements > 2 * entrees.size()) {
+                    compacter(entrees);
+                }
+                return entrees;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Lecture impossible du cache web : " + fichier, e);
+            }
+        }
+
+        private void compacter(List<Entree> entrees) throws IOException {
+            Path temporaire = fichier.resolveSibling(fichier.getFileName() + ".tmp");
+            try (FileChannel sortie = FileChannel.open(temporaire, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (Entree entree : entrees) {
+                    ByteBuffer tampon = encoder(entree);
+                    while (tampon.hasRemaining()) {
+                        sortie.write(tampon);
+                    }
+                }
+            }
+            canal.close();
+            Files.move(temporaire, fichier, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            canal = FileChannel.open(fichier, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            fin = canal.size();
+        }
+
+        void ecrire(Entree entree) {
+            try {
+                ByteBuffer tampon = encoder(entree);
+                long position = fin;
+                while (tampon.hasRemaining()) {
+                    position += canal.write(tampon, position);
+                }
+                fin = position;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Écriture impossible dans le cache web", e);
+            }
+        }
+
+        private static ByteBuffer encoder(Entree entree) throws IOException {
+            ByteArrayOutputStream octets = new ByteArrayOutputStream();
+            DataOutputStream sortie = new DataOutputStream(octets);
+            sortie.writeInt(0);
+            sortie.writeLong(entree.expiration());
+            ecrireTexte(sortie, entree.cle());
+            sortie.writeInt(entree.maxResults());
+            float[] vecteur = entree.vecteur();
+            sortie.writeInt(vecteur == null ? -1 : vecteur.length);
+            if (vecteur != null) {
+                for (float valeur : vecteur) {
+                    sortie.writeFloat(valeur);
+                }
+            }
+            WebSearchResults resultats = entree.resultats();
+            Long total = resultats.searchInformation() == null ? null : resultats.searchInformation().totalResults();
+            sortie.writeLong(total == null ? -1 : total);
+            sortie.writeInt(resultats.results().size());
+            for (WebSearchOrganicResult resultat : resultats.results()) {
+                ecrireTexte(sortie, resultat.title());
+                ecrireTexte(sortie, resultat.url().toString());
+                ecrireTexte(sortie, resultat.snippet());
+                ecrireTexte(sortie, resultat.content());
+            }
+            ByteBuffer tampon = ByteBuffer.wrap(octets.toByteArray());
+            tampon.putInt(0, tampon.capacity() - 4);
+            return tampon;
+        }
+
+        private static Entree decoder(byte[] octets) throws IOException {
+            DataInputStream entree = new DataInputStream(new ByteArrayInputStream(octets));
+            long expiration = entree.readLong();
+            String cle = lireTexte(entree);
+            int maxResults = entree.readInt();
+            int dimension = entree.readInt();
+            float[] vecteur = null;
+            if (dimension >= 0) {
+                vecteur = new float[dimension];
+                for (int i = 0; i < dimension; i++) {
+                    vecteur[i] = entree.readFloat();
+                }
+            }
+            long total = entree.readLong();
+            int nombre = entree.readInt();
+            List<WebSearchOrganicResult> resultats = new ArrayList<>(nombre);
+            for (int i = 0; i < nombre; i++) {
+                resultats.add(WebSearchOrganicResult.from(lireTexte(entree), URI.create(lireTexte(entree)),
+                        lireTexte(entree), lireTexte(entree)));
+            }
+            WebSearchInformationResult information = WebSearchInformationResult.from(total < 0 ? null : total);
+            return new Entree(cle, maxResults, vecteur, expiration, WebSearchResults.from(information, resultats));
+        }
+
+        private static void ecrireTexte(DataOutputStream sortie, String texte) throws IOException {
+            if (texte == null) {
+                sortie.writeInt(-1);
+                return;
+            }
+            byte[] octets = texte.getBytes(StandardCharsets.UTF_8);
+            sortie.writeInt(octets.length);
+            sortie.write(octets);
+        }
+
+        private static String lireTexte(DataInputStream entree) throws IOException {
+            int longueur = entree.readInt();
+            if (longueur < 0) return null;
+            if (longueur > entree.available()) throw new EOFException();
+            return new String(entree.readNBytes(longueur), StandardCharsets.UTF_8);
+        }
+
+        void fermer() {
+            try {
+                canal.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private WebSearchEngine moteur;
+        private EmbeddingModel embeddingModel;
+        private double seuilSemantique = 0.95;
+        private Duration ttl = Duration.ofMinutes(30);
+        private int capacite = 500;
+        private Path fichier;
+
+        public Builder moteur(WebSearchEngine moteur) {
+            this.moteur = moteur;
+            return this;
+        }
+
+        /**
+         * Active la clé sémantique : une requête assez proche d'une requête en cache en réutilise les résultats.
+         */
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder seuilSemantique(double seuilSemantique) {
+            this.seuilSemantique = seuilSemantique;
+            return this;
+        }
+
+        public Builder ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        public Builder capacite(int capacite) {
+            this.capacite = capacite;
+            return this;
+        }
+
+        public Builder fichier(Path fichier) {
+            this.fichier = fichier;
+            return this;
+        }
+
+        public CacheRechercheWeb build() {
+            if (moteur == null) {
+                throw new IllegalStateException("❌ moteur est obligatoire");
+            }
+            if (capacite < 1) {
+                throw new IllegalArgumentException("❌ La capacité doit être positive");
+            }
+            return new CacheRechercheWeb(this);
+        }
+    }
+}
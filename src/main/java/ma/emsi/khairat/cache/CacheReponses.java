@@ -0,0 +1,372 @@
+package ma.emsi.khairat.cache;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.ModelProvider;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.khairat.store.MagasinParcourable;
+import ma.emsi.khairat.store.Similarite;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache sémantique des réponses devant un {@link ChatModel} et/ou un {@link StreamingChatModel}.
+ *
+ * <p>Le message utilisateur augmenté est coupé au marqueur du {@code DefaultContentInjector} :
+ * la question est vectorisée, le contexte injecté (les segments retrouvés), les messages système
+ * et les paramètres du modèle forment une empreinte exacte. Une réponse est resservie si
+ * l'empreinte est identique et si la question est assez proche (cosinus ≥ seuil) d'une question
+ * déjà posée. Le cache est vidé dès qu'un des magasins surveillés change de version.</p>
+ *
+ * <p>Par défaut seules les requêtes sans historique (premier tour ou assistant sans mémoire) sont
+ * servies depuis le cache : une réponse qui dépend de la conversation n'est pas réutilisable.</p>
+ *
+ * <p>En streaming, un succès est rendu d'un bloc (un seul fragment puis la réponse complète) et une
+ * réponse streamée n'est mémorisée qu'une fois terminée.</p>
+ */
+public class CacheReponses implements ChatModel, StreamingChatModel {
+
+    private static final String MARQUEUR_CONTEXTE = "\n\nAnswer using the following information:\n";
+
+    private final ChatModel delegue;
+    private final StreamingChatModel delegueFlux;
+    private final EmbeddingModel embeddingModel;
+    private final double seuil;
+    private final boolean servirAvecHistorique;
+    private final List<MagasinParcourable> magasins;
+    private final Map<Long, Entree> memoire;
+    private long prochainNumero;
+    private long versionConnue;
+    private final LongAdder succes = new LongAdder();
+    private final LongAdder echecs = new LongAdder();
+    private final LongAdder contournements = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder nanosEconomisees = new LongAdder();
+
+    private CacheReponses(Builder builder) {
+        this.delegue = builder.chatModel;
+        this.delegueFlux = builder.streamingChatModel;
+        this.embeddingModel = builder.embeddingModel;
+        this.seuil = builder.seuil;
+        this.servirAvecHistorique = builder.servirAvecHistorique;
+        this.magasins = List.copyOf(builder.magasins);
+        this.versionConnue = version();
+        int capacite = builder.capacite;
+        this.memoire = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entree> plusAncienne) {
+                return size() > capacite;
+            }
+        };
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public ChatResponse chat(ChatRequest chatRequest) {
+        if (delegue == null) {
+            throw new IllegalStateException("❌ Aucun ChatModel configuré (cache en mode streaming seulement)");
+        }
+        Requete requete = analyser(chatRequest);
+        if (requete == null) {
+            contournements.increment();
+            return delegue.chat(chatRequest);
+        }
+
+        Entree entree = chercher(requete);
+        if (entree != null) {
+            succes.increment();
+            nanosEconomisees.add(entree.dureeNanos());
+            return entree.reponse();
+        }
+        echecs.increment();
+
+        long debut = System.nanoTime();
+        ChatResponse reponse = delegue.chat(chatRequest);
+        memoriser(requete, reponse, System.nanoTime() - debut);
+        return reponse;
+    }
+
+    @Override
+    public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        if (delegueFlux == null) {
+            throw new IllegalStateException("❌ Aucun StreamingChatModel configuré");
+        }
+        Requete requete = analyser(chatRequest);
+        if (requete == null) {
+            contournements.increment();
+            delegueFlux.chat(chatRequest, handler);
+            return;
+        }
+
+        Entree entree = chercher(requete);
+        if (entree != null) {
+            succes.increment();
+            nanosEconomisees.add(entree.dureeNanos());
+            handler.onPartialResponse(entree.reponse().aiMessage().text());
+            handler.onCompleteResponse(entree.reponse());
+            return;
+        }
+        echecs.increment();
+
+        long debut = System.nanoTime();
+        delegueFlux.chat(chatRequest, new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(String partialResponse) {
+                handler.onPartialResponse(partialResponse);
+            }
+
+            @Override
+            public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+                handler.onPartialResponse(partialResponse, context);
+            }
+
+            @Override
+            public void onPartialThinking(PartialThinking partialThinking) {
+                handler.onPartialThinking(partialThinking);
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse reponse) {
+                memoriser(requete, reponse, System.nanoTime() - debut);
+                handler.onCompleteResponse(reponse);
+            }
+
+            @Override
+            public void onError(Throwable erreur) {
+                handler.onError(erreur);
+            }
+        });
+    }
+
+    private void memoriser(Requete requete, ChatResponse reponse, long duree) {
+        if (reponse.aiMessage().text() != null && !reponse.aiMessage().hasToolExecutionRequests()) {
+            synchronized (memoire) {
+                memoire.put(prochainNumero++, new Entree(requete.empreinte(), requete.vecteur(), reponse, duree));
+            }
+        }
+    }
+
+    /**
+     * Retourne {@code null} si la requête ne peut pas être servie depuis le cache
+     * (outils, message non textuel, historique de conversation).
+     */
+    private Requete analyser(ChatRequest chatRequest) {
+        if (chatRequest.toolSpecifications() != null && !chatRequest.toolSpecifications().isEmpty()) {
+            return null;
+        }
+        StringBuilder systeme = new StringBuilder();
+        UserMessage dernier = null;
+        int tours = 0;
+        for (ChatMessage message : chatRequest.messages()) {
+            if (message instanceof SystemMessage s) {
+                systeme.append(s.text()).append('\u0000');
+            } else if (message instanceof UserMessage u) {
+                dernier = u;
+                tours++;
+            } else if (message instanceof AiMessage) {
+                tours++;
+            } else {
+                return null;
+            }
+        }
+        if (dernier == null || !dernier.hasSingleText() || (tours > 1 && !servirAvecHistorique)) {
+            return null;
+        }
+
+        String texte = dernier.singleText();
+        int marqueur = texte.indexOf(MARQUEUR_CONTEXTE);
+        String question = marqueur < 0 ? texte : texte.substring(0, marqueur);
+        String contexte = marqueur < 0 ? "" : texte.substring(marqueur + MARQUEUR_CONTEXTE.length());
+
+        ChatRequestParameters defauts = defaultRequestParameters();
+        String modele = chatRequest.modelName() != null ? chatRequest.modelName() : defauts == null ? null : defauts.modelName();
+        Double temperature = chatRequest.temperature() != null ? chatRequest.temperature() : defauts == null ? null : defauts.temperature();
+        String empreinte = sha256(modele + '\u0000' + temperature + '\u0000' + chatRequest.topP() + '\u0000'
+                + chatRequest.maxOutputTokens() + '\u0000' + systeme + '\u0000' + contexte);
+
+        float[] vecteur = embeddingModel.embed(TextSegment.from(CacheEmbeddingModel.normaliser(question))).content().vector();
+        return new Requete(empreinte, vecteur);
+    }
+
+    private Entree chercher(Requete requete) {
+        float[] vecteur = requete.vecteur();
+        float norme = Similarite.norme(vecteur);
+        long version = version();
+        synchronized (memoire) {
+            if (version != versionConnue) {
+                memoire.clear();
+                versionConnue = version;
+                invalidations.increment();
+                return null;
+            }
+            Long meilleur = null;
+            double meilleurScore = seuil;
+            for (Map.Entry<Long, Entree> candidat : memoire.entrySet()) {
+                Entree entree = candidat.getValue();
+                if (!entree.empreinte().equals(requete.empreinte()) || entree.vecteur().length != vecteur.length) {
+                    continue;
+                }
+                double score = Similarite.cosinus(Similarite.produitScalaire(vecteur, 0, entree.vecteur(), 0, vecteur.length),
+                        norme, Similarite.norme(entree.vecteur()));
+                if (score >= meilleurScore) {
+                    meilleurScore = score;
+                    meilleur = candidat.getKey();
+                }
+            }
+            return meilleur == null ? null : memoire.get(meilleur);
+        }
+    }
+
+    private long version() {
+        long version = 0;
+        for (MagasinParcourable magasin : magasins) {
+            version += magasin.version();
+        }
+        return version;
+    }
+
+    private static String sha256(String texte) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(texte.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return delegue != null ? delegue.defaultRequestParameters() : delegueFlux.defaultRequestParameters();
+    }
+
+    @Override
+    public List<ChatModelListener> listeners() {
+        return List.of();
+    }
+
+    @Override
+    public ModelProvider provider() {
+        return delegue != null ? delegue.provider() : delegueFlux.provider();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegue != null ? delegue.supportedCapabilities() : delegueFlux.supportedCapabilities();
+    }
+
+    public long succes() {
+        return succes.sum();
+    }
+
+    public long echecs() {
+        return echecs.sum();
+    }
+
+    public String statistiques() {
+        long total = succes() + echecs();
+        return String.format("💬 Cache réponses : %d succès, %d échecs, taux %.1f %%, %d contournées, %d invalidations, %d ms économisées",
+                succes(), echecs(), total == 0 ? 0.0 : 100.0 * succes() / total, contournements.sum(),
+                invalidations.sum(), nanosEconomisees.sum() / 1_000_000);
+    }
+
+    private record Requete(String empreinte, float[] vecteur) {
+    }
+
+    private record Entree(String empreinte, float[] vecteur, ChatResponse reponse, long dureeNanos) {
+    }
+
+    public static class Builder {
+
+        private ChatModel chatModel;
+        private StreamingChatModel streamingChatModel;
+        private EmbeddingModel embeddingModel;
+        private double seuil = 0.90;
+        private int capacite = 1000;
+        private boolean servirAvecHistorique;
+        private final List<MagasinParcourable> magasins = new ArrayList<>();
+
+        public Builder chatModel(ChatModel chatModel) {
+            this.chatModel = chatModel;
+            return this;
+        }
+
+        public Builder streamingChatModel(StreamingChatModel streamingChatModel) {
+            this.streamingChatModel = streamingChatModel;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        /**
+         * Cosinus minimal entre deux questions. Avec MiniLM, des reformulations françaises se situent
+         * vers 0,85–0,95 mais « avantages du RAG » / « inconvénients du RAG » atteint déjà 0,81.
+         */
+        public Builder seuil(double seuil) {
+            this.seuil = seuil;
+            return this;
+        }
+
+        public Builder capacite(int capacite) {
+            this.capacite = capacite;
+            return this;
+        }
+
+        /**
+         * Sert aussi les requêtes qui portent un historique de conversation (désactivé par défaut).
+         */
+        public Builder servirAvecHistorique(boolean servirAvecHistorique) {
+            this.servirAvecHistorique = servirAvecHistorique;
+            return this;
+        }
+
+        /**
+         * Magasin dont toute modification vide le cache.
+         */
+        public Builder magasin(EmbeddingStore<TextSegment> magasin) {
+            if (!(magasin instanceof MagasinParcourable parcourable)) {
+                throw new IllegalArgumentException("❌ Le magasin doit exposer sa version (MagasinParcourable)");
+            }
+            magasins.add(parcourable);
+            return this;
+        }
+
+        public CacheReponses build() {
+            if ((chatModel == null && streamingChatModel == null) || embeddingModel == null) {
+                throw new IllegalStateException("❌ chatModel ou streamingChatModel, et embeddingModel sont obligatoires");
+            }
+            if (capacite < 1) {
+                throw new IllegalArgumentException("❌ La capacité doit être positive");
+            }
+            return new CacheReponses(this);
+        }
+    }
+}
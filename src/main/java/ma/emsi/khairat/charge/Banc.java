@@ -0,0 +1,192 @@
+package ma.emsi.khairat.charge;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.content.injector.DefaultContentInjector;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.content.retriever.WebSearchContentRetriever;
+import dev.langchain4j.rag.query.router.DefaultQueryRouter;
+import dev.langchain4j.rag.query.router.LanguageModelQueryRouter;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.web.search.WebSearchEngine;
+import ma.emsi.khairat.cache.CacheEmbeddingModel;
+import ma.emsi.khairat.cache.CacheReponses;
+import ma.emsi.khairat.memoire.MemoireBudgetJetons;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+import ma.emsi.khairat.recherche.RecuperateurConcurrent;
+import ma.emsi.khairat.routage.RouteurParCentroides;
+import ma.emsi.khairat.routage.RouteurPertinence;
+import ma.emsi.khairat.routage.RouteurSpeculatif;
+import ma.emsi.khairat.serveur.AssistantMultiSession;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Un assistant monté comme dans le main de sa configuration (mêmes retrievers, routeurs et
+ * paramètres), mais sur des composants chronométrés et avec une mémoire par session.
+ */
+public final class Banc implements AutoCloseable {
+
+    /**
+     * Composants bruts partagés par tous les bancs : modèle d'embedding local, index des deux PDF
+     * et modèles distants (simulés pour un test de charge). Avec {@code speculation}, les
+     * configurations routage et pasderag cherchent dans les PDF pendant la décision du routeur
+     * ({@link RouteurSpeculatif}).
+     */
+    public record Composants(EmbeddingModel embeddingModel,
+                             EmbeddingStore<TextSegment> storeIA,
+                             EmbeddingStore<TextSegment> storeSport,
+                             ChatModel chatModel,
+                             WebSearchEngine moteurWeb,
+                             boolean caches,
+                             boolean speculation) {
+    }
+
+    private final AssistantMultiSession assistant;
+    private final List<Supplier<String>> statistiques;
+    private final List<AutoCloseable> ressources;
+
+    private Banc(AssistantMultiSession assistant, List<Supplier<String>> statistiques, List<AutoCloseable> ressources) {
+        this.assistant = assistant;
+        this.statistiques = statistiques;
+        this.ressources = ressources;
+    }
+
+    public static Banc construire(Configuration configuration, Composants composants, RegistreMetriques metriques) {
+        List<Supplier<String>> statistiques = new ArrayList<>();
+        List<AutoCloseable> ressources = new ArrayList<>();
+
+        EmbeddingModel modeleRequetes = metriques.embeddingModel(composants.embeddingModel());
+        ChatModel model = metriques.chatModel(composants.chatModel());
+        ChatModel modeleAssistant = model;
+        if (composants.caches()) {
+            // Caches en mémoire seulement : chaque lancement part à froid
+            CacheEmbeddingModel cacheRequetes = CacheEmbeddingModel.builder().embeddingModel(modeleRequetes).build();
+            modeleRequetes = cacheRequetes;
+            statistiques.add(cacheRequetes::statistiques);
+        }
+
+        ContentRetriever retrieverIA = metriques.retriever("recuperation", EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(composants.storeIA())
+                .embeddingModel(modeleRequetes)
+                .maxResults(configuration == Configuration.ROUTAGE ? 3 : 2)
+                .minScore(0.5)
+                .build());
+
+        QueryRouter router = switch (configuration) {
+            case RAG_NAIF -> new DefaultQueryRouter(retrieverIA);
+            case ROUTAGE -> {
+                ContentRetriever retrieverSport = metriques.retriever("recuperation", EmbeddingStoreContentRetriever.builder()
+                        .embeddingStore(composants.storeSport())
+                        .embeddingModel(modeleRequetes)
+                        .maxResults(3)
+                        .minScore(0.5)
+                        .build());
+                RouteurParCentroides routeur = RouteurParCentroides.builder()
+                        .embeddingModel(modeleRequetes)
+                        .source(retrieverIA, composants.storeIA())
+                        .source(retrieverSport, composants.storeSport())
+                        .marge(0.05)
+                        .repli(new LanguageModelQueryRouter(model, Map.of(
+                                retrieverIA, "Documents de cours sur le RAG, le fine-tuning et l'intelligence artificielle",
+                                retrieverSport, "Articles sur le sport, la santé et l'entraînement physique")))
+                        .build();
+                statistiques.add(routeur::statistiques);
+                yield speculer(routeur, composants, modeleRequetes, statistiques, ressources, retrieverIA, retrieverSport);
+            }
+            case PAS_DE_RAG -> {
+                RouteurPertinence porte = RouteurPertinence.builder()
+                        .embeddingModel(modeleRequetes)
+                        .embeddingStore(composants.storeIA())
+                        .retrievers(retrieverIA)
+                        .build();
+                statistiques.add(porte::statistiques);
+                yield speculer(porte, composants, modeleRequetes, statistiques, ressources, retrieverIA);
+            }
+            case RAG_WEB -> {
+                ContentRetriever retrieverWeb = WebSearchContentRetriever.builder()
+                        .webSearchEngine(metriques.moteur(composants.moteurWeb()))
+                        .maxResults(3)
+                        .build();
+                RecuperateurConcurrent recuperateur = RecuperateurConcurrent.builder()
+                        .local(retrieverIA)
+                        .distant("web", retrieverWeb, Duration.ofSeconds(2), true)
+                        .echeance(Duration.ofMillis(2500))
+                        .build();
+                statistiques.add(recuperateur::statistiques);
+                ressources.add(recuperateur);
+                yield new DefaultQueryRouter(recuperateur);
+            }
+        };
+
+        if (composants.caches()) {
+            CacheReponses.Builder cache = CacheReponses.builder()
+                    .chatModel(model)
+                    .embeddingModel(modeleRequetes)
+                    .magasin(composants.storeIA());
+            if (configuration == Configuration.ROUTAGE) {
+                cache.magasin(composants.storeSport());
+            }
+            CacheReponses cacheReponses = cache.build();
+            modeleAssistant = cacheReponses;
+            statistiques.add(cacheReponses::statistiques);
+        }
+
+        AssistantMultiSession assistant = AiServices.builder(AssistantMultiSession.class)
+                .chatModel(modeleAssistant)
+                .chatMemoryProvider(session -> MemoireBudgetJetons.builder().id(session).budgetJetons(4000).build())
+                .retrievalAugmentor(DefaultRetrievalAugmentor.builder()
+                        .queryRouter(metriques.router(router))
+                        .contentInjector(metriques.contentInjector(new DefaultContentInjector()))
+                        .build())
+                .build();
+        return new Banc(assistant, statistiques, ressources);
+    }
+
+    private static QueryRouter speculer(QueryRouter routeur, Composants composants, EmbeddingModel modeleRequetes,
+                                        List<Supplier<String>> statistiques, List<AutoCloseable> ressources,
+                                        ContentRetriever... candidats) {
+        if (!composants.speculation()) {
+            return routeur;
+        }
+        RouteurSpeculatif speculatif = RouteurSpeculatif.builder()
+                .routeur(routeur)
+                .candidats(candidats)
+                // Sans cache, embedder d'abord la question ne ferait qu'ajouter un calcul
+                .embeddingModel(composants.caches() ? modeleRequetes : null)
+                .build();
+        statistiques.add(speculatif::statistiques);
+        ressources.add(speculatif);
+        return speculatif;
+    }
+
+    public AssistantMultiSession assistant() {
+        return assistant;
+    }
+
+    public List<String> statistiques() {
+        return statistiques.stream().map(Supplier::get).toList();
+    }
+
+    @Override
+    public void close() {
+        for (AutoCloseable ressource : ressources) {
+            try {
+                ressource.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                throw new IllegalStateException("❌ Fermeture impossible de " + ressource, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package ma.emsi.khairat.charge;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Les configurations d'assistant reproduites par le générateur de charge.
+ */
+public enum Configuration {
+
+    RAG_NAIF("ragnaif", "RAG naïf"),
+    ROUTAGE("routage", "Routage IA / sport"),
+    PAS_DE_RAG("pasderag", "Porte de pertinence"),
+    RAG_WEB("web", "RAG + web");
+
+    private final String nom;
+    private final String libelle;
+
+    Configuration(String nom, String libelle) {
+        this.nom = nom;
+        this.libelle = libelle;
+    }
+
+    public String nom() {
+        return nom;
+    }
+
+    public String libelle() {
+        return libelle;
+    }
+
+    public static Configuration parNom(String nom) {
+        for (Configuration configuration : values()) {
+            if (configuration.nom.equalsIgnoreCase(nom.trim())) {
+                return configuration;
+            }
+        }
+        throw new IllegalArgumentException("❌ Configuration inconnue : " + nom + " (attendu : "
+                + Arrays.stream(values()).map(Configuration::nom).collect(Collectors.joining(", ")) + ")");
+    }
+}
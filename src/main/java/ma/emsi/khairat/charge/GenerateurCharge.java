@@ -0,0 +1,237 @@
+package ma.emsi.khairat.charge;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.khairat.demarrage.RegistreComposants;
+import ma.emsi.khairat.embedding.EmbeddingParLots;
+import ma.emsi.khairat.embedding.EncodeurMiniLmParLots;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+import ma.emsi.khairat.recherche.MoteurRechercheSimule;
+import ma.emsi.khairat.serveur.ModeleChatSimule;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Test de charge hors ligne des configurations RAG naïf, routage, porte de pertinence et RAG + web :
+ * Gemini et Tavily sont remplacés par {@link ModeleChatSimule} et {@link MoteurRechercheSimule}, le
+ * reste (MiniLM, index, routeurs, mémoire) est le vrai code.
+ *
+ * <p>Deux modes, par paliers successifs :</p>
+ * <ul>
+ *     <li>charge ouverte : les requêtes arrivent à débit fixe, qu'il y ait des réponses en attente
+ *     ou non. La latence est comptée depuis l'instant d'arrivée prévu, donc la file d'attente qui se
+ *     forme au-delà du point de saturation apparaît dans les percentiles ;</li>
+ *     <li>charge fermée : N utilisateurs enchaînent leurs questions sans pause, le débit obtenu
+ *     mesure la capacité.</li>
+ * </ul>
+ *
+ * <p>Propriétés (toutes facultatives) : {@code rag.charge.configurations} (ragnaif,routage,pasderag,web),
+ * {@code rag.charge.mode} (ouverte | fermee), {@code rag.charge.debits} (requêtes/s, 1,2,5,10),
+ * {@code rag.charge.utilisateurs} (1,4,16), {@code rag.charge.duree} (secondes par palier, 20),
+ * {@code rag.charge.caches} (false), {@code rag.charge.speculation} (false), {@code rag.charge.lots} (true),
+ * {@code rag.charge.llm.premierJeton}, {@code rag.charge.llm.entreJetons} (ms, 400 et 20), {@code rag.charge.llm.dispersion} (0.3), {@code rag.charge.llm.jetons} (40),
+ * {@code rag.charge.llm.echecs} (0), {@code rag.charge.web.mediane} (ms, 800),
+ * {@code rag.charge.web.dispersion} (0.5), {@code rag.charge.web.echecs} (0).</p>
+ */
+public class GenerateurCharge {
+
+    private static final List<String> QUESTIONS = List.of(
+            "Qu'est-ce que le RAG ?",
+            "Quelle est la différence entre RAG et fine-tuning ?",
+            "Comment sont découpés les documents avant l'indexation ?",
+            "À quoi sert une base de données vectorielle ?",
+            "Quels sont les bienfaits du sport sur la santé ?",
+            "Combien de fois par semaine faut-il s'entraîner ?",
+            "Bonjour, comment ça va ?",
+            "Merci beaucoup !",
+            "Quelle est la capitale de l'Australie ?",
+            "Donne-moi une recette de crêpes");
+
+    private static final List<String> ORDRE_ETAPES = List.of(
+            "embedding", "embedding.attente", "embedding.lot", "recherche", "routage", "recuperation", "web", "prompt", "llm", "total");
+    private static final Duration DRAINAGE = Duration.ofSeconds(60);
+
+    public static void main(String[] args) throws Exception {
+        List<Configuration> configurations = Arrays.stream(
+                        System.getProperty("rag.charge.configurations", "ragnaif,routage,pasderag,web").split(","))
+                .map(Configuration::parNom)
+                .toList();
+        boolean ouverte = !"fermee".equalsIgnoreCase(System.getProperty("rag.charge.mode", "ouverte"));
+        double[] paliers = Arrays.stream(System.getProperty(ouverte ? "rag.charge.debits" : "rag.charge.utilisateurs",
+                        ouverte ? "1,2,5,10" : "1,4,16").split(","))
+                .mapToDouble(v -> Double.parseDouble(v.trim()))
+                .toArray();
+        Duration duree = Duration.ofSeconds(Long.getLong("rag.charge.duree", 20));
+
+        System.out.println("=== Test de charge hors ligne (" + (ouverte ? "charge ouverte" : "charge fermée") + ") ===");
+        RegistreComposants registre = RegistreComposants.global();
+        EmbeddingModel embeddingModel = registre.embeddingModel();
+        EmbeddingStore<TextSegment> storeIA = registre.magasin(Paths.get("src/main/resources/rag-2.pdf"), 300, 30);
+        EmbeddingStore<TextSegment> storeSport = registre.magasin(Paths.get("src/main/resources/sport.pdf"), 300, 30);
+
+        ModeleChatSimule model = ModeleChatSimule.builder()
+                .premierJeton(Duration.ofMillis(Long.getLong("rag.charge.llm.premierJeton", 400)))
+                .dispersion(Double.parseDouble(System.getProperty("rag.charge.llm.dispersion", "0.3")))
+                .entreJetons(Duration.ofMillis(Long.getLong("rag.charge.llm.entreJetons", 20)))
+                .nombreJetons(Integer.getInteger("rag.charge.llm.jetons", 40))
+                .tauxEchec(Double.parseDouble(System.getProperty("rag.charge.llm.echecs", "0")))
+                .build();
+        MoteurRechercheSimule moteurWeb = MoteurRechercheSimule.builder()
+                .mediane(Duration.ofMillis(Long.getLong("rag.charge.web.mediane", 800)))
+                .dispersion(Double.parseDouble(System.getProperty("rag.charge.web.dispersion", "0.5")))
+                .tauxEchec(Double.parseDouble(System.getProperty("rag.charge.web.echecs", "0")))
+                .build();
+        // Embeddings des questions regroupés en lots comme dans le serveur (-Drag.charge.lots=false pour comparer)
+        EmbeddingParLots modeleParLots = Boolean.parseBoolean(System.getProperty("rag.charge.lots", "true"))
+                ? EmbeddingParLots.builder().embeddingModel(new EncodeurMiniLmParLots(embeddingModel)).build()
+                : null;
+        Banc.Composants composants = new Banc.Composants(modeleParLots != null ? modeleParLots : embeddingModel,
+                storeIA, storeSport, model, moteurWeb,
+                Boolean.getBoolean("rag.charge.caches"), Boolean.getBoolean("rag.charge.speculation"));
+
+        List<String> synthese = new ArrayList<>();
+        for (Configuration configuration : configurations) {
+            RegistreMetriques metriques = RegistreMetriques.global();
+            try (Banc banc = Banc.construire(configuration, composants, metriques)) {
+                // Un tour de chauffe : chargement paresseux des classes, sessions ONNX, centroïdes
+                try {
+                    banc.assistant().chat("chauffe", QUESTIONS.get(0));
+                } catch (RuntimeException e) {
+                    // échec simulé pendant la chauffe : sans importance
+                }
+                for (double palier : paliers) {
+                    metriques.reinitialiser();
+                    Palier resultat = ouverte
+                            ? chargeOuverte(banc, metriques, palier, duree)
+                            : chargeFermee(banc, metriques, (int) palier, duree);
+                    System.out.println("\n📈 " + configuration.libelle() + " — " + resultat);
+                    for (String etape : ORDRE_ETAPES) {
+                        RegistreMetriques.Resume resume = metriques.resume(etape);
+                        if (resume.appels() > 0) {
+                            System.out.println(resume);
+                        }
+                    }
+                    System.out.printf("   jetons : %d en entrée, %d en sortie, %d de contexte injecté%n",
+                            metriques.compteur("jetons.entree"), metriques.compteur("jetons.sortie"),
+                            metriques.compteur("jetons.contexte"));
+                    if (ouverte && resultat.debit() < 0.9 * palier) {
+                        System.out.printf("⚠️ Saturation : %.1f req/s servies pour %.1f offertes, la file d'attente s'allonge%n",
+                                resultat.debit(), palier);
+                    }
+                    RegistreMetriques.Resume total = metriques.resume("total");
+                    synthese.add(String.format("   %-22s %-16s %8.1f req/s   p50 %8.1f ms   p95 %8.1f ms   p99 %8.1f ms   %5d échecs",
+                            configuration.libelle(), resultat.charge(), resultat.debit(), total.p50(), total.p95(), total.p99(),
+                            resultat.echecs()));
+                }
+                banc.statistiques().forEach(System.out::println);
+            }
+        }
+
+        System.out.println("\n📊 Synthèse (latence de bout en bout) :");
+        synthese.forEach(System.out::println);
+        System.out.println("🤖 Appels au modèle simulé : " + model.appels() + ", 🌐 recherches web simulées : " + moteurWeb.appels());
+        if (modeleParLots != null) {
+            System.out.println(modeleParLots.statistiques());
+            modeleParLots.close();
+        }
+    }
+
+    private static Palier chargeOuverte(Banc banc, RegistreMetriques metriques, double debit, Duration duree) throws InterruptedException {
+        long periode = (long) (1e9 / debit);
+        long dureeNanos = duree.toNanos();
+        AtomicInteger enVol = new AtomicInteger();
+        AtomicInteger enVolMax = new AtomicInteger();
+        LongAdder reussies = new LongAdder();
+        LongAdder echecs = new LongAdder();
+        // Débit servi (réponses et erreurs) sur la seconde moitié du palier : régime établi, sans montée ni drainage
+        LongAdder secondeMoitie = new LongAdder();
+        long soumises = 0;
+
+        ExecutorService executeur = Executors.newVirtualThreadPerTaskExecutor();
+        long debut = System.nanoTime();
+        for (long i = 0; i * periode < dureeNanos; i++) {
+            long prevue = debut + i * periode;
+            long attente;
+            while ((attente = prevue - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(attente);
+            }
+            String question = QUESTIONS.get((int) (i % QUESTIONS.size()));
+            String session = "ouverte-" + (i % 50);
+            soumises++;
+            executeur.execute(() -> {
+                tour(banc, metriques, session, question, prevue, enVol, enVolMax, reussies, echecs);
+                long finTour = System.nanoTime() - debut;
+                if (finTour >= dureeNanos / 2 && finTour < dureeNanos) {
+                    secondeMoitie.increment();
+                }
+            });
+        }
+        executeur.shutdown();
+        if (!executeur.awaitTermination(DRAINAGE.toNanos(), TimeUnit.NANOSECONDS)) {
+            executeur.shutdownNow();
+        }
+        long abandonnees = soumises - reussies.sum() - echecs.sum();
+        return new Palier(String.format("%.1f req/s", debit), reussies.sum(), echecs.sum(), abandonnees,
+                secondeMoitie.sum() / (dureeNanos / 2e9), enVolMax.get());
+    }
+
+    private static Palier chargeFermee(Banc banc, RegistreMetriques metriques, int utilisateurs, Duration duree) throws InterruptedException {
+        AtomicInteger enVol = new AtomicInteger();
+        AtomicInteger enVolMax = new AtomicInteger();
+        LongAdder reussies = new LongAdder();
+        LongAdder echecs = new LongAdder();
+
+        long debut = System.nanoTime();
+        long fin = debut + duree.toNanos();
+        try (ExecutorService executeur = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int u = 0; u < utilisateurs; u++) {
+                String session = "fermee-" + u;
+                int decalage = u;
+                executeur.execute(() -> {
+                    for (int i = decalage; System.nanoTime() < fin; i++) {
+                        tour(banc, metriques, session, QUESTIONS.get(i % QUESTIONS.size()), System.nanoTime(),
+                                enVol, enVolMax, reussies, echecs);
+                    }
+                });
+            }
+        }
+        double secondes = (System.nanoTime() - debut) / 1e9;
+        return new Palier(utilisateurs + " utilisateurs", reussies.sum(), echecs.sum(), 0,
+                reussies.sum() / secondes, enVolMax.get());
+    }
+
+    private static void tour(Banc banc, RegistreMetriques metriques, String session, String question, long debut,
+                             AtomicInteger enVol, AtomicInteger enVolMax, LongAdder reussies, LongAdder echecs) {
+        enVolMax.accumulateAndGet(enVol.incrementAndGet(), Math::max);
+        try {
+            banc.assistant().chat(session, question);
+            metriques.enregistrer("total", System.nanoTime() - debut, true);
+            reussies.increment();
+        } catch (RuntimeException e) {
+            metriques.enregistrer("total", System.nanoTime() - debut, false);
+            echecs.increment();
+        } finally {
+            enVol.decrementAndGet();
+        }
+    }
+
+    private record Palier(String charge, long reussies, long echecs, long abandonnees, double debit, int enVolMax) {
+
+        @Override
+        public String toString() {
+            return String.format("%s : %d réussies, %d échecs, %d abandonnées, débit %.1f req/s, en vol max %d",
+                    charge, reussies, echecs, abandonnees, debit, enVolMax);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ma.emsi.khairat.demarrage;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.khairat.ingestion.DecoupeurPages;
+import ma.emsi.khairat.memoire.MemoireBudgetJetons;
+import ma.emsi.khairat.serveur.ModeleChatSimule;
+import ma.emsi.khairat.test1_ragnaif_Et_test2.Assistant;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Exécution d'entraînement du profil Maven {@code appcds} : elle parcourt le chemin d'un lancement
+ * réel (modèle, index, parsing Tika d'un PDF, assistant RAG avec un modèle de chat simulé) puis se
+ * termine, et la JVM écrit à la sortie l'archive des classes chargées
+ * ({@code -XX:ArchiveClassesAtExit}).
+ *
+ * <p>Les lancements suivants réutilisent cette archive :</p>
+ * <pre>
+ * java -XX:SharedArchiveFile=target/app-cds.jsa --add-modules jdk.incubator.vector \
+ *      -cp target/tp4_test_mouhcineKhairat-1.0-SNAPSHOT.jar:$(cat target/classpath.txt) \
+ *      ma.emsi.khairat.test1_ragnaif.RagNaif
+ * </pre>
+ * Le classpath doit commencer comme celui de l'entraînement, sinon l'archive est ignorée.
+ */
+public class EntrainementCds {
+
+    public static void main(String[] args) throws InterruptedException {
+        RegistreComposants composants = RegistreComposants.global();
+        Path pdf = Paths.get("src/main/resources/rag-2.pdf");
+        EmbeddingStore<TextSegment> storeIA = composants.magasin(pdf, 300, 30);
+        EmbeddingStore<TextSegment> storeSport = composants.magasin(Paths.get("src/main/resources/sport.pdf"), 300, 30);
+        composants.prechauffer(storeIA, storeSport);
+
+        // L'index est en général déjà sur disque : le parsing est refait ici pour charger Tika et PDFBox
+        DecoupeurPages.Bilan bilan = DecoupeurPages.builder().build().decouper(pdf, segment -> {
+        });
+
+        Assistant assistant = AiServices.builder(Assistant.class)
+                .chatModel(ModeleChatSimule.builder()
+                        .premierJeton(Duration.ofMillis(1))
+                        .entreJetons(Duration.ZERO)
+                        .nombreJetons(5)
+                        .build())
+                .chatMemory(MemoireBudgetJetons.builder().budgetJetons(4000).build())
+                .contentRetriever(EmbeddingStoreContentRetriever.builder()
+                        .embeddingStore(storeIA)
+                        .embeddingModel(composants.embeddingModel())
+                        .maxResults(2)
+                        .minScore(0.5)
+                        .build())
+                .build();
+        System.out.println(composants.pret());
+        assistant.chat("Qu'est-ce que le RAG ?");
+        composants.premiereReponse();
+        System.out.println("📦 Entraînement CDS terminé (" + bilan.pages() + " pages parsées) : l'archive est écrite à la sortie de la JVM");
+    }
+}
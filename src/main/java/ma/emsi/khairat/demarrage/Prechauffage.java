@@ -0,0 +1,91 @@
+package ma.emsi.khairat.demarrage;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tours d'embeddings et de recherches représentatifs, exécutés sur un thread de fond pendant que
+ * le main construit le modèle de chat et l'assistant : la première inférence ONNX (allocation de la
+ * session), le chargement des classes et la compilation JIT du tokenizer et du parcours des
+ * magasins ont lieu ici et non dans la première question de l'utilisateur.
+ */
+public final class Prechauffage {
+
+    private static final List<String> QUESTIONS = List.of(
+            "Qu'est-ce que le RAG ?",
+            "Comment fonctionne la recherche par similarité entre embeddings ?",
+            "Quels sont les avantages du fine-tuning par rapport au RAG ?",
+            "Quelles sont les règles du football ?",
+            "Combien de joueurs compte une équipe de basket ?",
+            "Bonjour, peux-tu m'aider ?");
+
+    private final CountDownLatch termine = new CountDownLatch(1);
+    private volatile int embeddings;
+    private volatile int recherches;
+    private volatile long dureeMs;
+    private volatile RuntimeException echec;
+
+    private Prechauffage() {
+    }
+
+    static Prechauffage demarrer(EmbeddingModel embeddingModel, List<EmbeddingStore<TextSegment>> magasins,
+                                 int tours, Runnable autres) {
+        Prechauffage prechauffage = new Prechauffage();
+        Thread.ofPlatform().name("prechauffage").daemon().start(() -> prechauffage.executer(embeddingModel, magasins, tours, autres));
+        return prechauffage;
+    }
+
+    private void executer(EmbeddingModel embeddingModel, List<EmbeddingStore<TextSegment>> magasins, int tours, Runnable autres) {
+        long debut = System.nanoTime();
+        try {
+            for (int tour = 0; tour < tours; tour++) {
+                // Une variante par tour : un cache d'embeddings en amont ne court-circuiterait pas le modèle
+                Embedding embedding = embeddingModel.embed(QUESTIONS.get(tour % QUESTIONS.size()) + " (" + tour + ")").content();
+                embeddings++;
+                for (EmbeddingStore<TextSegment> magasin : magasins) {
+                    magasin.search(EmbeddingSearchRequest.builder()
+                            .queryEmbedding(embedding)
+                            .maxResults(5)
+                            .build());
+                    recherches++;
+                }
+            }
+            autres.run();
+        } catch (RuntimeException e) {
+            // Un préchauffage raté ne doit pas empêcher de répondre : la première question paiera le coût
+            echec = e;
+        } finally {
+            dureeMs = (System.nanoTime() - debut) / 1_000_000;
+            termine.countDown();
+        }
+    }
+
+    /**
+     * @return {@code true} si le préchauffage s'est terminé dans le délai
+     */
+    public boolean attendre(Duration delai) {
+        try {
+            return termine.await(delai.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (termine.getCount() > 0) {
+            return String.format("🔥 Préchauffage en cours : %d embeddings, %d recherches", embeddings, recherches);
+        }
+        return String.format("🔥 Préchauffage : %d embeddings, %d recherches en %d ms%s", embeddings, recherches, dureeMs,
+                echec == null ? "" : " (interrompu : " + echec.getMessage() + ")");
+    }
+}
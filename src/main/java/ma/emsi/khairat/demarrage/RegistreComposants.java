@@ -0,0 +1,181 @@
+package ma.emsi.khairat.demarrage;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.khairat.index.IndexEmbeddings;
+import ma.emsi.khairat.ingestion.DecoupeurPages;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+import ma.emsi.khairat.store.MagasinPartitionne;
+import org.apache.tika.parser.AutoDetectParser;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Composants lourds partagés par tout le processus : modèle d'embeddings, parseur Tika et index
+ * chargés. Chacun est créé une seule fois, au premier appel, et les mains le réclament ici au lieu
+ * de le construire eux-mêmes.
+ *
+ * <p>Le registre note aussi les jalons du démarrage en millisecondes depuis le lancement de la JVM
+ * (modèle, index, préchauffage, prompt) puis la première réponse servie : c'est le temps jusqu'à
+ * la première réponse, à comparer avec et sans archive CDS ({@code mvn -Pappcds package}).</p>
+ *
+ * <p>{@link #prechauffer} lance en arrière-plan des embeddings et des recherches représentatifs
+ * pendant que le main construit le reste ; {@link #pret()} l'attend (au plus
+ * {@code rag.prechauffage.attente} secondes, 30 par défaut) avant d'ouvrir le prompt.
+ * {@code -Drag.prechauffage=false} le désactive.</p>
+ */
+public final class RegistreComposants {
+
+    private static final RegistreComposants GLOBAL = new RegistreComposants();
+
+    private final long lancement = ProcessHandle.current().info().startInstant()
+            .map(Instant::toEpochMilli)
+            .orElseGet(System::currentTimeMillis);
+    private final Map<String, Long> jalons = new LinkedHashMap<>();
+    private final Map<String, EmbeddingStore<TextSegment>> magasins = new HashMap<>();
+    private EmbeddingModel embeddingModel;
+    private Prechauffage prechauffage;
+    private long premiereReponse = -1;
+
+    private RegistreComposants() {
+    }
+
+    public static RegistreComposants global() {
+        return GLOBAL;
+    }
+
+    public synchronized EmbeddingModel embeddingModel() {
+        if (embeddingModel == null) {
+            embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+            jalon("modèle d'embeddings");
+        }
+        return embeddingModel;
+    }
+
+    /**
+     * Parseur Tika du découpage en flux, partagé par tous les index du processus.
+     */
+    public AutoDetectParser parseurTika() {
+        return DecoupeurPages.parseurPartage();
+    }
+
+    /**
+     * Index du document, chargé ou construit au premier appel avec le modèle du registre.
+     */
+    public synchronized EmbeddingStore<TextSegment> magasin(Path document, int tailleSegment, int chevauchement) {
+        String cle = document.toAbsolutePath().normalize() + ":" + tailleSegment + ":" + chevauchement;
+        EmbeddingStore<TextSegment> magasin = magasins.get(cle);
+        if (magasin == null) {
+            magasin = IndexEmbeddings.chargerOuConstruire(document, tailleSegment, chevauchement, embeddingModel());
+            magasins.put(cle, magasin);
+            jalon("index " + document.getFileName());
+        }
+        return magasin;
+    }
+
+    public synchronized MagasinPartitionne magasinPartitionne(int tailleSegment, int chevauchement, Path... documents) {
+        String cle = Arrays.stream(documents)
+                .map(document -> document.toAbsolutePath().normalize().toString())
+                .collect(Collectors.joining("|", "partitionne:", ":" + tailleSegment + ":" + chevauchement));
+        EmbeddingStore<TextSegment> magasin = magasins.get(cle);
+        if (magasin == null) {
+            magasin = IndexEmbeddings.chargerPartitionne(tailleSegment, chevauchement, embeddingModel(), documents);
+            magasins.put(cle, magasin);
+            jalon("index partitionné");
+        }
+        return (MagasinPartitionne) magasin;
+    }
+
+    /**
+     * Lance le préchauffage en arrière-plan sur ces magasins, avec le modèle du registre ; sans effet
+     * s'il est déjà lancé ou désactivé.
+     */
+    @SafeVarargs
+    public final void prechauffer(EmbeddingStore<TextSegment>... magasins) {
+        prechauffer(embeddingModel(), magasins);
+    }
+
+    /**
+     * Variante pour un main dont les questions passent par un autre modèle (encodeur par lots, par
+     * exemple) : c'est celui-là qu'il faut chauffer.
+     */
+    @SafeVarargs
+    public final synchronized void prechauffer(EmbeddingModel modele, EmbeddingStore<TextSegment>... magasins) {
+        if (prechauffage != null || !Boolean.parseBoolean(System.getProperty("rag.prechauffage", "true"))) {
+            return;
+        }
+        // Copie élément par élément : le tableau générique des varargs ne sort pas de la méthode
+        List<EmbeddingStore<TextSegment>> liste = new ArrayList<>(magasins.length);
+        for (EmbeddingStore<TextSegment> magasin : magasins) {
+            liste.add(magasin);
+        }
+        prechauffage = Prechauffage.demarrer(modele, liste, Integer.getInteger("rag.prechauffage.tours", 20),
+                this::parseurTika);
+    }
+
+    /**
+     * Attend la fin du préchauffage, efface ses mesures du {@link RegistreMetriques} global et renvoie
+     * le bilan du démarrage. À appeler juste avant d'accepter la première question.
+     */
+    public String pret() {
+        Prechauffage enCours;
+        synchronized (this) {
+            enCours = prechauffage;
+        }
+        if (enCours != null) {
+            if (enCours.attendre(Duration.ofSeconds(Long.getLong("rag.prechauffage.attente", 30)))) {
+                jalon("préchauffage");
+                // Les recherches du préchauffage ne doivent pas compter dans les latences servies
+                RegistreMetriques.global().reinitialiser();
+            }
+        }
+        jalon("prêt");
+        return enCours == null ? statistiques() : statistiques() + "\n" + enCours;
+    }
+
+    /**
+     * À appeler après chaque réponse : seule la première est notée et affichée.
+     */
+    public void premiereReponse() {
+        long depuisLancement;
+        synchronized (this) {
+            if (premiereReponse >= 0) {
+                return;
+            }
+            premiereReponse = System.currentTimeMillis() - lancement;
+            depuisLancement = premiereReponse;
+        }
+        RegistreMetriques.global().compter("demarrage.premiere_reponse_ms", depuisLancement);
+        System.out.printf("⏱️ Première réponse %d ms après le lancement de la JVM%s%n", depuisLancement, archiveCds());
+    }
+
+    private synchronized void jalon(String nom) {
+        jalons.putIfAbsent(nom, System.currentTimeMillis() - lancement);
+    }
+
+    public synchronized String statistiques() {
+        String etapes = jalons.entrySet().stream()
+                .map(jalon -> jalon.getKey() + " " + jalon.getValue() + " ms")
+                .collect(Collectors.joining(" → "));
+        return "🚀 Démarrage depuis le lancement de la JVM : " + etapes
+                + (premiereReponse >= 0 ? " → première réponse " + premiereReponse + " ms" : "") + archiveCds();
+    }
+
+    private static String archiveCds() {
+        boolean cds = ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                .anyMatch(argument -> argument.startsWith("-XX:SharedArchiveFile"));
+        return cds ? " (archive CDS)" : " (sans archive CDS)";
+    }
+}
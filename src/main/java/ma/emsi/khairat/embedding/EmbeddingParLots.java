@@ -0,0 +1,237 @@
+package ma.emsi.khairat.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Décorateur d'{@link EmbeddingModel} qui regroupe les petites demandes concurrentes (une question
+ * par requête HTTP) en lots, au lieu de lancer une inférence ONNX par thread appelant.
+ *
+ * <p>Les demandes entrent dans une file bornée. Un thread répartiteur attend qu'un thread
+ * d'inférence soit libre, prend la première demande, puis complète le lot jusqu'à
+ * {@code tailleLotMax} ou jusqu'à {@code attenteMax} après cette première demande. Le lot est
+ * ensuite embeddé par un seul {@code embedAll} sur le pool d'inférence, et chaque demande est
+ * terminée par son {@link CompletableFuture}. Tant que tous les threads d'inférence sont occupés, les
+ * demandes s'accumulent dans la file : les lots grossissent avec la charge sans retarder une demande
+ * isolée de plus de {@code attenteMax}.</p>
+ *
+ * <p>Les threads virtuels appelants attendent donc leur future au lieu d'occuper leur thread porteur
+ * pendant l'appel natif. Un appel qui apporte déjà un lot complet (ingestion) va directement au modèle.
+ * Les tailles de lot sont gardées dans un histogramme ; l'attente en file et la durée des lots vont
+ * dans {@link RegistreMetriques#global()} (étapes {@code embedding.attente} et {@code embedding.lot}).</p>
+ */
+public class EmbeddingParLots implements EmbeddingModel, AutoCloseable {
+
+    private final EmbeddingModel delegue;
+    private final int tailleLotMax;
+    private final long attenteMaxNanos;
+    private final BlockingQueue<Demande> file;
+    private final Semaphore inferencesLibres;
+    private final ExecutorService inference;
+    private final Thread repartiteur;
+    private final Recorder taillesLots = new Recorder(3);
+    private final Histogram cumulTailles = new Histogram(3);
+    private final LongAdder demandes = new LongAdder();
+    private final LongAdder lots = new LongAdder();
+    private final LongAdder directs = new LongAdder();
+    private volatile boolean ferme;
+
+    private EmbeddingParLots(Builder builder) {
+        this.delegue = builder.embeddingModel;
+        this.tailleLotMax = builder.tailleLotMax;
+        this.attenteMaxNanos = builder.attenteMax.toNanos();
+        this.file = new ArrayBlockingQueue<>(builder.capaciteFile);
+        this.inferencesLibres = new Semaphore(builder.threadsInference);
+        this.inference = Executors.newFixedThreadPool(builder.threadsInference,
+                Thread.ofPlatform().name("embedding-lot-", 0).daemon().factory());
+        this.repartiteur = Thread.ofPlatform().name("embedding-repartiteur").daemon().start(this::repartir);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        if (textSegments.size() >= tailleLotMax) {
+            directs.increment();
+            return delegue.embedAll(textSegments);
+        }
+        if (ferme) {
+            throw new IllegalStateException("❌ Le regroupement des embeddings est arrêté");
+        }
+        List<CompletableFuture<Embedding>> resultats = new ArrayList<>(textSegments.size());
+        for (TextSegment segment : textSegments) {
+            Demande demande = new Demande(segment, new CompletableFuture<>(), System.nanoTime());
+            resultats.add(demande.resultat());
+            try {
+                file.put(demande);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("❌ Interrompu en attente de place dans la file d'embeddings", e);
+            }
+        }
+        demandes.add(textSegments.size());
+        List<Embedding> embeddings = new ArrayList<>(resultats.size());
+        try {
+            for (CompletableFuture<Embedding> resultat : resultats) {
+                embeddings.add(resultat.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return Response.from(embeddings);
+    }
+
+    @Override
+    public int dimension() {
+        return delegue.dimension();
+    }
+
+    private void repartir() {
+        List<Demande> lot = new ArrayList<>(tailleLotMax);
+        while (!ferme) {
+            try {
+                // Un thread d'inférence libre d'abord : pendant l'attente, la file continue de se remplir
+                inferencesLibres.acquire();
+                Demande premiere = file.take();
+                lot.add(premiere);
+                long echeance = premiere.arrivee() + attenteMaxNanos;
+                while (lot.size() < tailleLotMax) {
+                    Demande suivante = file.poll(echeance - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (suivante == null) break;
+                    lot.add(suivante);
+                }
+                List<Demande> complet = List.copyOf(lot);
+                lot.clear();
+                inference.execute(() -> traiter(complet));
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        lot.forEach(demande -> demande.resultat().completeExceptionally(arret()));
+    }
+
+    private void traiter(List<Demande> lot) {
+        try {
+            long debut = System.nanoTime();
+            RegistreMetriques metriques = RegistreMetriques.global();
+            for (Demande demande : lot) {
+                metriques.enregistrer("embedding.attente", debut - demande.arrivee(), true);
+            }
+            taillesLots.recordValue(lot.size());
+            lots.increment();
+            List<Embedding> embeddings = metriques.mesurer("embedding.lot",
+                    () -> delegue.embedAll(lot.stream().map(Demande::segment).toList()).content());
+            for (int i = 0; i < lot.size(); i++) {
+                lot.get(i).resultat().complete(embeddings.get(i));
+            }
+        } catch (RuntimeException e) {
+            lot.forEach(demande -> demande.resultat().completeExceptionally(e));
+        } finally {
+            inferencesLibres.release();
+        }
+    }
+
+    public String statistiques() {
+        synchronized (cumulTailles) {
+            cumulTailles.add(taillesLots.getIntervalHistogram());
+            return String.format("📦 Embeddings par lots : %d demandes en %d lots (taille moyenne %.1f, p50 %d, p99 %d, max %d), %d appels directs",
+                    demandes.sum(), lots.sum(), cumulTailles.getMean(), cumulTailles.getValueAtPercentile(50),
+                    cumulTailles.getValueAtPercentile(99), cumulTailles.getMaxValue(), directs.sum());
+        }
+    }
+
+    @Override
+    public void close() {
+        ferme = true;
+        repartiteur.interrupt();
+        inference.shutdown();
+        Demande restante;
+        while ((restante = file.poll()) != null) {
+            restante.resultat().completeExceptionally(arret());
+        }
+    }
+
+    private static IllegalStateException arret() {
+        return new IllegalStateException("❌ Le regroupement des embeddings est arrêté");
+    }
+
+    private record Demande(TextSegment segment, CompletableFuture<Embedding> resultat, long arrivee) {
+    }
+
+    public static class Builder {
+
+        private EmbeddingModel embeddingModel;
+        private int tailleLotMax = 32;
+        private Duration attenteMax = Duration.ofMillis(2);
+        private int threadsInference = 2;
+        private int capaciteFile = 1024;
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        /**
+         * Taille à laquelle un lot part sans attendre (32 par défaut) ; un appel d'au moins cette
+         * taille contourne la file.
+         */
+        public Builder tailleLotMax(int tailleLotMax) {
+            this.tailleLotMax = tailleLotMax;
+            return this;
+        }
+
+        /**
+         * Attente maximale d'une demande avant le départ de son lot (2 ms par défaut).
+         */
+        public Builder attenteMax(Duration attenteMax) {
+            this.attenteMax = attenteMax;
+            return this;
+        }
+
+        /**
+         * Lots embeddés en même temps (2 par défaut) ; le modèle ONNX répartit lui-même un lot sur ses threads.
+         */
+        public Builder threadsInference(int threadsInference) {
+            this.threadsInference = threadsInference;
+            return this;
+        }
+
+        public Builder capaciteFile(int capaciteFile) {
+            this.capaciteFile = capaciteFile;
+            return this;
+        }
+
+        public EmbeddingParLots build() {
+            if (embeddingModel == null) {
+                throw new IllegalStateException("❌ embeddingModel est obligatoire");
+            }
+            if (tailleLotMax < 2 || threadsInference < 1 || capaciteFile < tailleLotMax || attenteMax.isNegative()) {
+                throw new IllegalArgumentException("❌ Il faut tailleLotMax ≥ 2, threadsInference ≥ 1, capaciteFile ≥ tailleLotMax et une attente positive");
+            }
+            return new EmbeddingParLots(this);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package ma.emsi.khairat.embedding;
+
+import ai.djl.huggingface.tokenizers.Encoding;
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MiniLM (all-minilm-l6-v2) exécuté une seule fois par lot : les textes sont complétés à la même
+ * longueur et passent ensemble dans la session ONNX, au lieu d'une inférence par texte comme dans
+ * {@code AllMiniLmL6V2EmbeddingModel.embedAll}.
+ *
+ * <p>Le modèle et le tokenizer sont ceux du jar de langchain4j, et le calcul est le même (moyenne
+ * des états cachés sur les vrais jetons, puis normalisation) : les vecteurs sont interchangeables
+ * avec ceux des index existants. Un texte de plus de 510 jetons, que langchain4j découpe en
+ * morceaux, est confié au modèle de {@code repli}.</p>
+ */
+public class EncodeurMiniLmParLots implements EmbeddingModel {
+
+    private static final int LONGUEUR_MAX = 512;
+
+    private final EmbeddingModel repli;
+    private final OrtEnvironment environnement = OrtEnvironment.getEnvironment();
+    private final OrtSession session;
+    private final HuggingFaceTokenizer tokenizer;
+    private final boolean typesJetons;
+
+    public EncodeurMiniLmParLots(EmbeddingModel repli) {
+        this.repli = repli;
+        ClassLoader chargeur = Thread.currentThread().getContextClassLoader();
+        try (InputStream modele = chargeur.getResourceAsStream("all-minilm-l6-v2.onnx");
+             InputStream vocabulaire = chargeur.getResourceAsStream("all-minilm-l6-v2-tokenizer.json")) {
+            if (modele == null || vocabulaire == null) {
+                throw new IllegalStateException("❌ Modèle all-minilm-l6-v2 absent du classpath");
+            }
+            this.session = environnement.createSession(modele.readAllBytes(), new OrtSession.SessionOptions());
+            this.tokenizer = HuggingFaceTokenizer.newInstance(vocabulaire, Map.of("padding", "false"));
+            this.typesJetons = session.getInputNames().contains("token_type_ids");
+        } catch (IOException e) {
+            throw new UncheckedIOException("❌ Lecture du modèle all-minilm-l6-v2 impossible", e);
+        } catch (OrtException e) {
+            throw new IllegalStateException("❌ Session ONNX impossible à créer", e);
+        }
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        Embedding[] embeddings = new Embedding[textSegments.size()];
+        List<Integer> positions = new ArrayList<>(textSegments.size());
+        List<Encoding> encodages = new ArrayList<>(textSegments.size());
+        for (int i = 0; i < textSegments.size(); i++) {
+            Encoding encodage = tokenizer.encode(textSegments.get(i).text());
+            if (encodage.getIds().length > LONGUEUR_MAX) {
+                embeddings[i] = repli.embed(textSegments.get(i)).content();
+            } else {
+                positions.add(i);
+                encodages.add(encodage);
+            }
+        }
+        if (!encodages.isEmpty()) {
+            float[][] vecteurs = inferer(encodages);
+            for (int j = 0; j < vecteurs.length; j++) {
+                embeddings[positions.get(j)] = Embedding.from(vecteurs[j]);
+            }
+        }
+        return Response.from(List.of(embeddings));
+    }
+
+    private float[][] inferer(List<Encoding> encodages) {
+        int lot = encodages.size();
+        int longueur = 0;
+        for (Encoding encodage : encodages) {
+            longueur = Math.max(longueur, encodage.getIds().length);
+        }
+        // Complétion à droite par des zéros, masqués par attention_mask
+        long[] ids = new long[lot * longueur];
+        long[] masque = new long[lot * longueur];
+        long[] types = new long[lot * longueur];
+        for (int b = 0; b < lot; b++) {
+            Encoding encodage = encodages.get(b);
+            System.arraycopy(encodage.getIds(), 0, ids, b * longueur, encodage.getIds().length);
+            System.arraycopy(encodage.getAttentionMask(), 0, masque, b * longueur, encodage.getAttentionMask().length);
+            System.arraycopy(encodage.getTypeIds(), 0, types, b * longueur, encodage.getTypeIds().length);
+        }
+        long[] forme = {lot, longueur};
+        try (OnnxTensor tenseurIds = OnnxTensor.createTensor(environnement, LongBuffer.wrap(ids), forme);
+             OnnxTensor tenseurMasque = OnnxTensor.createTensor(environnement, LongBuffer.wrap(masque), forme);
+             OnnxTensor tenseurTypes = OnnxTensor.createTensor(environnement, LongBuffer.wrap(types), forme)) {
+            Map<String, OnnxTensor> entrees = new HashMap<>();
+            entrees.put("input_ids", tenseurIds);
+            entrees.put("attention_mask", tenseurMasque);
+            if (typesJetons) {
+                entrees.put("token_type_ids", tenseurTypes);
+            }
+            try (OrtSession.Result resultat = session.run(entrees)) {
+                float[][][] etats = (float[][][]) resultat.get(0).getValue();
+                float[][] vecteurs = new float[lot][];
+                for (int b = 0; b < lot; b++) {
+                    vecteurs[b] = moyenneNormalisee(etats[b], masque, b * longueur);
+                }
+                return vecteurs;
+            }
+        } catch (OrtException e) {
+            throw new IllegalStateException("❌ Inférence ONNX en échec", e);
+        }
+    }
+
+    private static float[] moyenneNormalisee(float[][] etats, long[] masque, int debut) {
+        float[] moyenne = new float[etats[0].length];
+        int jetons = 0;
+        for (int t = 0; t < etats.length; t++) {
+            if (masque[debut + t] == 0) continue;
+            jetons++;
+            for (int d = 0; d < moyenne.length; d++) {
+                moyenne[d] += etats[t][d];
+            }
+        }
+        double norme = 0;
+        for (int d = 0; d < moyenne.length; d++) {
+            moyenne[d] /= jetons;
+            norme += moyenne[d] * moyenne[d];
+        }
+        float inverse = (float) (1 / Math.sqrt(norme));
+        for (int d = 0; d < moyenne.length; d++) {
+            moyenne[d] *= inverse;
+        }
+        return moyenne;
+    }
+
+    @Override
+    public int dimension() {
+        return 384;
+    }
+}
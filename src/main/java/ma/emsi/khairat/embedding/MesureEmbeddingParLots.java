@@ -0,0 +1,77 @@
+package ma.emsi.khairat.embedding;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+import ma.emsi.khairat.store.Similarite;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Débit et latence des embeddings de questions sous charge concurrente : MiniLM appelé directement
+ * par chaque thread virtuel, puis à travers {@link EmbeddingParLots} avec une inférence par texte
+ * ({@code AllMiniLmL6V2EmbeddingModel}) ou une inférence par lot ({@link EncodeurMiniLmParLots}).
+ *
+ * <p>Arguments : nombre de threads virtuels (64), questions par thread (20). Toutes les questions
+ * sont différentes, comme sans cache d'embeddings. En appel direct, l'inférence native ne libère pas
+ * le thread porteur : la latence mesurée n'inclut pas l'attente d'un porteur, d'où la latence
+ * effective de la boucle fermée ({@code threads / débit}) affichée à côté.</p>
+ */
+public class MesureEmbeddingParLots {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int parThread = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        EmbeddingModel modele = new AllMiniLmL6V2EmbeddingModel();
+        modele.embed("chauffe");
+
+        System.out.println("=== Embeddings concurrents : " + threads + " threads virtuels × " + parThread + " questions ===");
+        EncodeurMiniLmParLots encodeur = new EncodeurMiniLmParLots(modele);
+        float[] attendu = modele.embed("Qu'est-ce que le RAG ?").content().vector();
+        float[] obtenu = encodeur.embedAll(List.of(TextSegment.from("Qu'est-ce que le RAG ?"), TextSegment.from("Bonjour")))
+                .content().get(0).vector();
+        System.out.printf("Cosinus encodeur par lots / AllMiniLmL6V2 : %.6f%n",
+                Similarite.cosinus(Similarite.produitScalaire(attendu, 0, obtenu, 0, attendu.length),
+                        Similarite.norme(attendu), Similarite.norme(obtenu)));
+
+        mesurer("direct", modele, threads, parThread);
+        for (EmbeddingModel delegue : List.of(modele, encodeur)) {
+            RegistreMetriques.global().reinitialiser();
+            try (EmbeddingParLots parLots = EmbeddingParLots.builder().embeddingModel(delegue).build()) {
+                mesurer(delegue == modele ? "lots/texte" : "lots/ONNX", parLots, threads, parThread);
+                System.out.println(parLots.statistiques());
+                System.out.println(RegistreMetriques.global().resume("embedding.attente"));
+                System.out.println(RegistreMetriques.global().resume("embedding.lot"));
+            }
+        }
+    }
+
+    private static void mesurer(String libelle, EmbeddingModel modele, int threads, int parThread) throws Exception {
+        long[] latences = new long[threads * parThread];
+        AtomicInteger suivante = new AtomicInteger();
+        long debut = System.nanoTime();
+        try (ExecutorService executeur = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                executeur.submit(() -> {
+                    for (int q = 0; q < parThread; q++) {
+                        long t0 = System.nanoTime();
+                        modele.embed("Question " + thread + "-" + q + " : à quoi sert le RAG pour " + libelle + " ?");
+                        latences[suivante.getAndIncrement()] = System.nanoTime() - t0;
+                    }
+                });
+            }
+        }
+        double secondes = (System.nanoTime() - debut) / 1e9;
+        Arrays.sort(latences);
+        double debit = latences.length / secondes;
+        System.out.printf("%-10s %8.1f embeddings/s   p50 %7.1f ms   p99 %7.1f ms   effective %7.1f ms%n", libelle, debit,
+                latences[latences.length / 2] / 1e6, latences[Math.min(latences.length - 1, latences.length * 99 / 100)] / 1e6,
+                1000 * threads / debit);
+    }
+}
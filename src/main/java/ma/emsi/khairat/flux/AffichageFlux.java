@@ -0,0 +1,64 @@
+package ma.emsi.khairat.flux;
+
+import dev.langchain4j.service.TokenStream;
+
+import java.io.PrintStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Affiche une réponse streamée au fil de l'eau et mesure, pour un tour de conversation,
+ * le temps jusqu'au premier jeton et le temps total.
+ */
+public final class AffichageFlux {
+
+    private AffichageFlux() {
+    }
+
+    /**
+     * Mesures d'un tour, à partir de l'appel à l'assistant (récupération RAG comprise).
+     */
+    public record Mesure(long premierJetonNanos, long totalNanos, String reponse) {
+
+        @Override
+        public String toString() {
+            return String.format("⏱️ Premier jeton : %d ms, total : %d ms",
+                    premierJetonNanos / 1_000_000, totalNanos / 1_000_000);
+        }
+    }
+
+    public static Mesure afficher(Supplier<TokenStream> appel) {
+        return afficher(appel, System.out);
+    }
+
+    /**
+     * Démarre le flux, écrit chaque fragment dès son arrivée et attend la fin de la réponse.
+     */
+    public static Mesure afficher(Supplier<TokenStream> appel, PrintStream sortie) {
+        long debut = System.nanoTime();
+        AtomicLong premierJeton = new AtomicLong();
+        CompletableFuture<String> fin = new CompletableFuture<>();
+
+        appel.get()
+                .onPartialResponse(fragment -> {
+                    premierJeton.compareAndSet(0, System.nanoTime());
+                    sortie.print(fragment);
+                    sortie.flush();
+                })
+                .onCompleteResponse(reponse -> fin.complete(reponse.aiMessage().text()))
+                .onError(fin::completeExceptionally)
+                .start();
+
+        String reponse;
+        try {
+            reponse = fin.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+        long total = System.nanoTime() - debut;
+        long premier = premierJeton.get() == 0 ? total : premierJeton.get() - debut;
+        return new Mesure(premier, total, reponse);
+    }
+}
@@ -0,0 +1,45 @@
+package ma.emsi.khairat.index;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Clé d'un index sur disque : SHA-256 du contenu du PDF, des réglages du découpage
+ * et du nom du modèle d'embeddings. Si l'un des trois change, l'index est reconstruit.
+ */
+public final class CleIndex {
+
+    private CleIndex() {
+    }
+
+    public static String calculer(Path document, int tailleSegment, int chevauchement, String modele) {
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(document)) {
+            byte[] tampon = new byte[64 * 1024];
+            int lus;
+            while ((lus = in.read(tampon)) != -1) {
+                digest.update(tampon, 0, lus);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lecture impossible de " + document, e);
+        }
+        String reglages = "pages:" + tailleSegment + ":" + chevauchement + ":" + modele;
+        digest.update(reglages.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ma.emsi.khairat.index;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Outils communs aux mesures de l'index : vecteurs gaussiens groupés autour de centres et centiles
+ * de latence.
+ */
+final class CorpusSynthetique {
+
+    private CorpusSynthetique() {
+    }
+
+    static float[] gaussien(Random aleatoire, int dimension, float ecart) {
+        float[] vecteur = new float[dimension];
+        for (int d = 0; d < dimension; d++) {
+            vecteur[d] = (float) aleatoire.nextGaussian() * ecart;
+        }
+        return vecteur;
+    }
+
+    /**
+     * Un point tiré autour du centre (écart-type 0.5 sur chaque dimension).
+     */
+    static float[] bruiter(Random aleatoire, float[] centre) {
+        float[] vecteur = gaussien(aleatoire, centre.length, 0.5f);
+        for (int d = 0; d < centre.length; d++) {
+            vecteur[d] += centre[d];
+        }
+        return vecteur;
+    }
+
+    /**
+     * Centile de latences mesurées en nanosecondes, en millisecondes.
+     */
+    static double centile(long[] latences, int centile) {
+        long[] triees = latences.clone();
+        Arrays.sort(triees);
+        return triees[Math.min(triees.length - 1, triees.length * centile / 100)] / 1e6;
+    }
+}
@@ -0,0 +1,211 @@
+package ma.emsi.khairat.index;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import ma.emsi.khairat.store.Similarite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Format binaire de l'index (little-endian, lu par mmap) :
+ * <pre>
+ * en-tête   : magic, version, clé SHA-256 (32 octets), dimension, nombre, position du bloc texte
+ * vecteurs  : float[nombre * dimension]
+ * normes    : float[nombre]
+ * positions : long[nombre + 1] dans le bloc texte
+ * bloc      : pour chaque segment -> id, texte, métadonnées
+ * </pre>
+ */
+final class FormatIndex {
+
+    static final int MAGIC = 0x52414749; // "RAGI"
+    static final int VERSION = 1;
+    static final int TAILLE_CLE = 32;
+    static final int TAILLE_ENTETE = 4 + 4 + TAILLE_CLE + 4 + 4 + 8;
+    static final ByteOrder ORDRE = ByteOrder.LITTLE_ENDIAN;
+
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_FLOAT = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_UUID = 6;
+
+    private FormatIndex() {
+    }
+
+    static void ecrire(Path fichier, String cle, List<String> ids,
+                       List<Embedding> embeddings, List<TextSegment> segments) throws IOException {
+        int nombre = embeddings.size();
+        int dimension = nombre == 0 ? 0 : embeddings.get(0).dimension();
+
+        // Le bloc texte est construit d'abord pour connaître les positions de chaque segment
+        ByteArrayOutputStream bloc = new ByteArrayOutputStream();
+        long[] positions = new long[nombre + 1];
+        for (int i = 0; i < nombre; i++) {
+            positions[i] = bloc.size();
+            ecrireSegment(bloc, ids.get(i), segments.get(i));
+        }
+        positions[nombre] = bloc.size();
+
+        long positionBloc = TAILLE_ENTETE + 4L * nombre * dimension + 4L * nombre + 8L * (nombre + 1);
+
+        Path temporaire = fichier.resolveSibling(fichier.getFileName() + ".tmp");
+        Files.createDirectories(fichier.toAbsolutePath().getParent());
+        try (FileChannel canal = FileChannel.open(temporaire, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            ByteBuffer entete = ByteBuffer.allocate(TAILLE_ENTETE).order(ORDRE);
+            entete.putInt(MAGIC).putInt(VERSION).put(HexFormat.of().parseHex(cle))
+                    .putInt(dimension).putInt(nombre).putLong(positionBloc);
+            ecrireTout(canal, entete.flip());
+
+            ByteBuffer vecteurs = ByteBuffer.allocate(4 * dimension).order(ORDRE);
+            for (Embedding embedding : embeddings) {
+                vecteurs.clear();
+                vecteurs.asFloatBuffer().put(embedding.vector());
+                ecrireTout(canal, vecteurs);
+            }
+
+            ByteBuffer normes = ByteBuffer.allocate(4 * nombre).order(ORDRE);
+            for (Embedding embedding : embeddings) {
+                normes.putFloat(Similarite.norme(embedding.vector()));
+            }
+            ecrireTout(canal, normes.flip());
+
+            ByteBuffer tablePositions = ByteBuffer.allocate(8 * (nombre + 1)).order(ORDRE);
+            for (long position : positions) {
+                tablePositions.putLong(position);
+            }
+            ecrireTout(canal, tablePositions.flip());
+
+            ecrireTout(canal, ByteBuffer.wrap(bloc.toByteArray()));
+            canal.force(true);
+        }
+        // Remplacement atomique : un lecteur ne voit jamais un index à moitié écrit
+        Files.move(temporaire, fichier, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static String lireId(ByteBuffer tampon, int position) {
+        return lireChaine(tampon, position);
+    }
+
+    static TextSegment lireSegment(ByteBuffer tampon, int position) {
+        int curseur = position;
+        curseur += 4 + tampon.getInt(curseur); // id
+        String texte = lireChaine(tampon, curseur);
+        curseur += 4 + tampon.getInt(curseur);
+
+        int nombreEntrees = tampon.getInt(curseur);
+        curseur += 4;
+        Map<String, Object> valeurs = new HashMap<>();
+        for (int i = 0; i < nombreEntrees; i++) {
+            String cle = lireChaine(tampon, curseur);
+            curseur += 4 + tampon.getInt(curseur);
+            byte type = tampon.get(curseur++);
+            switch (type) {
+                case TYPE_STRING -> {
+                    valeurs.put(cle, lireChaine(tampon, curseur));
+                    curseur += 4 + tampon.getInt(curseur);
+                }
+                case TYPE_INTEGER -> {
+                    valeurs.put(cle, tampon.getInt(curseur));
+                    curseur += 4;
+                }
+                case TYPE_LONG -> {
+                    valeurs.put(cle, tampon.getLong(curseur));
+                    curseur += 8;
+                }
+                case TYPE_FLOAT -> {
+                    valeurs.put(cle, tampon.getFloat(curseur));
+                    curseur += 4;
+                }
+                case TYPE_DOUBLE -> {
+                    valeurs.put(cle, tampon.getDouble(curseur));
+                    curseur += 8;
+                }
+                case TYPE_UUID -> {
+                    valeurs.put(cle, new UUID(tampon.getLong(curseur), tampon.getLong(curseur + 8)));
+                    curseur += 16;
+                }
+                default -> throw new IllegalStateException("Type de métadonnée inconnu : " + type);
+            }
+        }
+        return TextSegment.from(texte, Metadata.from(valeurs));
+    }
+
+    private static void ecrireSegment(ByteArrayOutputStream out, String id, TextSegment segment) {
+        ecrireChaine(out, id);
+        ecrireChaine(out, segment.text());
+        Map<String, Object> valeurs = segment.metadata().toMap();
+        ecrireInt(out, valeurs.size());
+        for (Map.Entry<String, Object> entree : valeurs.entrySet()) {
+            ecrireChaine(out, entree.getKey());
+            Object valeur = entree.getValue();
+            if (valeur instanceof String s) {
+                out.write(TYPE_STRING);
+                ecrireChaine(out, s);
+            } else if (valeur instanceof Integer n) {
+                out.write(TYPE_INTEGER);
+                ecrireInt(out, n);
+            } else if (valeur instanceof Long n) {
+                out.write(TYPE_LONG);
+                ecrireLong(out, n);
+            } else if (valeur instanceof Float n) {
+                out.write(TYPE_FLOAT);
+                ecrireInt(out, Float.floatToRawIntBits(n));
+            } else if (valeur instanceof Double n) {
+                out.write(TYPE_DOUBLE);
+                ecrireLong(out, Double.doubleToRawLongBits(n));
+            } else if (valeur instanceof UUID uuid) {
+                out.write(TYPE_UUID);
+                ecrireLong(out, uuid.getMostSignificantBits());
+                ecrireLong(out, uuid.getLeastSignificantBits());
+            } else {
+                throw new IllegalArgumentException("Type de métadonnée non supporté : " + valeur.getClass());
+            }
+        }
+    }
+
+    private static String lireChaine(ByteBuffer tampon, int position) {
+        int longueur = tampon.getInt(position);
+        byte[] octets = new byte[longueur];
+        tampon.get(position + 4, octets);
+        return new String(octets, StandardCharsets.UTF_8);
+    }
+
+    private static void ecrireChaine(ByteArrayOutputStream out, String valeur) {
+        byte[] octets = valeur.getBytes(StandardCharsets.UTF_8);
+        ecrireInt(out, octets.length);
+        out.writeBytes(octets);
+    }
+
+    private static void ecrireInt(ByteArrayOutputStream out, int valeur) {
+        out.writeBytes(ByteBuffer.allocate(4).order(ORDRE).putInt(valeur).array());
+    }
+
+    private static void ecrireLong(ByteArrayOutputStream out, long valeur) {
+        out.writeBytes(ByteBuffer.allocate(8).order(ORDRE).putLong(valeur).array());
+    }
+
+    private static void ecrireTout(FileChannel canal, ByteBuffer tampon) throws IOException {
+        while (tampon.hasRemaining()) {
+            canal.write(tampon);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package ma.emsi.khairat.index;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.khairat.ingestion.DecoupeurPages;
+import ma.emsi.khairat.ingestion.IngestionIncrementale;
+import ma.emsi.khairat.ingestion.PipelineIngestion;
+import ma.emsi.khairat.ingestion.RapportIngestion;
+import ma.emsi.khairat.store.MagasinParcourable;
+import ma.emsi.khairat.store.MagasinPartitionne;
+import ma.emsi.khairat.store.MagasinVectoriel;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Point d'entrée de l'index persistant : au démarrage à chaud, le fichier correspondant
+ * à la clé du PDF est simplement projeté en mémoire ; sinon le PDF passe dans le
+ * {@link PipelineIngestion} vers un {@link MagasinVectoriel}, puis l'index est écrit
+ * sur disque pour les lancements suivants.
+ *
+ * <p>Le répertoire des index se règle avec la propriété système {@code rag.index.dir}
+ * (par défaut {@code .index}). Avec {@code -Drag.index.hnsw=true}, la recherche passe par un
+ * {@link IndexHnsw} dont le graphe est enregistré à côté du fichier d'index. Avec
+ * {@code -Drag.index.quantification=int8|binaire}, les vecteurs sont gardés compressés en mémoire
+ * et seuls les meilleurs candidats sont re-notés avec les floats du fichier ({@link MagasinQuantifie}).</p>
+ *
+ * <p>Quand le PDF a changé mais qu'un index de sa version précédente existe, seuls les segments
+ * dont le texte est nouveau sont ré-embeddés ({@link IngestionIncrementale}). Avec
+ * {@code -Drag.index.surveiller=true}, le répertoire du document est surveillé et l'index est
+ * mis à jour puis remplacé à chaud ({@link MagasinCommutable}) sans interrompre les requêtes.</p>
+ */
+public final class IndexEmbeddings {
+
+    private static final String EXTENSION = ".idx";
+    private static final boolean HNSW = Boolean.getBoolean("rag.index.hnsw");
+    private static final String QUANTIFICATION = System.getProperty("rag.index.quantification");
+    private static final boolean SURVEILLER = Boolean.getBoolean("rag.index.surveiller");
+
+    private static SurveillantDocuments surveillant;
+
+    private IndexEmbeddings() {
+    }
+
+    public static EmbeddingStore<TextSegment> chargerOuConstruire(Path document, int tailleSegment,
+                                                                  int chevauchement, EmbeddingModel embeddingModel) {
+        EmbeddingStore<TextSegment> magasin = charger(document, tailleSegment, chevauchement, embeddingModel, null);
+        if (!SURVEILLER) {
+            return magasin;
+        }
+        // Les requêtes continuent sur l'ancien index pendant que le nouveau est préparé à côté
+        MagasinCommutable commutable = new MagasinCommutable(magasin);
+        surveillant().surveiller(document, () -> {
+            if (charger(document, tailleSegment, chevauchement, embeddingModel, commutable) != null) {
+                System.out.printf("🔄 Index de %s remplacé à chaud (%d segments)%n", document.getFileName(), commutable.taille());
+            }
+        });
+        return commutable;
+    }
+
+    /**
+     * Un seul magasin pour plusieurs documents, une partition par document ({@code file_name}) :
+     * chaque index est chargé ou construit comme d'habitude, puis copié dans sa partition.
+     */
+    public static MagasinPartitionne chargerPartitionne(int tailleSegment, int chevauchement,
+                                                        EmbeddingModel embeddingModel, Path... documents) {
+        MagasinPartitionne magasin = new MagasinPartitionne();
+        for (Path document : documents) {
+            magasin.importer((MagasinParcourable) charger(document, tailleSegment, chevauchement, embeddingModel, null));
+        }
+        System.out.println(magasin.statistiques());
+        return magasin;
+    }
+
+    /**
+     * Charge ou construit l'index du document. {@code courant} est l'index déjà en service quand la
+     * surveillance signale une modification : il sert de base à la mise à jour incrémentale, reçoit
+     * le nouvel index avant que les anciens fichiers ne soient supprimés, et {@code null} est renvoyé
+     * si le contenu n'a en fait pas changé.
+     */
+    private static EmbeddingStore<TextSegment> charger(Path document, int tailleSegment, int chevauchement,
+                                                       EmbeddingModel embeddingModel, MagasinCommutable courant) {
+        Path repertoire = Paths.get(System.getProperty("rag.index.dir", ".index"));
+        String cle = CleIndex.calculer(document, tailleSegment, chevauchement, embeddingModel.getClass().getName());
+        String prefixe = document.getFileName().toString() + "-";
+        Path fichier = repertoire.resolve(prefixe + cle.substring(0, 16) + EXTENSION);
+
+        long debut = System.nanoTime();
+        try {
+            MagasinMappe existant = ouvrirExistant(fichier);
+            if (existant != null && existant.cle().equals(cle)) {
+                if (courant != null) {
+                    return null;
+                }
+                System.out.printf("⚡ Index chargé depuis %s (%d segments, %d ms)%n",
+                        fichier, existant.taille(), (System.nanoTime() - debut) / 1_000_000);
+                return servir(existant);
+            }
+
+            // Parsing et découpage en flux, page par page : le texte complet du PDF n'est jamais en mémoire
+            DecoupeurPages decoupeur = DecoupeurPages.builder()
+                    .tailleSegment(tailleSegment)
+                    .chevauchement(chevauchement)
+                    .build();
+            // Un index d'une version précédente du document permet de ne ré-embedder que les segments modifiés
+            MagasinParcourable precedent = courant != null ? courant : dernierIndex(repertoire, prefixe, fichier);
+            EmbeddingStore<TextSegment> magasin;
+            if (precedent != null) {
+                IngestionIncrementale.MiseAJour miseAJour = IngestionIncrementale.builder()
+                        .decoupeurPages(decoupeur)
+                        .embeddingModel(embeddingModel)
+                        .build()
+                        .mettreAJour(document, precedent);
+                System.out.println(miseAJour);
+                magasin = miseAJour.magasin();
+            } else {
+                // Avec HNSW, le pipeline écrit directement dans le graphe : il se construit pendant l'ingestion
+                magasin = HNSW ? parametresHnsw().build() : new MagasinVectoriel();
+                RapportIngestion rapport = PipelineIngestion.builder()
+                        .decoupeurPages(decoupeur)
+                        .embeddingModel(embeddingModel)
+                        .build()
+                        .ingerer(List.of(document), magasin);
+                if (!rapport.echecs().isEmpty()) {
+                    throw new IllegalStateException("❌ " + rapport.echecs().get(0));
+                }
+                System.out.println(rapport);
+            }
+
+            List<String> ids = new ArrayList<>();
+            List<Embedding> embeddings = new ArrayList<>();
+            List<TextSegment> segments = new ArrayList<>();
+            MagasinParcourable contenu = (MagasinParcourable) magasin;
+            // Positions du fichier = ordre du parcours : le graphe HNSW construit à l'ingestion reste valable
+            contenu.pourChaque((id, embedding, segment) -> {
+                ids.add(id);
+                embeddings.add(embedding);
+                segments.add(segment);
+            });
+            FormatIndex.ecrire(fichier, cle, ids, embeddings, segments);
+            System.out.printf("🛠️ Index construit dans %s (%d segments, %d ms)%n",
+                    fichier, contenu.taille(), (System.nanoTime() - debut) / 1_000_000);
+            // Le magasin en mémoire sert directement ce lancement ; les suivants liront le fichier
+            EmbeddingStore<TextSegment> servi;
+            if (magasin instanceof IndexHnsw index) {
+                index.sauvegarder(MagasinMappe.ouvrir(fichier));
+                System.out.printf("🕸️ Graphe HNSW construit pendant l'ingestion (%d nœuds)%n", index.taille());
+                servi = index;
+            } else {
+                servi = HNSW || QUANTIFICATION != null ? servir(MagasinMappe.ouvrir(fichier)) : magasin;
+            }
+            if (courant != null) {
+                // L'ancien index projeté sert les requêtes jusqu'ici : ses fichiers ne sont supprimés qu'après la commutation
+                courant.commuter(servi);
+            }
+            supprimerAnciensIndex(repertoire, prefixe, fichier);
+            return servi;
+        } catch (IOException e) {
+            throw new UncheckedIOException("❌ Impossible de construire l'index de " + document, e);
+        }
+    }
+
+    /**
+     * L'index déjà écrit pour cette clé, ou {@code null} s'il est absent ou illisible (fichier tronqué,
+     * corrompu ou d'une version précédente du format) : il est alors reconstruit par-dessus.
+     */
+    private static MagasinMappe ouvrirExistant(Path fichier) {
+        if (!Files.exists(fichier)) {
+            return null;
+        }
+        try {
+            return MagasinMappe.ouvrir(fichier);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("⚠️ Index illisible, reconstruction : " + fichier.getFileName() + " (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    private static MagasinMappe dernierIndex(Path repertoire, String prefixe, Path courant) throws IOException {
+        if (!Files.isDirectory(repertoire)) {
+            return null;
+        }
+        Path dernier = null;
+        try (DirectoryStream<Path> anciens = Files.newDirectoryStream(repertoire, prefixe + "*" + EXTENSION)) {
+            for (Path ancien : anciens) {
+                if (!ancien.equals(courant) && (dernier == null
+                        || Files.getLastModifiedTime(ancien).compareTo(Files.getLastModifiedTime(dernier)) > 0)) {
+                    dernier = ancien;
+                }
+            }
+        }
+        if (dernier == null) {
+            return null;
+        }
+        try {
+            return MagasinMappe.ouvrir(dernier);
+        } catch (IOException | RuntimeException e) {
+            // Ancien index illisible : reconstruction complète
+            return null;
+        }
+    }
+
+    private static synchronized SurveillantDocuments surveillant() {
+        if (surveillant == null) {
+            surveillant = new SurveillantDocuments(Duration.ofMillis(500));
+        }
+        return surveillant;
+    }
+
+    private static EmbeddingStore<TextSegment> servir(MagasinMappe magasin) throws IOException {
+        if (HNSW) {
+            return hnsw(magasin);
+        }
+        if (QUANTIFICATION == null) {
+            return magasin;
+        }
+        MagasinQuantifie.Mode mode = MagasinQuantifie.Mode.parNom(QUANTIFICATION);
+        MagasinQuantifie quantifie = MagasinQuantifie.quantifier(magasin, mode,
+                Integer.getInteger("rag.index.surEchantillonnage", mode == MagasinQuantifie.Mode.INT8 ? 4 : 10));
+        System.out.printf("🗜️ Vecteurs quantifiés en %s (%d octets par vecteur au lieu de %d)%n",
+                mode, quantifie.octetsParVecteur(), 4 * magasin.dimension());
+        return quantifie;
+    }
+
+    private static IndexHnsw.Builder parametresHnsw() {
+        return IndexHnsw.builder()
+                .m(Integer.getInteger("rag.hnsw.m", 16))
+                .efConstruction(Integer.getInteger("rag.hnsw.efConstruction", 200))
+                .efSearch(Integer.getInteger("rag.hnsw.efSearch", 64));
+    }
+
+    private static IndexHnsw hnsw(MagasinMappe magasin) throws IOException {
+        long debut = System.nanoTime();
+        IndexHnsw.Builder parametres = parametresHnsw();
+        IndexHnsw index = IndexHnsw.charger(magasin, parametres);
+        if (index == null) {
+            index = IndexHnsw.construire(magasin, parametres);
+            index.sauvegarder(magasin);
+            System.out.printf("🕸️ Graphe HNSW construit (%d nœuds, %d ms)%n",
+                    index.taille(), (System.nanoTime() - debut) / 1_000_000);
+        }
+        return index;
+    }
+
+    /**
+     * Supprime les anciennes versions de l'index et leurs graphes HNSW. Une projection n'est libérée
+     * qu'au passage du GC : sous Windows, le fichier d'un ancien index encore projeté ne peut pas être
+     * supprimé. Ce n'est pas une erreur, il le sera à la prochaine reconstruction.
+     */
+    private static void supprimerAnciensIndex(Path repertoire, String prefixe, Path courant) {
+        try (DirectoryStream<Path> anciens = Files.newDirectoryStream(repertoire, prefixe + "*")) {
+            for (Path ancien : anciens) {
+                if (ancien.getFileName().toString().startsWith(courant.getFileName().toString())) continue;
+                try {
+                    Files.deleteIfExists(ancien);
+                } catch (IOException e) {
+                    System.out.println("⚠️ Ancien index " + ancien.getFileName() + " conservé pour l'instant : " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("⚠️ Anciens index de " + repertoire + " non nettoyés : " + e.getMessage());
+        }
+    }
+}
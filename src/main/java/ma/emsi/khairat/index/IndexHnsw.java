@@ -0,0 +1,743 @@
+package ma.emsi.khairat.index;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+import ma.emsi.khairat.store.MagasinParcourable;
+import ma.emsi.khairat.store.Similarite;
+import ma.emsi.khairat.store.TopK;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+/**
+ * Index HNSW (Hierarchical Navigable Small World) derrière l'interface {@link EmbeddingStore}.
+ *
+ * <p>Les insertions peuvent être concurrentes (un lot {@code addAll} est inséré en parallèle) : chaque liste de voisins est un {@code int[]} immuable,
+ * remplacé sous le verrou de son nœud. Les recherches ne prennent aucun verrou, elles lisent
+ * les listes publiées. Les vecteurs sont stockés normalisés, le produit scalaire est donc le cosinus,
+ * et les scores retournés restent {@link RelevanceScore#fromCosineSimilarity(double)} comme dans
+ * {@code InMemoryEmbeddingStore}.</p>
+ *
+ * <p>En dessous de {@code seuilRechercheExacte} éléments, ou avec un filtre, la recherche est exacte.
+ * Les suppressions sont des marques : les nœuds restent traversables mais ne sont plus retournés.</p>
+ */
+public class IndexHnsw implements EmbeddingStore<TextSegment>, MagasinParcourable {
+
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+    private static final int VERSION = 1;
+    private static final String EXTENSION_GRAPHE = ".hnsw";
+    private static final int TAILLE_PAGE = 1024;
+    private static final int[] AUCUN_VOISIN = new int[0];
+
+    private final int m;
+    private final int mMax0;
+    private final int efConstruction;
+    private final int seuilRechercheExacte;
+    private final double mL;
+    private volatile int efSearch;
+
+    private final Object verrouCroissance = new Object();
+    private final Object verrouEntree = new Object();
+    private final AtomicInteger compteur = new AtomicInteger();
+    private final AtomicLong version = new AtomicLong();
+    private final ConcurrentHashMap<String, Integer> positions = new ConcurrentHashMap<>();
+    private final ThreadLocal<Visites> visites = ThreadLocal.withInitial(Visites::new);
+    private volatile Page[] pages = new Page[0];
+    private volatile int dimension = -1;
+    private volatile PointEntree entree;
+
+    private IndexHnsw(Builder builder) {
+        this.m = builder.m;
+        this.mMax0 = 2 * builder.m;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+        this.seuilRechercheExacte = builder.seuilRechercheExacte;
+        this.mL = 1 / Math.log(builder.m);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public void efSearch(int efSearch) {
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * Éléments vivants, comme ceux que visite {@link #pourChaque} : les nœuds supprimés restent dans
+     * le graphe mais ne comptent plus.
+     */
+    @Override
+    public int taille() {
+        return positions.size();
+    }
+
+    @Override
+    public long version() {
+        return version.get();
+    }
+
+    @Override
+    public void pourChaque(Visiteur visiteur) {
+        Page[] instantane = pages;
+        int taille = publies(instantane);
+        for (int position = 0; position < taille; position++) {
+            Noeud noeud = instantane[position / TAILLE_PAGE].noeuds.get(position % TAILLE_PAGE);
+            if (noeud == null || noeud.supprime) continue;
+            EmbeddingMatch<TextSegment> contenu = correspondance(position, 0);
+            visiteur.visiter(contenu.embeddingId(), contenu.embedding(), contenu.embedded());
+        }
+    }
+
+    // ------------------------------------------------------------------ insertion
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        inserer(id, embedding.vector(), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        inserer(id, embedding.vector(), textSegment);
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = generateIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    /**
+     * Les éléments du lot sont insérés en parallèle : c'est ainsi que le pipeline d'ingestion
+     * construit le graphe pendant que les lots suivants sont encore vectorisés.
+     */
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        IntStream.range(0, embeddings.size()).parallel().forEach(i ->
+                inserer(ids.get(i), embeddings.get(i).vector(), textSegments == null ? null : textSegments.get(i)));
+    }
+
+    private void inserer(String id, float[] vecteur, TextSegment segment) {
+        Integer ancien = positions.get(id);
+        if (ancien != null) {
+            noeud(ancien).supprime = true;
+        }
+        int position = compteur.getAndIncrement();
+        ecrire(position, id, vecteur, segment);
+        relier(position);
+        version.incrementAndGet();
+    }
+
+    /**
+     * Écrit les données d'un nœud et le publie ; il n'est relié au graphe qu'ensuite.
+     */
+    private void ecrire(int position, String id, float[] vecteur, TextSegment segment) {
+        Page page = page(position, vecteur.length);
+        int local = position % TAILLE_PAGE;
+        float norme = Similarite.norme(vecteur);
+        int base = local * dimension;
+        for (int d = 0; d < dimension; d++) {
+            page.vecteurs[base + d] = norme == 0 ? 0 : vecteur[d] / norme;
+        }
+        page.normes[local] = norme;
+        page.ids[local] = id;
+        page.segments[local] = segment;
+        page.noeuds.set(local, new Noeud(tirerNiveau()));
+        positions.put(id, position);
+    }
+
+    private void relier(int position) {
+        Noeud noeud = noeud(position);
+        PointEntree point = entree;
+        if (point == null) {
+            synchronized (verrouEntree) {
+                if (entree == null) {
+                    entree = new PointEntree(position, noeud.niveau);
+                    return;
+                }
+                point = entree;
+            }
+        }
+
+        Page page = pages[position / TAILLE_PAGE];
+        float[] requete = page.vecteurs;
+        int debut = (position % TAILLE_PAGE) * dimension;
+
+        int courant = point.noeud();
+        for (int niveau = point.niveau(); niveau > noeud.niveau; niveau--) {
+            courant = descenteGloutonne(requete, debut, courant, niveau);
+        }
+        for (int niveau = Math.min(noeud.niveau, point.niveau()); niveau >= 0; niveau--) {
+            TopK candidats = rechercherCouche(requete, debut, courant, efConstruction, niveau);
+            candidats.trierDecroissant();
+            courant = candidats.indice(0);
+
+            int[] choisis = selectionner(candidats, niveau == 0 ? mMax0 : m, position);
+            synchronized (noeud) {
+                noeud.voisins.set(niveau, choisis);
+            }
+            for (int voisin : choisis) {
+                ajouterLien(voisin, position, niveau);
+            }
+        }
+
+        if (noeud.niveau > point.niveau()) {
+            synchronized (verrouEntree) {
+                if (noeud.niveau > entree.niveau()) {
+                    entree = new PointEntree(position, noeud.niveau);
+                }
+            }
+        }
+    }
+
+    private void ajouterLien(int depuis, int vers, int niveau) {
+        Noeud noeud = noeud(depuis);
+        int max = niveau == 0 ? mMax0 : m;
+        synchronized (noeud) {
+            int[] actuels = noeud.voisins.get(niveau);
+            int[] etendus = Arrays.copyOf(actuels, actuels.length + 1);
+            etendus[actuels.length] = vers;
+            if (etendus.length <= max) {
+                noeud.voisins.set(niveau, etendus);
+                return;
+            }
+            // Liste pleine : on ré-élague avec la même heuristique qu'à l'insertion
+            TopK candidats = new TopK(etendus.length);
+            Page page = pages[depuis / TAILLE_PAGE];
+            int debut = (depuis % TAILLE_PAGE) * dimension;
+            for (int voisin : etendus) {
+                candidats.proposer(voisin, similarite(page.vecteurs, debut, voisin));
+            }
+            candidats.trierDecroissant();
+            noeud.voisins.set(niveau, selectionner(candidats, max, depuis));
+        }
+    }
+
+    /**
+     * Heuristique de sélection de HNSW : un candidat n'est gardé que s'il est plus proche du nœud
+     * que de tous les voisins déjà retenus, ce qui répartit les liens dans toutes les directions.
+     * Les places restantes sont complétées avec les candidats écartés les plus proches.
+     */
+    private int[] selectionner(TopK tries, int max, int exclu) {
+        int[] retenus = new int[max];
+        int nombre = 0;
+        int[] ecartes = new int[tries.taille()];
+        int nombreEcartes = 0;
+        for (int rang = 0; rang < tries.taille() && nombre < max; rang++) {
+            int candidat = tries.indice(rang);
+            if (candidat == exclu) continue;
+            double score = tries.score(rang);
+            boolean garder = true;
+            Page page = pages[candidat / TAILLE_PAGE];
+            int debut = (candidat % TAILLE_PAGE) * dimension;
+            for (int i = 0; i < nombre && garder; i++) {
+                garder = similarite(page.vecteurs, debut, retenus[i]) < score;
+            }
+            if (garder) {
+                retenus[nombre++] = candidat;
+            } else {
+                ecartes[nombreEcartes++] = candidat;
+            }
+        }
+        for (int i = 0; i < nombreEcartes && nombre < max; i++) {
+            retenus[nombre++] = ecartes[i];
+        }
+        return nombre == max ? retenus : Arrays.copyOf(retenus, nombre);
+    }
+
+    private int tirerNiveau() {
+        return (int) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * mL);
+    }
+
+    // ------------------------------------------------------------------ recherche
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return RegistreMetriques.global().mesurer("recherche", () -> rechercher(request));
+    }
+
+    private EmbeddingSearchResult<TextSegment> rechercher(EmbeddingSearchRequest request) {
+        int taille = compteur.get();
+        PointEntree point = entree;
+        if (point == null) {
+            return new EmbeddingSearchResult<>(List.of());
+        }
+        float[] requete = request.queryEmbedding().vector();
+        if (requete.length != dimension) {
+            throw new IllegalArgumentException("Dimension " + requete.length + " au lieu de " + dimension);
+        }
+        float norme = Similarite.norme(requete);
+        float[] unitaire = new float[requete.length];
+        for (int d = 0; d < requete.length; d++) {
+            unitaire[d] = norme == 0 ? 0 : requete[d] / norme;
+        }
+
+        TopK meilleurs;
+        if (request.filter() != null || taille < seuilRechercheExacte) {
+            meilleurs = rechercheExacte(unitaire, Math.min(request.maxResults(), taille), request.filter());
+        } else {
+            int courant = point.noeud();
+            for (int niveau = point.niveau(); niveau > 0; niveau--) {
+                courant = descenteGloutonne(unitaire, 0, courant, niveau);
+            }
+            // Les nœuds supprimés occupent encore des places parmi les candidats : ef les compense
+            long ef = (long) Math.max(efSearch, request.maxResults()) + Math.max(0, taille - positions.size());
+            meilleurs = rechercherCouche(unitaire, 0, courant, (int) Math.min(ef, taille), 0);
+        }
+        meilleurs.trierDecroissant();
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(Math.min(request.maxResults(), meilleurs.taille()));
+        for (int rang = 0; rang < meilleurs.taille() && matches.size() < request.maxResults(); rang++) {
+            int position = meilleurs.indice(rang);
+            double score = RelevanceScore.fromCosineSimilarity(meilleurs.score(rang));
+            if (score < request.minScore()) break;
+            if (noeud(position).supprime) continue;
+            matches.add(correspondance(position, score));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    private TopK rechercheExacte(float[] requete, int k, Filter filtre) {
+        TopK meilleurs = new TopK(Math.max(1, k));
+        Page[] instantane = pages;
+        int taille = publies(instantane);
+        for (int position = 0; position < taille; position++) {
+            Page page = instantane[position / TAILLE_PAGE];
+            int local = position % TAILLE_PAGE;
+            Noeud noeud = page.noeuds.get(local);
+            if (noeud == null || noeud.supprime) continue;
+            double score = Similarite.produitScalaire(requete, 0, page.vecteurs, local * dimension, dimension);
+            if (score <= meilleurs.seuil()) continue;
+            if (filtre != null && (page.segments[local] == null || !filtre.test(page.segments[local].metadata()))) continue;
+            meilleurs.proposer(position, score);
+        }
+        return meilleurs;
+    }
+
+    private int descenteGloutonne(float[] requete, int debut, int depart, int niveau) {
+        int courant = depart;
+        double meilleur = similarite(requete, debut, courant);
+        boolean progres = true;
+        while (progres) {
+            progres = false;
+            for (int voisin : noeud(courant).voisins.get(niveau)) {
+                double score = similarite(requete, debut, voisin);
+                if (score > meilleur) {
+                    meilleur = score;
+                    courant = voisin;
+                    progres = true;
+                }
+            }
+        }
+        return courant;
+    }
+
+    /**
+     * Recherche best-first sur une couche ; retourne au plus {@code ef} candidats (tas non trié).
+     */
+    private TopK rechercherCouche(float[] requete, int debut, int depart, int ef, int niveau) {
+        Visites vus = visites.get();
+        vus.preparer(compteur.get());
+        TasMax aExplorer = vus.aExplorer;
+        aExplorer.vider();
+        TopK resultats = new TopK(ef);
+
+        double score = similarite(requete, debut, depart);
+        vus.marquer(depart);
+        aExplorer.ajouter(depart, score);
+        resultats.proposer(depart, score);
+
+        while (aExplorer.taille() > 0) {
+            double scoreCandidat = aExplorer.scoreMax();
+            int candidat = aExplorer.retirerMax();
+            if (resultats.plein() && scoreCandidat < resultats.seuil()) break;
+            for (int voisin : noeud(candidat).voisins.get(niveau)) {
+                if (!vus.marquer(voisin)) continue;
+                double s = similarite(requete, debut, voisin);
+                if (!resultats.plein() || s > resultats.seuil()) {
+                    aExplorer.ajouter(voisin, s);
+                    resultats.proposer(voisin, s);
+                }
+            }
+        }
+        return resultats;
+    }
+
+    private double similarite(float[] requete, int debut, int position) {
+        Page page = pages[position / TAILLE_PAGE];
+        return Similarite.produitScalaire(requete, debut, page.vecteurs, (position % TAILLE_PAGE) * dimension, dimension);
+    }
+
+    private EmbeddingMatch<TextSegment> correspondance(int position, double score) {
+        Page page = pages[position / TAILLE_PAGE];
+        int local = position % TAILLE_PAGE;
+        float[] vecteur = Arrays.copyOfRange(page.vecteurs, local * dimension, (local + 1) * dimension);
+        for (int d = 0; d < vecteur.length; d++) {
+            vecteur[d] *= page.normes[local];
+        }
+        return new EmbeddingMatch<>(score, page.ids[local], Embedding.from(vecteur), page.segments[local]);
+    }
+
+    // ------------------------------------------------------------------ suppression
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        for (String id : ids) {
+            Integer position = positions.remove(id);
+            if (position != null) {
+                noeud(position).supprime = true;
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        Page[] instantane = pages;
+        int taille = publies(instantane);
+        for (int position = 0; position < taille; position++) {
+            Page page = instantane[position / TAILLE_PAGE];
+            int local = position % TAILLE_PAGE;
+            Noeud noeud = page.noeuds.get(local);
+            if (noeud == null || noeud.supprime) continue;
+            if (page.segments[local] != null && filter.test(page.segments[local].metadata())) {
+                noeud.supprime = true;
+                positions.remove(page.ids[local], position);
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void removeAll() {
+        Page[] instantane = pages;
+        int taille = publies(instantane);
+        for (int position = 0; position < taille; position++) {
+            Noeud noeud = instantane[position / TAILLE_PAGE].noeuds.get(position % TAILLE_PAGE);
+            if (noeud != null) {
+                noeud.supprime = true;
+            }
+        }
+        positions.clear();
+        version.incrementAndGet();
+    }
+
+    // ------------------------------------------------------------------ persistance
+
+    /**
+     * Construit le graphe au-dessus d'un index projeté, en insérant en parallèle.
+     * Les positions des nœuds sont celles du fichier, ce qui permet de persister le graphe à côté.
+     */
+    public static IndexHnsw construire(MagasinMappe magasin, Builder parametres) {
+        IndexHnsw index = parametres.build();
+        int nombre = magasin.taille();
+        index.compteur.set(nombre);
+        for (int position = 0; position < nombre; position++) {
+            index.ecrire(position, magasin.id(position), magasin.embedding(position).vector(), magasin.segment(position));
+        }
+        IntStream.range(0, nombre).parallel().forEach(index::relier);
+        return index;
+    }
+
+    /**
+     * Recharge le graphe enregistré à côté de l'index, ou retourne {@code null} s'il est absent ou périmé.
+     */
+    public static IndexHnsw charger(MagasinMappe magasin, Builder parametres) throws IOException {
+        Path fichier = fichierGraphe(magasin.fichier());
+        if (!Files.exists(fichier)) {
+            return null;
+        }
+        IndexHnsw index = parametres.build();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(fichier)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(magasin.cle())
+                    || in.readInt() != index.m) {
+                return null;
+            }
+            int nombre = in.readInt();
+            if (nombre != magasin.taille()) {
+                return null;
+            }
+            int pointEntree = in.readInt();
+            index.compteur.set(nombre);
+            for (int position = 0; position < nombre; position++) {
+                index.ecrire(position, magasin.id(position), magasin.embedding(position).vector(), magasin.segment(position));
+                int niveau = in.readInt();
+                Noeud noeud = new Noeud(niveau);
+                noeud.supprime = in.readBoolean();
+                if (noeud.supprime) {
+                    index.positions.remove(magasin.id(position), position);
+                }
+                for (int l = 0; l <= niveau; l++) {
+                    int[] voisins = new int[in.readInt()];
+                    for (int i = 0; i < voisins.length; i++) {
+                        voisins[i] = in.readInt();
+                    }
+                    noeud.voisins.set(l, voisins);
+                }
+                index.pages[position / TAILLE_PAGE].noeuds.set(position % TAILLE_PAGE, noeud);
+            }
+            if (nombre > 0) {
+                index.entree = new PointEntree(pointEntree, index.noeud(pointEntree).niveau);
+            }
+        }
+        return index;
+    }
+
+    public void sauvegarder(MagasinMappe magasin) throws IOException {
+        Path fichier = fichierGraphe(magasin.fichier());
+        Path temporaire = fichier.resolveSibling(fichier.getFileName() + ".tmp");
+        int nombre = compteur.get();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaire)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(magasin.cle());
+            out.writeInt(m);
+            out.writeInt(nombre);
+            out.writeInt(entree == null ? -1 : entree.noeud());
+            for (int position = 0; position < nombre; position++) {
+                Noeud noeud = noeud(position);
+                out.writeInt(noeud.niveau);
+                out.writeBoolean(noeud.supprime);
+                for (int l = 0; l <= noeud.niveau; l++) {
+                    int[] voisins = noeud.voisins.get(l);
+                    out.writeInt(voisins.length);
+                    for (int voisin : voisins) {
+                        out.writeInt(voisin);
+                    }
+                }
+            }
+        }
+        Files.move(temporaire, fichier, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static Path fichierGraphe(Path fichierIndex) {
+        return fichierIndex.resolveSibling(fichierIndex.getFileName() + EXTENSION_GRAPHE);
+    }
+
+    // ------------------------------------------------------------------ stockage paginé
+
+    /**
+     * Positions lisibles dans ces pages : le compteur est avancé avant que l'insertion n'agrandisse
+     * {@code pages}, une position réservée peut donc tomber au-delà de la dernière page publiée.
+     * Les nœuds pas encore écrits y restent {@code null}.
+     */
+    private int publies(Page[] instantane) {
+        return Math.min(compteur.get(), instantane.length * TAILLE_PAGE);
+    }
+
+    private Noeud noeud(int position) {
+        return pages[position / TAILLE_PAGE].noeuds.get(position % TAILLE_PAGE);
+    }
+
+    private Page page(int position, int dimensionVecteur) {
+        int numero = position / TAILLE_PAGE;
+        Page[] actuelles = pages;
+        if (numero < actuelles.length && dimensionVecteur == dimension) {
+            return actuelles[numero];
+        }
+        synchronized (verrouCroissance) {
+            if (dimension == -1) {
+                dimension = dimensionVecteur;
+            } else if (dimensionVecteur != dimension) {
+                throw new IllegalArgumentException("Dimension " + dimensionVecteur + " au lieu de " + dimension);
+            }
+            if (numero >= pages.length) {
+                Page[] agrandies = Arrays.copyOf(pages, numero + 1);
+                for (int i = pages.length; i < agrandies.length; i++) {
+                    agrandies[i] = new Page(dimension);
+                }
+                pages = agrandies;
+            }
+            return pages[numero];
+        }
+    }
+
+    private static final class Page {
+        final float[] vecteurs;
+        final float[] normes = new float[TAILLE_PAGE];
+        final String[] ids = new String[TAILLE_PAGE];
+        final TextSegment[] segments = new TextSegment[TAILLE_PAGE];
+        final AtomicReferenceArray<Noeud> noeuds = new AtomicReferenceArray<>(TAILLE_PAGE);
+
+        Page(int dimension) {
+            this.vecteurs = new float[TAILLE_PAGE * dimension];
+        }
+    }
+
+    private static final class Noeud {
+        final int niveau;
+        final AtomicReferenceArray<int[]> voisins;
+        volatile boolean supprime;
+
+        Noeud(int niveau) {
+            this.niveau = niveau;
+            this.voisins = new AtomicReferenceArray<>(niveau + 1);
+            for (int l = 0; l <= niveau; l++) {
+                voisins.set(l, AUCUN_VOISIN);
+            }
+        }
+    }
+
+    private record PointEntree(int noeud, int niveau) {
+    }
+
+    /**
+     * Marques de visite par génération (pas de remise à zéro entre deux recherches) et file
+     * de candidats réutilisée, une instance par thread.
+     */
+    private static final class Visites {
+        private int[] marques = new int[0];
+        private int generation;
+        final TasMax aExplorer = new TasMax();
+
+        void preparer(int capacite) {
+            if (marques.length < capacite) {
+                marques = Arrays.copyOf(marques, capacite + capacite / 2);
+            }
+            if (++generation == 0) {
+                Arrays.fill(marques, 0);
+                generation = 1;
+            }
+        }
+
+        boolean marquer(int position) {
+            if (position >= marques.length) {
+                marques = Arrays.copyOf(marques, position + position / 2 + 1);
+            }
+            if (marques[position] == generation) return false;
+            marques[position] = generation;
+            return true;
+        }
+    }
+
+    /**
+     * Tas-max extensible sur tableaux primitifs.
+     */
+    private static final class TasMax {
+        private int[] positions = new int[64];
+        private double[] scores = new double[64];
+        private int taille;
+
+        void vider() {
+            taille = 0;
+        }
+
+        int taille() {
+            return taille;
+        }
+
+        double scoreMax() {
+            return scores[0];
+        }
+
+        void ajouter(int position, double score) {
+            if (taille == positions.length) {
+                positions = Arrays.copyOf(positions, taille * 2);
+                scores = Arrays.copyOf(scores, taille * 2);
+            }
+            int i = taille++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] >= score) break;
+                positions[i] = positions[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            positions[i] = position;
+            scores[i] = score;
+        }
+
+        int retirerMax() {
+            int sommet = positions[0];
+            int dernierePosition = positions[--taille];
+            double dernierScore = scores[taille];
+            int i = 0;
+            while (true) {
+                int enfant = 2 * i + 1;
+                if (enfant >= taille) break;
+                if (enfant + 1 < taille && scores[enfant + 1] > scores[enfant]) enfant++;
+                if (scores[enfant] <= dernierScore) break;
+                positions[i] = positions[enfant];
+                scores[i] = scores[enfant];
+                i = enfant;
+            }
+            positions[i] = dernierePosition;
+            scores[i] = dernierScore;
+            return sommet;
+        }
+    }
+
+    public static class Builder {
+
+        private int m = 16;
+        private int efConstruction = 200;
+        private int efSearch = 64;
+        private int seuilRechercheExacte = 10_000;
+
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        public Builder seuilRechercheExacte(int seuilRechercheExacte) {
+            this.seuilRechercheExacte = seuilRechercheExacte;
+            return this;
+        }
+
+        public IndexHnsw build() {
+            if (m < 2 || efConstruction < 1 || efSearch < 1) {
+                throw new IllegalArgumentException("❌ Paramètres HNSW invalides (m >= 2, ef >= 1)");
+            }
+            return new IndexHnsw(this);
+        }
+    }
+}
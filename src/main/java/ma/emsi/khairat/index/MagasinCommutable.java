@@ -0,0 +1,144 @@
+package ma.emsi.khairat.index;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import ma.emsi.khairat.store.MagasinParcourable;
+import ma.emsi.khairat.store.MagasinVectoriel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Magasin dont le contenu peut être remplacé d'un bloc pendant que des requêtes sont en cours.
+ *
+ * <p>Les recherches lisent la référence courante sans verrou ; {@link #commuter} la remplace par un
+ * magasin entièrement construit à côté, si bien qu'une recherche voit soit l'ancien index, soit le
+ * nouveau, jamais un état intermédiaire. La {@link #version()} reste croissante d'un magasin à
+ * l'autre pour que les caches calculés sur l'ancien contenu soient invalidés.</p>
+ *
+ * <p>Un index projeté ({@link MagasinMappe}, {@link MagasinQuantifie}) est en lecture seule : avant
+ * la première écriture, son contenu est recopié dans un {@link MagasinVectoriel} qui prend sa place.</p>
+ */
+public class MagasinCommutable implements EmbeddingStore<TextSegment>, MagasinParcourable {
+
+    private record Etat(EmbeddingStore<TextSegment> magasin, MagasinParcourable parcours, long base) {
+    }
+
+    private volatile Etat etat;
+
+    public MagasinCommutable(EmbeddingStore<TextSegment> initial) {
+        this.etat = new Etat(initial, parcourable(initial), 0);
+    }
+
+    /**
+     * Remplace le magasin courant et renvoie l'ancien, que l'appelant peut libérer.
+     */
+    public synchronized EmbeddingStore<TextSegment> commuter(EmbeddingStore<TextSegment> nouveau) {
+        MagasinParcourable parcours = parcourable(nouveau);
+        Etat ancien = etat;
+        long base = version() + 1 - parcours.version();
+        etat = new Etat(nouveau, parcours, base);
+        return ancien.magasin();
+    }
+
+    public EmbeddingStore<TextSegment> courant() {
+        return etat.magasin();
+    }
+
+    private synchronized EmbeddingStore<TextSegment> ecrivable() {
+        EmbeddingStore<TextSegment> courant = etat.magasin();
+        if (!(courant instanceof MagasinMappe || courant instanceof MagasinQuantifie)) {
+            return courant;
+        }
+        List<String> ids = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        etat.parcours().pourChaque((id, embedding, segment) -> {
+            ids.add(id);
+            embeddings.add(embedding);
+            segments.add(segment);
+        });
+        MagasinVectoriel copie = new MagasinVectoriel();
+        copie.addAll(ids, embeddings, segments);
+        commuter(copie);
+        return copie;
+    }
+
+    private static MagasinParcourable parcourable(EmbeddingStore<TextSegment> magasin) {
+        if (!(magasin instanceof MagasinParcourable parcourable)) {
+            throw new IllegalArgumentException("❌ Le magasin doit être parcourable (MagasinParcourable)");
+        }
+        return parcourable;
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return etat.magasin().search(request);
+    }
+
+    @Override
+    public int taille() {
+        return etat.parcours().taille();
+    }
+
+    @Override
+    public void pourChaque(Visiteur visiteur) {
+        etat.parcours().pourChaque(visiteur);
+    }
+
+    @Override
+    public double[] similarites(float[] requete, int[] rangs) {
+        return etat.parcours().similarites(requete, rangs);
+    }
+
+    @Override
+    public long version() {
+        Etat courant = etat;
+        return courant.base() + courant.parcours().version();
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return ecrivable().add(embedding);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        ecrivable().add(id, embedding);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        return ecrivable().add(embedding, textSegment);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return ecrivable().addAll(embeddings);
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        ecrivable().addAll(ids, embeddings, textSegments);
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        ecrivable().removeAll(ids);
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        ecrivable().removeAll(filter);
+    }
+
+    @Override
+    public void removeAll() {
+        ecrivable().removeAll();
+    }
+}
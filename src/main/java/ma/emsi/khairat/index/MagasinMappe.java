@@ -0,0 +1,216 @@
+package ma.emsi.khairat.index;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+import ma.emsi.khairat.store.MagasinParcourable;
+import ma.emsi.khairat.store.Similarite;
+import ma.emsi.khairat.store.TopK;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * {@link EmbeddingStore} en lecture seule adossé à un fichier d'index projeté en mémoire.
+ * Rien n'est désérialisé à l'ouverture : les vecteurs sont lus directement dans la projection
+ * et les segments ne sont décodés que pour les résultats retournés.
+ */
+public class MagasinMappe implements EmbeddingStore<TextSegment>, MagasinParcourable {
+
+    private static final int VECTEURS_PAR_BLOC = 64;
+
+    private final Path fichier;
+    private final String cle;
+    private final int dimension;
+    private final int nombre;
+    private final FloatBuffer vecteurs;
+    private final FloatBuffer normes;
+    private final LongBuffer positions;
+    private final ByteBuffer bloc;
+
+    private MagasinMappe(Path fichier, MappedByteBuffer projection) {
+        this.fichier = fichier;
+        ByteBuffer tampon = projection.order(FormatIndex.ORDRE);
+        if (tampon.getInt(0) != FormatIndex.MAGIC || tampon.getInt(4) != FormatIndex.VERSION) {
+            throw new IllegalStateException("❌ Fichier d'index invalide : " + fichier);
+        }
+        byte[] octetsCle = new byte[FormatIndex.TAILLE_CLE];
+        tampon.get(8, octetsCle);
+        this.cle = HexFormat.of().formatHex(octetsCle);
+        this.dimension = tampon.getInt(8 + FormatIndex.TAILLE_CLE);
+        this.nombre = tampon.getInt(12 + FormatIndex.TAILLE_CLE);
+        int positionBloc = (int) tampon.getLong(16 + FormatIndex.TAILLE_CLE);
+
+        int debutVecteurs = FormatIndex.TAILLE_ENTETE;
+        int debutNormes = debutVecteurs + 4 * nombre * dimension;
+        int debutPositions = debutNormes + 4 * nombre;
+        this.vecteurs = tranche(tampon, debutVecteurs, 4 * nombre * dimension).asFloatBuffer();
+        this.normes = tranche(tampon, debutNormes, 4 * nombre).asFloatBuffer();
+        this.positions = tranche(tampon, debutPositions, 8 * (nombre + 1)).asLongBuffer();
+        this.bloc = tranche(tampon, positionBloc, tampon.capacity() - positionBloc);
+    }
+
+    public static MagasinMappe ouvrir(Path fichier) throws IOException {
+        try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ)) {
+            if (canal.size() > Integer.MAX_VALUE) {
+                throw new IllegalStateException("❌ Index trop volumineux pour une seule projection : " + fichier);
+            }
+            // La projection reste valide après la fermeture du canal
+            return new MagasinMappe(fichier, canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size()));
+        }
+    }
+
+    public String cle() {
+        return cle;
+    }
+
+    @Override
+    public int taille() {
+        return nombre;
+    }
+
+    public Path fichier() {
+        return fichier;
+    }
+
+    @Override
+    public void pourChaque(Visiteur visiteur) {
+        for (int i = 0; i < nombre; i++) {
+            visiteur.visiter(id(i), embedding(i), segment(i));
+        }
+    }
+
+    @Override
+    public double[] similarites(float[] requete, int[] rangs) {
+        double[] resultats = new double[rangs.length];
+        float normeRequete = Similarite.norme(requete);
+        float[] vecteur = new float[dimension];
+        for (int i = 0; i < rangs.length; i++) {
+            int indice = rangs[i];
+            if (indice < 0 || indice >= nombre) {
+                resultats[i] = Double.NaN;
+                continue;
+            }
+            vecteurs.get(indice * dimension, vecteur);
+            float produit = Similarite.produitScalaire(requete, 0, vecteur, 0, dimension);
+            resultats[i] = Similarite.cosinus(produit, normeRequete, normes.get(indice));
+        }
+        return resultats;
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return RegistreMetriques.global().mesurer("recherche", () -> rechercher(request));
+    }
+
+    private EmbeddingSearchResult<TextSegment> rechercher(EmbeddingSearchRequest request) {
+        float[] requete = request.queryEmbedding().vector();
+        if (requete.length != dimension) {
+            throw new IllegalArgumentException("Dimension " + requete.length + " au lieu de " + dimension);
+        }
+        if (nombre == 0) {
+            return new EmbeddingSearchResult<>(List.of());
+        }
+        float normeRequete = Similarite.norme(requete);
+        Filter filtre = request.filter();
+        double minScore = request.minScore();
+
+        // Les vecteurs sont recopiés par blocs depuis la projection (copie en masse)
+        // pour que le produit scalaire vectorisé travaille sur un tableau
+        TopK meilleurs = new TopK(Math.min(request.maxResults(), nombre));
+        float[] bloc = new float[VECTEURS_PAR_BLOC * dimension];
+        for (int debut = 0; debut < nombre; debut += VECTEURS_PAR_BLOC) {
+            int taille = Math.min(VECTEURS_PAR_BLOC, nombre - debut);
+            vecteurs.get(debut * dimension, bloc, 0, taille * dimension);
+            for (int j = 0; j < taille; j++) {
+                int i = debut + j;
+                float produit = Similarite.produitScalaire(requete, 0, bloc, j * dimension, dimension);
+                double score = RelevanceScore.fromCosineSimilarity(Similarite.cosinus(produit, normeRequete, normes.get(i)));
+                if (score < minScore || score <= meilleurs.seuil()) continue;
+                if (filtre != null && !filtre.test(segment(i).metadata())) continue;
+                meilleurs.proposer(i, score);
+            }
+        }
+        meilleurs.trierDecroissant();
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(meilleurs.taille());
+        for (int rang = 0; rang < meilleurs.taille(); rang++) {
+            int i = meilleurs.indice(rang);
+            matches.add(new EmbeddingMatch<>(meilleurs.score(rang), id(i), embedding(i), segment(i)));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Recopie le vecteur {@code indice} dans {@code destination} à partir de {@code debut}, sans allocation.
+     */
+    void vecteur(int indice, float[] destination, int debut) {
+        vecteurs.get(indice * dimension, destination, debut, dimension);
+    }
+
+    float norme(int indice) {
+        return normes.get(indice);
+    }
+
+    Embedding embedding(int indice) {
+        float[] vecteur = new float[dimension];
+        vecteurs.get(indice * dimension, vecteur);
+        return Embedding.from(vecteur);
+    }
+
+    String id(int indice) {
+        return FormatIndex.lireId(bloc, (int) positions.get(indice));
+    }
+
+    TextSegment segment(int indice) {
+        return FormatIndex.lireSegment(bloc, (int) positions.get(indice));
+    }
+
+    private static ByteBuffer tranche(ByteBuffer tampon, int debut, int longueur) {
+        return tampon.slice(debut, longueur).order(FormatIndex.ORDRE);
+    }
+
+    // L'index est immuable : il se reconstruit à partir du PDF, jamais par ajout
+    @Override
+    public String add(Embedding embedding) {
+        throw lectureSeule();
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        throw lectureSeule();
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        throw lectureSeule();
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        throw lectureSeule();
+    }
+
+    private UnsupportedOperationException lectureSeule() {
+        return new UnsupportedOperationException("Index en lecture seule : " + fichier);
+    }
+}
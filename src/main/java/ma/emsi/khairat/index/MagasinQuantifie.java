@@ -0,0 +1,245 @@
+package ma.emsi.khairat.index;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+import ma.emsi.khairat.store.MagasinParcourable;
+import ma.emsi.khairat.store.Similarite;
+import ma.emsi.khairat.store.TopK;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Magasin en lecture seule dont les vecteurs sont gardés en mémoire sous forme compressée.
+ *
+ * <ul>
+ *     <li>{@link Mode#INT8} : chaque composante sur un octet, avec une échelle par vecteur (4× plus petit) ;</li>
+ *     <li>{@link Mode#BINAIRE} : le signe de chaque composante sur un bit, comparé par distance de
+ *     Hamming avec {@link Long#bitCount} (32× plus petit).</li>
+ * </ul>
+ *
+ * <p>Une première passe parcourt les codes compressés et retient {@code surEchantillonnage} fois
+ * plus de candidats que demandé ; ces candidats sont ensuite re-notés avec les vecteurs float
+ * d'origine, lus dans le fichier d'index projeté en mémoire ({@link MagasinMappe}). Les scores
+ * renvoyés sont donc exacts et {@code minScore} garde le même sens qu'avec le magasin complet :
+ * seule la liste des candidats est approchée.</p>
+ */
+public class MagasinQuantifie implements EmbeddingStore<TextSegment>, MagasinParcourable {
+
+    public enum Mode {
+        INT8, BINAIRE;
+
+        public static Mode parNom(String nom) {
+            for (Mode mode : values()) {
+                if (mode.name().equalsIgnoreCase(nom)) {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException("❌ Quantification inconnue : " + nom + " (int8 ou binaire)");
+        }
+    }
+
+    private final MagasinMappe origine;
+    private final Mode mode;
+    private final int surEchantillonnage;
+    private final int dimension;
+    private final int nombre;
+
+    // INT8 : codes[i * dimension + d] ≈ v[d] / echelles[i]
+    private final byte[] codes;
+    private final float[] echelles;
+    private final float[] normes;
+
+    // BINAIRE : bit d de bits[i * mots + d / 64] = (v[d] > 0)
+    private final long[] bits;
+    private final int mots;
+
+    private MagasinQuantifie(MagasinMappe origine, Mode mode, int surEchantillonnage) {
+        this.origine = origine;
+        this.mode = mode;
+        this.surEchantillonnage = surEchantillonnage;
+        this.dimension = origine.dimension();
+        this.nombre = origine.taille();
+        this.mots = (dimension + 63) / 64;
+
+        float[] vecteur = new float[dimension];
+        if (mode == Mode.INT8) {
+            this.codes = new byte[nombre * dimension];
+            this.echelles = new float[nombre];
+            this.normes = new float[nombre];
+            this.bits = null;
+            for (int i = 0; i < nombre; i++) {
+                origine.vecteur(i, vecteur, 0);
+                echelles[i] = quantifierInt8(vecteur, codes, i * dimension);
+                normes[i] = origine.norme(i);
+            }
+        } else {
+            this.codes = null;
+            this.echelles = null;
+            this.normes = null;
+            this.bits = new long[nombre * mots];
+            for (int i = 0; i < nombre; i++) {
+                origine.vecteur(i, vecteur, 0);
+                quantifierBinaire(vecteur, bits, i * mots);
+            }
+        }
+    }
+
+    public static MagasinQuantifie quantifier(MagasinMappe origine, Mode mode, int surEchantillonnage) {
+        if (surEchantillonnage < 1) {
+            throw new IllegalArgumentException("❌ Le sur-échantillonnage doit être positif");
+        }
+        return new MagasinQuantifie(origine, mode, surEchantillonnage);
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * Octets gardés sur le tas pour un vecteur, à comparer aux {@code 4 × dimension} du float32.
+     */
+    public int octetsParVecteur() {
+        return mode == Mode.INT8 ? dimension + 4 + 4 : 8 * mots;
+    }
+
+    public long octetsEnMemoire() {
+        return (long) octetsParVecteur() * nombre;
+    }
+
+    @Override
+    public int taille() {
+        return nombre;
+    }
+
+    @Override
+    public void pourChaque(Visiteur visiteur) {
+        origine.pourChaque(visiteur);
+    }
+
+    @Override
+    public double[] similarites(float[] requete, int[] rangs) {
+        return origine.similarites(requete, rangs);
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return RegistreMetriques.global().mesurer("recherche", () -> rechercher(request));
+    }
+
+    private EmbeddingSearchResult<TextSegment> rechercher(EmbeddingSearchRequest request) {
+        float[] requete = request.queryEmbedding().vector();
+        if (requete.length != dimension) {
+            throw new IllegalArgumentException("Dimension " + requete.length + " au lieu de " + dimension);
+        }
+        if (nombre == 0) {
+            return new EmbeddingSearchResult<>(List.of());
+        }
+        float normeRequete = Similarite.norme(requete);
+        Filter filtre = request.filter();
+
+        // 1️⃣ Première passe sur les codes compressés
+        // Produit en long : maxResults peut valoir Integer.MAX_VALUE (« tous les résultats »)
+        TopK candidats = new TopK((int) Math.min((long) request.maxResults() * surEchantillonnage, nombre));
+        if (mode == Mode.INT8) {
+            byte[] codeRequete = new byte[dimension];
+            float echelleRequete = quantifierInt8(requete, codeRequete, 0);
+            for (int i = 0; i < nombre; i++) {
+                double score = (double) Similarite.produitScalaireInt8(codeRequete, 0, codes, i * dimension, dimension)
+                        * echelleRequete * echelles[i] / normes[i];
+                if (score <= candidats.seuil()) continue;
+                if (filtre != null && !filtre.test(origine.segment(i).metadata())) continue;
+                candidats.proposer(i, score);
+            }
+        } else {
+            long[] bitsRequete = new long[mots];
+            quantifierBinaire(requete, bitsRequete, 0);
+            for (int i = 0; i < nombre; i++) {
+                int distance = 0;
+                for (int m = 0; m < mots; m++) {
+                    distance += Long.bitCount(bitsRequete[m] ^ bits[i * mots + m]);
+                }
+                double score = -distance;
+                if (score <= candidats.seuil()) continue;
+                if (filtre != null && !filtre.test(origine.segment(i).metadata())) continue;
+                candidats.proposer(i, score);
+            }
+        }
+
+        // 2️⃣ Re-notation exacte des candidats avec les vecteurs float de la projection
+        TopK meilleurs = new TopK(Math.min(request.maxResults(), nombre));
+        float[] vecteur = new float[dimension];
+        for (int rang = 0; rang < candidats.taille(); rang++) {
+            int i = candidats.indice(rang);
+            origine.vecteur(i, vecteur, 0);
+            float produit = Similarite.produitScalaire(requete, 0, vecteur, 0, dimension);
+            double score = RelevanceScore.fromCosineSimilarity(Similarite.cosinus(produit, normeRequete, origine.norme(i)));
+            if (score < request.minScore()) continue;
+            meilleurs.proposer(i, score);
+        }
+        meilleurs.trierDecroissant();
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(meilleurs.taille());
+        for (int rang = 0; rang < meilleurs.taille(); rang++) {
+            int i = meilleurs.indice(rang);
+            matches.add(new EmbeddingMatch<>(meilleurs.score(rang), origine.id(i), origine.embedding(i), origine.segment(i)));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    /**
+     * Quantification symétrique : la plus grande composante en valeur absolue devient ±127.
+     * Renvoie l'échelle par laquelle multiplier les codes pour retrouver le vecteur.
+     */
+    private static float quantifierInt8(float[] vecteur, byte[] destination, int debut) {
+        float max = 0;
+        for (float composante : vecteur) {
+            max = Math.max(max, Math.abs(composante));
+        }
+        float echelle = max == 0 ? 1 : max / 127f;
+        for (int d = 0; d < vecteur.length; d++) {
+            destination[debut + d] = (byte) Math.round(vecteur[d] / echelle);
+        }
+        return echelle;
+    }
+
+    private static void quantifierBinaire(float[] vecteur, long[] destination, int debut) {
+        for (int d = 0; d < vecteur.length; d++) {
+            if (vecteur[d] > 0) {
+                destination[debut + d / 64] |= 1L << (d % 64);
+            }
+        }
+    }
+
+    // Comme l'index mappé, le magasin quantifié se reconstruit à partir du fichier, jamais par ajout
+    @Override
+    public String add(Embedding embedding) {
+        throw lectureSeule();
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        throw lectureSeule();
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        throw lectureSeule();
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        throw lectureSeule();
+    }
+
+    private UnsupportedOperationException lectureSeule() {
+        return new UnsupportedOperationException("Index quantifié en lecture seule : " + origine.fichier());
+    }
+}
@@ -0,0 +1,82 @@
+package ma.emsi.khairat.index;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import ma.emsi.khairat.store.MagasinVectoriel;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static ma.emsi.khairat.index.CorpusSynthetique.bruiter;
+import static ma.emsi.khairat.index.CorpusSynthetique.centile;
+import static ma.emsi.khairat.index.CorpusSynthetique.gaussien;
+
+/**
+ * Mesure du rappel et de la latence de {@link IndexHnsw} face à la recherche exacte
+ * sur un corpus synthétique (vecteurs groupés autour de centres, dimension MiniLM).
+ *
+ * <p>Arguments : nombre de vecteurs, nombre de requêtes, k, efSearch.</p>
+ */
+public class MesureHnsw {
+
+    public static void main(String[] args) {
+        int nombre = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int requetes = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int efSearch = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+        int dimension = 384;
+
+        System.out.println("=== Mesure HNSW : " + nombre + " vecteurs, k=" + k + ", efSearch=" + efSearch + " ===");
+        Random aleatoire = new Random(42);
+        float[][] centres = new float[Math.max(1, nombre / 100)][];
+        for (int c = 0; c < centres.length; c++) {
+            centres[c] = gaussien(aleatoire, dimension, 1f);
+        }
+
+        IndexHnsw hnsw = IndexHnsw.builder().efSearch(efSearch).seuilRechercheExacte(0).build();
+        MagasinVectoriel exact = new MagasinVectoriel();
+        List<Embedding> lot = new ArrayList<>();
+        long debut = System.nanoTime();
+        for (int i = 0; i < nombre; i++) {
+            lot.add(Embedding.from(bruiter(aleatoire, centres[aleatoire.nextInt(centres.length)])));
+            if (lot.size() == 10_000 || i == nombre - 1) {
+                List<String> ids = exact.addAll(lot);
+                // Insertions concurrentes dans le graphe, comme pendant une ingestion parallèle
+                IntStream.range(0, lot.size()).parallel().forEach(j -> hnsw.add(ids.get(j), lot.get(j)));
+                lot.clear();
+            }
+        }
+        System.out.printf("Construction : %d ms%n", (System.nanoTime() - debut) / 1_000_000);
+
+        long[] latencesHnsw = new long[requetes];
+        long[] latencesExact = new long[requetes];
+        double rappel = 0;
+        for (int q = 0; q < requetes; q++) {
+            Embedding requete = Embedding.from(bruiter(aleatoire, centres[aleatoire.nextInt(centres.length)]));
+            EmbeddingSearchRequest demande = EmbeddingSearchRequest.builder()
+                    .queryEmbedding(requete).maxResults(k).minScore(0.0).build();
+
+            long t0 = System.nanoTime();
+            List<EmbeddingMatch<?>> approx = new ArrayList<>(hnsw.search(demande).matches());
+            long t1 = System.nanoTime();
+            List<EmbeddingMatch<?>> verite = new ArrayList<>(exact.search(demande).matches());
+            long t2 = System.nanoTime();
+            latencesHnsw[q] = t1 - t0;
+            latencesExact[q] = t2 - t1;
+
+            Set<String> attendus = new HashSet<>();
+            verite.forEach(match -> attendus.add(match.embeddingId()));
+            long trouves = approx.stream().filter(match -> attendus.contains(match.embeddingId())).count();
+            rappel += (double) trouves / Math.max(1, attendus.size());
+        }
+
+        System.out.printf("Rappel@%d : %.4f%n", k, rappel / requetes);
+        System.out.printf("HNSW  : p50 %.3f ms, p99 %.3f ms%n", centile(latencesHnsw, 50), centile(latencesHnsw, 99));
+        System.out.printf("Exact : p50 %.3f ms, p99 %.3f ms%n", centile(latencesExact, 50), centile(latencesExact, 99));
+    }
+}
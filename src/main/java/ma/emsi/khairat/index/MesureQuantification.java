@@ -0,0 +1,102 @@
+package ma.emsi.khairat.index;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static ma.emsi.khairat.index.CorpusSynthetique.bruiter;
+import static ma.emsi.khairat.index.CorpusSynthetique.centile;
+import static ma.emsi.khairat.index.CorpusSynthetique.gaussien;
+
+/**
+ * Rappel et mémoire de {@link MagasinQuantifie} face à la recherche exacte de {@link MagasinMappe},
+ * sur un corpus synthétique (vecteurs groupés autour de centres, dimension MiniLM) écrit dans un
+ * fichier d'index temporaire.
+ *
+ * <p>Arguments : nombre de vecteurs, nombre de requêtes, k, minScore. Chaque mode est mesuré sans
+ * sur-échantillonnage (la première passe seule décide) puis avec les facteurs indiqués.</p>
+ */
+public class MesureQuantification {
+
+    public static void main(String[] args) throws IOException {
+        int nombre = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int requetes = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        double minScore = args.length > 3 ? Double.parseDouble(args[3]) : 0.5;
+        int dimension = 384;
+
+        System.out.println("=== Mesure de la quantification : " + nombre + " vecteurs, k=" + k + ", minScore=" + minScore + " ===");
+        Random aleatoire = new Random(42);
+        float[][] centres = new float[Math.max(1, nombre / 100)][];
+        for (int c = 0; c < centres.length; c++) {
+            centres[c] = gaussien(aleatoire, dimension, 1f);
+        }
+        List<String> ids = new ArrayList<>(nombre);
+        List<Embedding> embeddings = new ArrayList<>(nombre);
+        List<TextSegment> segments = new ArrayList<>(nombre);
+        for (int i = 0; i < nombre; i++) {
+            ids.add(UUID.randomUUID().toString());
+            embeddings.add(Embedding.from(bruiter(aleatoire, centres[aleatoire.nextInt(centres.length)])));
+            segments.add(TextSegment.from("segment " + i));
+        }
+        Path fichier = Files.createTempFile("mesure-quantification", ".idx");
+        try {
+            FormatIndex.ecrire(fichier, "0".repeat(64), ids, embeddings, segments);
+            embeddings.clear();
+            MagasinMappe exact = MagasinMappe.ouvrir(fichier);
+
+            List<EmbeddingSearchRequest> demandes = new ArrayList<>(requetes);
+            List<Set<String>> verites = new ArrayList<>(requetes);
+            long[] latencesExact = new long[requetes];
+            for (int q = 0; q < requetes; q++) {
+                EmbeddingSearchRequest demande = EmbeddingSearchRequest.builder()
+                        .queryEmbedding(Embedding.from(bruiter(aleatoire, centres[aleatoire.nextInt(centres.length)])))
+                        .maxResults(k).minScore(minScore).build();
+                long t0 = System.nanoTime();
+                Set<String> attendus = new HashSet<>();
+                exact.search(demande).matches().forEach(match -> attendus.add(match.embeddingId()));
+                latencesExact[q] = System.nanoTime() - t0;
+                demandes.add(demande);
+                verites.add(attendus);
+            }
+
+            System.out.printf("%-8s %6s %10s %12s %10s %10s%n", "mode", "x", "o/vecteur", "mémoire", "rappel@" + k, "p50");
+            System.out.printf("%-8s %6s %10d %9.1f Mo %10.4f %7.3f ms%n", "FLOAT32", "-", 4 * dimension,
+                    4.0 * dimension * nombre / 1e6, 1.0, centile(latencesExact, 50));
+            for (MagasinQuantifie.Mode mode : MagasinQuantifie.Mode.values()) {
+                for (int surEchantillonnage : mode == MagasinQuantifie.Mode.INT8 ? new int[]{1, 2, 4} : new int[]{1, 4, 10, 20}) {
+                    mesurer(MagasinQuantifie.quantifier(exact, mode, surEchantillonnage), surEchantillonnage, demandes, verites);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(fichier);
+        }
+    }
+
+    private static void mesurer(MagasinQuantifie magasin, int surEchantillonnage,
+                                List<EmbeddingSearchRequest> demandes, List<Set<String>> verites) {
+        long[] latences = new long[demandes.size()];
+        double rappel = 0;
+        for (int q = 0; q < demandes.size(); q++) {
+            long t0 = System.nanoTime();
+            List<EmbeddingMatch<TextSegment>> trouves = magasin.search(demandes.get(q)).matches();
+            latences[q] = System.nanoTime() - t0;
+            Set<String> attendus = verites.get(q);
+            long communs = trouves.stream().filter(match -> attendus.contains(match.embeddingId())).count();
+            rappel += attendus.isEmpty() ? 1 : (double) communs / attendus.size();
+        }
+        System.out.printf("%-8s %6s %10d %9.1f Mo %10.4f %7.3f ms%n", magasin.mode(), "x" + surEchantillonnage,
+                magasin.octetsParVecteur(), magasin.octetsEnMemoire() / 1e6, rappel / demandes.size(), centile(latences, 50));
+    }
+}
@@ -0,0 +1,103 @@
+package ma.emsi.khairat.index;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Surveille les répertoires des documents indexés et déclenche une action quand un fichier change.
+ *
+ * <p>Un éditeur ou une copie produit souvent plusieurs événements pour une seule modification :
+ * l'action n'est lancée qu'une fois le fichier resté stable pendant le délai d'attente. Les actions
+ * s'exécutent sur le thread de surveillance, l'une après l'autre.</p>
+ */
+public final class SurveillantDocuments implements AutoCloseable {
+
+    private final WatchService service;
+    private final long attenteNanos;
+    private final Map<Path, Runnable> actions = new ConcurrentHashMap<>();
+    private final Map<Path, Long> enAttente = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> repertoires = new ConcurrentHashMap<>();
+
+    public SurveillantDocuments(Duration attente) {
+        try {
+            this.service = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            throw new UncheckedIOException("❌ Surveillance des fichiers indisponible", e);
+        }
+        this.attenteNanos = attente.toNanos();
+        Thread.ofPlatform().daemon().name("surveillant-documents").start(this::boucler);
+    }
+
+    public void surveiller(Path fichier, Runnable action) {
+        Path absolu = fichier.toAbsolutePath().normalize();
+        Path repertoire = absolu.getParent();
+        try {
+            if (!repertoires.containsValue(repertoire)) {
+                WatchKey cle = repertoire.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                repertoires.put(cle, repertoire);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("❌ Impossible de surveiller " + repertoire, e);
+        }
+        actions.put(absolu, action);
+    }
+
+    private void boucler() {
+        long attenteMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(attenteNanos));
+        try {
+            while (true) {
+                WatchKey cle = service.poll(enAttente.isEmpty() ? Long.MAX_VALUE : attenteMillis, TimeUnit.MILLISECONDS);
+                if (cle != null) {
+                    Path repertoire = repertoires.get(cle);
+                    for (WatchEvent<?> evenement : cle.pollEvents()) {
+                        if (repertoire != null && evenement.context() instanceof Path nom) {
+                            Path fichier = repertoire.resolve(nom);
+                            if (actions.containsKey(fichier)) {
+                                enAttente.put(fichier, System.nanoTime());
+                            }
+                        }
+                    }
+                    cle.reset();
+                }
+                declencher();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // arrêt du surveillant
+        }
+    }
+
+    private void declencher() {
+        long maintenant = System.nanoTime();
+        Iterator<Map.Entry<Path, Long>> it = enAttente.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Long> entree = it.next();
+            if (maintenant - entree.getValue() >= attenteNanos) {
+                it.remove();
+                try {
+                    actions.get(entree.getKey()).run();
+                } catch (RuntimeException e) {
+                    // L'index courant continue de servir ; la prochaine modification retentera
+                    System.err.println("❌ Réindexation de " + entree.getKey() + " impossible : " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+}
@@ -0,0 +1,217 @@
+package ma.emsi.khairat.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Parsing et découpage en flux : les événements SAX de Tika sont consommés page par page, et
+ * chaque page est découpée dès qu'elle est complète.
+ *
+ * <p>Le texte complet du document n'est jamais matérialisé : seule la page en cours est en
+ * mémoire, si bien que la consommation reste bornée quelle que soit la taille du PDF et que les
+ * premiers segments peuvent être vectorisés pendant que la suite est encore parsée. Pour garder le
+ * chevauchement d'une page à l'autre, la fin du dernier segment d'une page est reprise en tête de
+ * la suivante. Chaque segment porte le numéro de sa page dans la métadonnée {@code page}.</p>
+ */
+public class DecoupeurPages {
+
+    public static final String PAGE = "page";
+
+    private final int tailleSegment;
+    private final int chevauchement;
+    private final DocumentSplitter documentSplitter;
+
+    private DecoupeurPages(Builder builder) {
+        this.tailleSegment = builder.tailleSegment;
+        this.chevauchement = builder.chevauchement;
+        this.documentSplitter = DocumentSplitters.recursive(tailleSegment, chevauchement);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int tailleSegment() {
+        return tailleSegment;
+    }
+
+    public int chevauchement() {
+        return chevauchement;
+    }
+
+    /**
+     * Parse le fichier et transmet chaque segment au récepteur dans l'ordre du document. Le
+     * récepteur peut bloquer (file pleine) : le parsing attend alors avec lui.
+     */
+    public Bilan decouper(Path fichier, Recepteur recepteur) throws InterruptedException {
+        Gestionnaire gestionnaire = new Gestionnaire(fichier, recepteur);
+        try (InputStream in = Files.newInputStream(fichier)) {
+            parseurPartage().parse(in, gestionnaire, new org.apache.tika.metadata.Metadata(), new ParseContext());
+        } catch (IOException e) {
+            throw new UncheckedIOException("❌ Lecture impossible de " + fichier, e);
+        } catch (SAXException e) {
+            if (e.getCause() instanceof InterruptedException interruption) {
+                throw interruption;
+            }
+            throw new IllegalStateException("❌ Parsing impossible de " + fichier, e);
+        } catch (TikaException e) {
+            throw new IllegalStateException("❌ Parsing impossible de " + fichier, e);
+        }
+        return new Bilan(Math.max(1, gestionnaire.pages), gestionnaire.segments, gestionnaire.decoupageNanos, gestionnaire.attenteNanos);
+    }
+
+    /**
+     * Parseur Tika commun à tous les découpages : sa construction charge et instancie tous les
+     * parseurs déclarés, et il peut servir à plusieurs threads à la fois.
+     */
+    public static AutoDetectParser parseurPartage() {
+        return ParseurPartage.INSTANCE;
+    }
+
+    private static final class ParseurPartage {
+        private static final AutoDetectParser INSTANCE = new AutoDetectParser();
+    }
+
+    @FunctionalInterface
+    public interface Recepteur {
+        void recevoir(TextSegment segment) throws InterruptedException;
+    }
+
+    /**
+     * Ce qu'a produit un document, et le temps passé à découper et à attendre le récepteur
+     * (le reste de la durée totale est du parsing).
+     */
+    public record Bilan(int pages, int segments, long decoupageNanos, long attenteNanos) {
+    }
+
+    /**
+     * Accumule le texte de la page courante ; les documents sans pages (texte, Word…) forment une page unique.
+     */
+    private final class Gestionnaire extends DefaultHandler {
+
+        private final Path fichier;
+        private final Recepteur recepteur;
+        private final StringBuilder page = new StringBuilder();
+        private String reprise = "";
+        private boolean dansCorps;
+        private int pages;
+        private int segments;
+        private long decoupageNanos;
+        private long attenteNanos;
+
+        private Gestionnaire(Path fichier, Recepteur recepteur) {
+            this.fichier = fichier;
+            this.recepteur = recepteur;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if ("body".equals(localName)) {
+                dansCorps = true;
+            }
+            // Une page se termine à l'ouverture de la suivante : les div imbriqués (annotations…) restent dans la page
+            if ("div".equals(localName) && PAGE.equals(attributes.getValue("class"))) {
+                terminerPage();
+                pages++;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            // Comme BodyContentHandler : le titre et les métadonnées de l'en-tête XHTML sont ignorés
+            if (dansCorps) {
+                page.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+            characters(ch, start, length);
+        }
+
+        @Override
+        public void endDocument() throws SAXException {
+            terminerPage();
+        }
+
+        private void terminerPage() throws SAXException {
+            String texte = page.toString().strip();
+            page.setLength(0);
+            if (texte.isEmpty()) {
+                return;
+            }
+            long t0 = System.nanoTime();
+            Metadata metadata = Metadata.from(Document.FILE_NAME, fichier.getFileName().toString())
+                    .put(Document.ABSOLUTE_DIRECTORY_PATH, fichier.toAbsolutePath().getParent().toString())
+                    .put(PAGE, Math.max(1, pages));
+            var decoupes = documentSplitter.split(Document.from(reprise + texte, metadata));
+            decoupageNanos += System.nanoTime() - t0;
+            for (TextSegment segment : decoupes) {
+                // Index continu sur tout le document, comme avec un découpage du texte complet
+                TextSegment numerote = TextSegment.from(segment.text(),
+                        metadata.copy().put("index", String.valueOf(segments++)));
+                long t1 = System.nanoTime();
+                try {
+                    recepteur.recevoir(numerote);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SAXException(e);
+                }
+                attenteNanos += System.nanoTime() - t1;
+            }
+            if (!decoupes.isEmpty()) {
+                reprise = reprise(decoupes.get(decoupes.size() - 1).text());
+            }
+        }
+
+        /**
+         * Fin du dernier segment, coupée sur un espace pour ne pas reprendre un demi-mot.
+         */
+        private String reprise(String dernier) {
+            if (chevauchement == 0 || dernier.length() <= chevauchement) {
+                return chevauchement == 0 ? "" : dernier + " ";
+            }
+            String fin = dernier.substring(dernier.length() - chevauchement);
+            int espace = fin.indexOf(' ');
+            return (espace < 0 ? fin : fin.substring(espace + 1)) + " ";
+        }
+    }
+
+    public static class Builder {
+
+        private int tailleSegment = 300;
+        private int chevauchement = 30;
+
+        public Builder tailleSegment(int tailleSegment) {
+            this.tailleSegment = tailleSegment;
+            return this;
+        }
+
+        public Builder chevauchement(int chevauchement) {
+            this.chevauchement = chevauchement;
+            return this;
+        }
+
+        public DecoupeurPages build() {
+            if (tailleSegment < 1 || chevauchement < 0 || chevauchement >= tailleSegment) {
+                throw new IllegalArgumentException("❌ Il faut 0 ≤ chevauchement < taille de segment");
+            }
+            return new DecoupeurPages(this);
+        }
+    }
+}
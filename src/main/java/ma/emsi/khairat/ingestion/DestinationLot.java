@@ -0,0 +1,21 @@
+package ma.emsi.khairat.ingestion;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.util.List;
+
+/**
+ * Dernière étape du pipeline : reçoit chaque lot dès qu'il est vectorisé.
+ * Les appels sont faits depuis un seul thread d'écriture.
+ */
+@FunctionalInterface
+public interface DestinationLot {
+
+    void ecrire(List<Embedding> embeddings, List<TextSegment> segments);
+
+    static DestinationLot vers(EmbeddingStore<TextSegment> store) {
+        return store::addAll;
+    }
+}
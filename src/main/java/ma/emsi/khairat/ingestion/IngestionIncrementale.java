@@ -0,0 +1,235 @@
+package ma.emsi.khairat.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import ma.emsi.khairat.store.MagasinParcourable;
+import ma.emsi.khairat.store.MagasinVectoriel;
+import ma.emsi.khairat.store.Similarite;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Ré-ingestion d'un document modifié à partir de son index précédent.
+ *
+ * <p>Le document est re-parsé et re-découpé, puis chaque segment est identifié par le SHA-256 de
+ * son texte. Un segment dont le texte existait déjà garde son identifiant et son embedding ; seuls
+ * les segments nouveaux ou modifiés passent par le modèle, et les identifiants qui n'apparaissent
+ * plus sont supprimés. Le résultat est une copie : l'ancien magasin reste intact et peut continuer
+ * à servir les requêtes jusqu'à la bascule.</p>
+ *
+ * <p>Avant de réutiliser les anciens vecteurs, un segment témoin est ré-embeddé : s'il ne
+ * correspond plus (modèle d'embeddings changé), tout le document est recalculé.</p>
+ */
+public class IngestionIncrementale {
+
+    private static final double SIMILARITE_TEMOIN = 0.999;
+
+    private final DocumentParser documentParser;
+    private final DocumentSplitter documentSplitter;
+    private final DecoupeurPages decoupeurPages;
+    private final EmbeddingModel embeddingModel;
+    private final int tailleLot;
+
+    private IngestionIncrementale(Builder builder) {
+        this.documentParser = builder.documentParser;
+        this.documentSplitter = builder.documentSplitter;
+        this.decoupeurPages = builder.decoupeurPages;
+        this.embeddingModel = builder.embeddingModel;
+        this.tailleLot = builder.tailleLot;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public MiseAJour mettreAJour(Path fichier, MagasinParcourable precedent) {
+        long debut = System.nanoTime();
+        List<TextSegment> segments = decouper(fichier);
+
+        // Anciens segments par empreinte du texte (une file par empreinte : un même texte peut apparaître plusieurs fois)
+        Map<String, Deque<Ancien>> anciens = new HashMap<>();
+        List<String> anciensIds = new ArrayList<>();
+        precedent.pourChaque((id, embedding, segment) -> {
+            anciensIds.add(id);
+            if (segment != null) {
+                anciens.computeIfAbsent(empreinte(segment.text()), e -> new ArrayDeque<>()).add(new Ancien(id, embedding));
+            }
+        });
+
+        List<String> ids = new ArrayList<>(segments.size());
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        List<Integer> aCalculer = new ArrayList<>();
+        Ancien temoin = null;
+        int temoinRang = -1;
+        for (int i = 0; i < segments.size(); i++) {
+            Deque<Ancien> candidats = anciens.get(empreinte(segments.get(i).text()));
+            Ancien ancien = candidats == null ? null : candidats.poll();
+            if (ancien != null) {
+                ids.add(ancien.id());
+                embeddings.add(ancien.embedding());
+                if (temoin == null) {
+                    temoin = ancien;
+                    temoinRang = i;
+                }
+            } else {
+                ids.add(UUID.randomUUID().toString());
+                embeddings.add(null);
+                aCalculer.add(i);
+            }
+        }
+
+        if (temoin != null && !modeleInchange(temoin, segments.get(temoinRang))) {
+            // Vecteurs produits par un autre modèle : rien n'est réutilisable
+            aCalculer.clear();
+            for (int i = 0; i < segments.size(); i++) {
+                ids.set(i, UUID.randomUUID().toString());
+                aCalculer.add(i);
+            }
+        }
+
+        for (int i = 0; i < aCalculer.size(); i += tailleLot) {
+            List<Integer> rangs = aCalculer.subList(i, Math.min(i + tailleLot, aCalculer.size()));
+            List<Embedding> calcules = embeddingModel.embedAll(rangs.stream().map(segments::get).toList()).content();
+            for (int j = 0; j < rangs.size(); j++) {
+                embeddings.set(rangs.get(j), calcules.get(j));
+            }
+        }
+
+        Set<String> conserves = new HashSet<>(ids);
+        List<String> perimes = anciensIds.stream().filter(id -> !conserves.contains(id)).toList();
+
+        // Copie de l'ancien contenu, retrait des segments périmés par identifiant, puis ajout (ou
+        // mise à jour des métadonnées, l'identifiant étant conservé) des segments du document
+        MagasinVectoriel magasin = new MagasinVectoriel();
+        List<String> copieIds = new ArrayList<>(anciensIds.size());
+        List<Embedding> copieEmbeddings = new ArrayList<>(anciensIds.size());
+        List<TextSegment> copieSegments = new ArrayList<>(anciensIds.size());
+        precedent.pourChaque((id, embedding, segment) -> {
+            copieIds.add(id);
+            copieEmbeddings.add(embedding);
+            copieSegments.add(segment);
+        });
+        magasin.addAll(copieIds, copieEmbeddings, copieSegments);
+        magasin.removeAll(perimes);
+        magasin.addAll(ids, embeddings, segments);
+
+        return new MiseAJour(magasin, segments.size() - aCalculer.size(), aCalculer.size(), perimes.size(),
+                System.nanoTime() - debut);
+    }
+
+    private List<TextSegment> decouper(Path fichier) {
+        if (decoupeurPages == null) {
+            Document document = FileSystemDocumentLoader.loadDocument(fichier, documentParser);
+            return documentSplitter.split(document);
+        }
+        List<TextSegment> segments = new ArrayList<>();
+        try {
+            decoupeurPages.decouper(fichier, segments::add);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("❌ Ré-ingestion interrompue", e);
+        }
+        return segments;
+    }
+
+    private boolean modeleInchange(Ancien temoin, TextSegment segment) {
+        float[] recalcule = embeddingModel.embed(segment).content().vector();
+        float[] stocke = temoin.embedding().vector();
+        if (recalcule.length != stocke.length) {
+            return false;
+        }
+        float produit = Similarite.produitScalaire(recalcule, 0, stocke, 0, stocke.length);
+        return Similarite.cosinus(produit, Similarite.norme(recalcule), Similarite.norme(stocke)) >= SIMILARITE_TEMOIN;
+    }
+
+    static String empreinte(String texte) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(texte.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+
+    private record Ancien(String id, Embedding embedding) {
+    }
+
+    /**
+     * Résultat d'une ré-ingestion : le nouveau magasin et ce qu'il a coûté.
+     */
+    public record MiseAJour(MagasinVectoriel magasin, int reutilises, int reembeddes, int supprimes, long dureeNanos) {
+
+        @Override
+        public String toString() {
+            return String.format("♻️ Ré-ingestion incrémentale : %d segments réutilisés, %d ré-embeddés, %d supprimés (%d ms)",
+                    reutilises, reembeddes, supprimes, dureeNanos / 1_000_000);
+        }
+    }
+
+    public static class Builder {
+
+        private DocumentParser documentParser = new ApacheTikaDocumentParser();
+        private DocumentSplitter documentSplitter = DocumentSplitters.recursive(300, 30);
+        private DecoupeurPages decoupeurPages;
+        private EmbeddingModel embeddingModel;
+        private int tailleLot = 32;
+
+        public Builder documentParser(DocumentParser documentParser) {
+            this.documentParser = documentParser;
+            return this;
+        }
+
+        public Builder documentSplitter(DocumentSplitter documentSplitter) {
+            this.documentSplitter = documentSplitter;
+            return this;
+        }
+
+        /**
+         * Découpe page par page, comme {@link PipelineIngestion} avec le même découpeur : les empreintes doivent correspondre.
+         */
+        public Builder decoupeurPages(DecoupeurPages decoupeurPages) {
+            this.decoupeurPages = decoupeurPages;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder tailleLot(int tailleLot) {
+            this.tailleLot = tailleLot;
+            return this;
+        }
+
+        public IngestionIncrementale build() {
+            if (embeddingModel == null) {
+                throw new IllegalStateException("❌ embeddingModel est obligatoire");
+            }
+            if (tailleLot < 1) {
+                throw new IllegalArgumentException("❌ La taille de lot doit être positive");
+            }
+            return new IngestionIncrementale(this);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package ma.emsi.khairat.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Pipeline d'ingestion commun à tous les tests : chargement → découpage → embeddings → écriture.
+ *
+ * <p>Les documents sont parsés en parallèle et découpés dès leur arrivée ; les segments partent
+ * par lots de taille fixe dans une file bornée, vectorisés par un pool dimensionné sur les cœurs,
+ * puis écrits par un unique thread au fur et à mesure. Les files bornées assurent la contre-pression :
+ * un parsing plus rapide que l'embedding ne fait pas gonfler la mémoire.</p>
+ *
+ * <p>Avec un {@link DecoupeurPages}, un document n'est plus chargé en entier avant d'être découpé :
+ * ses segments entrent dans la file page après page.</p>
+ */
+public class PipelineIngestion {
+
+    private static final Lot FIN = new Lot(List.of(), List.of());
+
+    private final DocumentParser documentParser;
+    private final DocumentSplitter documentSplitter;
+    private final DecoupeurPages decoupeurPages;
+    private final EmbeddingModel embeddingModel;
+    private final int tailleLot;
+    private final int threadsParsing;
+    private final int threadsEmbedding;
+    private final int capaciteFile;
+
+    private PipelineIngestion(Builder builder) {
+        this.documentParser = builder.documentParser;
+        this.documentSplitter = builder.documentSplitter;
+        this.decoupeurPages = builder.decoupeurPages;
+        this.embeddingModel = builder.embeddingModel;
+        this.tailleLot = builder.tailleLot;
+        this.threadsParsing = builder.threadsParsing;
+        this.threadsEmbedding = builder.threadsEmbedding;
+        this.capaciteFile = builder.capaciteFile;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public RapportIngestion ingerer(List<Path> fichiers, EmbeddingStore<TextSegment> store) {
+        return ingerer(fichiers, DestinationLot.vers(store));
+    }
+
+    public RapportIngestion ingererRepertoire(Path repertoire, EmbeddingStore<TextSegment> store) {
+        try (Stream<Path> contenu = Files.list(repertoire)) {
+            List<Path> pdfs = contenu
+                    .filter(fichier -> fichier.getFileName().toString().toLowerCase().endsWith(".pdf"))
+                    .sorted()
+                    .toList();
+            return ingerer(pdfs, store);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lecture impossible du répertoire " + repertoire, e);
+        }
+    }
+
+    public RapportIngestion ingerer(List<Path> fichiers, DestinationLot destination) {
+        long debut = System.nanoTime();
+        StatistiquesEtape parsing = new StatistiquesEtape("parsing");
+        StatistiquesEtape decoupage = new StatistiquesEtape("découpage");
+        StatistiquesEtape embedding = new StatistiquesEtape("embedding");
+        StatistiquesEtape ecriture = new StatistiquesEtape("écriture");
+
+        BlockingQueue<Lot> aVectoriser = new ArrayBlockingQueue<>(capaciteFile);
+        BlockingQueue<Lot> aEcrire = new ArrayBlockingQueue<>(capaciteFile);
+        AtomicReference<Throwable> echec = new AtomicReference<>();
+        List<String> fichiersEnEchec = Collections.synchronizedList(new ArrayList<>());
+
+        ExecutorService parseurs = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(threadsParsing, fichiers.size())), fabrique("ingestion-parsing"));
+        ExecutorService vectoriseurs = Executors.newFixedThreadPool(threadsEmbedding, fabrique("ingestion-embedding"));
+        Thread ecrivain = fabrique("ingestion-ecriture").newThread(() -> ecrire(aEcrire, destination, ecriture, echec));
+        ecrivain.start();
+
+        try {
+            // 1️⃣ Parsing + découpage, un fichier par tâche
+            for (Path fichier : fichiers) {
+                parseurs.execute(() -> {
+                    if (echec.get() != null) return;
+                    try {
+                        if (decoupeurPages != null) {
+                            parserEnFlux(fichier, aVectoriser, parsing, decoupage, echec);
+                            return;
+                        }
+                        long t0 = System.nanoTime();
+                        Document document = FileSystemDocumentLoader.loadDocument(fichier, documentParser);
+                        long t1 = System.nanoTime();
+                        List<TextSegment> segments = documentSplitter.split(document);
+                        long t2 = System.nanoTime();
+                        parsing.enregistrer(t0, t1, segments.size());
+                        decoupage.enregistrer(t1, t2, segments.size());
+                        for (int i = 0; i < segments.size() && echec.get() == null; i += tailleLot) {
+                            List<TextSegment> lot = segments.subList(i, Math.min(i + tailleLot, segments.size()));
+                            aVectoriser.put(new Lot(List.copyOf(lot), List.of()));
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (RuntimeException e) {
+                        fichiersEnEchec.add(fichier + " : " + e.getMessage());
+                    } catch (Throwable e) {
+                        // Une Error (mémoire épuisée…) n'est pas propre à ce fichier : toute l'ingestion s'arrête
+                        echec.compareAndSet(null, e);
+                    }
+                });
+            }
+
+            // 2️⃣ Embeddings par lots, sur tous les cœurs
+            for (int i = 0; i < threadsEmbedding; i++) {
+                vectoriseurs.execute(() -> vectoriser(aVectoriser, aEcrire, embedding, echec));
+            }
+
+            parseurs.shutdown();
+            parseurs.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            for (int i = 0; i < threadsEmbedding; i++) {
+                aVectoriser.put(FIN);
+            }
+            vectoriseurs.shutdown();
+            vectoriseurs.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            aEcrire.put(FIN);
+            ecrivain.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            parseurs.shutdownNow();
+            vectoriseurs.shutdownNow();
+            ecrivain.interrupt();
+            throw new IllegalStateException("❌ Ingestion interrompue", e);
+        }
+
+        if (echec.get() != null) {
+            throw new IllegalStateException("❌ Échec de l'ingestion", echec.get());
+        }
+        return new RapportIngestion(List.of(parsing, decoupage, embedding, ecriture),
+                List.copyOf(fichiersEnEchec), System.nanoTime() - debut);
+    }
+
+    /**
+     * Variante en flux : les segments partent vers les vectoriseurs page après page, pendant que
+     * la suite du document est encore parsée.
+     */
+    private void parserEnFlux(Path fichier, BlockingQueue<Lot> aVectoriser,
+                              StatistiquesEtape parsing, StatistiquesEtape decoupage,
+                              AtomicReference<Throwable> echec) throws InterruptedException {
+        List<TextSegment> lot = new ArrayList<>(tailleLot);
+        long t0 = System.nanoTime();
+        DecoupeurPages.Bilan bilan = decoupeurPages.decouper(fichier, segment -> {
+            // Après un échec ailleurs, la fin du document n'est plus envoyée à personne
+            if (echec.get() != null) return;
+            lot.add(segment);
+            if (lot.size() == tailleLot) {
+                aVectoriser.put(new Lot(List.copyOf(lot), List.of()));
+                lot.clear();
+            }
+        });
+        if (!lot.isEmpty() && echec.get() == null) {
+            aVectoriser.put(new Lot(List.copyOf(lot), List.of()));
+        }
+        // Parsing et découpage sont entrelacés : le temps passé à attendre la file n'est compté nulle part
+        long t1 = System.nanoTime();
+        long finParsing = t1 - bilan.decoupageNanos() - bilan.attenteNanos();
+        parsing.enregistrer(t0, finParsing, bilan.segments());
+        decoupage.enregistrer(finParsing, finParsing + bilan.decoupageNanos(), bilan.segments());
+    }
+
+    private void vectoriser(BlockingQueue<Lot> entree, BlockingQueue<Lot> sortie,
+                            StatistiquesEtape statistiques, AtomicReference<Throwable> echec) {
+        try {
+            // On vide la file jusqu'au marqueur de fin même après un échec, quel qu'il soit, pour ne
+            // bloquer aucun producteur sur une file pleine
+            for (Lot lot = entree.take(); lot != FIN; lot = entree.take()) {
+                if (echec.get() != null) continue;
+                try {
+                    long t0 = System.nanoTime();
+                    List<Embedding> embeddings = embeddingModel.embedAll(lot.segments()).content();
+                    statistiques.enregistrer(t0, System.nanoTime(), lot.segments().size());
+                    sortie.put(new Lot(lot.segments(), embeddings));
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Throwable e) {
+                    // Même une Error (OOM d'ONNX) : le thread doit survivre pour continuer à vider la file
+                    echec.compareAndSet(null, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void ecrire(BlockingQueue<Lot> entree, DestinationLot destination,
+                               StatistiquesEtape statistiques, AtomicReference<Throwable> echec) {
+        try {
+            for (Lot lot = entree.take(); lot != FIN; lot = entree.take()) {
+                if (echec.get() != null) continue;
+                try {
+                    long t0 = System.nanoTime();
+                    destination.ecrire(lot.embeddings(), lot.segments());
+                    statistiques.enregistrer(t0, System.nanoTime(), lot.segments().size());
+                } catch (Throwable e) {
+                    echec.compareAndSet(null, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ThreadFactory fabrique(String prefixe) {
+        AtomicInteger compteur = new AtomicInteger();
+        return tache -> {
+            Thread thread = new Thread(tache, prefixe + "-" + compteur.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private record Lot(List<TextSegment> segments, List<Embedding> embeddings) {
+    }
+
+    public static class Builder {
+
+        private DocumentParser documentParser = new ApacheTikaDocumentParser();
+        private DocumentSplitter documentSplitter = DocumentSplitters.recursive(300, 30);
+        private DecoupeurPages decoupeurPages;
+        private EmbeddingModel embeddingModel;
+        private int tailleLot = 32;
+        private int threadsParsing = Runtime.getRuntime().availableProcessors();
+        private int threadsEmbedding = Runtime.getRuntime().availableProcessors();
+        private int capaciteFile = 2 * Runtime.getRuntime().availableProcessors();
+
+        public Builder documentParser(DocumentParser documentParser) {
+            this.documentParser = documentParser;
+            return this;
+        }
+
+        public Builder documentSplitter(DocumentSplitter documentSplitter) {
+            this.documentSplitter = documentSplitter;
+            return this;
+        }
+
+        /**
+         * Parse et découpe page par page en flux, à la place de {@code documentParser} et {@code documentSplitter}.
+         */
+        public Builder decoupeurPages(DecoupeurPages decoupeurPages) {
+            this.decoupeurPages = decoupeurPages;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder tailleLot(int tailleLot) {
+            this.tailleLot = tailleLot;
+            return this;
+        }
+
+        public Builder threadsParsing(int threadsParsing) {
+            this.threadsParsing = threadsParsing;
+            return this;
+        }
+
+        public Builder threadsEmbedding(int threadsEmbedding) {
+            this.threadsEmbedding = threadsEmbedding;
+            return this;
+        }
+
+        public Builder capaciteFile(int capaciteFile) {
+            this.capaciteFile = capaciteFile;
+            return this;
+        }
+
+        public PipelineIngestion build() {
+            if (embeddingModel == null) {
+                throw new IllegalStateException("❌ embeddingModel est obligatoire");
+            }
+            if (tailleLot < 1 || threadsParsing < 1 || threadsEmbedding < 1 || capaciteFile < 1) {
+                throw new IllegalArgumentException("❌ Les tailles de lot, de pool et de file doivent être positives");
+            }
+            return new PipelineIngestion(this);
+        }
+    }
+}
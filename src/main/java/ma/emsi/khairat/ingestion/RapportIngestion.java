@@ -0,0 +1,32 @@
+package ma.emsi.khairat.ingestion;
+
+import java.util.List;
+
+/**
+ * Bilan d'une ingestion : débit par étape, fichiers en échec et durée totale.
+ */
+public record RapportIngestion(List<StatistiquesEtape> etapes, List<String> echecs, long dureeNanos) {
+
+    public long segments() {
+        return etapes.get(etapes.size() - 1).segments();
+    }
+
+    public double segmentsParSeconde() {
+        return dureeNanos == 0 ? 0 : segments() * 1e9 / dureeNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("📊 Ingestion : ")
+                .append(segments()).append(" segments en ")
+                .append(dureeNanos / 1_000_000).append(" ms (")
+                .append(String.format("%.1f", segmentsParSeconde())).append(" segments/s)");
+        for (StatistiquesEtape etape : etapes) {
+            sb.append("\n   ").append(etape);
+        }
+        for (String echec : echecs) {
+            sb.append("\n   ⚠️ ").append(echec);
+        }
+        return sb.toString();
+    }
+}
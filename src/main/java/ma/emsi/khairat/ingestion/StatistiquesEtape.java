@@ -0,0 +1,51 @@
+package ma.emsi.khairat.ingestion;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compteurs d'une étape du pipeline, alimentés par plusieurs threads.
+ * Le débit est calculé sur la fenêtre entre le premier et le dernier lot traité.
+ */
+public class StatistiquesEtape {
+
+    private final String nom;
+    private final LongAdder segments = new LongAdder();
+    private final LongAdder occupationNanos = new LongAdder();
+    private final AtomicLong debut = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong fin = new AtomicLong(Long.MIN_VALUE);
+
+    StatistiquesEtape(String nom) {
+        this.nom = nom;
+    }
+
+    void enregistrer(long debutNanos, long finNanos, int nombreSegments) {
+        segments.add(nombreSegments);
+        occupationNanos.add(finNanos - debutNanos);
+        debut.accumulateAndGet(debutNanos, Math::min);
+        fin.accumulateAndGet(finNanos, Math::max);
+    }
+
+    public String nom() {
+        return nom;
+    }
+
+    public long segments() {
+        return segments.sum();
+    }
+
+    public double segmentsParSeconde() {
+        long duree = fin.get() - debut.get();
+        return duree <= 0 ? 0 : segments.sum() * 1e9 / duree;
+    }
+
+    public double occupationSecondes() {
+        return occupationNanos.sum() / 1e9;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-12s %6d segments  %9.1f segments/s  (%.2f s de travail cumulé)",
+                nom, segments(), segmentsParSeconde(), occupationSecondes());
+    }
+}
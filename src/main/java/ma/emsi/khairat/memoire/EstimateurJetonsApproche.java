@@ -0,0 +1,54 @@
+package ma.emsi.khairat.memoire;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.TokenCountEstimator;
+
+/**
+ * Estimation hors ligne du nombre de jetons : environ 4 caractères par jeton, plus un surcoût
+ * fixe par message. Gemini ne fournit pas d'estimateur local ; l'ordre de grandeur suffit
+ * pour borner un prompt.
+ */
+public class EstimateurJetonsApproche implements TokenCountEstimator {
+
+    private static final int CARACTERES_PAR_JETON = 4;
+    private static final int JETONS_PAR_MESSAGE = 4;
+
+    @Override
+    public int estimateTokenCountInText(String text) {
+        return text == null ? 0 : (text.length() + CARACTERES_PAR_JETON - 1) / CARACTERES_PAR_JETON;
+    }
+
+    @Override
+    public int estimateTokenCountInMessage(ChatMessage message) {
+        return JETONS_PAR_MESSAGE + estimateTokenCountInText(texte(message));
+    }
+
+    @Override
+    public int estimateTokenCountInMessages(Iterable<ChatMessage> messages) {
+        int total = 0;
+        for (ChatMessage message : messages) {
+            total += estimateTokenCountInMessage(message);
+        }
+        return total;
+    }
+
+    static String texte(ChatMessage message) {
+        if (message instanceof UserMessage u) {
+            return u.hasSingleText() ? u.singleText() : u.contents().toString();
+        }
+        if (message instanceof AiMessage a) {
+            return a.text() != null ? a.text() : a.toolExecutionRequests().toString();
+        }
+        if (message instanceof SystemMessage s) {
+            return s.text();
+        }
+        if (message instanceof ToolExecutionResultMessage t) {
+            return t.text();
+        }
+        return message.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package ma.emsi.khairat.memoire;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * {@link ChatMemoryStore} sur disque : un fichier JSON par session, nommé par l'empreinte de
+ * l'identifiant (un identifiant de session n'est pas un nom de fichier sûr). Chaque écriture
+ * passe par un fichier temporaire puis un déplacement atomique.
+ */
+public class MagasinMemoireFichiers implements ChatMemoryStore {
+
+    private final Path dossier;
+
+    public MagasinMemoireFichiers(Path dossier) {
+        this.dossier = dossier;
+        try {
+            Files.createDirectories(dossier);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Dossier des mémoires inutilisable : " + dossier, e);
+        }
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        Path fichier = fichier(memoryId);
+        if (!Files.exists(fichier)) {
+            return List.of();
+        }
+        try {
+            return ChatMessageDeserializer.messagesFromJson(Files.readString(fichier, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lecture impossible : " + fichier, e);
+        }
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        Path fichier = fichier(memoryId);
+        Path temporaire = fichier.resolveSibling(fichier.getFileName() + ".tmp");
+        try {
+            Files.writeString(temporaire, ChatMessageSerializer.messagesToJson(messages), StandardCharsets.UTF_8);
+            Files.move(temporaire, fichier, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Écriture impossible : " + fichier, e);
+        }
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        try {
+            Files.deleteIfExists(fichier(memoryId));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path fichier(Object memoryId) {
+        try {
+            byte[] empreinte = MessageDigest.getInstance("SHA-256").digest(memoryId.toString().getBytes(StandardCharsets.UTF_8));
+            return dossier.resolve(HexFormat.of().formatHex(empreinte, 0, 16) + ".json");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+}
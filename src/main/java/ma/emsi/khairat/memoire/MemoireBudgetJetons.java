@@ -0,0 +1,185 @@
+package ma.emsi.khairat.memoire;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.TokenCountEstimator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Mémoire de conversation bornée en jetons plutôt qu'en nombre de messages.
+ *
+ * <p>Quand le budget est dépassé, la mémoire se compacte en deux temps :</p>
+ * <ol>
+ *     <li>le contexte RAG injecté dans les anciens messages utilisateur est retiré (seule la question reste) ;</li>
+ *     <li>puis les plus anciens tours sont supprimés, en gardant le message système et le dernier message.</li>
+ * </ol>
+ * Un message système qui change remplace le précédent, comme dans {@code MessageWindowChatMemory}.
+ */
+public class MemoireBudgetJetons implements ChatMemory {
+
+    private static final String MARQUEUR_CONTEXTE = "\n\nAnswer using the following information:\n";
+    private static final int OCTETS_PAR_MESSAGE = 64;
+
+    private final Object id;
+    private final int budget;
+    private final TokenCountEstimator estimateur;
+    private final List<ChatMessage> messages = new ArrayList<>();
+    private final List<Integer> jetonsParMessage = new ArrayList<>();
+    private int jetons;
+    private long caracteres;
+    private long contextesRetires;
+    private long messagesRetires;
+
+    private MemoireBudgetJetons(Builder builder) {
+        this.id = builder.id;
+        this.budget = builder.budgetJetons;
+        this.estimateur = builder.estimateur;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public synchronized void add(ChatMessage message) {
+        if (message instanceof SystemMessage) {
+            for (int i = 0; i < messages.size(); i++) {
+                if (messages.get(i) instanceof SystemMessage) {
+                    if (messages.get(i).equals(message)) return;
+                    retirer(i);
+                    break;
+                }
+            }
+        }
+        ajouter(messages.size(), message);
+        compacter();
+    }
+
+    /**
+     * Remplace tout le contenu, par exemple au rechargement depuis un {@code ChatMemoryStore}.
+     */
+    synchronized void remplacer(List<ChatMessage> contenu) {
+        vider();
+        for (ChatMessage message : contenu) {
+            ajouter(messages.size(), message);
+        }
+        compacter();
+    }
+
+    private void compacter() {
+        int dernier = messages.size() - 1;
+        for (int i = 0; i < dernier && jetons > budget; i++) {
+            if (messages.get(i) instanceof UserMessage u && u.hasSingleText()) {
+                String texte = u.singleText();
+                int marqueur = texte.indexOf(MARQUEUR_CONTEXTE);
+                if (marqueur >= 0) {
+                    retirer(i);
+                    ajouter(i, u.name() == null
+                            ? UserMessage.from(texte.substring(0, marqueur))
+                            : UserMessage.from(u.name(), texte.substring(0, marqueur)));
+                    contextesRetires++;
+                }
+            }
+        }
+        while (jetons > budget) {
+            int plusAncien = 0;
+            while (plusAncien < messages.size() && messages.get(plusAncien) instanceof SystemMessage) {
+                plusAncien++;
+            }
+            if (plusAncien >= messages.size() - 1) break;
+            retirer(plusAncien);
+            messagesRetires++;
+            // Une conversation ne doit pas reprendre sur une réponse ou un résultat d'outil orphelin
+            while (plusAncien < messages.size() - 1 && !(messages.get(plusAncien) instanceof UserMessage)) {
+                retirer(plusAncien);
+                messagesRetires++;
+            }
+        }
+    }
+
+    private void ajouter(int position, ChatMessage message) {
+        int n = estimateur.estimateTokenCountInMessage(message);
+        messages.add(position, message);
+        jetonsParMessage.add(position, n);
+        jetons += n;
+        caracteres += EstimateurJetonsApproche.texte(message).length();
+    }
+
+    private void retirer(int position) {
+        ChatMessage message = messages.remove(position);
+        jetons -= jetonsParMessage.remove(position);
+        caracteres -= EstimateurJetonsApproche.texte(message).length();
+    }
+
+    private void vider() {
+        messages.clear();
+        jetonsParMessage.clear();
+        jetons = 0;
+        caracteres = 0;
+    }
+
+    @Override
+    public synchronized List<ChatMessage> messages() {
+        return new ArrayList<>(messages);
+    }
+
+    @Override
+    public synchronized void clear() {
+        vider();
+    }
+
+    public synchronized int jetons() {
+        return jetons;
+    }
+
+    /**
+     * Taille approximative sur le tas (caractères UTF-16 et surcoût des objets message).
+     */
+    public synchronized long octetsEstimes() {
+        return 2 * caracteres + (long) OCTETS_PAR_MESSAGE * messages.size();
+    }
+
+    public synchronized String statistiques() {
+        return String.format("🧠 Mémoire : %d messages, %d/%d jetons, %d contextes RAG retirés, %d messages retirés",
+                messages.size(), jetons, budget, contextesRetires, messagesRetires);
+    }
+
+    public static class Builder {
+
+        private Object id = "default";
+        private int budgetJetons = 4000;
+        private TokenCountEstimator estimateur = new EstimateurJetonsApproche();
+
+        public Builder id(Object id) {
+            this.id = Objects.requireNonNull(id);
+            return this;
+        }
+
+        public Builder budgetJetons(int budgetJetons) {
+            this.budgetJetons = budgetJetons;
+            return this;
+        }
+
+        public Builder estimateur(TokenCountEstimator estimateur) {
+            this.estimateur = estimateur;
+            return this;
+        }
+
+        public MemoireBudgetJetons build() {
+            if (budgetJetons < 1) {
+                throw new IllegalArgumentException("❌ Le budget de jetons doit être positif");
+            }
+            return new MemoireBudgetJetons(this);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package ma.emsi.khairat.memoire;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Ensemble borné de {@link MemoireBudgetJetons}, une par session.
+ *
+ * <p>Le fournisseur ne rend que des poignées légères : AiServices garde chaque poignée, mais le
+ * contenu vit ici. Les mémoires résidentes sont dans un LRU ; au-delà du plafond d'octets, les
+ * moins récemment utilisées sont expulsées, de même que les sessions inactives depuis le TTL.
+ * Avec un {@link ChatMemoryStore}, les modifications y sont écrites en différé (toutes les
+ * {@code delaiEcriture}, et immédiatement à l'expulsion) ; une session expulsée est rechargée
+ * depuis le store à son retour.</p>
+ */
+public class MemoiresBornees implements ChatMemoryProvider, AutoCloseable {
+
+    private final int budgetJetons;
+    private final TokenCountEstimator estimateur;
+    private final long plafondOctets;
+    private final long ttlNanos;
+    private final ChatMemoryStore store;
+    private final LinkedHashMap<Object, Residente> residentes = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Object, MemoireBudgetJetons> aEcrire = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService taches = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().factory());
+    private volatile Consumer<Object> surExpulsion = id -> { };
+    private long octets;
+    private final LongAdder expulsionsPlafond = new LongAdder();
+    private final LongAdder expulsionsInactivite = new LongAdder();
+    private final LongAdder rechargements = new LongAdder();
+    private final LongAdder ecritures = new LongAdder();
+
+    private MemoiresBornees(Builder builder) {
+        this.budgetJetons = builder.budgetJetons;
+        this.estimateur = builder.estimateur;
+        this.plafondOctets = builder.plafondOctets;
+        this.ttlNanos = builder.ttlInactivite.toNanos();
+        this.store = builder.store;
+        long periode = Math.max(TimeUnit.SECONDS.toNanos(1), ttlNanos / 4);
+        taches.scheduleWithFixedDelay(this::expulserInactives, periode, periode, TimeUnit.NANOSECONDS);
+        if (store != null) {
+            long delai = builder.delaiEcriture.toNanos();
+            taches.scheduleWithFixedDelay(this::ecrire, delai, delai, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public ChatMemory get(Object id) {
+        return new Poignee(id);
+    }
+
+    /**
+     * Appelé avec l'identifiant de chaque session expulsée, par exemple
+     * {@code assistant::evictChatMemory} pour qu'AiServices oublie aussi la poignée.
+     */
+    public void surExpulsion(Consumer<Object> surExpulsion) {
+        this.surExpulsion = surExpulsion;
+    }
+
+    private MemoireBudgetJetons memoire(Object id) {
+        synchronized (residentes) {
+            Residente residente = residentes.get(id);
+            if (residente == null) {
+                MemoireBudgetJetons memoire = MemoireBudgetJetons.builder()
+                        .id(id)
+                        .budgetJetons(budgetJetons)
+                        .estimateur(estimateur)
+                        .build();
+                if (store != null) {
+                    List<ChatMessage> sauvegardes = store.getMessages(id);
+                    if (!sauvegardes.isEmpty()) {
+                        memoire.remplacer(sauvegardes);
+                        rechargements.increment();
+                    }
+                }
+                residente = new Residente(memoire);
+                residente.octets = memoire.octetsEstimes();
+                octets += residente.octets;
+                residentes.put(id, residente);
+            }
+            residente.derniereActivite = System.nanoTime();
+            return residente.memoire;
+        }
+    }
+
+    private void modifiee(Object id, MemoireBudgetJetons memoire) {
+        if (store != null) {
+            aEcrire.put(id, memoire);
+        }
+        List<Map.Entry<Object, Residente>> expulsees = new ArrayList<>();
+        synchronized (residentes) {
+            Residente residente = residentes.get(id);
+            if (residente != null && residente.memoire == memoire) {
+                long nouveau = memoire.octetsEstimes();
+                octets += nouveau - residente.octets;
+                residente.octets = nouveau;
+            }
+            Iterator<Map.Entry<Object, Residente>> lru = residentes.entrySet().iterator();
+            while (octets > plafondOctets && residentes.size() > 1 && lru.hasNext()) {
+                Map.Entry<Object, Residente> plusAncienne = lru.next();
+                if (plusAncienne.getKey().equals(id)) continue;
+                lru.remove();
+                octets -= plusAncienne.getValue().octets;
+                expulsees.add(plusAncienne);
+                expulsionsPlafond.increment();
+            }
+        }
+        liberer(expulsees);
+    }
+
+    private void expulserInactives() {
+        long limite = System.nanoTime() - ttlNanos;
+        List<Map.Entry<Object, Residente>> expulsees = new ArrayList<>();
+        synchronized (residentes) {
+            Iterator<Map.Entry<Object, Residente>> lru = residentes.entrySet().iterator();
+            while (lru.hasNext()) {
+                Map.Entry<Object, Residente> entree = lru.next();
+                if (entree.getValue().derniereActivite < limite) {
+                    lru.remove();
+                    octets -= entree.getValue().octets;
+                    expulsees.add(entree);
+                    expulsionsInactivite.increment();
+                }
+            }
+        }
+        liberer(expulsees);
+    }
+
+    private void liberer(List<Map.Entry<Object, Residente>> expulsees) {
+        for (Map.Entry<Object, Residente> entree : expulsees) {
+            if (store != null && aEcrire.remove(entree.getKey(), entree.getValue().memoire)) {
+                ecrire(entree.getKey(), entree.getValue().memoire);
+            }
+            surExpulsion.accept(entree.getKey());
+        }
+    }
+
+    private void ecrire() {
+        for (Object id : List.copyOf(aEcrire.keySet())) {
+            MemoireBudgetJetons memoire = aEcrire.remove(id);
+            if (memoire != null) {
+                ecrire(id, memoire);
+            }
+        }
+    }
+
+    private void ecrire(Object id, MemoireBudgetJetons memoire) {
+        List<ChatMessage> messages = memoire.messages();
+        if (messages.isEmpty()) {
+            store.deleteMessages(id);
+        } else {
+            store.updateMessages(id, messages);
+        }
+        ecritures.increment();
+    }
+
+    public int residentes() {
+        synchronized (residentes) {
+            return residentes.size();
+        }
+    }
+
+    public long octets() {
+        synchronized (residentes) {
+            return octets;
+        }
+    }
+
+    public String statistiques() {
+        return String.format("🧠 Mémoires : %d résidentes, %d/%d Ko, %d expulsées (plafond), %d expulsées (inactivité), %d rechargées, %d écritures",
+                residentes(), octets() / 1024, plafondOctets / 1024, expulsionsPlafond.sum(),
+                expulsionsInactivite.sum(), rechargements.sum(), ecritures.sum());
+    }
+
+    @Override
+    public void close() {
+        taches.shutdownNow();
+        if (store != null) {
+            ecrire();
+        }
+    }
+
+    private static final class Residente {
+
+        private final MemoireBudgetJetons memoire;
+        private long octets;
+        private long derniereActivite;
+
+        private Residente(MemoireBudgetJetons memoire) {
+            this.memoire = memoire;
+        }
+    }
+
+    /**
+     * Ce que voit AiServices : chaque appel passe par l'ensemble, qui recharge la mémoire si besoin.
+     */
+    private final class Poignee implements ChatMemory {
+
+        private final Object id;
+
+        private Poignee(Object id) {
+            this.id = id;
+        }
+
+        @Override
+        public Object id() {
+            return id;
+        }
+
+        @Override
+        public void add(ChatMessage message) {
+            MemoireBudgetJetons memoire = memoire(id);
+            memoire.add(message);
+            modifiee(id, memoire);
+        }
+
+        @Override
+        public List<ChatMessage> messages() {
+            return memoire(id).messages();
+        }
+
+        @Override
+        public void clear() {
+            MemoireBudgetJetons memoire = memoire(id);
+            memoire.clear();
+            modifiee(id, memoire);
+        }
+    }
+
+    public static class Builder {
+
+        private int budgetJetons = 4000;
+        private TokenCountEstimator estimateur = new EstimateurJetonsApproche();
+        private long plafondOctets = 64L * 1024 * 1024;
+        private Duration ttlInactivite = Duration.ofMinutes(30);
+        private ChatMemoryStore store;
+        private Duration delaiEcriture = Duration.ofSeconds(1);
+
+        public Builder budgetJetons(int budgetJetons) {
+            this.budgetJetons = budgetJetons;
+            return this;
+        }
+
+        public Builder estimateur(TokenCountEstimator estimateur) {
+            this.estimateur = estimateur;
+            return this;
+        }
+
+        /**
+         * Taille totale estimée des mémoires résidentes, toutes sessions confondues.
+         */
+        public Builder plafondOctets(long plafondOctets) {
+            this.plafondOctets = plafondOctets;
+            return this;
+        }
+
+        public Builder ttlInactivite(Duration ttlInactivite) {
+            this.ttlInactivite = ttlInactivite;
+            return this;
+        }
+
+        public Builder chatMemoryStore(ChatMemoryStore store) {
+            this.store = store;
+            return this;
+        }
+
+        public Builder delaiEcriture(Duration delaiEcriture) {
+            this.delaiEcriture = delaiEcriture;
+            return this;
+        }
+
+        public MemoiresBornees build() {
+            if (budgetJetons < 1 || plafondOctets < 1) {
+                throw new IllegalArgumentException("❌ Le budget de jetons et le plafond doivent être positifs");
+            }
+            return new MemoiresBornees(this);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package ma.emsi.khairat.metriques;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Événement JFR émis pour chaque étape chronométrée d'un tour RAG. Sans enregistrement JFR actif,
+ * son coût est celui de deux lectures d'horloge.
+ */
+@Name("ma.emsi.khairat.Etape")
+@Label("Étape RAG")
+@Category({"RAG"})
+@Description("Durée d'une étape d'un tour RAG (embedding, recherche, routage, web, prompt, LLM)")
+@StackTrace(false)
+class EvenementEtape extends jdk.jfr.Event {
+
+    @Label("Étape")
+    String etape;
+
+    @Label("Succès")
+    boolean succes;
+}
@@ -0,0 +1,36 @@
+package ma.emsi.khairat.metriques;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Événement JFR d'un appel au modèle de chat : durée, délai du premier jeton (streaming) et
+ * consommation de jetons telle que rapportée par le modèle.
+ */
+@Name("ma.emsi.khairat.AppelLlm")
+@Label("Appel LLM")
+@Category({"RAG"})
+@Description("Appel au modèle de chat avec le délai du premier jeton et les jetons consommés")
+@StackTrace(false)
+class EvenementLlm extends jdk.jfr.Event {
+
+    @Label("Modèle")
+    String modele;
+
+    @Label("Premier jeton")
+    @Timespan(Timespan.NANOSECONDS)
+    long premierJeton;
+
+    @Label("Jetons en entrée")
+    int jetonsEntree;
+
+    @Label("Jetons en sortie")
+    int jetonsSortie;
+
+    @Label("Succès")
+    boolean succes;
+}
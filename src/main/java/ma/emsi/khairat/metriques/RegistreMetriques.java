@@ -0,0 +1,426 @@
+package ma.emsi.khairat.metriques;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.ModelProvider;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.CompleteToolCall;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.PartialToolCall;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.content.injector.ContentInjector;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+import ma.emsi.khairat.memoire.EstimateurJetonsApproche;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Métriques des étapes d'un tour RAG : embedding de la question, recherche dans le magasin,
+ * routage, récupération, recherche web, assemblage du prompt et appel au LLM (durée, premier jeton,
+ * jetons consommés).
+ *
+ * <p>Chaque mesure alimente un histogramme HdrHistogram par étape (enregistrement sans verrou,
+ * précision de 3 chiffres significatifs, en microsecondes) et émet un événement JFR
+ * ({@code ma.emsi.khairat.Etape}, {@code ma.emsi.khairat.AppelLlm}) visible avec
+ * {@code -XX:StartFlightRecording}. Le coût reste de l'ordre de la centaine de nanosecondes par
+ * étape : l'instrumentation peut rester active en production, à la place des logs détaillés.</p>
+ *
+ * <p>Les méthodes {@code embeddingModel}, {@code router}, {@code retriever}, {@code moteur},
+ * {@code contentInjector}, {@code chatModel} et {@code streamingChatModel} renvoient des décorateurs
+ * instrumentés. Les magasins de vecteurs mesurent eux-mêmes leurs recherches dans {@link #global()}.</p>
+ */
+public final class RegistreMetriques {
+
+    private static final RegistreMetriques GLOBAL = new RegistreMetriques();
+    private static final int CHIFFRES_SIGNIFICATIFS = 3;
+    private static final EstimateurJetonsApproche ESTIMATEUR = new EstimateurJetonsApproche();
+
+    private volatile Map<String, Serie> series = new ConcurrentSkipListMap<>();
+    private volatile Map<String, LongAdder> compteurs = new ConcurrentSkipListMap<>();
+
+    /**
+     * Registre partagé par toute l'application.
+     */
+    public static RegistreMetriques global() {
+        return GLOBAL;
+    }
+
+    public Chrono demarrer(String etape) {
+        return new Chrono(etape);
+    }
+
+    public <T> T mesurer(String etape, Supplier<T> appel) {
+        Chrono chrono = demarrer(etape);
+        try {
+            T resultat = appel.get();
+            chrono.terminer(true);
+            return resultat;
+        } catch (RuntimeException e) {
+            chrono.terminer(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Enregistre une durée mesurée ailleurs (histogramme seulement, pas d'événement JFR).
+     */
+    public void enregistrer(String etape, long nanos, boolean succes) {
+        serie(etape).enregistrer(nanos, succes);
+    }
+
+    public void compter(String compteur, long valeur) {
+        compteurs.computeIfAbsent(compteur, c -> new LongAdder()).add(valeur);
+    }
+
+    private Serie serie(String etape) {
+        return series.computeIfAbsent(etape, e -> new Serie());
+    }
+
+    /**
+     * Repart de zéro ; les décorateurs déjà créés écrivent dans les nouvelles séries.
+     */
+    public void reinitialiser() {
+        series = new ConcurrentSkipListMap<>();
+        compteurs = new ConcurrentSkipListMap<>();
+    }
+
+    public Resume resume(String etape) {
+        Serie serie = series.get(etape);
+        return serie == null ? new Resume(etape, 0, 0, 0, 0, 0, 0) : serie.resumer(etape);
+    }
+
+    public List<Resume> resumes() {
+        List<Resume> resumes = new ArrayList<>();
+        for (String etape : series.keySet()) {
+            resumes.add(resume(etape));
+        }
+        return resumes;
+    }
+
+    public long compteur(String compteur) {
+        LongAdder valeur = compteurs.get(compteur);
+        return valeur == null ? 0 : valeur.sum();
+    }
+
+    public String statistiques() {
+        StringBuilder texte = new StringBuilder("📏 Métriques par étape :");
+        for (Resume resume : resumes()) {
+            texte.append('\n').append(resume);
+        }
+        if (!compteurs.isEmpty()) {
+            texte.append("\n   ");
+            compteurs.forEach((nom, valeur) -> texte.append(nom).append('=').append(valeur.sum()).append("  "));
+        }
+        return texte.toString().stripTrailing();
+    }
+
+    /**
+     * Format texte de Prometheus : quantiles des durées en secondes, échecs et compteurs.
+     */
+    public String exporter() {
+        StringBuilder texte = new StringBuilder();
+        texte.append("# TYPE rag_etape_duree_secondes summary\n");
+        for (Resume resume : resumes()) {
+            String etiquette = "etape=\"" + resume.etape() + "\"";
+            ligne(texte, "rag_etape_duree_secondes{" + etiquette + ",quantile=\"0.5\"}", resume.p50() / 1000);
+            ligne(texte, "rag_etape_duree_secondes{" + etiquette + ",quantile=\"0.95\"}", resume.p95() / 1000);
+            ligne(texte, "rag_etape_duree_secondes{" + etiquette + ",quantile=\"0.99\"}", resume.p99() / 1000);
+            texte.append("rag_etape_duree_secondes_count{").append(etiquette).append("} ").append(resume.appels()).append('\n');
+            texte.append("rag_etape_echecs_total{").append(etiquette).append("} ").append(resume.echecs()).append('\n');
+        }
+        compteurs.forEach((nom, valeur) ->
+                texte.append("rag_").append(nom.replace('.', '_')).append("_total ").append(valeur.sum()).append('\n'));
+        return texte.toString();
+    }
+
+    private static void ligne(StringBuilder texte, String nom, double valeur) {
+        texte.append(nom).append(' ').append(String.format(Locale.ROOT, "%.6f", valeur)).append('\n');
+    }
+
+    /**
+     * Latences d'une étape en millisecondes, échecs compris.
+     */
+    public record Resume(String etape, long appels, long echecs, double p50, double p95, double p99, double max) {
+
+        @Override
+        public String toString() {
+            return String.format("   %-16s %7d appels %5d échecs   p50 %8.1f ms   p95 %8.1f ms   p99 %8.1f ms   max %8.1f ms",
+                    etape, appels, echecs, p50, p95, p99, max);
+        }
+    }
+
+    /**
+     * Mesure en cours d'une étape : l'événement JFR couvre l'intervalle entre la création et {@link #terminer}.
+     */
+    public final class Chrono {
+
+        private final String etape;
+        private final long debut = System.nanoTime();
+        private final EvenementEtape evenement = new EvenementEtape();
+
+        private Chrono(String etape) {
+            this.etape = etape;
+            evenement.begin();
+        }
+
+        public void terminer(boolean succes) {
+            serie(etape).enregistrer(System.nanoTime() - debut, succes);
+            if (evenement.shouldCommit()) {
+                evenement.etape = etape;
+                evenement.succes = succes;
+                evenement.commit();
+            }
+        }
+    }
+
+    /**
+     * Histogramme d'une étape : les threads enregistrent dans un {@link Recorder} sans verrou, la
+     * lecture bascule l'intervalle courant dans l'histogramme cumulé.
+     */
+    private static final class Serie {
+
+        private final Recorder recorder = new Recorder(CHIFFRES_SIGNIFICATIFS);
+        private final Histogram cumul = new Histogram(CHIFFRES_SIGNIFICATIFS);
+        private final LongAdder echecs = new LongAdder();
+
+        void enregistrer(long nanos, boolean succes) {
+            recorder.recordValue(Math.max(0, nanos / 1000));
+            if (!succes) {
+                echecs.increment();
+            }
+        }
+
+        synchronized Resume resumer(String etape) {
+            cumul.add(recorder.getIntervalHistogram());
+            return new Resume(etape, cumul.getTotalCount(), echecs.sum(),
+                    cumul.getValueAtPercentile(50) / 1000.0, cumul.getValueAtPercentile(95) / 1000.0,
+                    cumul.getValueAtPercentile(99) / 1000.0, cumul.getMaxValue() / 1000.0);
+        }
+    }
+
+    // --- Décorateurs instrumentés ---
+
+    public EmbeddingModel embeddingModel(EmbeddingModel delegue) {
+        return new EmbeddingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+                return mesurer("embedding", () -> delegue.embedAll(textSegments));
+            }
+
+            @Override
+            public int dimension() {
+                return delegue.dimension();
+            }
+        };
+    }
+
+    public QueryRouter router(QueryRouter delegue) {
+        return query -> mesurer("routage", () -> delegue.route(query));
+    }
+
+    public ContentRetriever retriever(String etape, ContentRetriever delegue) {
+        return query -> mesurer(etape, () -> delegue.retrieve(query));
+    }
+
+    public WebSearchEngine moteur(WebSearchEngine delegue) {
+        return new WebSearchEngine() {
+            @Override
+            public WebSearchResults search(WebSearchRequest webSearchRequest) {
+                return mesurer("web", () -> delegue.search(webSearchRequest));
+            }
+        };
+    }
+
+    public ContentAggregator contentAggregator(ContentAggregator delegue) {
+        return queryToContents -> mesurer("agregation", () -> delegue.aggregate(queryToContents));
+    }
+
+    /**
+     * Assemblage du prompt ; compte aussi les jetons (estimés) du contexte injecté.
+     */
+    public ContentInjector contentInjector(ContentInjector delegue) {
+        return (contents, chatMessage) -> {
+            ChatMessage resultat = mesurer("prompt", () -> delegue.inject(contents, chatMessage));
+            int jetons = 0;
+            for (Content content : contents) {
+                jetons += ESTIMATEUR.estimateTokenCountInText(content.textSegment().text());
+            }
+            compter("jetons.contexte", jetons);
+            return resultat;
+        };
+    }
+
+    public ChatModel chatModel(ChatModel delegue) {
+        return new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest chatRequest) {
+                AppelLlm appel = new AppelLlm();
+                try {
+                    ChatResponse reponse = delegue.chat(chatRequest);
+                    appel.terminer(reponse);
+                    return reponse;
+                } catch (RuntimeException e) {
+                    appel.terminer(null);
+                    throw e;
+                }
+            }
+
+            @Override
+            public ChatRequestParameters defaultRequestParameters() {
+                return delegue.defaultRequestParameters();
+            }
+
+            @Override
+            public List<ChatModelListener> listeners() {
+                // Les listeners du délégué sont déjà appelés par delegue.chat()
+                return List.of();
+            }
+
+            @Override
+            public ModelProvider provider() {
+                return delegue.provider();
+            }
+
+            @Override
+            public Set<Capability> supportedCapabilities() {
+                return delegue.supportedCapabilities();
+            }
+        };
+    }
+
+    public StreamingChatModel streamingChatModel(StreamingChatModel delegue) {
+        return new StreamingChatModel() {
+            @Override
+            public void doChat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+                AppelLlm appel = new AppelLlm();
+                delegue.chat(chatRequest, new StreamingChatResponseHandler() {
+                    @Override
+                    public void onPartialResponse(String partialResponse) {
+                        appel.premierJeton();
+                        handler.onPartialResponse(partialResponse);
+                    }
+
+                    @Override
+                    public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+                        appel.premierJeton();
+                        handler.onPartialResponse(partialResponse, context);
+                    }
+
+                    @Override
+                    public void onPartialThinking(PartialThinking partialThinking) {
+                        handler.onPartialThinking(partialThinking);
+                    }
+
+                    @Override
+                    public void onPartialToolCall(PartialToolCall partialToolCall) {
+                        handler.onPartialToolCall(partialToolCall);
+                    }
+
+                    @Override
+                    public void onCompleteToolCall(CompleteToolCall completeToolCall) {
+                        handler.onCompleteToolCall(completeToolCall);
+                    }
+
+                    @Override
+                    public void onCompleteResponse(ChatResponse completeResponse) {
+                        appel.terminer(completeResponse);
+                        handler.onCompleteResponse(completeResponse);
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        appel.terminer(null);
+                        handler.onError(error);
+                    }
+                });
+            }
+
+            @Override
+            public ChatRequestParameters defaultRequestParameters() {
+                return delegue.defaultRequestParameters();
+            }
+
+            @Override
+            public List<ChatModelListener> listeners() {
+                return List.of();
+            }
+
+            @Override
+            public ModelProvider provider() {
+                return delegue.provider();
+            }
+
+            @Override
+            public Set<Capability> supportedCapabilities() {
+                return delegue.supportedCapabilities();
+            }
+        };
+    }
+
+    /**
+     * Un appel au LLM : étape {@code llm}, étape {@code llm.premierJeton} en streaming, compteurs
+     * de jetons et événement JFR {@link EvenementLlm}.
+     */
+    private final class AppelLlm {
+
+        private final long debut = System.nanoTime();
+        private final EvenementLlm evenement = new EvenementLlm();
+        private volatile long premierJeton;
+
+        AppelLlm() {
+            evenement.begin();
+        }
+
+        void premierJeton() {
+            if (premierJeton == 0) {
+                premierJeton = System.nanoTime() - debut;
+                enregistrer("llm.premierJeton", premierJeton, true);
+            }
+        }
+
+        void terminer(ChatResponse reponse) {
+            boolean succes = reponse != null;
+            enregistrer("llm", System.nanoTime() - debut, succes);
+            TokenUsage usage = succes ? reponse.tokenUsage() : null;
+            int entree = usage == null || usage.inputTokenCount() == null ? 0 : usage.inputTokenCount();
+            int sortie = usage == null || usage.outputTokenCount() == null ? 0 : usage.outputTokenCount();
+            compter("jetons.entree", entree);
+            compter("jetons.sortie", sortie);
+            if (evenement.shouldCommit()) {
+                evenement.modele = succes ? reponse.modelName() : null;
+                evenement.premierJeton = premierJeton;
+                evenement.jetonsEntree = entree;
+                evenement.jetonsSortie = sortie;
+                evenement.succes = succes;
+                evenement.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package ma.emsi.khairat.recherche;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.content.aggregator.DefaultContentAggregator;
+import dev.langchain4j.rag.query.Query;
+import ma.emsi.khairat.cache.CacheEmbeddingModel;
+import ma.emsi.khairat.memoire.EstimateurJetonsApproche;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+import ma.emsi.khairat.store.Similarite;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Réduit le contexte injecté dans le prompt, après la fusion par rang réciproque de
+ * {@link DefaultContentAggregator} :
+ * <ol>
+ *     <li>les segments voisins d'un même document (numéros {@code index} consécutifs) sont recollés
+ *     en un seul passage, sans répéter le chevauchement du découpage ; un segment contenu dans un
+ *     autre de la même source disparaît ;</li>
+ *     <li>les passages sont classés par {@link ContentMetadata#SCORE} décroissant quand tous en
+ *     portent un ; sinon (contenus web, sans score) l'ordre de la fusion par rang réciproque sert
+ *     de priorité, les scores de retrievers différents n'étant de toute façon pas comparables ;</li>
+ *     <li>parmi les passages restants, ceux dont l'embedding est quasi identique (cosinus au-delà du
+ *     seuil) à un passage mieux classé sont écartés, par exemple un extrait web qui recopie le PDF.
+ *     Les passages passent par un {@link CacheEmbeddingModel} : les segments qui reviennent d'un
+ *     tour à l'autre ne sont pas réembeddés ;</li>
+ *     <li>les passages sont retenus par ordre de priorité tant que le budget de jetons le permet ;
+ *     un passage trop long est sauté au profit des suivants.</li>
+ * </ol>
+ *
+ * <p>Les jetons sont estimés par {@link EstimateurJetonsApproche} ; l'économie de chaque tour est
+ * disponible via {@link #dernierTour()} et cumulée dans le compteur {@code jetons.economises}.</p>
+ */
+public class AgregateurContexte implements ContentAggregator {
+
+    private static final String INDEX = "index";
+    private static final String URL = "url";
+    // En deçà, une fin et un début identiques relèvent du hasard plutôt que du chevauchement
+    private static final int CHEVAUCHEMENT_MIN = 8;
+
+    private final ContentAggregator fusion = new DefaultContentAggregator();
+    private final TokenCountEstimator estimateur = new EstimateurJetonsApproche();
+    private final EmbeddingModel embeddingModel;
+    private final int budgetJetons;
+    private final double seuilDoublon;
+
+    private final LongAdder tours = new LongAdder();
+    private final LongAdder jetonsAvant = new LongAdder();
+    private final LongAdder jetonsApres = new LongAdder();
+    private volatile Tour dernierTour;
+
+    private AgregateurContexte(Builder builder) {
+        this.embeddingModel = builder.embeddingModel == null || builder.embeddingModel instanceof CacheEmbeddingModel
+                ? builder.embeddingModel
+                : CacheEmbeddingModel.builder().embeddingModel(builder.embeddingModel).build();
+        this.budgetJetons = builder.budgetJetons;
+        this.seuilDoublon = builder.seuilDoublon;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Content> aggregate(Map<Query, Collection<List<Content>>> queryToContents) {
+        List<Content> classes = fusion.aggregate(queryToContents);
+        if (classes.isEmpty()) {
+            dernierTour = new Tour(0, 0, 0, 0, 0);
+            return classes;
+        }
+        int avant = jetons(classes);
+
+        // 1️⃣ Recollage des segments voisins ou inclus, source par source
+        List<Passage> passages = new ArrayList<>(classes.size());
+        for (int rang = 0; rang < classes.size(); rang++) {
+            passages.add(new Passage(classes.get(rang), rang));
+        }
+        int fusionnes = recoller(passages);
+        prioriser(passages);
+
+        // 2️⃣ Quasi-doublons : on garde le passage le mieux classé
+        int doublons = retirerDoublons(passages);
+
+        // 3️⃣ Remplissage du budget par ordre de priorité
+        List<Content> retenus = new ArrayList<>(passages.size());
+        int apres = 0;
+        for (Passage passage : passages) {
+            int cout = estimateur.estimateTokenCountInText(passage.texte);
+            if (apres + cout > budgetJetons) continue;
+            apres += cout;
+            retenus.add(passage.contenu());
+        }
+
+        Tour tour = new Tour(avant, apres, fusionnes, doublons, passages.size() - retenus.size());
+        dernierTour = tour;
+        tours.increment();
+        jetonsAvant.add(avant);
+        jetonsApres.add(apres);
+        RegistreMetriques.global().compter("jetons.economises", avant - apres);
+        return retenus;
+    }
+
+    private int recoller(List<Passage> passages) {
+        Map<String, List<Passage>> parSource = new LinkedHashMap<>();
+        for (Passage passage : passages) {
+            if (passage.source != null) {
+                parSource.computeIfAbsent(passage.source, s -> new ArrayList<>()).add(passage);
+            }
+        }
+        int fusionnes = 0;
+        for (List<Passage> source : parSource.values()) {
+            if (source.size() < 2) continue;
+            source.sort(Comparator.comparingInt((Passage p) -> p.premier));
+            Passage courant = source.get(0);
+            for (Passage suivant : source.subList(1, source.size())) {
+                boolean voisins = courant.dernier >= 0 && suivant.premier == courant.dernier + 1;
+                if (voisins || courant.texte.contains(suivant.texte) || suivant.texte.contains(courant.texte)) {
+                    courant.absorber(suivant);
+                    passages.remove(suivant);
+                    fusionnes++;
+                } else {
+                    courant = suivant;
+                }
+            }
+        }
+        passages.sort(Comparator.comparingInt((Passage p) -> p.rang));
+        return fusionnes;
+    }
+
+    private static void prioriser(List<Passage> passages) {
+        for (Passage passage : passages) {
+            if (!(passage.score instanceof Double)) return;
+        }
+        // Tri stable : à score égal, le rang de la fusion départage
+        passages.sort(Comparator.comparingDouble((Passage p) -> (Double) p.score).reversed());
+    }
+
+    private int retirerDoublons(List<Passage> passages) {
+        if (embeddingModel == null || passages.size() < 2) {
+            return 0;
+        }
+        List<TextSegment> textes = passages.stream().map(p -> TextSegment.from(p.texte)).toList();
+        List<Embedding> embeddings = embeddingModel.embedAll(textes).content();
+        List<float[]> gardes = new ArrayList<>(passages.size());
+        List<String> textesGardes = new ArrayList<>(passages.size());
+        int doublons = 0;
+        for (int i = 0, p = 0; i < embeddings.size(); i++) {
+            float[] vecteur = embeddings.get(i).vector();
+            float norme = Similarite.norme(vecteur);
+            String texte = passages.get(p).texte;
+            boolean doublon = false;
+            for (int g = 0; g < gardes.size() && !doublon; g++) {
+                // Une copie mot pour mot (extrait web repris du PDF) reste un doublon même si l'ajout déplace l'embedding
+                float produit = Similarite.produitScalaire(vecteur, 0, gardes.get(g), 0, vecteur.length);
+                doublon = textesGardes.get(g).contains(texte) || texte.contains(textesGardes.get(g))
+                        || Similarite.cosinus(produit, norme, Similarite.norme(gardes.get(g))) >= seuilDoublon;
+            }
+            if (doublon) {
+                passages.remove(p);
+                doublons++;
+            } else {
+                gardes.add(vecteur);
+                textesGardes.add(texte);
+                p++;
+            }
+        }
+        return doublons;
+    }
+
+    private int jetons(List<Content> contenus) {
+        int total = 0;
+        for (Content contenu : contenus) {
+            total += estimateur.estimateTokenCountInText(contenu.textSegment().text());
+        }
+        return total;
+    }
+
+    /**
+     * Bilan du dernier tour agrégé, ou {@code null} avant la première question.
+     */
+    public Tour dernierTour() {
+        return dernierTour;
+    }
+
+    public String statistiques() {
+        long avant = jetonsAvant.sum();
+        long apres = jetonsApres.sum();
+        return String.format("✂️ Contexte compacté : %d tours, %d → %d jetons estimés (%.1f %% économisés)",
+                tours.sum(), avant, apres, avant == 0 ? 0.0 : 100.0 * (avant - apres) / avant);
+    }
+
+    public record Tour(int jetonsAvant, int jetonsApres, int fusionnes, int doublons, int horsBudget) {
+
+        public int economises() {
+            return jetonsAvant - jetonsApres;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("✂️ Contexte : %d → %d jetons (−%d) | %d recollés, %d quasi-doublons, %d hors budget",
+                    jetonsAvant, jetonsApres, economises(), fusionnes, doublons, horsBudget);
+        }
+    }
+
+    /**
+     * Un ou plusieurs contenus consécutifs d'une même source, avec le meilleur rang et le meilleur score.
+     */
+    private static final class Passage {
+
+        private final Content origine;
+        private final String source;
+        private int rang;
+        private final int premier;
+        private int dernier;
+        private String texte;
+        private Object score;
+
+        private Passage(Content contenu, int rang) {
+            Metadata metadata = contenu.textSegment().metadata();
+            this.origine = contenu;
+            this.rang = rang;
+            String fichier = metadata.getString(Document.FILE_NAME);
+            this.source = fichier != null ? fichier : metadata.getString(URL);
+            this.premier = numero(metadata);
+            this.dernier = premier;
+            this.texte = contenu.textSegment().text();
+            this.score = contenu.metadata().get(ContentMetadata.SCORE);
+        }
+
+        private static int numero(Metadata metadata) {
+            Object index = metadata.toMap().get(INDEX);
+            try {
+                return index == null ? -1 : Integer.parseInt(index.toString());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        void absorber(Passage suivant) {
+            texte = raccorder(texte, suivant.texte);
+            dernier = Math.max(dernier, suivant.dernier);
+            rang = Math.min(rang, suivant.rang);
+            if (suivant.score instanceof Double s && (!(score instanceof Double d) || s > d)) {
+                score = s;
+            }
+        }
+
+        // Le début du suivant répète la fin du courant (chevauchement du découpage) : on ne le garde qu'une fois
+        private static String raccorder(String courant, String suivant) {
+            if (courant.contains(suivant)) return courant;
+            if (suivant.contains(courant)) return suivant;
+            for (int longueur = Math.min(courant.length(), suivant.length()); longueur >= CHEVAUCHEMENT_MIN; longueur--) {
+                if (courant.regionMatches(courant.length() - longueur, suivant, 0, longueur)) {
+                    return courant + suivant.substring(longueur);
+                }
+            }
+            return courant + " " + suivant;
+        }
+
+        Content contenu() {
+            if (texte.equals(origine.textSegment().text()) && score == origine.metadata().get(ContentMetadata.SCORE)) {
+                return origine;
+            }
+            Map<ContentMetadata, Object> metadata = new HashMap<>(origine.metadata());
+            if (score != null) {
+                metadata.put(ContentMetadata.SCORE, score);
+            }
+            return Content.from(TextSegment.from(texte, origine.textSegment().metadata()), metadata);
+        }
+    }
+
+    public static class Builder {
+
+        private EmbeddingModel embeddingModel;
+        private int budgetJetons = 1500;
+        private double seuilDoublon = 0.92;
+
+        /**
+         * Modèle qui embedde les passages pour repérer les quasi-doublons ; sans modèle, seuls les
+         * recollements et le budget s'appliquent. Un modèle qui n'est pas déjà un
+         * {@link CacheEmbeddingModel} est enveloppé dans un cache.
+         */
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        /**
+         * Jetons estimés au plus pour l'ensemble du contexte injecté (1500 par défaut).
+         */
+        public Builder budgetJetons(int budgetJetons) {
+            this.budgetJetons = budgetJetons;
+            return this;
+        }
+
+        /**
+         * Cosinus à partir duquel deux passages sont considérés comme redondants (0.92 par défaut).
+         */
+        public Builder seuilDoublon(double seuilDoublon) {
+            this.seuilDoublon = seuilDoublon;
+            return this;
+        }
+
+        public AgregateurContexte build() {
+            if (budgetJetons < 1) {
+                throw new IllegalArgumentException("❌ Le budget de jetons doit être positif");
+            }
+            if (seuilDoublon <= 0 || seuilDoublon > 1) {
+                throw new IllegalArgumentException("❌ Le seuil de quasi-doublon doit être dans ]0, 1]");
+            }
+            return new AgregateurContexte(this);
+        }
+    }
+}
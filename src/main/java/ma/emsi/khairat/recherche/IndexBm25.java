@@ -0,0 +1,252 @@
+package ma.emsi.khairat.recherche;
+
+import ma.emsi.khairat.store.TopK;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Index inversé lexical noté en BM25, construit à partir des textes des segments.
+ *
+ * <p>Les listes de postings sont des suites d'octets : pour chaque document, l'écart avec le
+ * document précédent puis la fréquence du terme, tous deux en varint (7 bits par octet). Toutes
+ * les listes sont concaténées dans un seul tableau ; un terme n'est qu'un décalage et une longueur.
+ * Les documents sont numérotés dans l'ordre d'ajout.</p>
+ */
+public final class IndexBm25 {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final Pattern SEPARATEURS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern DIACRITIQUES = Pattern.compile("\\p{M}+");
+    private static final Set<String> MOTS_VIDES = Set.of(
+            "le", "la", "les", "un", "une", "des", "du", "de", "et", "ou", "en", "au", "aux", "ce", "ces",
+            "est", "sont", "que", "qui", "quoi", "dans", "par", "pour", "sur", "avec", "pas", "plus", "se",
+            "sa", "son", "ses", "il", "elle", "on", "nous", "vous", "ils", "the", "of", "and", "to", "in",
+            "is", "are", "for", "with", "what", "how", "an");
+
+    private final Map<String, Integer> termes;
+    private final int[] debuts;
+    private final int[] frequencesDocuments;
+    private final byte[] postings;
+    private final int[] longueurs;
+    private final float longueurMoyenne;
+
+    private IndexBm25(Constructeur constructeur) {
+        int nombreTermes = constructeur.termes.size();
+        this.termes = new HashMap<>(nombreTermes * 2);
+        this.debuts = new int[nombreTermes + 1];
+        this.frequencesDocuments = new int[nombreTermes];
+        int total = 0;
+        for (Postings liste : constructeur.termes.values()) {
+            total += liste.taille;
+        }
+        this.postings = new byte[total];
+        int terme = 0;
+        int position = 0;
+        for (Map.Entry<String, Postings> entree : constructeur.termes.entrySet()) {
+            Postings liste = entree.getValue();
+            termes.put(entree.getKey(), terme);
+            debuts[terme] = position;
+            frequencesDocuments[terme] = liste.documents;
+            System.arraycopy(liste.octets, 0, postings, position, liste.taille);
+            position += liste.taille;
+            terme++;
+        }
+        debuts[nombreTermes] = position;
+        this.longueurs = Arrays.copyOf(constructeur.longueurs, constructeur.nombre);
+        long somme = 0;
+        for (int longueur : longueurs) {
+            somme += longueur;
+        }
+        this.longueurMoyenne = longueurs.length == 0 ? 1 : Math.max(1, (float) somme / longueurs.length);
+    }
+
+    public static Constructeur constructeur() {
+        return new Constructeur();
+    }
+
+    public int documents() {
+        return longueurs.length;
+    }
+
+    public int termes() {
+        return termes.size();
+    }
+
+    public long octetsPostings() {
+        return postings.length;
+    }
+
+    /**
+     * Les {@code k} meilleurs documents pour la question, triés par score BM25 décroissant.
+     * Seuls les documents contenant au moins un terme de la question sont visités, et les scores
+     * sont accumulés dans une table dimensionnée sur leurs listes de postings, pas sur le corpus.
+     */
+    public TopK rechercher(String question, int k) {
+        List<Integer> termesQuestion = new ArrayList<>();
+        int postingsVisites = 0;
+        for (String mot : decouper(question).stream().distinct().toList()) {
+            Integer terme = termes.get(mot);
+            if (terme == null) continue;
+            termesQuestion.add(terme);
+            postingsVisites += frequencesDocuments[terme];
+        }
+        Scores scores = new Scores(postingsVisites);
+        for (int terme : termesQuestion) {
+            int df = frequencesDocuments[terme];
+            float idf = (float) Math.log(1 + (longueurs.length - df + 0.5) / (df + 0.5));
+            int curseur = debuts[terme];
+            int fin = debuts[terme + 1];
+            int document = 0;
+            while (curseur < fin) {
+                int ecart = 0;
+                int decalage = 0;
+                byte octet;
+                do {
+                    octet = postings[curseur++];
+                    ecart |= (octet & 0x7F) << decalage;
+                    decalage += 7;
+                } while (octet < 0);
+                int tf = 0;
+                decalage = 0;
+                do {
+                    octet = postings[curseur++];
+                    tf |= (octet & 0x7F) << decalage;
+                    decalage += 7;
+                } while (octet < 0);
+                document += ecart;
+                float normalisation = K1 * (1 - B + B * longueurs[document] / longueurMoyenne);
+                scores.ajouter(document, idf * tf * (K1 + 1) / (tf + normalisation));
+            }
+        }
+        TopK meilleurs = new TopK(Math.max(1, Math.min(k, scores.nombre)));
+        scores.proposer(meilleurs);
+        meilleurs.trierDecroissant();
+        return meilleurs;
+    }
+
+    /**
+     * Minuscules, sans accents, sans ponctuation ni mots vides : « RAG » et « rag » sont le même terme.
+     */
+    static List<String> decouper(String texte) {
+        String normalise = DIACRITIQUES.matcher(Normalizer.normalize(texte, Normalizer.Form.NFD)).replaceAll("").toLowerCase();
+        List<String> mots = new ArrayList<>();
+        for (String mot : SEPARATEURS.split(normalise)) {
+            if (mot.length() >= 2 && !MOTS_VIDES.contains(mot)) {
+                mots.add(mot);
+            }
+        }
+        return mots;
+    }
+
+    /**
+     * Accumule les documents un par un (dans l'ordre de leur numéro), puis fige l'index compact.
+     */
+    public static final class Constructeur {
+
+        private final Map<String, Postings> termes = new HashMap<>();
+        private int[] longueurs = new int[1024];
+        private int nombre;
+
+        private Constructeur() {
+        }
+
+        /**
+         * Ajoute le document suivant et renvoie son numéro.
+         */
+        public int ajouter(String texte) {
+            int document = nombre++;
+            List<String> mots = decouper(texte);
+            if (document == longueurs.length) {
+                longueurs = Arrays.copyOf(longueurs, 2 * longueurs.length);
+            }
+            longueurs[document] = mots.size();
+            Map<String, Integer> frequences = new HashMap<>();
+            for (String mot : mots) {
+                frequences.merge(mot, 1, Integer::sum);
+            }
+            frequences.forEach((mot, tf) -> termes.computeIfAbsent(mot, m -> new Postings()).ajouter(document, tf));
+            return document;
+        }
+
+        public IndexBm25 construire() {
+            return new IndexBm25(this);
+        }
+    }
+
+    /**
+     * Scores par document en adressage ouvert (sondage linéaire), au moins deux cases par posting
+     * visité : le remplissage reste sous la moitié et aucune réallocation n'est nécessaire.
+     */
+    private static final class Scores {
+
+        private final int[] documents;
+        private final float[] valeurs;
+        private final int masque;
+        private final int decalage;
+        private int nombre;
+
+        Scores(int postings) {
+            int capacite = Integer.highestOneBit(Math.max(8, 2 * postings - 1)) << 1;
+            this.documents = new int[capacite];
+            this.valeurs = new float[capacite];
+            this.masque = capacite - 1;
+            this.decalage = Integer.numberOfLeadingZeros(capacite) + 1;
+            Arrays.fill(documents, -1);
+        }
+
+        void ajouter(int document, float score) {
+            // Hachage de Fibonacci : les bits de poids fort du produit donnent la case
+            int i = (document * 0x9E3779B9) >>> decalage;
+            while (documents[i] != -1 && documents[i] != document) {
+                i = (i + 1) & masque;
+            }
+            if (documents[i] == -1) {
+                documents[i] = document;
+                nombre++;
+            }
+            valeurs[i] += score;
+        }
+
+        void proposer(TopK meilleurs) {
+            for (int i = 0; i < documents.length; i++) {
+                if (documents[i] != -1) {
+                    meilleurs.proposer(documents[i], valeurs[i]);
+                }
+            }
+        }
+    }
+
+    private static final class Postings {
+
+        private byte[] octets = new byte[8];
+        private int taille;
+        private int dernier;
+        private int documents;
+
+        void ajouter(int document, int tf) {
+            ecrireVarint(document - dernier);
+            ecrireVarint(tf);
+            dernier = document;
+            documents++;
+        }
+
+        private void ecrireVarint(int valeur) {
+            if (taille + 5 > octets.length) {
+                octets = Arrays.copyOf(octets, 2 * octets.length);
+            }
+            while ((valeur & ~0x7F) != 0) {
+                octets[taille++] = (byte) ((valeur & 0x7F) | 0x80);
+                valeur >>>= 7;
+            }
+            octets[taille++] = (byte) valeur;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package ma.emsi.khairat.recherche;
+
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link WebSearchEngine} local qui imite Tavily sans réseau ni clé d'API :
+ * latence log-normale (médiane + dispersion), taux d'échec et résultats synthétiques déterministes.
+ * Permet d'exercer le routage web, les délais et les caches hors ligne.
+ */
+public class MoteurRechercheSimule implements WebSearchEngine {
+
+    private final long medianeNanos;
+    private final double dispersion;
+    private final double tauxEchec;
+    private final int nombreResultats;
+    private final LongAdder appels = new LongAdder();
+
+    private MoteurRechercheSimule(Builder builder) {
+        this.medianeNanos = builder.mediane.toNanos();
+        this.dispersion = builder.dispersion;
+        this.tauxEchec = builder.tauxEchec;
+        this.nombreResultats = builder.nombreResultats;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public WebSearchResults search(WebSearchRequest webSearchRequest) {
+        appels.increment();
+        ThreadLocalRandom aleatoire = ThreadLocalRandom.current();
+        long latence = (long) (medianeNanos * Math.exp(dispersion * aleatoire.nextGaussian()));
+        try {
+            Thread.sleep(Duration.ofNanos(latence));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("❌ Recherche web interrompue", e);
+        }
+        if (aleatoire.nextDouble() < tauxEchec) {
+            throw new IllegalStateException("❌ Échec simulé de la recherche web");
+        }
+
+        String termes = webSearchRequest.searchTerms();
+        int n = webSearchRequest.maxResults() != null ? Math.min(webSearchRequest.maxResults(), nombreResultats) : nombreResultats;
+        List<WebSearchOrganicResult> resultats = new ArrayList<>(n);
+        for (int i = 1; i <= n; i++) {
+            URI url = URI.create("https://exemple.invalid/" + i + "?q=" + URLEncoder.encode(termes, StandardCharsets.UTF_8));
+            resultats.add(WebSearchOrganicResult.from("Résultat " + i + " pour " + termes, url,
+                    "Extrait " + i + " sur « " + termes + " ».",
+                    "Contenu simulé " + i + " répondant à la recherche « " + termes + " »."));
+        }
+        return WebSearchResults.from(WebSearchInformationResult.from((long) n), resultats);
+    }
+
+    public long appels() {
+        return appels.sum();
+    }
+
+    public static class Builder {
+
+        private Duration mediane = Duration.ofMillis(800);
+        private double dispersion = 0.5;
+        private double tauxEchec = 0;
+        private int nombreResultats = 5;
+
+        public Builder mediane(Duration mediane) {
+            this.mediane = mediane;
+            return this;
+        }
+
+        /**
+         * Écart-type du logarithme de la latence : 0 donne une latence constante, 0.5 un p99 ≈ 3,2 × la médiane.
+         */
+        public Builder dispersion(double dispersion) {
+            this.dispersion = dispersion;
+            return this;
+        }
+
+        public Builder tauxEchec(double tauxEchec) {
+            this.tauxEchec = tauxEchec;
+            return this;
+        }
+
+        public Builder nombreResultats(int nombreResultats) {
+            this.nombreResultats = nombreResultats;
+            return this;
+        }
+
+        public MoteurRechercheSimule build() {
+            return new MoteurRechercheSimule(this);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package ma.emsi.khairat.recherche;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lance tous les retrievers d'une requête en parallèle sur des threads virtuels.
+ * <ul>
+ *     <li>Les retrievers <b>locaux</b> (PDF, index) sont toujours attendus : leurs résultats sont toujours inclus.</li>
+ *     <li>Les retrievers <b>distants</b> (web) ont chacun un délai, borné par l'échéance globale de la requête ;
+ *     ce qui n'est pas arrivé à temps est ignoré et le thread est interrompu.</li>
+ *     <li>Optionnellement, un appel distant encore en cours après son p95 observé est doublé
+ *     (« hedging ») : la première réponse gagne, l'autre est annulée.</li>
+ * </ul>
+ * Les résultats locaux précèdent les résultats distants dans la liste retournée.
+ */
+public class RecuperateurConcurrent implements ContentRetriever, AutoCloseable {
+
+    private final List<ContentRetriever> locaux;
+    private final List<Distant> distants;
+    private final long echeanceNanos;
+    private final ExecutorService executeur = Executors.newVirtualThreadPerTaskExecutor();
+
+    private RecuperateurConcurrent(Builder builder) {
+        this.locaux = List.copyOf(builder.locaux);
+        this.distants = List.copyOf(builder.distants);
+        this.echeanceNanos = builder.echeance.toNanos();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        long echeance = System.nanoTime() + echeanceNanos;
+        List<Future<?>> taches = new ArrayList<>();
+        try {
+            List<Future<List<Content>>> resultatsLocaux = new ArrayList<>();
+            for (ContentRetriever local : locaux) {
+                Future<List<Content>> f = executeur.submit(() -> local.retrieve(query));
+                resultatsLocaux.add(f);
+                taches.add(f);
+            }
+            List<Appel> appels = new ArrayList<>();
+            for (Distant distant : distants) {
+                appels.add(distant.lancer(query, executeur, taches));
+            }
+
+            List<Content> contenus = new ArrayList<>();
+            for (Future<List<Content>> f : resultatsLocaux) {
+                contenus.addAll(attendre(f));
+            }
+            for (int i = 0; i < distants.size(); i++) {
+                Distant distant = distants.get(i);
+                Appel appel = appels.get(i);
+                long limite = Math.min(echeance, appel.debut() + distant.delaiNanos);
+                try {
+                    contenus.addAll(appel.resultat().get(Math.max(0, limite - System.nanoTime()), TimeUnit.NANOSECONDS));
+                } catch (TimeoutException e) {
+                    distant.horsDelai.increment();
+                } catch (ExecutionException e) {
+                    distant.echecs.increment();
+                }
+            }
+            return contenus;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return List.of();
+        } finally {
+            // Les retardataires ne consomment plus rien une fois la réponse partie
+            for (Future<?> tache : taches) {
+                tache.cancel(true);
+            }
+        }
+    }
+
+    private static List<Content> attendre(Future<List<Content>> f) throws InterruptedException {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("❌ Échec du retriever local", e.getCause());
+        }
+    }
+
+    public String statistiques() {
+        StringBuilder sb = new StringBuilder("⏱️ Récupération concurrente :");
+        for (Distant distant : distants) {
+            sb.append(String.format(" [%s appels=%d horsDélai=%d échecs=%d doublés=%d p95=%.0fms]",
+                    distant.nom, distant.appels.sum(), distant.horsDelai.sum(), distant.echecs.sum(),
+                    distant.couvertures.sum(), distant.latences.p95Nanos() / 1e6));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() {
+        executeur.shutdownNow();
+    }
+
+    private record Appel(CompletableFuture<List<Content>> resultat, long debut) {
+    }
+
+    /**
+     * Retriever distant avec son délai, son historique de latences et ses compteurs.
+     */
+    private static final class Distant {
+
+        private final String nom;
+        private final ContentRetriever retriever;
+        private final long delaiNanos;
+        private final boolean couverture;
+        private final Latences latences = new Latences();
+        private final LongAdder appels = new LongAdder();
+        private final LongAdder horsDelai = new LongAdder();
+        private final LongAdder echecs = new LongAdder();
+        private final LongAdder couvertures = new LongAdder();
+
+        private Distant(String nom, ContentRetriever retriever, Duration delai, boolean couverture) {
+            this.nom = nom;
+            this.retriever = retriever;
+            this.delaiNanos = delai.toNanos();
+            this.couverture = couverture;
+        }
+
+        private Appel lancer(Query query, ExecutorService executeur, List<Future<?>> taches) {
+            appels.increment();
+            long debut = System.nanoTime();
+            CompletableFuture<List<Content>> resultat = new CompletableFuture<>();
+            AtomicInteger enCours = new AtomicInteger(1);
+            taches.add(executeur.submit(() -> tenter(query, resultat, enCours, debut)));
+
+            long p95 = latences.p95Nanos();
+            if (couverture && p95 > 0 && p95 < delaiNanos) {
+                enCours.incrementAndGet();
+                taches.add(executeur.submit(() -> {
+                    try {
+                        resultat.get(p95, TimeUnit.NANOSECONDS);
+                        enCours.decrementAndGet();
+                    } catch (TimeoutException e) {
+                        couvertures.increment();
+                        tenter(query, resultat, enCours, debut);
+                    } catch (InterruptedException | ExecutionException e) {
+                        enCours.decrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            return new Appel(resultat, debut);
+        }
+
+        private Void tenter(Query query, CompletableFuture<List<Content>> resultat, AtomicInteger enCours, long debut) {
+            try {
+                List<Content> contenus = retriever.retrieve(query);
+                if (resultat.complete(contenus)) {
+                    latences.enregistrer(System.nanoTime() - debut);
+                }
+            } catch (RuntimeException e) {
+                // Un échec ne l'emporte que si aucune autre tentative n'est encore en cours
+                if (enCours.decrementAndGet() == 0) {
+                    resultat.completeExceptionally(e);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Dernières latences réussies, pour estimer le p95 qui déclenche le doublement.
+     */
+    private static final class Latences {
+
+        private static final int CAPACITE = 128;
+        private static final int MINIMUM = 20;
+
+        private final long[] valeurs = new long[CAPACITE];
+        private int nombre;
+        private int position;
+
+        synchronized void enregistrer(long nanos) {
+            valeurs[position] = nanos;
+            position = (position + 1) % CAPACITE;
+            nombre = Math.min(nombre + 1, CAPACITE);
+        }
+
+        synchronized long p95Nanos() {
+            if (nombre < MINIMUM) {
+                return 0;
+            }
+            long[] tri = Arrays.copyOf(valeurs, nombre);
+            Arrays.sort(tri);
+            return tri[(int) Math.ceil(0.95 * nombre) - 1];
+        }
+    }
+
+    public static class Builder {
+
+        private final List<ContentRetriever> locaux = new ArrayList<>();
+        private final List<Distant> distants = new ArrayList<>();
+        private Duration echeance = Duration.ofSeconds(3);
+
+        public Builder local(ContentRetriever retriever) {
+            locaux.add(retriever);
+            return this;
+        }
+
+        public Builder distant(String nom, ContentRetriever retriever, Duration delai) {
+            return distant(nom, retriever, delai, false);
+        }
+
+        /**
+         * @param couverture double l'appel s'il dépasse le p95 des 128 dernières latences (20 mesures minimum)
+         */
+        public Builder distant(String nom, ContentRetriever retriever, Duration delai, boolean couverture) {
+            distants.add(new Distant(nom, retriever, delai, couverture));
+            return this;
+        }
+
+        /**
+         * Échéance globale d'une requête, au-delà de laquelle les retrievers distants sont abandonnés.
+         */
+        public Builder echeance(Duration echeance) {
+            this.echeance = echeance;
+            return this;
+        }
+
+        public RecuperateurConcurrent build() {
+            if (locaux.isEmpty() && distants.isEmpty()) {
+                throw new IllegalStateException("❌ Au moins un retriever est obligatoire");
+            }
+            return new RecuperateurConcurrent(this);
+        }
+    }
+}
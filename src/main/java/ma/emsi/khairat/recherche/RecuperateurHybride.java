@@ -0,0 +1,217 @@
+package ma.emsi.khairat.recherche;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import ma.emsi.khairat.store.MagasinParcourable;
+import ma.emsi.khairat.store.TopK;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recherche hybride : l'index {@link IndexBm25} présélectionne les candidats, seuls ceux-ci sont
+ * comparés à l'embedding de la question, et les deux classements sont fusionnés par rang
+ * réciproque (RRF : {@code 1/(k + rang lexical) + 1/(k + rang dense)}).
+ *
+ * <p>Le {@code minScore} s'applique au score dense, comme pour {@code EmbeddingStoreContentRetriever}.
+ * Une question sans terme commun avec le corpus (ou dont aucun candidat ne passe le seuil) retombe
+ * sur la recherche dense complète du magasin. Les candidats sont re-notés par le magasin lui-même
+ * ({@link MagasinParcourable#similarites}) : aucune copie des vecteurs n'est gardée ici. L'index
+ * lexical est reconstruit quand la version du magasin change.</p>
+ */
+public class RecuperateurHybride implements ContentRetriever {
+
+    private final EmbeddingStore<TextSegment> magasin;
+    private final MagasinParcourable parcours;
+    private final EmbeddingModel embeddingModel;
+    private final int maxResults;
+    private final double minScore;
+    private final int candidats;
+    private final int constanteRrf;
+
+    private final LongAdder hybrides = new LongAdder();
+    private final LongAdder replis = new LongAdder();
+    private volatile Etat etat;
+
+    private RecuperateurHybride(Builder builder) {
+        this.magasin = builder.magasin;
+        this.parcours = (MagasinParcourable) builder.magasin;
+        this.embeddingModel = builder.embeddingModel;
+        this.maxResults = builder.maxResults;
+        this.minScore = builder.minScore;
+        this.candidats = builder.candidats;
+        this.constanteRrf = builder.constanteRrf;
+        this.etat = indexer();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        Etat courant = etatCourant();
+        Embedding requete = embeddingModel.embed(query.text()).content();
+        TopK lexicaux = courant.bm25().rechercher(query.text(), candidats);
+
+        // Re-notation dense des seuls candidats lexicaux ; le seuil porte sur le score dense
+        int[] documents = new int[lexicaux.taille()];
+        Arrays.setAll(documents, lexicaux::indice);
+        double[] cosinus = parcours.similarites(requete.vector(), documents);
+        List<Candidat> retenus = new ArrayList<>(documents.length);
+        for (int rang = 0; rang < documents.length; rang++) {
+            if (Double.isNaN(cosinus[rang])) continue;
+            double score = RelevanceScore.fromCosineSimilarity(cosinus[rang]);
+            if (score >= minScore) {
+                retenus.add(new Candidat(documents[rang], rang + 1, score));
+            }
+        }
+        // Magasin modifié pendant la re-notation : les numéros de documents ne sont plus fiables
+        if (retenus.isEmpty() || parcours.version() != courant.version()) {
+            replis.increment();
+            return rechercheDense(requete);
+        }
+        hybrides.increment();
+
+        retenus.sort(Comparator.comparingDouble(Candidat::dense).reversed());
+        double[] fusion = new double[retenus.size()];
+        for (int rangDense = 0; rangDense < retenus.size(); rangDense++) {
+            Candidat candidat = retenus.get(rangDense);
+            fusion[rangDense] = 1.0 / (constanteRrf + candidat.rangLexical()) + 1.0 / (constanteRrf + rangDense + 1);
+        }
+        Integer[] ordre = new Integer[retenus.size()];
+        Arrays.setAll(ordre, i -> i);
+        Arrays.sort(ordre, Comparator.comparingDouble((Integer i) -> fusion[i]).reversed());
+
+        List<Content> contenus = new ArrayList<>(Math.min(maxResults, ordre.length));
+        for (int i = 0; i < Math.min(maxResults, ordre.length); i++) {
+            Candidat candidat = retenus.get(ordre[i]);
+            contenus.add(Content.from(courant.segments()[candidat.document()], Map.of(
+                    ContentMetadata.SCORE, candidat.dense(),
+                    ContentMetadata.EMBEDDING_ID, courant.ids()[candidat.document()])));
+        }
+        return contenus;
+    }
+
+    private List<Content> rechercheDense(Embedding requete) {
+        List<EmbeddingMatch<TextSegment>> matches = magasin.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(requete)
+                .maxResults(maxResults)
+                .minScore(minScore)
+                .build()).matches();
+        List<Content> contenus = new ArrayList<>(matches.size());
+        for (EmbeddingMatch<TextSegment> match : matches) {
+            contenus.add(Content.from(match.embedded(), Map.of(
+                    ContentMetadata.SCORE, match.score(),
+                    ContentMetadata.EMBEDDING_ID, match.embeddingId())));
+        }
+        return contenus;
+    }
+
+    private Etat etatCourant() {
+        Etat courant = etat;
+        if (courant.version() != parcours.version()) {
+            synchronized (this) {
+                if (etat.version() != parcours.version()) {
+                    etat = indexer();
+                }
+                courant = etat;
+            }
+        }
+        return courant;
+    }
+
+    private Etat indexer() {
+        long version = parcours.version();
+        IndexBm25.Constructeur constructeur = IndexBm25.constructeur();
+        List<String> ids = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        parcours.pourChaque((id, embedding, segment) -> {
+            constructeur.ajouter(segment == null ? "" : segment.text());
+            ids.add(id);
+            segments.add(segment);
+        });
+        return new Etat(constructeur.construire(), ids.toArray(String[]::new), segments.toArray(TextSegment[]::new), version);
+    }
+
+    public String statistiques() {
+        Etat courant = etat;
+        return String.format("🔎 Recherche hybride : %d questions par BM25 + rescoring, %d replis denses (%d termes, %d Ko de postings)",
+                hybrides.sum(), replis.sum(), courant.bm25().termes(), courant.bm25().octetsPostings() / 1024);
+    }
+
+    private record Etat(IndexBm25 bm25, String[] ids, TextSegment[] segments, long version) {
+    }
+
+    private record Candidat(int document, int rangLexical, double dense) {
+    }
+
+    public static class Builder {
+
+        private EmbeddingStore<TextSegment> magasin;
+        private EmbeddingModel embeddingModel;
+        private int maxResults = 3;
+        private double minScore = 0;
+        private int candidats = 50;
+        private int constanteRrf = 60;
+
+        public Builder embeddingStore(EmbeddingStore<TextSegment> magasin) {
+            this.magasin = magasin;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder maxResults(int maxResults) {
+            this.maxResults = maxResults;
+            return this;
+        }
+
+        public Builder minScore(double minScore) {
+            this.minScore = minScore;
+            return this;
+        }
+
+        /**
+         * Nombre de candidats lexicaux re-notés avec l'embedding (50 par défaut).
+         */
+        public Builder candidats(int candidats) {
+            this.candidats = candidats;
+            return this;
+        }
+
+        public Builder constanteRrf(int constanteRrf) {
+            this.constanteRrf = constanteRrf;
+            return this;
+        }
+
+        public RecuperateurHybride build() {
+            if (embeddingModel == null || magasin == null) {
+                throw new IllegalStateException("❌ embeddingModel et embeddingStore sont obligatoires");
+            }
+            if (!(magasin instanceof MagasinParcourable)) {
+                throw new IllegalArgumentException("❌ Le magasin doit être parcourable (MagasinParcourable)");
+            }
+            if (maxResults < 1 || candidats < maxResults) {
+                throw new IllegalArgumentException("❌ Il faut 1 ≤ maxResults ≤ candidats");
+            }
+            return new RecuperateurHybride(this);
+        }
+    }
+}
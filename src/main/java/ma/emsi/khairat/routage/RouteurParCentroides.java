@@ -0,0 +1,251 @@
+package ma.emsi.khairat.routage;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.khairat.store.MagasinParcourable;
+import ma.emsi.khairat.store.Similarite;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link QueryRouter} local : chaque source est résumée par quelques prototypes (k-means sphérique
+ * sur les embeddings déjà présents dans son magasin) et la question part vers la source dont un
+ * prototype est le plus proche en cosinus.
+ *
+ * <p>Les prototypes d'une source sont recalculés au premier routage qui suit une modification de
+ * son magasin (sa {@link MagasinParcourable#version()} a changé) : un index remplacé à chaud ou
+ * complété par ingestion incrémentale est pris en compte sans reconstruire le routeur.</p>
+ *
+ * <p>Si l'écart entre la meilleure et la deuxième source est sous la marge, la décision est jugée
+ * ambiguë : elle est déléguée au routeur de repli (typiquement un {@code LanguageModelQueryRouter}),
+ * ou, sans repli, toutes les sources sont interrogées.</p>
+ */
+public class RouteurParCentroides implements QueryRouter {
+
+    private final EmbeddingModel embeddingModel;
+    private final Map<ContentRetriever, Source> sources;
+    private final int prototypesParSource;
+    private final double marge;
+    private final QueryRouter repli;
+    private final LongAdder decisionsLocales = new LongAdder();
+    private final LongAdder replis = new LongAdder();
+
+    private RouteurParCentroides(Builder builder) {
+        this.embeddingModel = builder.embeddingModel;
+        this.prototypesParSource = builder.prototypesParSource;
+        this.marge = builder.marge;
+        this.repli = builder.repli;
+        this.sources = new LinkedHashMap<>();
+        builder.sources.forEach((retriever, magasin) -> {
+            Source source = new Source(magasin);
+            source.etat = source.calculer(prototypesParSource);
+            sources.put(retriever, source);
+        });
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        float[] question = unitaire(embeddingModel.embed(query.text()).content().vector());
+
+        ContentRetriever meilleure = null;
+        double scoreMeilleure = Double.NEGATIVE_INFINITY;
+        double scoreDeuxieme = Double.NEGATIVE_INFINITY;
+        for (Map.Entry<ContentRetriever, Source> source : sources.entrySet()) {
+            double score = Double.NEGATIVE_INFINITY;
+            for (float[] prototype : source.getValue().prototypes(prototypesParSource)) {
+                score = Math.max(score, Similarite.produitScalaire(question, 0, prototype, 0, prototype.length));
+            }
+            if (score > scoreMeilleure) {
+                scoreDeuxieme = scoreMeilleure;
+                scoreMeilleure = score;
+                meilleure = source.getKey();
+            } else if (score > scoreDeuxieme) {
+                scoreDeuxieme = score;
+            }
+        }
+
+        if (meilleure == null || scoreMeilleure - scoreDeuxieme >= marge) {
+            decisionsLocales.increment();
+            return meilleure == null ? List.of() : List.of(meilleure);
+        }
+        replis.increment();
+        return repli != null ? repli.route(query) : List.copyOf(sources.keySet());
+    }
+
+    public long decisionsLocales() {
+        return decisionsLocales.sum();
+    }
+
+    public long replis() {
+        return replis.sum();
+    }
+
+    public String statistiques() {
+        long total = decisionsLocales() + replis();
+        return String.format("🧭 Routage local : %d décisions locales, %d replis (%.1f %%)",
+                decisionsLocales(), replis(), total == 0 ? 0.0 : 100.0 * replis() / total);
+    }
+
+    /**
+     * K-means sphérique : vecteurs normalisés, affectation au prototype de plus grand cosinus,
+     * prototypes renormalisés après chaque itération. Initialisation déterministe pour des
+     * décisions reproductibles d'un lancement à l'autre.
+     */
+    private static float[][] calculerPrototypes(MagasinParcourable magasin, int nombre) {
+        List<float[]> vecteurs = new ArrayList<>(magasin.taille());
+        magasin.pourChaque((id, embedding, segment) -> vecteurs.add(unitaire(embedding.vector())));
+        if (vecteurs.isEmpty()) {
+            return new float[0][];
+        }
+        int k = Math.min(nombre, vecteurs.size());
+        int dimension = vecteurs.get(0).length;
+        Random aleatoire = new Random(42);
+        float[][] centres = new float[k][];
+        for (int c = 0; c < k; c++) {
+            centres[c] = vecteurs.get(aleatoire.nextInt(vecteurs.size())).clone();
+        }
+
+        int[] affectations = new int[vecteurs.size()];
+        for (int iteration = 0; iteration < 20; iteration++) {
+            boolean change = false;
+            for (int i = 0; i < vecteurs.size(); i++) {
+                int plusProche = 0;
+                double meilleur = Double.NEGATIVE_INFINITY;
+                for (int c = 0; c < k; c++) {
+                    double score = Similarite.produitScalaire(vecteurs.get(i), 0, centres[c], 0, dimension);
+                    if (score > meilleur) {
+                        meilleur = score;
+                        plusProche = c;
+                    }
+                }
+                change |= affectations[i] != plusProche;
+                affectations[i] = plusProche;
+            }
+            if (!change && iteration > 0) break;
+
+            float[][] sommes = new float[k][dimension];
+            for (int i = 0; i < vecteurs.size(); i++) {
+                float[] vecteur = vecteurs.get(i);
+                float[] somme = sommes[affectations[i]];
+                for (int d = 0; d < dimension; d++) {
+                    somme[d] += vecteur[d];
+                }
+            }
+            for (int c = 0; c < k; c++) {
+                if (Similarite.norme(sommes[c]) > 0) {
+                    centres[c] = unitaire(sommes[c]);
+                }
+            }
+        }
+        return centres;
+    }
+
+    /**
+     * Magasin d'une source et prototypes calculés pour une version donnée de son contenu.
+     */
+    private static final class Source {
+
+        private final MagasinParcourable magasin;
+        private volatile Etat etat;
+
+        private Source(MagasinParcourable magasin) {
+            this.magasin = magasin;
+        }
+
+        private float[][] prototypes(int nombre) {
+            Etat courant = etat;
+            if (courant.version() != magasin.version()) {
+                synchronized (this) {
+                    if (etat.version() != magasin.version()) {
+                        etat = calculer(nombre);
+                    }
+                    courant = etat;
+                }
+            }
+            return courant.centres();
+        }
+
+        // Version lue avant le parcours : une écriture concurrente provoquera un nouveau calcul
+        private Etat calculer(int nombre) {
+            long version = magasin.version();
+            return new Etat(calculerPrototypes(magasin, nombre), version);
+        }
+    }
+
+    private record Etat(float[][] centres, long version) {
+    }
+
+    private static float[] unitaire(float[] vecteur) {
+        float norme = Similarite.norme(vecteur);
+        float[] resultat = new float[vecteur.length];
+        for (int d = 0; d < vecteur.length; d++) {
+            resultat[d] = norme == 0 ? 0 : vecteur[d] / norme;
+        }
+        return resultat;
+    }
+
+    public static class Builder {
+
+        private EmbeddingModel embeddingModel;
+        private final Map<ContentRetriever, MagasinParcourable> sources = new LinkedHashMap<>();
+        private int prototypesParSource = 4;
+        private double marge = 0.05;
+        private QueryRouter repli;
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        /**
+         * Ajoute une source ; son magasin doit pouvoir être parcouru pour en extraire les prototypes.
+         */
+        public Builder source(ContentRetriever retriever, EmbeddingStore<TextSegment> magasin) {
+            if (!(magasin instanceof MagasinParcourable parcourable)) {
+                throw new IllegalArgumentException("❌ Le magasin " + magasin.getClass().getSimpleName()
+                        + " ne permet pas de relire ses embeddings");
+            }
+            sources.put(retriever, parcourable);
+            return this;
+        }
+
+        public Builder prototypesParSource(int prototypesParSource) {
+            this.prototypesParSource = prototypesParSource;
+            return this;
+        }
+
+        public Builder marge(double marge) {
+            this.marge = marge;
+            return this;
+        }
+
+        public Builder repli(QueryRouter repli) {
+            this.repli = repli;
+            return this;
+        }
+
+        public RouteurParCentroides build() {
+            if (embeddingModel == null || sources.isEmpty()) {
+                throw new IllegalStateException("❌ embeddingModel et au moins une source sont obligatoires");
+            }
+            if (prototypesParSource < 1) {
+                throw new IllegalArgumentException("❌ Il faut au moins un prototype par source");
+            }
+            return new RouteurParCentroides(this);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package ma.emsi.khairat.routage;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import ma.emsi.khairat.store.Similarite;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Porte « RAG ou pas » sans appel au LLM, à partir de signaux locaux :
+ * <ul>
+ *     <li>le score du meilleur segment du magasin (même échelle que {@code minScore}) ;</li>
+ *     <li>la proximité avec des exemples de bavardage (« bonjour », « merci »…) déjà vectorisés ;</li>
+ *     <li>la longueur de la question en mots.</li>
+ * </ul>
+ * Une salutation ou une question hors sujet ne coûte donc aucun appel réseau supplémentaire.
+ */
+public class RouteurPertinence implements QueryRouter {
+
+    public enum Decision {
+        RAG, BAVARDAGE, HORS_SUJET, TROP_COURTE
+    }
+
+    private static final List<String> EXEMPLES_BAVARDAGE = List.of(
+            "bonjour", "bonsoir", "salut", "coucou", "hello",
+            "ça va ?", "comment vas-tu ?", "comment ça va ?",
+            "merci", "merci beaucoup", "d'accord", "ok", "super",
+            "au revoir", "bonne journée", "à bientôt",
+            "qui es-tu ?", "tu es qui ?");
+
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final List<ContentRetriever> retrievers;
+    private final List<float[]> bavardage;
+    private final double seuilBavardage;
+    private final double seuilPertinence;
+    private final double seuilPertinenceForte;
+    private final int longueurMinimale;
+    private final Map<Decision, LongAdder> compteurs = new EnumMap<>(Decision.class);
+
+    private RouteurPertinence(Builder builder) {
+        this.embeddingModel = builder.embeddingModel;
+        this.embeddingStore = builder.embeddingStore;
+        this.retrievers = List.copyOf(builder.retrievers);
+        this.seuilBavardage = builder.seuilBavardage;
+        this.seuilPertinence = builder.seuilPertinence;
+        this.seuilPertinenceForte = builder.seuilPertinenceForte;
+        this.longueurMinimale = builder.longueurMinimale;
+        this.bavardage = new ArrayList<>();
+        for (Embedding exemple : embeddingModel.embedAll(builder.exemplesBavardage.stream().map(TextSegment::from).toList()).content()) {
+            bavardage.add(exemple.vector());
+        }
+        for (Decision decision : Decision.values()) {
+            compteurs.put(decision, new LongAdder());
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        Decision decision = decider(query.text());
+        compteurs.get(decision).increment();
+        return decision == Decision.RAG ? retrievers : List.of();
+    }
+
+    public Decision decider(String question) {
+        Embedding embedding = embeddingModel.embed(question).content();
+        float[] vecteur = embedding.vector();
+        float norme = Similarite.norme(vecteur);
+
+        double scoreBavardage = 0;
+        for (float[] exemple : bavardage) {
+            double cosinus = Similarite.cosinus(Similarite.produitScalaire(vecteur, 0, exemple, 0, vecteur.length),
+                    norme, Similarite.norme(exemple));
+            scoreBavardage = Math.max(scoreBavardage, RelevanceScore.fromCosineSimilarity(cosinus));
+        }
+
+        List<EmbeddingMatch<TextSegment>> meilleur = embeddingStore.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(embedding)
+                .maxResults(1)
+                .minScore(0.0)
+                .build()).matches();
+        double scoreMagasin = meilleur.isEmpty() ? 0 : meilleur.get(0).score();
+
+        if (scoreBavardage >= seuilBavardage && scoreBavardage > scoreMagasin) {
+            return Decision.BAVARDAGE;
+        }
+        if (scoreMagasin < seuilPertinence) {
+            return Decision.HORS_SUJET;
+        }
+        if (question.trim().split("\\s+").length < longueurMinimale && scoreMagasin < seuilPertinenceForte) {
+            return Decision.TROP_COURTE;
+        }
+        return Decision.RAG;
+    }
+
+    public long decisions(Decision decision) {
+        return compteurs.get(decision).sum();
+    }
+
+    public String statistiques() {
+        StringBuilder sb = new StringBuilder("🚦 Porte RAG :");
+        for (Decision decision : Decision.values()) {
+            sb.append(' ').append(decision).append('=').append(decisions(decision));
+        }
+        return sb.toString();
+    }
+
+    public static class Builder {
+
+        private EmbeddingModel embeddingModel;
+        private EmbeddingStore<TextSegment> embeddingStore;
+        private List<ContentRetriever> retrievers = List.of();
+        private List<String> exemplesBavardage = EXEMPLES_BAVARDAGE;
+        private double seuilBavardage = 0.85;
+        private double seuilPertinence = 0.745;
+        private double seuilPertinenceForte = 0.76;
+        private int longueurMinimale = 3;
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder embeddingStore(EmbeddingStore<TextSegment> embeddingStore) {
+            this.embeddingStore = embeddingStore;
+            return this;
+        }
+
+        public Builder retrievers(ContentRetriever... retrievers) {
+            this.retrievers = List.of(retrievers);
+            return this;
+        }
+
+        public Builder exemplesBavardage(List<String> exemplesBavardage) {
+            this.exemplesBavardage = exemplesBavardage;
+            return this;
+        }
+
+        /**
+         * Score de pertinence (échelle 0..1 de {@code minScore}) à partir duquel un message est du bavardage.
+         */
+        public Builder seuilBavardage(double seuilBavardage) {
+            this.seuilBavardage = seuilBavardage;
+            return this;
+        }
+
+        /**
+         * Score minimal du meilleur segment pour déclencher le RAG.
+         */
+        public Builder seuilPertinence(double seuilPertinence) {
+            this.seuilPertinence = seuilPertinence;
+            return this;
+        }
+
+        /**
+         * Score du meilleur segment au-delà duquel une question courte déclenche quand même le RAG.
+         */
+        public Builder seuilPertinenceForte(double seuilPertinenceForte) {
+            this.seuilPertinenceForte = seuilPertinenceForte;
+            return this;
+        }
+
+        public Builder longueurMinimale(int longueurMinimale) {
+            this.longueurMinimale = longueurMinimale;
+            return this;
+        }
+
+        public RouteurPertinence build() {
+            if (embeddingModel == null || embeddingStore == null || retrievers.isEmpty()) {
+                throw new IllegalStateException("❌ embeddingModel, embeddingStore et retrievers sont obligatoires");
+            }
+            return new RouteurPertinence(this);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package ma.emsi.khairat.routage;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Décorateur de {@link QueryRouter} qui lance la récupération de tous les retrievers candidats en
+ * même temps que la décision du routeur, au lieu d'attendre cette décision (appel au LLM du repli,
+ * porte de pertinence…) pour commencer à chercher.
+ *
+ * <p>Les retrievers choisis par le routeur sont remplacés par le résultat déjà en cours de leur
+ * recherche ; les autres recherches sont annulées (interruption du thread virtuel) ou, si elles
+ * sont terminées, leur résultat est jeté. Quand le routeur refuse le RAG, tout est annulé.</p>
+ *
+ * <p>Si un {@code embeddingModel} (le cache des questions partagé avec le routeur) est donné, la
+ * question y est embeddée une fois avant la fourche : le routeur et les retrievers le trouvent
+ * ensuite en cache au lieu de calculer chacun le même embedding en parallèle.</p>
+ *
+ * <p>Le temps gagné est, pour chaque résultat gardé, la part de sa recherche déjà écoulée quand
+ * l'augmentor l'a réclamé ; le calcul gaspillé est la durée des recherches jetées ou annulées
+ * (jusqu'à leur arrêt effectif). Les deux sont cumulés dans les compteurs
+ * {@code speculation.gagne_us} et {@code speculation.gaspille_us} du {@link RegistreMetriques}.</p>
+ */
+public class RouteurSpeculatif implements QueryRouter, AutoCloseable {
+
+    private final QueryRouter routeur;
+    private final List<ContentRetriever> candidats;
+    private final EmbeddingModel embeddingModel;
+    private final ExecutorService executeur = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final LongAdder requetes = new LongAdder();
+    private final LongAdder sansRag = new LongAdder();
+    private final LongAdder gardes = new LongAdder();
+    private final LongAdder jetes = new LongAdder();
+    private final LongAdder annules = new LongAdder();
+    private final LongAdder gagneNanos = new LongAdder();
+    private final LongAdder gaspilleNanos = new LongAdder();
+
+    private RouteurSpeculatif(Builder builder) {
+        this.routeur = builder.routeur;
+        this.candidats = List.copyOf(builder.candidats);
+        this.embeddingModel = builder.embeddingModel;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        if (embeddingModel != null) {
+            embeddingModel.embed(query.text());
+        }
+        Map<ContentRetriever, Speculation> speculations = new LinkedHashMap<>();
+        for (ContentRetriever candidat : candidats) {
+            Speculation speculation = new Speculation();
+            speculation.resultat = executeur.submit(() -> speculation.executer(candidat, query));
+            speculations.put(candidat, speculation);
+        }
+
+        Collection<ContentRetriever> choix;
+        try {
+            choix = routeur.route(query);
+        } catch (RuntimeException e) {
+            speculations.values().forEach(this::abandonner);
+            throw e;
+        }
+        requetes.increment();
+        if (choix.isEmpty()) {
+            sansRag.increment();
+        }
+
+        List<ContentRetriever> retenus = new ArrayList<>(choix.size());
+        for (ContentRetriever retriever : choix) {
+            Speculation speculation = speculations.remove(retriever);
+            // Un retriever que le routeur ajoute hors des candidats est simplement interrogé après coup
+            retenus.add(speculation == null ? retriever : new Resultat(speculation));
+        }
+        speculations.values().forEach(this::abandonner);
+        return retenus;
+    }
+
+    private void abandonner(Speculation speculation) {
+        speculation.abandonnee = true;
+        if (speculation.resultat.isDone()) {
+            jetes.increment();
+        } else {
+            annules.increment();
+            speculation.resultat.cancel(true);
+        }
+        // Si la recherche tourne encore, sa durée sera comptée à son arrêt
+        if (speculation.fin != 0) {
+            speculation.compterGaspillage();
+        }
+    }
+
+    public String statistiques() {
+        long rag = requetes.sum() - sansRag.sum();
+        return String.format("🔮 Récupération spéculative : %d requêtes (%d sans RAG), %d résultats gardés, %d jetés, %d annulés"
+                        + " | temps gagné %.0f ms (%.1f ms par requête RAG), calcul gaspillé %.0f ms",
+                requetes.sum(), sansRag.sum(), gardes.sum(), jetes.sum(), annules.sum(),
+                gagneNanos.sum() / 1e6, rag == 0 ? 0.0 : gagneNanos.sum() / 1e6 / rag, gaspilleNanos.sum() / 1e6);
+    }
+
+    @Override
+    public void close() {
+        executeur.shutdownNow();
+    }
+
+    /**
+     * Une recherche lancée avant la décision ; {@code debut} et {@code fin} restent à 0 tant qu'elle
+     * n'a pas commencé (ou fini).
+     */
+    private final class Speculation {
+
+        private Future<List<Content>> resultat;
+        private volatile long debut;
+        private volatile long fin;
+        private volatile boolean abandonnee;
+        private final AtomicBoolean comptee = new AtomicBoolean();
+
+        private List<Content> executer(ContentRetriever retriever, Query query) {
+            debut = System.nanoTime();
+            try {
+                return retriever.retrieve(query);
+            } finally {
+                fin = System.nanoTime();
+                if (abandonnee) {
+                    compterGaspillage();
+                }
+            }
+        }
+
+        private void compterGaspillage() {
+            if (comptee.compareAndSet(false, true)) {
+                long nanos = fin - debut;
+                gaspilleNanos.add(nanos);
+                RegistreMetriques.global().compter("speculation.gaspille_us", nanos / 1_000);
+            }
+        }
+    }
+
+    /**
+     * Tient la place du retriever choisi auprès de l'augmentor : rend le résultat de la recherche spéculative.
+     */
+    private final class Resultat implements ContentRetriever {
+
+        private final Speculation speculation;
+
+        private Resultat(Speculation speculation) {
+            this.speculation = speculation;
+        }
+
+        @Override
+        public List<Content> retrieve(Query query) {
+            long debutAttente = System.nanoTime();
+            List<Content> contenus;
+            try {
+                contenus = speculation.resultat.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                speculation.resultat.cancel(true);
+                return List.of();
+            } catch (CancellationException e) {
+                return List.of();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new IllegalStateException("❌ Échec de la récupération spéculative", e.getCause());
+            }
+            long attente = System.nanoTime() - debutAttente;
+            long gagne = Math.max(0, (speculation.fin - speculation.debut) - attente);
+            gardes.increment();
+            gagneNanos.add(gagne);
+            RegistreMetriques.global().compter("speculation.gagne_us", gagne / 1_000);
+            return contenus;
+        }
+    }
+
+    public static class Builder {
+
+        private QueryRouter routeur;
+        private final List<ContentRetriever> candidats = new ArrayList<>();
+        private EmbeddingModel embeddingModel;
+
+        public Builder routeur(QueryRouter routeur) {
+            this.routeur = routeur;
+            return this;
+        }
+
+        /**
+         * Retrievers dont la recherche démarre avant la décision du routeur (recherches locales de préférence).
+         */
+        public Builder candidats(ContentRetriever... candidats) {
+            this.candidats.addAll(List.of(candidats));
+            return this;
+        }
+
+        /**
+         * Modèle (en cache) par lequel passent aussi le routeur et les retrievers.
+         */
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public RouteurSpeculatif build() {
+            if (routeur == null) {
+                throw new IllegalStateException("❌ routeur est obligatoire");
+            }
+            if (candidats.isEmpty()) {
+                throw new IllegalStateException("❌ Au moins un retriever candidat est obligatoire");
+            }
+            return new RouteurSpeculatif(this);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package ma.emsi.khairat.serveur;
+
+import dev.langchain4j.service.MemoryId;
+import dev.langchain4j.service.TokenStream;
+import dev.langchain4j.service.UserMessage;
+import dev.langchain4j.service.memory.ChatMemoryAccess;
+
+/**
+ * Assistant partagé par toutes les sessions : la mémoire est choisie par l'identifiant de session.
+ */
+public interface AssistantMultiSession extends ChatMemoryAccess {
+
+    String chat(@MemoryId String session, @UserMessage String message);
+
+    TokenStream chatFlux(@MemoryId String session, @UserMessage String message);
+}
@@ -0,0 +1,210 @@
+package ma.emsi.khairat.serveur;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.ModelProvider;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.output.FinishReason;
+import dev.langchain4j.model.output.TokenUsage;
+import ma.emsi.khairat.memoire.EstimateurJetonsApproche;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Modèle de chat local qui imite Gemini sans réseau : délai avant le premier jeton (log-normal),
+ * puis un délai fixe entre jetons. La réponse reprend le début de la question et indique si un
+ * contexte RAG a été injecté, ce qui suffit pour exercer serveur, mémoire et caches hors ligne.
+ * Un taux d'échec fait échouer une partie des appels après le délai du premier jeton, comme une
+ * erreur 503 renvoyée par l'API. Les jetons consommés sont estimés. Le streaming appelle le handler
+ * sur le thread appelant.
+ */
+public class ModeleChatSimule implements ChatModel, StreamingChatModel {
+
+    private static final EstimateurJetonsApproche ESTIMATEUR = new EstimateurJetonsApproche();
+
+    private final long premierJetonNanos;
+    private final double dispersion;
+    private final long entreJetonsNanos;
+    private final int nombreJetons;
+    private final double tauxEchec;
+    private final LongAdder appels = new LongAdder();
+
+    private ModeleChatSimule(Builder builder) {
+        this.premierJetonNanos = builder.premierJeton.toNanos();
+        this.dispersion = builder.dispersion;
+        this.entreJetonsNanos = builder.entreJetons.toNanos();
+        this.nombreJetons = builder.nombreJetons;
+        this.tauxEchec = builder.tauxEchec;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public ChatResponse doChat(ChatRequest chatRequest) {
+        List<String> jetons = jetons(chatRequest);
+        attendre(premierJeton());
+        echouerPeutEtre();
+        attendre(entreJetonsNanos * (jetons.size() - 1));
+        return reponse(chatRequest, jetons);
+    }
+
+    @Override
+    public void doChat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        List<String> jetons = jetons(chatRequest);
+        try {
+            attendre(premierJeton());
+            echouerPeutEtre();
+            for (int i = 0; i < jetons.size(); i++) {
+                if (i > 0) {
+                    attendre(entreJetonsNanos);
+                }
+                handler.onPartialResponse(jetons.get(i));
+            }
+        } catch (RuntimeException e) {
+            handler.onError(e);
+            return;
+        }
+        handler.onCompleteResponse(reponse(chatRequest, jetons));
+    }
+
+    private List<String> jetons(ChatRequest chatRequest) {
+        appels.increment();
+        String question = "";
+        boolean contexte = false;
+        for (ChatMessage message : chatRequest.messages()) {
+            if (message instanceof UserMessage u && u.hasSingleText()) {
+                question = u.singleText();
+            }
+        }
+        int marqueur = question.indexOf("\n\nAnswer using the following information:\n");
+        if (marqueur >= 0) {
+            question = question.substring(0, marqueur);
+            contexte = true;
+        }
+        String[] mots = ("Réponse simulée " + (contexte ? "avec" : "sans") + " contexte à : " + question).split(" ");
+        String[] jetons = new String[nombreJetons];
+        for (int i = 0; i < nombreJetons; i++) {
+            jetons[i] = (i == 0 ? "" : " ") + mots[i % mots.length];
+        }
+        return List.of(jetons);
+    }
+
+    private long premierJeton() {
+        return (long) (premierJetonNanos * Math.exp(dispersion * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    private void echouerPeutEtre() {
+        if (ThreadLocalRandom.current().nextDouble() < tauxEchec) {
+            throw new IllegalStateException("❌ Échec simulé du modèle (503)");
+        }
+    }
+
+    private static void attendre(long nanos) {
+        try {
+            Thread.sleep(Duration.ofNanos(nanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("❌ Génération simulée interrompue", e);
+        }
+    }
+
+    private static ChatResponse reponse(ChatRequest chatRequest, List<String> jetons) {
+        return ChatResponse.builder()
+                .aiMessage(AiMessage.from(String.join("", jetons)))
+                .modelName("simule")
+                .tokenUsage(new TokenUsage(ESTIMATEUR.estimateTokenCountInMessages(chatRequest.messages()), jetons.size()))
+                .finishReason(FinishReason.STOP)
+                .build();
+    }
+
+    public long appels() {
+        return appels.sum();
+    }
+
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return ChatRequestParameters.builder().modelName("simule").build();
+    }
+
+    @Override
+    public List<ChatModelListener> listeners() {
+        return List.of();
+    }
+
+    @Override
+    public ModelProvider provider() {
+        return ModelProvider.OTHER;
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return Set.of();
+    }
+
+    public static class Builder {
+
+        private Duration premierJeton = Duration.ofMillis(400);
+        private double dispersion = 0.3;
+        private Duration entreJetons = Duration.ofMillis(20);
+        private int nombreJetons = 40;
+        private double tauxEchec;
+
+        /**
+         * Médiane du délai avant le premier jeton.
+         */
+        public Builder premierJeton(Duration premierJeton) {
+            this.premierJeton = premierJeton;
+            return this;
+        }
+
+        /**
+         * Écart-type du logarithme du délai avant le premier jeton (0 : délai constant).
+         */
+        public Builder dispersion(double dispersion) {
+            this.dispersion = dispersion;
+            return this;
+        }
+
+        public Builder entreJetons(Duration entreJetons) {
+            this.entreJetons = entreJetons;
+            return this;
+        }
+
+        public Builder nombreJetons(int nombreJetons) {
+            this.nombreJetons = nombreJetons;
+            return this;
+        }
+
+        /**
+         * Proportion d'appels qui échouent (entre 0 et 1).
+         */
+        public Builder tauxEchec(double tauxEchec) {
+            this.tauxEchec = tauxEchec;
+            return this;
+        }
+
+        public ModeleChatSimule build() {
+            if (nombreJetons < 1) {
+                throw new IllegalArgumentException("❌ Il faut au moins un jeton");
+            }
+            if (tauxEchec < 0 || tauxEchec > 1) {
+                throw new IllegalArgumentException("❌ Le taux d'échec doit être compris entre 0 et 1");
+            }
+            return new ModeleChatSimule(this);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package ma.emsi.khairat.serveur;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiStreamingChatModel;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.content.injector.DefaultContentInjector;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.query.router.DefaultQueryRouter;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.khairat.cache.CacheEmbeddingModel;
+import ma.emsi.khairat.cache.CacheReponses;
+import ma.emsi.khairat.demarrage.RegistreComposants;
+import ma.emsi.khairat.embedding.EmbeddingParLots;
+import ma.emsi.khairat.embedding.EncodeurMiniLmParLots;
+import ma.emsi.khairat.memoire.MagasinMemoireFichiers;
+import ma.emsi.khairat.memoire.MemoiresBornees;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+
+/**
+ * Mode serveur : un seul assistant RAG partagé par tous les utilisateurs, une mémoire par session.
+ *
+ * <ul>
+ *     <li>{@code POST /chat} : la question dans le corps, la réponse complète en retour ;</li>
+ *     <li>{@code POST /chat/flux} : la réponse est envoyée jeton par jeton (réponse HTTP chunked) ;</li>
+ *     <li>{@code GET /stats} : jalons du démarrage, statistiques des sessions, des caches et des étapes ;</li>
+ *     <li>{@code GET /metriques} : latences par étape et compteurs de jetons au format texte de Prometheus.</li>
+ * </ul>
+ * La session est lue dans l'en-tête {@code X-Session} ou le paramètre {@code ?session=} ; sans
+ * session, un identifiant est créé et renvoyé dans {@code X-Session}. Chaque requête est traitée
+ * sur son propre thread virtuel. {@code -Drag.chat.simule=true} remplace Gemini par
+ * {@link ModeleChatSimule}, {@code -Drag.serveur.port} change le port (8080).
+ */
+public class ServeurRag {
+
+    public static void main(String[] args) throws IOException {
+        // Composants partagés par toutes les sessions
+        RegistreComposants composants = RegistreComposants.global();
+        EmbeddingModel embeddingModel = composants.embeddingModel();
+        Path path = Paths.get("src/main/resources/rag-2.pdf");
+        EmbeddingStore<TextSegment> store = composants.magasin(path, 300, 30);
+
+        // Histogrammes par étape et événements JFR, exposés sur /metriques
+        RegistreMetriques metriques = RegistreMetriques.global();
+
+        // Questions concurrentes regroupées en lots, une seule inférence ONNX par lot
+        EmbeddingParLots modeleParLots = EmbeddingParLots.builder()
+                .embeddingModel(new EncodeurMiniLmParLots(embeddingModel))
+                .build();
+        // Chauffe de la session ONNX par lots et du parcours du magasin avant d'accepter des requêtes
+        composants.prechauffer(modeleParLots, store);
+
+        CacheEmbeddingModel modeleRequetes = CacheEmbeddingModel.builder()
+                .embeddingModel(metriques.embeddingModel(modeleParLots))
+                .fichierDebordement(Paths.get(".index", "requetes.cache"))
+                .build();
+
+        EmbeddingStoreContentRetriever retriever = EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(store)
+                .embeddingModel(modeleRequetes)
+                .maxResults(2)
+                .minScore(0.5)
+                .build();
+
+        ChatModel model;
+        StreamingChatModel modeleFlux;
+        if (Boolean.getBoolean("rag.chat.simule")) {
+            ModeleChatSimule simule = ModeleChatSimule.builder().build();
+            model = simule;
+            modeleFlux = simule;
+        } else {
+            String GEMINI_KEY = System.getenv("GEMINI_KEY");
+            if (GEMINI_KEY == null) throw new IllegalStateException("❌ GEMINI_KEY manquant !");
+            model = GoogleAiGeminiChatModel.builder()
+                    .apiKey(GEMINI_KEY)
+                    .modelName("gemini-2.5-flash")
+                    .temperature(0.3)
+                    .build();
+            modeleFlux = GoogleAiGeminiStreamingChatModel.builder()
+                    .apiKey(GEMINI_KEY)
+                    .modelName("gemini-2.5-flash")
+                    .temperature(0.3)
+                    .build();
+        }
+
+        CacheReponses modeleEnCache = CacheReponses.builder()
+                .chatModel(metriques.chatModel(model))
+                .streamingChatModel(metriques.streamingChatModel(modeleFlux))
+                .embeddingModel(modeleRequetes)
+                .magasin(store)
+                .build();
+
+        // Mémoire bornée par session (jetons), par l'ensemble des sessions (octets) et dans le temps (TTL) ;
+        // -Drag.memoire.dossier=... la rend persistante (écriture différée)
+        String dossierMemoires = System.getProperty("rag.memoire.dossier");
+        MemoiresBornees sessions = MemoiresBornees.builder()
+                .budgetJetons(4000)
+                .plafondOctets(256L * 1024 * 1024)
+                .ttlInactivite(Duration.ofMinutes(30))
+                .chatMemoryStore(dossierMemoires == null ? null : new MagasinMemoireFichiers(Paths.get(dossierMemoires)))
+                .build();
+
+        AssistantMultiSession assistant = AiServices.builder(AssistantMultiSession.class)
+                .chatModel(modeleEnCache)
+                .streamingChatModel(modeleEnCache)
+                .chatMemoryProvider(sessions)
+                .retrievalAugmentor(DefaultRetrievalAugmentor.builder()
+                        .queryRouter(metriques.router(new DefaultQueryRouter(retriever)))
+                        .contentInjector(metriques.contentInjector(new DefaultContentInjector()))
+                        .build())
+                .build();
+        sessions.surExpulsion(assistant::evictChatMemory);
+
+        int port = Integer.getInteger("rag.serveur.port", 8080);
+        HttpServer serveur = HttpServer.create(new InetSocketAddress(port), 0);
+        serveur.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+
+        serveur.createContext("/chat", echange -> traiter(echange, () -> {
+            if (exigerPost(echange)) return;
+            String question = lireCorps(echange);
+            String reponse = assistant.chat(session(echange), question);
+            envoyer(echange, 200, reponse);
+            composants.premiereReponse();
+        }));
+
+        serveur.createContext("/chat/flux", echange -> traiter(echange, () -> {
+            if (exigerPost(echange)) return;
+            String question = lireCorps(echange);
+            String session = session(echange);
+            echange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            // Longueur 0 : réponse chunked, chaque fragment part dès qu'il est écrit
+            echange.sendResponseHeaders(200, 0);
+            OutputStream sortie = echange.getResponseBody();
+            CompletableFuture<Void> fin = new CompletableFuture<>();
+            assistant.chatFlux(session, question)
+                    .onPartialResponse(fragment -> {
+                        try {
+                            sortie.write(fragment.getBytes(StandardCharsets.UTF_8));
+                            sortie.flush();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .onCompleteResponse(reponse -> fin.complete(null))
+                    .onError(fin::completeExceptionally)
+                    .start();
+            try {
+                fin.join();
+            } catch (CompletionException e) {
+                sortie.write(("\n❌ " + e.getCause().getMessage()).getBytes(StandardCharsets.UTF_8));
+            }
+            sortie.close();
+            composants.premiereReponse();
+        }));
+
+        serveur.createContext("/stats", echange -> traiter(echange, () -> envoyer(echange, 200, String.join("\n",
+                composants.statistiques(), sessions.statistiques(), modeleEnCache.statistiques(), modeleRequetes.statistiques(),
+                modeleParLots.statistiques(), metriques.statistiques()) + "\n")));
+
+        serveur.createContext("/metriques", echange -> traiter(echange, () -> envoyer(echange, 200, metriques.exporter())));
+
+        System.out.println(composants.pret());
+        serveur.start();
+        System.out.println("✅ Serveur RAG à l'écoute sur http://localhost:" + port + " (POST /chat, POST /chat/flux, GET /stats, GET /metriques)");
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            serveur.stop(1);
+            sessions.close();
+            System.out.println(sessions.statistiques());
+            System.out.println(modeleEnCache.statistiques());
+            System.out.println(modeleRequetes.statistiques());
+            System.out.println(modeleParLots.statistiques());
+            System.out.println(metriques.statistiques());
+            modeleParLots.close();
+        }));
+    }
+
+    @FunctionalInterface
+    private interface Traitement {
+        void executer() throws IOException;
+    }
+
+    private static void traiter(HttpExchange echange, Traitement traitement) {
+        try {
+            traitement.executer();
+        } catch (IOException | RuntimeException e) {
+            try {
+                envoyer(echange, e instanceof IllegalArgumentException ? 400 : 500, e.getMessage());
+            } catch (IOException | RuntimeException ignoree) {
+                // en-têtes déjà envoyés ou client parti : rien de plus à faire
+            }
+        } finally {
+            echange.close();
+        }
+    }
+
+    private static boolean exigerPost(HttpExchange echange) throws IOException {
+        if (!"POST".equals(echange.getRequestMethod())) {
+            envoyer(echange, 405, "❌ POST attendu");
+            return true;
+        }
+        return false;
+    }
+
+    private static String session(HttpExchange echange) {
+        String session = echange.getRequestHeaders().getFirst("X-Session");
+        String requete = echange.getRequestURI().getRawQuery();
+        if (session == null && requete != null) {
+            for (String parametre : requete.split("&")) {
+                if (parametre.startsWith("session=")) {
+                    session = URLDecoder.decode(parametre.substring("session=".length()), StandardCharsets.UTF_8);
+                }
+            }
+        }
+        if (session == null || session.isBlank()) {
+            session = UUID.randomUUID().toString();
+        }
+        echange.getResponseHeaders().set("X-Session", session);
+        return session;
+    }
+
+    private static String lireCorps(HttpExchange echange) throws IOException {
+        String corps = new String(echange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8).trim();
+        if (corps.isEmpty()) {
+            throw new IllegalArgumentException("❌ Question vide");
+        }
+        return corps;
+    }
+
+    private static void envoyer(HttpExchange echange, int statut, String texte) throws IOException {
+        byte[] octets = texte.getBytes(StandardCharsets.UTF_8);
+        echange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        echange.sendResponseHeaders(statut, octets.length);
+        echange.getResponseBody().write(octets);
+    }
+}
@@ -0,0 +1,57 @@
+package ma.emsi.khairat.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Magasin dont on peut relire tout le contenu, ce que {@code EmbeddingStore} ne permet pas :
+ * persistance, calcul de centroïdes, reconstruction d'index.
+ */
+public interface MagasinParcourable {
+
+    int taille();
+
+    void pourChaque(Visiteur visiteur);
+
+    /**
+     * Compteur incrémenté à chaque modification, pour invalider ce qui a été calculé à partir du contenu.
+     * Un magasin en lecture seule garde toujours la même version.
+     */
+    default long version() {
+        return 0;
+    }
+
+    /**
+     * Cosinus entre la requête et les éléments de ces rangs, numérotés dans l'ordre de
+     * {@link #pourChaque} ; {@code NaN} pour un rang absent. Par défaut, un parcours complet qui ne
+     * calcule que les rangs demandés ; un magasin à accès direct lit seulement ces vecteurs.
+     */
+    default double[] similarites(float[] requete, int[] rangs) {
+        Map<Integer, Integer> demandes = new HashMap<>(2 * rangs.length);
+        for (int i = 0; i < rangs.length; i++) {
+            demandes.put(rangs[i], i);
+        }
+        double[] resultats = new double[rangs.length];
+        Arrays.fill(resultats, Double.NaN);
+        float normeRequete = Similarite.norme(requete);
+        int[] rang = {0};
+        pourChaque((id, embedding, segment) -> {
+            Integer i = demandes.get(rang[0]++);
+            if (i != null) {
+                float[] vecteur = embedding.vector();
+                float produit = Similarite.produitScalaire(requete, 0, vecteur, 0, vecteur.length);
+                resultats[i] = Similarite.cosinus(produit, normeRequete, Similarite.norme(vecteur));
+            }
+        });
+        return resultats;
+    }
+
+    @FunctionalInterface
+    interface Visiteur {
+        void visiter(String id, Embedding embedding, TextSegment segment);
+    }
+}
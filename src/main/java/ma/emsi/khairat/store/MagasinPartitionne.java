@@ -0,0 +1,344 @@
+package ma.emsi.khairat.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+
+/**
+ * Un seul magasin découpé en partitions selon une clé de métadonnées (par défaut {@code file_name},
+ * le document source) ; chaque partition est un {@link MagasinVectoriel} parallèle.
+ *
+ * <p>Une recherche filtrée sur la clé ({@code isEqualTo}, {@code isIn}, éventuellement dans un
+ * {@code and}) ne parcourt que les partitions désignées : le routage vers un domaine n'est plus
+ * qu'un filtre, et le coût d'une recherche suit le nombre de partitions interrogées. Les partitions
+ * retenues sont parcourues en parallèle, puis leurs résultats fusionnés dans un top-k borné.</p>
+ */
+public class MagasinPartitionne implements EmbeddingStore<TextSegment>, MagasinParcourable {
+
+    private static final String SANS_PARTITION = "";
+
+    private final String cle;
+    private final Map<String, MagasinVectoriel> partitions = new ConcurrentHashMap<>();
+    private final Map<String, String> partitionsParId = new ConcurrentHashMap<>();
+
+    public MagasinPartitionne() {
+        this("file_name");
+    }
+
+    /**
+     * @param cle métadonnée dont la valeur désigne la partition d'un segment
+     */
+    public MagasinPartitionne(String cle) {
+        this.cle = cle;
+    }
+
+    public String cle() {
+        return cle;
+    }
+
+    public Set<String> partitions() {
+        return Set.copyOf(partitions.keySet());
+    }
+
+    /**
+     * La partition {@code nom}, par exemple pour en calculer des prototypes de routage.
+     * Les écritures doivent passer par le magasin partitionné, qui tient l'index des ids.
+     */
+    public MagasinVectoriel partition(String nom) {
+        MagasinVectoriel partition = partitions.get(nom);
+        if (partition == null) {
+            throw new IllegalArgumentException("❌ Partition inconnue : " + nom + " (" + partitions.keySet() + ")");
+        }
+        return partition;
+    }
+
+    /**
+     * Filtre qui limite une recherche aux partitions nommées.
+     */
+    public Filter filtre(String... noms) {
+        return noms.length == 1 ? metadataKey(cle).isEqualTo(noms[0]) : metadataKey(cle).isIn(noms);
+    }
+
+    /**
+     * Copie tout le contenu d'un autre magasin (un index chargé depuis le disque, par exemple).
+     */
+    public void importer(MagasinParcourable source) {
+        List<String> ids = new ArrayList<>(source.taille());
+        List<Embedding> embeddings = new ArrayList<>(source.taille());
+        List<TextSegment> segments = new ArrayList<>(source.taille());
+        source.pourChaque((id, embedding, segment) -> {
+            ids.add(id);
+            embeddings.add(embedding);
+            segments.add(segment);
+        });
+        addAll(ids, embeddings, segments);
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> nouveauxIds = generateIds(embeddings.size());
+        addAll(nouveauxIds, embeddings, null);
+        return nouveauxIds;
+    }
+
+    @Override
+    public synchronized void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (ids.size() != embeddings.size() || (textSegments != null && textSegments.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings et segments doivent avoir la même taille");
+        }
+        // Regroupement par partition, pour un seul passage sous verrou d'écriture par partition
+        Map<String, Lot> lots = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            TextSegment segment = textSegments == null ? null : textSegments.get(i);
+            String nom = nomPartition(segment);
+            String ancienne = partitionsParId.put(ids.get(i), nom);
+            if (ancienne != null && !ancienne.equals(nom)) {
+                partitions.get(ancienne).remove(ids.get(i));
+            }
+            Lot lot = lots.computeIfAbsent(nom, n -> new Lot());
+            lot.ids.add(ids.get(i));
+            lot.embeddings.add(embeddings.get(i));
+            lot.segments.add(segment);
+        }
+        lots.forEach((nom, lot) -> partitions.computeIfAbsent(nom, n -> new MagasinVectoriel(true))
+                .addAll(lot.ids, lot.embeddings, lot.segments));
+    }
+
+    private String nomPartition(TextSegment segment) {
+        if (segment == null) {
+            return SANS_PARTITION;
+        }
+        Object valeur = segment.metadata().toMap().get(cle);
+        return valeur == null ? SANS_PARTITION : valeur.toString();
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public synchronized void removeAll(Collection<String> ids) {
+        Map<String, List<String>> parPartition = new HashMap<>();
+        for (String id : ids) {
+            String nom = partitionsParId.remove(id);
+            if (nom != null) {
+                parPartition.computeIfAbsent(nom, n -> new ArrayList<>()).add(id);
+            }
+        }
+        parPartition.forEach((nom, idsPartition) -> partitions.get(nom).removeAll(idsPartition));
+    }
+
+    @Override
+    public synchronized void removeAll(Filter filter) {
+        List<String> ids = new ArrayList<>();
+        for (MagasinVectoriel partition : selectionner(filter)) {
+            partition.pourChaque((id, embedding, segment) -> {
+                if (segment != null && filter.test(segment.metadata())) {
+                    ids.add(id);
+                }
+            });
+        }
+        removeAll(ids);
+    }
+
+    @Override
+    public synchronized void removeAll() {
+        partitions.values().forEach(MagasinVectoriel::removeAll);
+        partitionsParId.clear();
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return RegistreMetriques.global().mesurer("recherche", () -> rechercher(request));
+    }
+
+    private EmbeddingSearchResult<TextSegment> rechercher(EmbeddingSearchRequest request) {
+        List<MagasinVectoriel> selection = selectionner(request.filter());
+        if (selection.isEmpty()) {
+            return new EmbeddingSearchResult<>(List.of());
+        }
+        // Le filtre de partition est déjà appliqué par la sélection : inutile de le tester segment par segment
+        EmbeddingSearchRequest requetePartition = EmbeddingSearchRequest.builder()
+                .queryEmbedding(request.queryEmbedding())
+                .maxResults(request.maxResults())
+                .minScore(request.minScore())
+                .filter(reste(request.filter()))
+                .build();
+        List<EmbeddingMatch<TextSegment>> candidats = (selection.size() == 1 ? selection.stream() : selection.parallelStream())
+                .flatMap(partition -> partition.rechercher(requetePartition).matches().stream())
+                .collect(Collectors.toList());
+
+        TopK meilleurs = new TopK(Math.max(1, Math.min(request.maxResults(), candidats.size())));
+        for (int i = 0; i < candidats.size(); i++) {
+            meilleurs.proposer(i, candidats.get(i).score());
+        }
+        meilleurs.trierDecroissant();
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(meilleurs.taille());
+        for (int rang = 0; rang < meilleurs.taille(); rang++) {
+            matches.add(candidats.get(meilleurs.indice(rang)));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    /**
+     * Partitions que le filtre peut atteindre : toutes, sauf si le filtre (ou un membre d'un {@code and})
+     * fixe la valeur de la clé.
+     */
+    private List<MagasinVectoriel> selectionner(Filter filtre) {
+        Set<String> noms = nomsDesignes(filtre);
+        if (noms == null) {
+            return List.copyOf(partitions.values());
+        }
+        List<MagasinVectoriel> selection = new ArrayList<>(noms.size());
+        for (String nom : noms) {
+            MagasinVectoriel partition = partitions.get(nom);
+            if (partition != null) {
+                selection.add(partition);
+            }
+        }
+        return selection;
+    }
+
+    // null : le filtre ne restreint pas les partitions
+    private Set<String> nomsDesignes(Filter filtre) {
+        if (filtre instanceof IsEqualTo egal && egal.key().equals(cle)) {
+            return Set.of(egal.comparisonValue().toString());
+        }
+        if (filtre instanceof IsIn dans && dans.key().equals(cle)) {
+            return dans.comparisonValues().stream().map(Object::toString).collect(Collectors.toSet());
+        }
+        if (filtre instanceof And et) {
+            Set<String> gauche = nomsDesignes(et.left());
+            Set<String> droite = nomsDesignes(et.right());
+            if (gauche == null || droite == null) {
+                return gauche == null ? droite : gauche;
+            }
+            Set<String> communs = new HashSet<>(gauche);
+            communs.retainAll(droite);
+            return communs;
+        }
+        return null;
+    }
+
+    // Ce qu'il reste à tester dans chaque partition une fois les conditions sur la clé retirées
+    private Filter reste(Filter filtre) {
+        if (filtre instanceof And et) {
+            Filter gauche = reste(et.left());
+            Filter droite = reste(et.right());
+            if (gauche == null || droite == null) {
+                return gauche == null ? droite : gauche;
+            }
+            return gauche == et.left() && droite == et.right() ? filtre : gauche.and(droite);
+        }
+        return filtre == null || nomsDesignes(filtre) != null ? null : filtre;
+    }
+
+    @Override
+    public long version() {
+        long version = 0;
+        for (MagasinVectoriel partition : partitions.values()) {
+            version += partition.version();
+        }
+        return version;
+    }
+
+    @Override
+    public int taille() {
+        int taille = 0;
+        for (MagasinVectoriel partition : partitions.values()) {
+            taille += partition.taille();
+        }
+        return taille;
+    }
+
+    @Override
+    public void pourChaque(Visiteur visiteur) {
+        partitions.values().forEach(partition -> partition.pourChaque(visiteur));
+    }
+
+    /**
+     * Les rangs suivent {@link #pourChaque} : partition après partition. Chaque rang est ramené à
+     * son rang dans sa partition, qui lit directement les vecteurs demandés.
+     */
+    @Override
+    public double[] similarites(float[] requete, int[] rangs) {
+        double[] resultats = new double[rangs.length];
+        Arrays.fill(resultats, Double.NaN);
+        int debut = 0;
+        for (MagasinVectoriel partition : partitions.values()) {
+            int taille = partition.taille();
+            int[] indices = new int[rangs.length];
+            int[] locaux = new int[rangs.length];
+            int nombre = 0;
+            for (int i = 0; i < rangs.length; i++) {
+                if (rangs[i] >= debut && rangs[i] < debut + taille) {
+                    indices[nombre] = i;
+                    locaux[nombre++] = rangs[i] - debut;
+                }
+            }
+            if (nombre > 0) {
+                double[] scores = partition.similarites(requete, Arrays.copyOf(locaux, nombre));
+                for (int j = 0; j < nombre; j++) {
+                    resultats[indices[j]] = scores[j];
+                }
+            }
+            debut += taille;
+        }
+        return resultats;
+    }
+
+    public String statistiques() {
+        return partitions.entrySet().stream()
+                .map(entree -> entree.getKey() + "=" + entree.getValue().taille())
+                .collect(Collectors.joining(", ", "🧩 Magasin partitionné par " + cle + " : ", ""));
+    }
+
+    private static final class Lot {
+        private final List<String> ids = new ArrayList<>();
+        private final List<Embedding> embeddings = new ArrayList<>();
+        private final List<TextSegment> segments = new ArrayList<>();
+    }
+}
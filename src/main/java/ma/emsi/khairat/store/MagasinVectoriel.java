@@ -0,0 +1,343 @@
+package ma.emsi.khairat.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Remplaçant de {@code InMemoryEmbeddingStore} : tous les vecteurs dans un seul {@code float[]}
+ * contigu, normes calculées à l'insertion, score cosinus vectorisé et top-k sans allocation
+ * par candidat. Les scores retournés sont les mêmes que ceux d'{@code InMemoryEmbeddingStore}
+ * ({@link RelevanceScore#fromCosineSimilarity(double)}), donc {@code minScore} garde son sens.
+ */
+public class MagasinVectoriel implements EmbeddingStore<TextSegment>, MagasinParcourable {
+
+    private static final int CAPACITE_INITIALE = 256;
+    // En dessous, découper le parcours coûte plus qu'il ne rapporte
+    private static final int BLOC_PARALLELE = 16_384;
+
+    private final boolean parallele;
+    private final ReadWriteLock verrou = new ReentrantReadWriteLock();
+    private final Map<String, Integer> positions = new HashMap<>();
+    private int dimension = -1;
+    private int taille;
+    private float[] vecteurs = new float[0];
+    private float[] normes = new float[0];
+    private String[] ids = new String[0];
+    private TextSegment[] segments = new TextSegment[0];
+    private volatile long version;
+
+    public MagasinVectoriel() {
+        this(false);
+    }
+
+    /**
+     * @param parallele si {@code true}, une recherche sur plus de {@value #BLOC_PARALLELE} vecteurs
+     *                  est découpée en plages parcourues en fork-join sur tous les cœurs
+     */
+    public MagasinVectoriel(boolean parallele) {
+        this.parallele = parallele;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> nouveauxIds = generateIds(embeddings.size());
+        addAll(nouveauxIds, embeddings, null);
+        return nouveauxIds;
+    }
+
+    @Override
+    public void addAll(List<String> nouveauxIds, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (nouveauxIds.size() != embeddings.size()
+                || (textSegments != null && textSegments.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings et segments doivent avoir la même taille");
+        }
+        verrou.writeLock().lock();
+        try {
+            for (int i = 0; i < embeddings.size(); i++) {
+                inserer(nouveauxIds.get(i), embeddings.get(i).vector(), textSegments == null ? null : textSegments.get(i));
+            }
+        } finally {
+            version++;
+            verrou.writeLock().unlock();
+        }
+    }
+
+    private void inserer(String id, float[] vecteur, TextSegment segment) {
+        if (dimension == -1) {
+            dimension = vecteur.length;
+        } else if (vecteur.length != dimension) {
+            throw new IllegalArgumentException("Dimension " + vecteur.length + " au lieu de " + dimension);
+        }
+        Integer existant = positions.get(id);
+        int position = existant != null ? existant : taille;
+        if (existant == null) {
+            assurerCapacite(taille + 1);
+            taille++;
+            positions.put(id, position);
+        }
+        System.arraycopy(vecteur, 0, vecteurs, position * dimension, dimension);
+        normes[position] = Similarite.norme(vecteur);
+        ids[position] = id;
+        segments[position] = segment;
+    }
+
+    private void assurerCapacite(int requise) {
+        if (requise <= normes.length) return;
+        int capacite = Math.max(CAPACITE_INITIALE, Math.max(requise, normes.length * 2));
+        vecteurs = Arrays.copyOf(vecteurs, capacite * dimension);
+        normes = Arrays.copyOf(normes, capacite);
+        ids = Arrays.copyOf(ids, capacite);
+        segments = Arrays.copyOf(segments, capacite);
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public void removeAll(Collection<String> idsASupprimer) {
+        verrou.writeLock().lock();
+        try {
+            for (String id : idsASupprimer) {
+                Integer position = positions.remove(id);
+                if (position != null) {
+                    retirer(position);
+                }
+            }
+        } finally {
+            version++;
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        verrou.writeLock().lock();
+        try {
+            for (int i = taille - 1; i >= 0; i--) {
+                if (segments[i] != null && filter.test(segments[i].metadata())) {
+                    positions.remove(ids[i]);
+                    retirer(i);
+                }
+            }
+        } finally {
+            version++;
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        verrou.writeLock().lock();
+        try {
+            positions.clear();
+            Arrays.fill(ids, 0, taille, null);
+            Arrays.fill(segments, 0, taille, null);
+            taille = 0;
+        } finally {
+            version++;
+            verrou.writeLock().unlock();
+        }
+    }
+
+    // Le dernier élément vient boucher le trou : pas de décalage du tableau
+    private void retirer(int position) {
+        int dernier = taille - 1;
+        if (position != dernier) {
+            System.arraycopy(vecteurs, dernier * dimension, vecteurs, position * dimension, dimension);
+            normes[position] = normes[dernier];
+            ids[position] = ids[dernier];
+            segments[position] = segments[dernier];
+            positions.put(ids[position], position);
+        }
+        ids[dernier] = null;
+        segments[dernier] = null;
+        taille--;
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return RegistreMetriques.global().mesurer("recherche", () -> rechercher(request));
+    }
+
+    EmbeddingSearchResult<TextSegment> rechercher(EmbeddingSearchRequest request) {
+        float[] requete = request.queryEmbedding().vector();
+        Filter filtre = request.filter();
+        double minScore = request.minScore();
+
+        verrou.readLock().lock();
+        try {
+            if (taille == 0) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            if (requete.length != dimension) {
+                throw new IllegalArgumentException("Dimension " + requete.length + " au lieu de " + dimension);
+            }
+            float normeRequete = Similarite.norme(requete);
+            int k = Math.min(request.maxResults(), taille);
+            // Les tâches lisent les tableaux pendant que ce thread garde le verrou de lecture
+            TopK meilleurs = parallele && taille > BLOC_PARALLELE
+                    ? ForkJoinPool.commonPool().invoke(new RecherchePlage(requete, normeRequete, minScore, filtre, k, 0, taille))
+                    : parcourir(requete, normeRequete, minScore, filtre, k, 0, taille);
+            meilleurs.trierDecroissant();
+
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(meilleurs.taille());
+            for (int rang = 0; rang < meilleurs.taille(); rang++) {
+                int i = meilleurs.indice(rang);
+                matches.add(new EmbeddingMatch<>(meilleurs.score(rang), ids[i], embedding(i), segments[i]));
+            }
+            return new EmbeddingSearchResult<>(matches);
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    private TopK parcourir(float[] requete, float normeRequete, double minScore, Filter filtre, int k, int debut, int fin) {
+        TopK meilleurs = new TopK(k);
+        for (int i = debut; i < fin; i++) {
+            float produit = Similarite.produitScalaire(requete, 0, vecteurs, i * dimension, dimension);
+            double score = RelevanceScore.fromCosineSimilarity(Similarite.cosinus(produit, normeRequete, normes[i]));
+            if (score < minScore || score <= meilleurs.seuil()) continue;
+            if (filtre != null && (segments[i] == null || !filtre.test(segments[i].metadata()))) continue;
+            meilleurs.proposer(i, score);
+        }
+        return meilleurs;
+    }
+
+    /**
+     * Parcours d'une plage, coupée en deux tant qu'elle dépasse un bloc ; les deux top-k partiels
+     * sont ensuite fusionnés dans un tas de même capacité. Sérialisable par héritage de
+     * {@code ForkJoinTask}, mais jamais sérialisée.
+     */
+    @SuppressWarnings("serial")
+    private final class RecherchePlage extends RecursiveTask<TopK> {
+
+        private final float[] requete;
+        private final float normeRequete;
+        private final double minScore;
+        private final Filter filtre;
+        private final int k;
+        private final int debut;
+        private final int fin;
+
+        private RecherchePlage(float[] requete, float normeRequete, double minScore, Filter filtre, int k, int debut, int fin) {
+            this.requete = requete;
+            this.normeRequete = normeRequete;
+            this.minScore = minScore;
+            this.filtre = filtre;
+            this.k = k;
+            this.debut = debut;
+            this.fin = fin;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (fin - debut <= BLOC_PARALLELE) {
+                return parcourir(requete, normeRequete, minScore, filtre, k, debut, fin);
+            }
+            int milieu = (debut + fin) >>> 1;
+            RecherchePlage droite = new RecherchePlage(requete, normeRequete, minScore, filtre, k, milieu, fin);
+            droite.fork();
+            TopK meilleurs = new RecherchePlage(requete, normeRequete, minScore, filtre, k, debut, milieu).compute();
+            TopK autres = droite.join();
+            for (int rang = 0; rang < autres.taille(); rang++) {
+                meilleurs.proposer(autres.indice(rang), autres.score(rang));
+            }
+            return meilleurs;
+        }
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public int taille() {
+        verrou.readLock().lock();
+        try {
+            return taille;
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    /**
+     * Parcourt le contenu sous verrou de lecture, dans l'ordre interne.
+     */
+    @Override
+    public double[] similarites(float[] requete, int[] rangs) {
+        double[] resultats = new double[rangs.length];
+        float normeRequete = Similarite.norme(requete);
+        verrou.readLock().lock();
+        try {
+            for (int i = 0; i < rangs.length; i++) {
+                int position = rangs[i];
+                if (position < 0 || position >= taille) {
+                    resultats[i] = Double.NaN;
+                    continue;
+                }
+                float produit = Similarite.produitScalaire(requete, 0, vecteurs, position * dimension, dimension);
+                resultats[i] = Similarite.cosinus(produit, normeRequete, normes[position]);
+            }
+        } finally {
+            verrou.readLock().unlock();
+        }
+        return resultats;
+    }
+
+    @Override
+    public void pourChaque(Visiteur visiteur) {
+        verrou.readLock().lock();
+        try {
+            for (int i = 0; i < taille; i++) {
+                visiteur.visiter(ids[i], embedding(i), segments[i]);
+            }
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    private Embedding embedding(int position) {
+        return Embedding.from(Arrays.copyOfRange(vecteurs, position * dimension, (position + 1) * dimension));
+    }
+}
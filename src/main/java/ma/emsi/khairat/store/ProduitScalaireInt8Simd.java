@@ -0,0 +1,53 @@
+package ma.emsi.khairat.store;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Noyau int8 séparé de {@link ProduitScalaireSimd} : chargé seulement au premier produit quantifié,
+ * un problème de forme de vecteur ici ne peut pas empêcher le calcul en float.
+ *
+ * <p>Les octets sont lus 8 par 8 ({@code ByteVector.SPECIES_64}, forme toujours valide) puis élargis
+ * en int : en un registre de 256 bits, ou en deux moitiés de 128 bits quand les registres sont plus
+ * étroits (NEON, SSE, {@code -XX:MaxVectorSize=16}). En deçà, {@link #DISPONIBLE} est faux et
+ * {@link Similarite} garde la boucle scalaire.</p>
+ */
+final class ProduitScalaireInt8Simd {
+
+    private static final VectorSpecies<Byte> OCTETS = ByteVector.SPECIES_64;
+    private static final VectorSpecies<Integer> ENTIERS;
+    static final boolean DISPONIBLE;
+
+    static {
+        int bits = IntVector.SPECIES_PREFERRED.vectorBitSize();
+        ENTIERS = bits >= 256 ? IntVector.SPECIES_256 : IntVector.SPECIES_128;
+        DISPONIBLE = bits >= 128;
+    }
+
+    private ProduitScalaireInt8Simd() {
+    }
+
+    static int calculer(byte[] a, int debutA, byte[] b, int debutB, int longueur) {
+        IntVector somme = IntVector.zero(ENTIERS);
+        // 1 partie quand 8 ints tiennent dans un registre, 2 sinon
+        int parties = OCTETS.length() / ENTIERS.length();
+        int i = 0;
+        int borne = OCTETS.loopBound(longueur);
+        for (; i < borne; i += OCTETS.length()) {
+            ByteVector va = ByteVector.fromArray(OCTETS, a, debutA + i);
+            ByteVector vb = ByteVector.fromArray(OCTETS, b, debutB + i);
+            for (int partie = 0; partie < parties; partie++) {
+                IntVector ia = (IntVector) va.convertShape(VectorOperators.B2I, ENTIERS, partie);
+                IntVector ib = (IntVector) vb.convertShape(VectorOperators.B2I, ENTIERS, partie);
+                somme = somme.add(ia.mul(ib));
+            }
+        }
+        int resultat = somme.reduceLanes(VectorOperators.ADD);
+        for (; i < longueur; i++) {
+            resultat += a[debutA + i] * b[debutB + i];
+        }
+        return resultat;
+    }
+}
@@ -0,0 +1,33 @@
+package ma.emsi.khairat.store;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Noyau vectoriel isolé dans sa propre classe : elle n'est chargée que si le module
+ * incubateur est présent, ce qui laisse {@link Similarite} utilisable sans lui.
+ */
+final class ProduitScalaireSimd {
+
+    private static final VectorSpecies<Float> ESPECE = FloatVector.SPECIES_PREFERRED;
+
+    private ProduitScalaireSimd() {
+    }
+
+    static float calculer(float[] a, int debutA, float[] b, int debutB, int longueur) {
+        FloatVector somme = FloatVector.zero(ESPECE);
+        int i = 0;
+        int borne = ESPECE.loopBound(longueur);
+        for (; i < borne; i += ESPECE.length()) {
+            FloatVector va = FloatVector.fromArray(ESPECE, a, debutA + i);
+            FloatVector vb = FloatVector.fromArray(ESPECE, b, debutB + i);
+            somme = va.fma(vb, somme);
+        }
+        float resultat = somme.reduceLanes(VectorOperators.ADD);
+        for (; i < longueur; i++) {
+            resultat += a[debutA + i] * b[debutB + i];
+        }
+        return resultat;
+    }
+}
@@ -0,0 +1,64 @@
+package ma.emsi.khairat.store;
+
+/**
+ * Produit scalaire et cosinus sur des tableaux de floats contigus.
+ *
+ * <p>Le calcul passe par l'API {@code jdk.incubator.vector} quand le module est chargé
+ * ({@code --add-modules jdk.incubator.vector}) ; sinon, ou avec {@code -Drag.simd=false},
+ * une boucle scalaire prend le relais.</p>
+ */
+public final class Similarite {
+
+    static final boolean SIMD = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && Boolean.parseBoolean(System.getProperty("rag.simd", "true"));
+
+    private Similarite() {
+    }
+
+    public static float produitScalaire(float[] a, int debutA, float[] b, int debutB, int longueur) {
+        return SIMD
+                ? ProduitScalaireSimd.calculer(a, debutA, b, debutB, longueur)
+                : produitScalaireScalaire(a, debutA, b, debutB, longueur);
+    }
+
+    /**
+     * Produit scalaire de deux vecteurs quantifiés sur un octet (somme exacte en int jusqu'à 2^17 composantes).
+     */
+    public static int produitScalaireInt8(byte[] a, int debutA, byte[] b, int debutB, int longueur) {
+        return SIMD && ProduitScalaireInt8Simd.DISPONIBLE
+                ? ProduitScalaireInt8Simd.calculer(a, debutA, b, debutB, longueur)
+                : produitScalaireInt8Scalaire(a, debutA, b, debutB, longueur);
+    }
+
+    public static float norme(float[] vecteur, int debut, int longueur) {
+        return (float) Math.sqrt(produitScalaire(vecteur, debut, vecteur, debut, longueur));
+    }
+
+    public static float norme(float[] vecteur) {
+        return norme(vecteur, 0, vecteur.length);
+    }
+
+    /**
+     * Cosinus à partir d'un produit scalaire et des normes déjà calculées.
+     */
+    public static double cosinus(float produitScalaire, float normeA, float normeB) {
+        double denominateur = (double) normeA * normeB;
+        return denominateur == 0 ? 0 : produitScalaire / denominateur;
+    }
+
+    static float produitScalaireScalaire(float[] a, int debutA, float[] b, int debutB, int longueur) {
+        float somme = 0;
+        for (int i = 0; i < longueur; i++) {
+            somme += a[debutA + i] * b[debutB + i];
+        }
+        return somme;
+    }
+
+    static int produitScalaireInt8Scalaire(byte[] a, int debutA, byte[] b, int debutB, int longueur) {
+        int somme = 0;
+        for (int i = 0; i < longueur; i++) {
+            somme += a[debutA + i] * b[debutB + i];
+        }
+        return somme;
+    }
+}
@@ -0,0 +1,102 @@
+package ma.emsi.khairat.store;
+
+/**
+ * Tas-min borné sur des tableaux primitifs : garde les {@code k} meilleurs couples
+ * (indice, score) sans allouer d'objet par candidat. Réutilisable via {@link #vider()}.
+ */
+public final class TopK {
+
+    private final int[] indices;
+    private final double[] scores;
+    private int taille;
+
+    public TopK(int capacite) {
+        if (capacite < 1) {
+            throw new IllegalArgumentException("La capacité doit être positive : " + capacite);
+        }
+        this.indices = new int[capacite];
+        this.scores = new double[capacite];
+    }
+
+    public void vider() {
+        taille = 0;
+    }
+
+    public int taille() {
+        return taille;
+    }
+
+    public boolean plein() {
+        return taille == indices.length;
+    }
+
+    /**
+     * Score à dépasser pour entrer dans le tas (−∞ tant qu'il n'est pas plein).
+     */
+    public double seuil() {
+        return plein() ? scores[0] : Double.NEGATIVE_INFINITY;
+    }
+
+    public boolean proposer(int indice, double score) {
+        if (taille < indices.length) {
+            indices[taille] = indice;
+            scores[taille] = score;
+            monter(taille++);
+            return true;
+        }
+        if (score <= scores[0]) {
+            return false;
+        }
+        indices[0] = indice;
+        scores[0] = score;
+        descendre(0, taille);
+        return true;
+    }
+
+    /**
+     * Trie sur place par score décroissant ; le tas n'est plus utilisable ensuite, sauf après {@link #vider()}.
+     */
+    public void trierDecroissant() {
+        for (int fin = taille - 1; fin > 0; fin--) {
+            echanger(0, fin);
+            descendre(0, fin);
+        }
+    }
+
+    public int indice(int rang) {
+        return indices[rang];
+    }
+
+    public double score(int rang) {
+        return scores[rang];
+    }
+
+    private void monter(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= scores[i]) break;
+            echanger(i, parent);
+            i = parent;
+        }
+    }
+
+    private void descendre(int i, int borne) {
+        while (true) {
+            int gauche = 2 * i + 1;
+            if (gauche >= borne) break;
+            int plusPetit = gauche + 1 < borne && scores[gauche + 1] < scores[gauche] ? gauche + 1 : gauche;
+            if (scores[i] <= scores[plusPetit]) break;
+            echanger(i, plusPetit);
+            i = plusPetit;
+        }
+    }
+
+    private void echanger(int a, int b) {
+        int indice = indices[a];
+        indices[a] = indices[b];
+        indices[b] = indice;
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
@@ -0,0 +1,7 @@
+package ma.emsi.khairat.test1_ragnaif_Et_test2;
+
+import dev.langchain4j.service.TokenStream;
+
+public interface AssistantStreaming {
+    TokenStream chat(String userMessage);
+}
@@ -1,27 +1,22 @@
 package ma.emsi.khairat.test1_ragnaif;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentParser;
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.data.embedding.Embedding;                 // ✅ manquant
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
-import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
-import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
-import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.model.googleai.GoogleAiGeminiStreamingChatModel;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
-import ma.emsi.khairat.test1_ragnaif_Et_test2.Assistant;
+import ma.emsi.khairat.cache.CacheEmbeddingModel;
+import ma.emsi.khairat.cache.CacheReponses;
+import ma.emsi.khairat.demarrage.RegistreComposants;
+import ma.emsi.khairat.flux.AffichageFlux;
+import ma.emsi.khairat.memoire.MemoireBudgetJetons;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+import ma.emsi.khairat.recherche.RecuperateurHybride;
+import ma.emsi.khairat.test1_ragnaif_Et_test2.AssistantStreaming;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
 import java.util.Scanner;
 
 public class RagNaif {
@@ -30,30 +25,24 @@ public class RagNaif {
 
         System.out.println("=== Phase 1 : Enregistrement des embeddings ===");
 
-        // 1️⃣ Création du parser PDF (Apache Tika)
-        DocumentParser documentParser = new ApacheTikaDocumentParser();
+        // 1️⃣ Création du modèle d’embeddings
+        RegistreComposants composants = RegistreComposants.global();
+        EmbeddingModel embeddingModel = composants.embeddingModel();
 
-        // 2️⃣ Chargement du fichier PDF
+        // 2️⃣ Chargement de l'index sur disque (parsing + découpage + embeddings seulement s'il est absent ou périmé)
         Path path = Paths.get("src/main/resources/rag-2.pdf");
-        Document document = FileSystemDocumentLoader.loadDocument(path, documentParser);
+        EmbeddingStore<TextSegment> embeddingStore = composants.magasin(path, 300, 30);
+        // Embeddings et recherches de chauffe en arrière-plan pendant que l'assistant se construit
+        composants.prechauffer(embeddingStore);
 
-        // 3️⃣ Découpage du document en segments
-        DocumentSplitter splitter = DocumentSplitters.recursive(300, 30);
-        List<TextSegment> segments = splitter.split(document);
-        System.out.println("Nombre de segments : " + segments.size());
+        // Métriques par étape (histogrammes HdrHistogram + événements JFR) à la place des logs détaillés
+        RegistreMetriques metriques = RegistreMetriques.global();
 
-        // 4️⃣ Création du modèle d’embeddings
-        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
-
-        // 5️⃣ Génération des embeddings pour tous les segments
-        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
-        System.out.println("Nombre d'embeddings générés : " + embeddings.size());
-
-        // 6️⃣ Création du magasin d’embeddings en mémoire
-        EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
-
-        // 7️⃣ Ajout des embeddings et segments associés
-        embeddingStore.addAll(embeddings, segments);
+        // Cache des embeddings de questions : une question déjà posée ne repasse pas par le modèle ONNX
+        CacheEmbeddingModel modeleRequetes = CacheEmbeddingModel.builder()
+                .embeddingModel(metriques.embeddingModel(embeddingModel))
+                .fichierDebordement(Paths.get(".index", "requetes.cache"))
+                .build();
 
         System.out.println("✅ Enregistrement des embeddings terminé avec succès !");
 
@@ -66,40 +55,56 @@ public class RagNaif {
         }
 
         // 🧠 1️⃣ Création du modèle de chat Gemini
-        ChatModel model = GoogleAiGeminiChatModel.builder()
+        StreamingChatModel modeleFlux = GoogleAiGeminiStreamingChatModel.builder()
                 .apiKey(GEMINI_API_KEY)
                 .temperature(0.3)
                 .modelName("gemini-2.5-flash")
                 .build();
 
+        // Cache sémantique des réponses : une question équivalente sur le même contexte ne rappelle pas Gemini
+        CacheReponses modeleEnCache = CacheReponses.builder()
+                .streamingChatModel(metriques.streamingChatModel(modeleFlux))
+                .embeddingModel(modeleRequetes)
+                .magasin(embeddingStore)
+                .build();
+
         // 📚 2️⃣ Création du ContentRetriever
-        EmbeddingStoreContentRetriever retriever = EmbeddingStoreContentRetriever.builder()
+        // Hybride : BM25 présélectionne les candidats, seuls ceux-ci sont comparés à l'embedding de la question
+        RecuperateurHybride retriever = RecuperateurHybride.builder()
                 .embeddingStore(embeddingStore)
-                .embeddingModel(embeddingModel)
+                .embeddingModel(modeleRequetes)
                 .maxResults(2)
                 .minScore(0.5)
                 .build();
 
-        // 💬 3️⃣ Ajout d'une mémoire de 10 messages
-        var memory = MessageWindowChatMemory.withMaxMessages(10);
+        // 💬 3️⃣ Mémoire bornée en jetons : le contexte RAG des anciens tours part en premier
+        var memory = MemoireBudgetJetons.builder().budgetJetons(4000).build();
 
         // 🤖 4️⃣ Création de l’assistant
-        Assistant assistant = AiServices.builder(Assistant.class)
-                .chatModel(model)
+        AssistantStreaming assistant = AiServices.builder(AssistantStreaming.class)
+                .streamingChatModel(modeleEnCache)
                 .chatMemory(memory)
                 .contentRetriever(retriever)
                 .build();
 
         // ❓ 5️⃣ Interaction console (multi-questions)
+        System.out.println(composants.pret());
         try (Scanner scanner = new Scanner(System.in)) {
             System.out.println("Posez votre question (ou 'exit' pour quitter) :");
             while (true) {
                 System.out.print("👤 Vous : ");
                 String question = scanner.nextLine();
                 if (question.equalsIgnoreCase("exit")) break;
-                String reponse = assistant.chat(question);
-                System.out.println("🤖 Gemini : " + reponse);
+                System.out.print("🤖 Gemini : ");
+                AffichageFlux.Mesure mesure = AffichageFlux.afficher(() -> assistant.chat(question));
+                System.out.println("\n" + mesure);
+                composants.premiereReponse();
             }
         }
+        System.out.println(modeleEnCache.statistiques());
+        System.out.println(modeleRequetes.statistiques());
+        System.out.println(metriques.statistiques());
+        System.out.println(memory.statistiques());
+        System.out.println(retriever.statistiques());
     }
 }
@@ -1,17 +1,9 @@
 package ma.emsi.khairat.test1_ragnaif_Et_test2;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentParser;
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.data.embedding.Embedding;                 // ✅ manquant
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.service.AiServices;
@@ -19,59 +11,38 @@ import dev.langchain4j.store.embedding.EmbeddingMatch;
 import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import dev.langchain4j.store.embedding.EmbeddingSearchResult;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.emsi.khairat.cache.CacheEmbeddingModel;
+import ma.emsi.khairat.cache.CacheReponses;
+import ma.emsi.khairat.demarrage.RegistreComposants;
+import ma.emsi.khairat.memoire.MemoireBudgetJetons;
+import ma.emsi.khairat.metriques.RegistreMetriques;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 
-import java.util.logging.ConsoleHandler;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
 public class RagNaif_test2_optionnel {
 
-    private static void configureLogger() {
-        System.out.println("Configuring logger");
-        // Configure le logger sous-jacent (java.util.logging)
-        Logger packageLogger = Logger.getLogger("dev.langchain4j");
-        packageLogger.setLevel(Level.FINE); // Ajuster niveau
-        // Ajouter un handler pour la console pour faire afficher les logs
-        ConsoleHandler handler = new ConsoleHandler();
-        handler.setLevel(Level.FINE);
-        packageLogger.addHandler(handler);
-    }
-
     public static void main(String[] args) {
-        configureLogger(); // ✅ Active le logging détaillé
-
-
         System.out.println("=== Phase 1 : Enregistrement des embeddings ===");
 
-        // 1️⃣ Création du parser PDF (Apache Tika)
-        DocumentParser documentParser = new ApacheTikaDocumentParser();
+        // 1️⃣ Création du modèle d’embeddings
+        RegistreComposants composants = RegistreComposants.global();
+        EmbeddingModel embeddingModel = composants.embeddingModel();
 
-        // 2️⃣ Chargement du fichier PDF
+        // 2️⃣ Chargement de l'index sur disque (parsing + découpage + embeddings seulement s'il est absent ou périmé)
         Path path = Paths.get("src/main/resources/rag-2.pdf");
-        Document document = FileSystemDocumentLoader.loadDocument(path, documentParser);
-
-        // 3️⃣ Découpage du document en segments
-        DocumentSplitter splitter = DocumentSplitters.recursive(300, 30);
-        List<TextSegment> segments = splitter.split(document);
-        System.out.println("Nombre de segments : " + segments.size());
+        EmbeddingStore<TextSegment> embeddingStore = composants.magasin(path, 300, 30);
+        composants.prechauffer(embeddingStore);
 
-        // 4️⃣ Création du modèle d’embeddings
-        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+        // Métriques par étape (histogrammes HdrHistogram + événements JFR) à la place des logs détaillés
+        RegistreMetriques metriques = RegistreMetriques.global();
 
-        // 5️⃣ Génération des embeddings pour tous les segments
-        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
-        System.out.println("Nombre d'embeddings générés : " + embeddings.size());
-
-        // 6️⃣ Création du magasin d’embeddings en mémoire
-        EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
-
-        // 7️⃣ Ajout des embeddings et segments associés
-        embeddingStore.addAll(embeddings, segments);
+        // Cache des embeddings de questions : une question déjà posée ne repasse pas par le modèle ONNX
+        CacheEmbeddingModel modeleRequetes = CacheEmbeddingModel.builder()
+                .embeddingModel(metriques.embeddingModel(embeddingModel))
+                .fichierDebordement(Paths.get(".index", "requetes.cache"))
+                .build();
 
         System.out.println("✅ Enregistrement des embeddings terminé avec succès !");
 
@@ -87,33 +58,41 @@ public class RagNaif_test2_optionnel {
         ChatModel model = GoogleAiGeminiChatModel.builder()
                 .apiKey(GEMINI_API_KEY)
                 .temperature(0.3)
-                .logRequestsAndResponses(true)
                 .modelName("gemini-2.5-flash")
                 .build();
 
+        // Cache sémantique des réponses : une question équivalente sur le même contexte ne rappelle pas Gemini
+        CacheReponses modeleEnCache = CacheReponses.builder()
+                .chatModel(metriques.chatModel(model))
+                .embeddingModel(modeleRequetes)
+                .magasin(embeddingStore)
+                .build();
+
         // 📚 2️⃣ Création du ContentRetriever
         EmbeddingStoreContentRetriever retriever = EmbeddingStoreContentRetriever.builder()
                 .embeddingStore(embeddingStore)
-                .embeddingModel(embeddingModel)
+                .embeddingModel(modeleRequetes)
                 .maxResults(2)
                 .minScore(0.5)
                 .build();
 
-        // 💬 3️⃣ Ajout d'une mémoire de 10 messages
-        var memory = MessageWindowChatMemory.withMaxMessages(10);
+        // 💬 3️⃣ Mémoire bornée en jetons : le contexte RAG des anciens tours part en premier
+        var memory = MemoireBudgetJetons.builder().budgetJetons(4000).build();
 
         // 🤖 4️⃣ Création de l’assistant
         Assistant assistant = AiServices.builder(Assistant.class)
-                .chatModel(model)
+                .chatModel(modeleEnCache)
                 .chatMemory(memory)
                 .contentRetriever(retriever)
                 .build();
 
 
+        System.out.println(composants.pret());
+
         //Retrouver les scores des segments/embeddings
         System.out.println("Retrouver les scores des segments/embeddings");
         String question = "Quelle est la signification de RAG ?";  // ou toute autre question
-        Embedding embeddingQuestion = embeddingModel.embed(question).content();
+        Embedding embeddingQuestion = modeleRequetes.embed(question).content();
         // 2. Construire la requête de recherche des éléments pertinents
         EmbeddingSearchRequest embeddingSearchRequest = EmbeddingSearchRequest.builder()
                 .queryEmbedding(embeddingQuestion)
@@ -131,6 +110,11 @@ public class RagNaif_test2_optionnel {
         System.out.println("\n=== Vérification : réponse de l'assistant via RAG ===");
         String reponse = assistant.chat(question);
         System.out.println("🤖 Réponse du modèle Gemini (avec RAG) :\n" + reponse);
+        composants.premiereReponse();
+        System.out.println(modeleEnCache.statistiques());
+        System.out.println(modeleRequetes.statistiques());
+        System.out.println(metriques.statistiques());
+        System.out.println(memory.statistiques());
 
     }
 }
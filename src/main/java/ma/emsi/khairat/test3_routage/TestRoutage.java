@@ -1,122 +1,148 @@
 package ma.emsi.khairat.test3_routage;
 
-import dev.langchain4j.data.document.*;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
-import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiStreamingChatModel;
 import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.content.injector.DefaultContentInjector;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.rag.query.router.LanguageModelQueryRouter;
+import dev.langchain4j.rag.query.router.QueryRouter;
 import dev.langchain4j.service.AiServices;
-import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
-import ma.emsi.khairat.test1_ragnaif_Et_test2.Assistant;
+import ma.emsi.khairat.cache.CacheEmbeddingModel;
+import ma.emsi.khairat.cache.CacheReponses;
+import ma.emsi.khairat.demarrage.RegistreComposants;
+import ma.emsi.khairat.flux.AffichageFlux;
+import ma.emsi.khairat.memoire.MemoireBudgetJetons;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+import ma.emsi.khairat.routage.RouteurParCentroides;
+import ma.emsi.khairat.routage.RouteurSpeculatif;
+import ma.emsi.khairat.store.MagasinPartitionne;
+import ma.emsi.khairat.test1_ragnaif_Et_test2.AssistantStreaming;
 
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.logging.ConsoleHandler;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 public class TestRoutage {
 
-    private static void configureLogger() {
-        System.out.println("Configuring logger");
-        // Configure le logger sous-jacent (java.util.logging)
-        Logger packageLogger = Logger.getLogger("dev.langchain4j");
-        packageLogger.setLevel(Level.FINE); // Ajuster niveau
-        // Ajouter un handler pour la console pour faire afficher les logs
-        ConsoleHandler handler = new ConsoleHandler();
-        handler.setLevel(Level.FINE);
-        packageLogger.addHandler(handler);
-    }
-
     public static void main(String[] args) {
-        configureLogger();
         System.out.println("=== Test 3 : Routage ===");
 
-        // 1️⃣ Parser + modèle d’embedding
-        DocumentParser parser = new ApacheTikaDocumentParser();
-        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+        // 1️⃣ Modèle d’embedding
+        RegistreComposants composants = RegistreComposants.global();
+        EmbeddingModel embeddingModel = composants.embeddingModel();
 
-        // 2️⃣ Charger et découper les 2 documents
-        List<TextSegment> segmentsIA = loadAndSplit("src/main/resources/rag-2.pdf", parser);
-        List<TextSegment> segmentsSport = loadAndSplit("src/main/resources/sport.pdf", parser);
+        // 2️⃣ Un seul magasin, une partition par document (index construits au premier lancement seulement)
+        MagasinPartitionne store = composants.magasinPartitionne(300, 30,
+                Paths.get("src/main/resources/rag-2.pdf"), Paths.get("src/main/resources/sport.pdf"));
+        composants.prechauffer(store);
 
-        // 3️⃣ Créer 2 magasins + y ajouter les embeddings
-        EmbeddingStore<TextSegment> storeIA = new InMemoryEmbeddingStore<>();
-        EmbeddingStore<TextSegment> storeSport = new InMemoryEmbeddingStore<>();
+        // Métriques par étape (histogrammes HdrHistogram + événements JFR) à la place des logs détaillés
+        RegistreMetriques metriques = RegistreMetriques.global();
 
-        storeIA.addAll(embeddingModel.embedAll(segmentsIA).content(), segmentsIA);
-        storeSport.addAll(embeddingModel.embedAll(segmentsSport).content(), segmentsSport);
+        // Cache des embeddings de questions : une question déjà posée ne repasse pas par le modèle ONNX
+        CacheEmbeddingModel modeleRequetes = CacheEmbeddingModel.builder()
+                .embeddingModel(metriques.embeddingModel(embeddingModel))
+                .fichierDebordement(Paths.get(".index", "requetes.cache"))
+                .build();
 
-        // 4️⃣ Créer les 2 retrievers
+        // 3️⃣ Créer les 2 retrievers : même magasin, chacun limité à la partition de son document
         var retrieverIA = EmbeddingStoreContentRetriever.builder()
-                .embeddingStore(storeIA)
-                .embeddingModel(embeddingModel)
+                .embeddingStore(store)
+                .embeddingModel(modeleRequetes)
                 .maxResults(3)
                 .minScore(0.5)
+                .filter(store.filtre("rag-2.pdf"))
                 .build();
 
         var retrieverSport = EmbeddingStoreContentRetriever.builder()
-                .embeddingStore(storeSport)
-                .embeddingModel(embeddingModel)
+                .embeddingStore(store)
+                .embeddingModel(modeleRequetes)
                 .maxResults(3)
                 .minScore(0.5)
+                .filter(store.filtre("sport.pdf"))
                 .build();
 
-        // 5️⃣ Modèle Gemini
+        // 4️⃣ Modèle Gemini
         String key = System.getenv("GEMINI_KEY");
         ChatModel model = GoogleAiGeminiChatModel.builder()
                 .apiKey(key)
                 .modelName("gemini-2.5-flash")
                 .temperature(0.3)
-                .logRequestsAndResponses(true)
                 .build();
 
-        // 6️⃣ Routage : description de chaque source
+        // Modèle streaming pour l'assistant : les jetons sont affichés dès leur arrivée
+        StreamingChatModel modeleFlux = GoogleAiGeminiStreamingChatModel.builder()
+                .apiKey(key)
+                .modelName("gemini-2.5-flash")
+                .temperature(0.3)
+                .build();
+
+        // Cache sémantique des réponses : une question équivalente sur le même contexte ne rappelle pas Gemini
+        CacheReponses modeleEnCache = CacheReponses.builder()
+                .streamingChatModel(metriques.streamingChatModel(modeleFlux))
+                .embeddingModel(modeleRequetes)
+                .magasin(store)
+                .build();
+
+        // 5️⃣ Routage : description de chaque source
         Map<ContentRetriever, String> desc = new HashMap<>();
         desc.put(retrieverIA, "Documents de cours sur le RAG, le fine-tuning et l'intelligence artificielle");
         desc.put(retrieverSport, "Articles sur le sport, la santé et l'entraînement physique");
 
 
-        var queryRouter = new LanguageModelQueryRouter(model, desc);
+        // Routage local par similarité aux prototypes de chaque magasin ;
+        // Gemini n'est consulté que si l'écart entre les deux sources est trop faible
+        var routeurLocal = RouteurParCentroides.builder()
+                .embeddingModel(modeleRequetes)
+                .source(retrieverIA, store.partition("rag-2.pdf"))
+                .source(retrieverSport, store.partition("sport.pdf"))
+                .marge(0.05)
+                .repli(new LanguageModelQueryRouter(metriques.chatModel(model), desc))
+                .build();
+        // Les deux recherches locales démarrent pendant la décision (et l'éventuel appel à Gemini) ;
+        // seule celle de la source choisie est gardée
+        RouteurSpeculatif speculatif = RouteurSpeculatif.builder()
+                .routeur(routeurLocal)
+                .candidats(retrieverIA, retrieverSport)
+                .embeddingModel(modeleRequetes)
+                .build();
+        QueryRouter queryRouter = metriques.router(speculatif);
 
-        // 7️⃣ Créer le RetrievalAugmentor basé sur le routeur
+        // 6️⃣ Créer le RetrievalAugmentor basé sur le routeur
         var augmentor = DefaultRetrievalAugmentor.builder()
                 .queryRouter(queryRouter)
+                .contentInjector(metriques.contentInjector(new DefaultContentInjector()))
                 .build();
 
-        // 8️⃣ Créer l’assistant
-        Assistant assistant = AiServices.builder(Assistant.class)
-                .chatModel(model)
-                .chatMemory(MessageWindowChatMemory.withMaxMessages(10))
+        // 7️⃣ Créer l’assistant
+        AssistantStreaming assistant = AiServices.builder(AssistantStreaming.class)
+                .streamingChatModel(modeleEnCache)
+                .chatMemory(MemoireBudgetJetons.builder().budgetJetons(4000).build())
                 .retrievalAugmentor(augmentor)
                 .build();
 
-        // 9️⃣ Tester avec des questions différentes
+        // 8️⃣ Tester avec des questions différentes
+        System.out.println(composants.pret());
         Scanner sc = new Scanner(System.in);
         while (true) {
             System.out.print("\n👤 Vous : ");
             String question = sc.nextLine();
             if (question.equalsIgnoreCase("exit")) break;
 
-            String reponse = assistant.chat(question);
-            System.out.println("🤖 Gemini : " + reponse);
+            System.out.print("🤖 Gemini : ");
+            AffichageFlux.Mesure mesure = AffichageFlux.afficher(() -> assistant.chat(question));
+            System.out.println("\n" + mesure);
+            composants.premiereReponse();
         }
-    }
-
-    private static List<TextSegment> loadAndSplit(String chemin, DocumentParser parser) {
-        Path path = Paths.get(chemin);
-        Document doc = FileSystemDocumentLoader.loadDocument(path, parser);
-        return DocumentSplitters.recursive(300, 30).split(doc);
+        System.out.println(modeleEnCache.statistiques());
+        System.out.println(modeleRequetes.statistiques());
+        System.out.println(metriques.statistiques());
+        System.out.println(routeurLocal.statistiques());
+        System.out.println(speculatif.statistiques());
+        speculatif.close();
     }
 }
@@ -0,0 +1,15 @@
+package ma.emsi.khairat.test4_pasderag;
+
+import dev.langchain4j.service.SystemMessage;
+import dev.langchain4j.service.TokenStream;
+import dev.langchain4j.service.UserMessage;
+
+public interface AssistantLimitéStreaming {
+
+    @SystemMessage("""
+    Tu peux utiliser le RAG uniquement si la question de l’utilisateur concerne tes domaines d’expertise.
+    Si le message n’a aucun rapport (ex : « bonjour », « ça va ? »),
+    réponds simplement de manière naturelle, sans consulter le RAG.
+    """)
+    TokenStream chat(@UserMessage String message);
+}
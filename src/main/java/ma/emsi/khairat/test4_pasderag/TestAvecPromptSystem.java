@@ -1,48 +1,46 @@
 package ma.emsi.khairat.test1_ragnaif_Et_test2;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentParser;
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.data.embedding.Embedding;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
-import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
-import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiStreamingChatModel;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.content.injector.DefaultContentInjector;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
-import ma.emsi.khairat.test4_pasderag.AssistantLimité;
+import ma.emsi.khairat.cache.CacheEmbeddingModel;
+import ma.emsi.khairat.cache.CacheReponses;
+import ma.emsi.khairat.demarrage.RegistreComposants;
+import ma.emsi.khairat.flux.AffichageFlux;
+import ma.emsi.khairat.memoire.MemoireBudgetJetons;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+import ma.emsi.khairat.routage.RouteurPertinence;
+import ma.emsi.khairat.test4_pasderag.AssistantLimitéStreaming;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
 import java.util.Scanner;
 
 public class TestAvecPromptSystem {
 
     public static void main(String[] args) {
 
-        DocumentParser documentParser = new ApacheTikaDocumentParser();
+        RegistreComposants composants = RegistreComposants.global();
+        EmbeddingModel embeddingModel = composants.embeddingModel();
 
         Path path = Paths.get("src/main/resources/rag-2.pdf");
-        Document document = FileSystemDocumentLoader.loadDocument(path, documentParser);
+        EmbeddingStore<TextSegment> embeddingStore = composants.magasin(path, 300, 30);
+        composants.prechauffer(embeddingStore);
 
-        DocumentSplitter splitter = DocumentSplitters.recursive(300, 30);
-        List<TextSegment> segments = splitter.split(document);
+        // Métriques par étape (histogrammes HdrHistogram + événements JFR) à la place des logs détaillés
+        RegistreMetriques metriques = RegistreMetriques.global();
 
-        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
-
-        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
-
-        EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
-
-        embeddingStore.addAll(embeddings, segments);
+        // Cache des embeddings de questions : une question déjà posée ne repasse pas par le modèle ONNX
+        CacheEmbeddingModel modeleRequetes = CacheEmbeddingModel.builder()
+                .embeddingModel(metriques.embeddingModel(embeddingModel))
+                .fichierDebordement(Paths.get(".index", "requetes.cache"))
+                .build();
 
 
         String GEMINI_API_KEY = System.getenv("GEMINI_KEY");
@@ -51,28 +49,46 @@ public class TestAvecPromptSystem {
             throw new IllegalStateException("❌ Variable d'environnement GEMINI_KEY manquante !");
         }
 
-        ChatModel model = GoogleAiGeminiChatModel.builder()
+        StreamingChatModel modeleFlux = GoogleAiGeminiStreamingChatModel.builder()
                 .apiKey(GEMINI_API_KEY)
                 .temperature(0.3)
-                .logRequestsAndResponses(true)
                 .modelName("gemini-2.5-flash")
                 .build();
 
+        // Cache sémantique des réponses : une question équivalente sur le même contexte ne rappelle pas Gemini
+        CacheReponses modeleEnCache = CacheReponses.builder()
+                .streamingChatModel(metriques.streamingChatModel(modeleFlux))
+                .embeddingModel(modeleRequetes)
+                .magasin(embeddingStore)
+                .build();
+
         EmbeddingStoreContentRetriever retriever = EmbeddingStoreContentRetriever.builder()
                 .embeddingStore(embeddingStore)
-                .embeddingModel(embeddingModel)
+                .embeddingModel(modeleRequetes)
                 .maxResults(2)
                 .minScore(0.5)
                 .build();
 
-        var memory = MessageWindowChatMemory.withMaxMessages(10);
+        // Même porte que TestPasDeRag : le bavardage et le hors-sujet n'injectent aucun contexte
+        RouteurPertinence porte = RouteurPertinence.builder()
+                .embeddingModel(modeleRequetes)
+                .embeddingStore(embeddingStore)
+                .retrievers(retriever)
+                .build();
+
+        // Mémoire bornée en jetons : le contexte RAG des anciens tours part en premier
+        var memory = MemoireBudgetJetons.builder().budgetJetons(4000).build();
 
-        AssistantLimité assistant = AiServices.builder(AssistantLimité.class)
-                .chatModel(model)
+        AssistantLimitéStreaming assistant = AiServices.builder(AssistantLimitéStreaming.class)
+                .streamingChatModel(modeleEnCache)
                 .chatMemory(memory)
-                .contentRetriever(retriever)
+                .retrievalAugmentor(DefaultRetrievalAugmentor.builder()
+                        .queryRouter(metriques.router(porte))
+                        .contentInjector(metriques.contentInjector(new DefaultContentInjector()))
+                        .build())
                 .build();
 
+        System.out.println(composants.pret());
         try (Scanner scanner = new Scanner(System.in)) {
             System.out.println("Posez votre question (ou 'exit' pour quitter) :");
             while (true) {
@@ -80,9 +96,16 @@ public class TestAvecPromptSystem {
                 String question = scanner.nextLine();
                 if (question.equalsIgnoreCase("exit")) break;
 
-                String reponse = assistant.chat(question);
-                System.out.println("🤖 Gemini : " + reponse);
+                System.out.print("🤖 Gemini : ");
+                AffichageFlux.Mesure mesure = AffichageFlux.afficher(() -> assistant.chat(question));
+                System.out.println("\n" + mesure);
+                composants.premiereReponse();
             }
         }
+        System.out.println(porte.statistiques());
+        System.out.println(modeleEnCache.statistiques());
+        System.out.println(modeleRequetes.statistiques());
+        System.out.println(metriques.statistiques());
+        System.out.println(memory.statistiques());
     }
 }
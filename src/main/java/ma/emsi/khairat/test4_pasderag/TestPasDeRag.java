@@ -1,25 +1,24 @@
 package ma.emsi.khairat.test4_pasderag;
 
-import dev.langchain4j.data.document.*;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
-import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.rag.content.injector.DefaultContentInjector;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.rag.query.router.QueryRouter;
 import dev.langchain4j.rag.DefaultRetrievalAugmentor;
 import dev.langchain4j.rag.RetrievalAugmentor;
 import dev.langchain4j.service.AiServices;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.rag.query.Query;
+import ma.emsi.khairat.cache.CacheEmbeddingModel;
+import ma.emsi.khairat.cache.CacheReponses;
+import ma.emsi.khairat.demarrage.RegistreComposants;
+import ma.emsi.khairat.memoire.MemoireBudgetJetons;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+import ma.emsi.khairat.routage.RouteurPertinence;
+import ma.emsi.khairat.routage.RouteurSpeculatif;
 import ma.emsi.khairat.test1_ragnaif_Et_test2.Assistant;
 
 import java.nio.file.*;
@@ -32,21 +31,24 @@ public class TestPasDeRag {
 
         System.out.println("=== Phase 1 : Ingestion du document RAG ===");
 
-        // 1️⃣ Parser + Chargement du PDF
-        DocumentParser parser = new ApacheTikaDocumentParser();
+        // 1️⃣ Modèle d'embeddings
+        RegistreComposants composants = RegistreComposants.global();
+        EmbeddingModel embeddingModel = composants.embeddingModel();
+
+        // 2️⃣ Index sur disque (reconstruit seulement si le PDF ou le découpage a changé)
         Path path = Paths.get("src/main/resources/rag-2.pdf");
-        Document doc = FileSystemDocumentLoader.loadDocument(path, parser);
+        EmbeddingStore<TextSegment> store = composants.magasin(path, 300, 30);
+        composants.prechauffer(store);
 
-        // 2️⃣ Split + Embeddings
-        var splitter = DocumentSplitters.recursive(300, 30);
-        List<TextSegment> segments = splitter.split(doc);
-        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
-        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+        // Métriques par étape (histogrammes HdrHistogram + événements JFR) à la place des logs détaillés
+        RegistreMetriques metriques = RegistreMetriques.global();
 
-        // 3️⃣ Stockage en mémoire
-        EmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
-        store.addAll(embeddings, segments);
-        System.out.println("✅ Ingestion terminée avec " + segments.size() + " segments");
+        // Cache des embeddings de questions : une question déjà posée ne repasse pas par le modèle ONNX
+        CacheEmbeddingModel modeleRequetes = CacheEmbeddingModel.builder()
+                .embeddingModel(metriques.embeddingModel(embeddingModel))
+                .fichierDebordement(Paths.get(".index", "requetes.cache"))
+                .build();
+        System.out.println("✅ Ingestion terminée");
 
         System.out.println("\n=== Phase 2 : Chat avec routage conditionnel (RAG ou pas) ===");
 
@@ -57,53 +59,59 @@ public class TestPasDeRag {
                 .apiKey(GEMINI_KEY)
                 .modelName("gemini-2.5-flash")
                 .temperature(0.3)
-                .logRequestsAndResponses(true)
+                .build();
+
+        // Cache sémantique des réponses : une question équivalente sur le même contexte ne rappelle pas Gemini
+        CacheReponses modeleEnCache = CacheReponses.builder()
+                .chatModel(metriques.chatModel(model))
+                .embeddingModel(modeleRequetes)
+                .magasin(store)
                 .build();
 
         // 5️⃣ ContentRetriever
         EmbeddingStoreContentRetriever retriever = EmbeddingStoreContentRetriever.builder()
                 .embeddingStore(store)
-                .embeddingModel(embeddingModel)
+                .embeddingModel(modeleRequetes)
                 .maxResults(2)
                 .minScore(0.5)
                 .build();
 
-        // 6️⃣ Création de la classe interne pour éviter le RAG
-        class QueryRouterPourEviterRag implements QueryRouter {
-            @Override
-            public Collection<ContentRetriever> route(Query query) {
-                String question = "Est-ce que la requête '" + query.text()
-                        + "' porte sur le 'RAG' (Retrieval Augmented Generation) ou le 'Fine Tuning' ? "
-                        + "Réponds seulement par 'oui', 'non', ou 'peut-être'.";
-                String reponse = model.chat(question).trim().toLowerCase();
-
-                System.out.println("🧠 Décision du QueryRouter : " + reponse);
-                if (reponse.contains("non")) {
-                    System.out.println("🚫 Pas de RAG utilisé.");
-                    return Collections.emptyList();
-                } else {
-                    System.out.println("✅ RAG activé.");
-                    return List.of(retriever);
-                }
-            }
-        }
+        // 6️⃣ Porte de pertinence locale : aucun appel au LLM pour décider du RAG
+        RouteurPertinence porte = RouteurPertinence.builder()
+                .embeddingModel(modeleRequetes)
+                .embeddingStore(store)
+                .retrievers(retriever)
+                .build();
 
-        // 7️⃣ Instanciation du QueryRouter personnalisé
-        QueryRouter queryRouter = new QueryRouterPourEviterRag();
+        // 7️⃣ QueryRouter qui affiche la décision de la porte
+        QueryRouter queryRouter = query -> {
+            Collection<ContentRetriever> choix = porte.route(query);
+            System.out.println(choix.isEmpty() ? "🚫 Pas de RAG utilisé." : "✅ RAG activé.");
+            return choix;
+        };
+
+        // La recherche dans le PDF démarre pendant que la porte décide ; annulée si la porte refuse le RAG
+        RouteurSpeculatif speculatif = RouteurSpeculatif.builder()
+                .routeur(queryRouter)
+                .candidats(retriever)
+                .embeddingModel(modeleRequetes)
+                .build();
 
         // 8️⃣ Création du RetrievalAugmentor
         RetrievalAugmentor augmentor = DefaultRetrievalAugmentor.builder()
-                .queryRouter(queryRouter)
+                .queryRouter(metriques.router(speculatif))
+                .contentInjector(metriques.contentInjector(new DefaultContentInjector()))
                 .build();
 
         // 9️⃣ Création de l’assistant
         Assistant assistant = AiServices.builder(Assistant.class)
-                .chatModel(model)
+                .chatModel(modeleEnCache)
                 .retrievalAugmentor(augmentor)
-                .chatMemory(MessageWindowChatMemory.withMaxMessages(10))
+                .chatMemory(MemoireBudgetJetons.builder().budgetJetons(4000).build())
                 .build();
 
         // 🔟 Interaction console
+        System.out.println(composants.pret());
         try (Scanner scanner = new Scanner(System.in)) {
             while (true) {
                 System.out.print("\n👤 Vous : ");
@@ -111,7 +119,14 @@ public class TestPasDeRag {
                 if (q.equalsIgnoreCase("exit")) break;
                 String r = assistant.chat(q);
                 System.out.println("🤖 Gemini : " + r);
+                composants.premiereReponse();
             }
         }
+        System.out.println(porte.statistiques());
+        System.out.println(speculatif.statistiques());
+        speculatif.close();
+        System.out.println(modeleEnCache.statistiques());
+        System.out.println(modeleRequetes.statistiques());
+        System.out.println(metriques.statistiques());
     }
 }
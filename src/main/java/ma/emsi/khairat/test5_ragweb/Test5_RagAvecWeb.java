@@ -1,18 +1,12 @@
 package ma.emsi.khairat.test5_ragweb;
 
-import dev.langchain4j.data.document.*;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
-import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
-import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
-import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiStreamingChatModel;
 import dev.langchain4j.rag.DefaultRetrievalAugmentor;
 import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.content.injector.DefaultContentInjector;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.rag.content.retriever.WebSearchContentRetriever;
@@ -20,90 +14,149 @@ import dev.langchain4j.rag.query.router.DefaultQueryRouter;
 import dev.langchain4j.rag.query.router.QueryRouter;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import dev.langchain4j.web.search.WebSearchEngine;
 import dev.langchain4j.web.search.tavily.TavilyWebSearchEngine;
-import ma.emsi.khairat.test1_ragnaif_Et_test2.Assistant;
+import ma.emsi.khairat.cache.CacheEmbeddingModel;
+import ma.emsi.khairat.cache.CacheReponses;
+import ma.emsi.khairat.demarrage.RegistreComposants;
+import ma.emsi.khairat.flux.AffichageFlux;
+import ma.emsi.khairat.cache.CacheRechercheWeb;
+import ma.emsi.khairat.memoire.MemoireBudgetJetons;
+import ma.emsi.khairat.metriques.RegistreMetriques;
+import ma.emsi.khairat.recherche.AgregateurContexte;
+import ma.emsi.khairat.recherche.MoteurRechercheSimule;
+import ma.emsi.khairat.recherche.RecuperateurConcurrent;
+import ma.emsi.khairat.test1_ragnaif_Et_test2.AssistantStreaming;
 import java.nio.file.*;
+import java.time.Duration;
 import java.util.*;
-import java.util.logging.*;
 
 public class Test5_RagAvecWeb {
-    private static void configureLogger() {
-        Logger logger = Logger.getLogger("dev.langchain4j");
-        logger.setLevel(Level.FINE);
-        ConsoleHandler handler = new ConsoleHandler();
-        handler.setLevel(Level.FINE);
-        logger.addHandler(handler);
-    }
     public static void main(String[] args) {
-        configureLogger();
-        DocumentParser parser = new ApacheTikaDocumentParser();
+        RegistreComposants composants = RegistreComposants.global();
+        EmbeddingModel embeddingModel = composants.embeddingModel();
         Path path = Paths.get("src/main/resources/rag-2.pdf");
-        Document doc = FileSystemDocumentLoader.loadDocument(path, parser);
+        EmbeddingStore<TextSegment> store = composants.magasin(path, 300, 30);
+        composants.prechauffer(store);
 
-        var splitter = DocumentSplitters.recursive(300, 30);
-        List<TextSegment> segments = splitter.split(doc);
-        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
-        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+        // Métriques par étape (histogrammes HdrHistogram + événements JFR) à la place des logs détaillés
+        RegistreMetriques metriques = RegistreMetriques.global();
 
-        EmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
-        store.addAll(embeddings, segments);
+        // Cache des embeddings de questions : une question déjà posée ne repasse pas par le modèle ONNX
+        CacheEmbeddingModel modeleRequetes = CacheEmbeddingModel.builder()
+                .embeddingModel(metriques.embeddingModel(embeddingModel))
+                .fichierDebordement(Paths.get(".index", "requetes.cache"))
+                .build();
 
 
         String GEMINI_KEY = System.getenv("GEMINI_KEY");
         if (GEMINI_KEY == null) throw new IllegalStateException("❌ GEMINI_KEY manquant !");
-        ChatModel model = GoogleAiGeminiChatModel.builder()
+        StreamingChatModel modeleFlux = GoogleAiGeminiStreamingChatModel.builder()
                 .apiKey(GEMINI_KEY)
                 .modelName("gemini-2.5-flash")
                 .temperature(0.3)
-                .logRequestsAndResponses(true)
+                .build();
+
+        // Cache sémantique des réponses : une question équivalente sur le même contexte ne rappelle pas Gemini
+        CacheReponses modeleEnCache = CacheReponses.builder()
+                .streamingChatModel(metriques.streamingChatModel(modeleFlux))
+                .embeddingModel(modeleRequetes)
+                .magasin(store)
                 .build();
 
         // 5️⃣ ContentRetriever local (embeddings)
         EmbeddingStoreContentRetriever retrieverLocal = EmbeddingStoreContentRetriever.builder()
                 .embeddingStore(store)
-                .embeddingModel(embeddingModel)
+                .embeddingModel(modeleRequetes)
                 .maxResults(2)
                 .minScore(0.5)
                 .build();
 
-        // 6️⃣ Création du moteur Tavily
-        String TAVILY_KEY = System.getenv("TAVILY_API_KEY");
-        if (TAVILY_KEY == null) throw new IllegalStateException("❌ Variable d'environnement TAVILY_API_KEY manquante !");
-        var tavilyEngine = TavilyWebSearchEngine.builder()
-                .apiKey(TAVILY_KEY)
+        // 6️⃣ Création du moteur Tavily (ou d'un moteur simulé hors ligne avec -Drag.web.simule=true)
+        WebSearchEngine moteurWeb;
+        if (Boolean.getBoolean("rag.web.simule")) {
+            moteurWeb = MoteurRechercheSimule.builder().build();
+        } else {
+            String TAVILY_KEY = System.getenv("TAVILY_API_KEY");
+            if (TAVILY_KEY == null) throw new IllegalStateException("❌ Variable d'environnement TAVILY_API_KEY manquante !");
+            moteurWeb = TavilyWebSearchEngine.builder()
+                    .apiKey(TAVILY_KEY)
+                    .build();
+        }
+
+        // Cache des recherches web : une question (ou une question très proche) déjà posée ne rappelle pas le moteur
+        CacheRechercheWeb cacheWeb = CacheRechercheWeb.builder()
+                .moteur(metriques.moteur(moteurWeb))
+                .embeddingModel(modeleRequetes)
+                .ttl(Duration.ofMinutes(30))
+                .fichier(Paths.get(".index", "web.cache"))
                 .build();
 
         // 7️⃣ ContentRetriever Web
         ContentRetriever retrieverWeb = WebSearchContentRetriever.builder()
-                .webSearchEngine(tavilyEngine)
+                .webSearchEngine(cacheWeb)
                 .maxResults(3)
                 .build();
 
-        // 8️⃣ QueryRouter : combine PDF + Web
-        QueryRouter router = new DefaultQueryRouter(List.of(retrieverLocal, retrieverWeb));
+        // 8️⃣ QueryRouter : PDF + Web en parallèle, le web est abandonné s'il dépasse l'échéance
+        RecuperateurConcurrent recuperateur = RecuperateurConcurrent.builder()
+                .local(retrieverLocal)
+                .distant("web", retrieverWeb, Duration.ofSeconds(2), true)
+                .echeance(Duration.ofMillis(2500))
+                .build();
+        QueryRouter router = new DefaultQueryRouter(recuperateur);
+
+        // Cache des embeddings de passages : les segments du PDF revenus d'un tour à l'autre ne repassent pas par ONNX
+        CacheEmbeddingModel modelePassages = CacheEmbeddingModel.builder()
+                .embeddingModel(metriques.embeddingModel(embeddingModel))
+                .fichierDebordement(Paths.get(".index", "passages.cache"))
+                .build();
+
+        // Contexte compacté : segments voisins recollés, quasi-doublons PDF/web écartés, budget de jetons
+        AgregateurContexte agregateur = AgregateurContexte.builder()
+                .embeddingModel(modelePassages)
+                .budgetJetons(1200)
+                .build();
 
         // 9️⃣ RetrievalAugmentor
         RetrievalAugmentor augmentor = DefaultRetrievalAugmentor.builder()
-                .queryRouter(router)
+                .queryRouter(metriques.router(router))
+                .contentAggregator(metriques.contentAggregator(agregateur))
+                .contentInjector(metriques.contentInjector(new DefaultContentInjector()))
                 .build();
 
         // 🔟 Création de l’assistant
-        Assistant assistant = AiServices.builder(Assistant.class)
-                .chatModel(model)
+        AssistantStreaming assistant = AiServices.builder(AssistantStreaming.class)
+                .streamingChatModel(modeleEnCache)
                 .retrievalAugmentor(augmentor)
-                .chatMemory(MessageWindowChatMemory.withMaxMessages(10))
+                .chatMemory(MemoireBudgetJetons.builder().budgetJetons(4000).build())
                 .build();
 
         // 1️⃣1️⃣ Interaction console
+        System.out.println(composants.pret());
         try (Scanner scanner = new Scanner(System.in)) {
             while (true) {
                 System.out.print("\n👤 Vous : ");
                 String q = scanner.nextLine();
                 if (q.equalsIgnoreCase("exit")) break;
-                String r = assistant.chat(q);
-                System.out.println("🤖 Gemini : " + r);
+                System.out.print("🤖 Gemini : ");
+                AffichageFlux.Mesure mesure = AffichageFlux.afficher(() -> assistant.chat(q));
+                System.out.println("\n" + mesure);
+                composants.premiereReponse();
+                if (agregateur.dernierTour() != null) {
+                    System.out.println(agregateur.dernierTour());
+                }
             }
         }
+        System.out.println(agregateur.statistiques());
+        System.out.println(recuperateur.statistiques());
+        System.out.println(cacheWeb.statistiques());
+        System.out.println(modeleEnCache.statistiques());
+        System.out.println(modeleRequetes.statistiques());
+        System.out.println(modelePassages.statistiques());
+        System.out.println(metriques.statistiques());
+        recuperateur.close();
+        cacheWeb.close();
+        modelePassages.close();
     }
 }
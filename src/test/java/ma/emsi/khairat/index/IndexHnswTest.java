@@ -0,0 +1,166 @@
+package ma.emsi.khairat.index;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import ma.emsi.khairat.store.MagasinVectoriel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static ma.emsi.khairat.index.CorpusSynthetique.bruiter;
+import static ma.emsi.khairat.index.CorpusSynthetique.gaussien;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexHnswTest {
+
+    private static final int DIMENSION = 64;
+    private static final String CLE = "ab".repeat(FormatIndex.TAILLE_CLE);
+
+    @TempDir
+    Path dossier;
+
+    @Test
+    void rappel_proche_de_la_recherche_exacte() {
+        Random aleatoire = new Random(42);
+        float[][] centres = centres(aleatoire, 50);
+        IndexHnsw hnsw = IndexHnsw.builder().efSearch(64).seuilRechercheExacte(0).build();
+        MagasinVectoriel exact = new MagasinVectoriel();
+        List<Embedding> embeddings = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            embeddings.add(Embedding.from(bruiter(aleatoire, centres[aleatoire.nextInt(centres.length)])));
+        }
+        List<String> ids = exact.addAll(embeddings);
+        hnsw.addAll(ids, embeddings, null);
+
+        double rappel = 0;
+        int requetes = 50;
+        for (int q = 0; q < requetes; q++) {
+            EmbeddingSearchRequest demande = requete(bruiter(aleatoire, centres[aleatoire.nextInt(centres.length)]), 10);
+            Set<String> attendus = idsDe(exact.search(demande).matches());
+            List<EmbeddingMatch<TextSegment>> approches = hnsw.search(demande).matches();
+            assertEquals(10, approches.size());
+            for (int rang = 1; rang < approches.size(); rang++) {
+                assertTrue(approches.get(rang - 1).score() >= approches.get(rang).score());
+            }
+            rappel += (double) approches.stream().filter(match -> attendus.contains(match.embeddingId())).count() / attendus.size();
+        }
+        assertTrue(rappel / requetes >= 0.9, "rappel@10 = " + rappel / requetes);
+    }
+
+    @Test
+    void une_suppression_filtree_retire_les_segments_des_resultats() {
+        Random aleatoire = new Random(3);
+        IndexHnsw hnsw = IndexHnsw.builder().seuilRechercheExacte(0).build();
+        for (int i = 0; i < 200; i++) {
+            hnsw.add(Embedding.from(gaussien(aleatoire, DIMENSION, 1f)),
+                    TextSegment.from("segment " + i, Metadata.from("file_name", i % 2 == 0 ? "pair.pdf" : "impair.pdf")));
+        }
+        long version = hnsw.version();
+        hnsw.removeAll(metadataKey("file_name").isEqualTo("pair.pdf"));
+
+        assertEquals(100, hnsw.taille());
+        assertTrue(hnsw.version() > version);
+        List<EmbeddingMatch<TextSegment>> matches = hnsw.search(requete(gaussien(aleatoire, DIMENSION, 1f), 50)).matches();
+        assertEquals(50, matches.size());
+        matches.forEach(match -> assertEquals("impair.pdf", match.embedded().metadata().getString("file_name")));
+    }
+
+    @Test
+    void un_index_ecrit_puis_projete_rend_le_meme_contenu() throws IOException {
+        Random aleatoire = new Random(5);
+        List<String> ids = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add("id-" + i);
+            embeddings.add(Embedding.from(gaussien(aleatoire, DIMENSION, 1f)));
+            segments.add(TextSegment.from("texte é " + i, Metadata.from("file_name", "doc.pdf").put("page", i)));
+        }
+        Path fichier = dossier.resolve("doc.idx");
+        FormatIndex.ecrire(fichier, CLE, ids, embeddings, segments);
+
+        MagasinMappe mappe = MagasinMappe.ouvrir(fichier);
+        assertEquals(CLE, mappe.cle());
+        assertEquals(20, mappe.taille());
+        int[] rang = {0};
+        mappe.pourChaque((id, embedding, segment) -> {
+            int i = rang[0]++;
+            assertEquals(ids.get(i), id);
+            assertArrayEquals(embeddings.get(i).vector(), embedding.vector());
+            assertEquals(segments.get(i).text(), segment.text());
+            assertEquals("doc.pdf", segment.metadata().getString("file_name"));
+            assertEquals(i, segment.metadata().getInteger("page"));
+        });
+        assertEquals(20, rang[0]);
+
+        EmbeddingMatch<TextSegment> premier = mappe.search(requete(embeddings.get(7).vector(), 1)).matches().get(0);
+        assertEquals("id-7", premier.embeddingId());
+    }
+
+    @Test
+    void un_graphe_sauvegarde_se_recharge_a_l_identique() throws IOException {
+        Random aleatoire = new Random(11);
+        float[][] centres = centres(aleatoire, 10);
+        List<String> ids = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            ids.add("id-" + i);
+            embeddings.add(Embedding.from(bruiter(aleatoire, centres[aleatoire.nextInt(centres.length)])));
+            segments.add(TextSegment.from("segment " + i));
+        }
+        Path fichier = dossier.resolve("corpus.idx");
+        FormatIndex.ecrire(fichier, CLE, ids, embeddings, segments);
+        MagasinMappe mappe = MagasinMappe.ouvrir(fichier);
+
+        IndexHnsw.Builder parametres = IndexHnsw.builder().m(8).seuilRechercheExacte(0);
+        assertNull(IndexHnsw.charger(mappe, parametres));
+        IndexHnsw construit = IndexHnsw.construire(mappe, parametres);
+        construit.sauvegarder(mappe);
+        IndexHnsw recharge = IndexHnsw.charger(mappe, parametres);
+
+        assertNotNull(recharge);
+        assertEquals(construit.taille(), recharge.taille());
+        for (int q = 0; q < 20; q++) {
+            EmbeddingSearchRequest demande = requete(bruiter(aleatoire, centres[aleatoire.nextInt(centres.length)]), 10);
+            assertEquals(idsEnOrdre(construit.search(demande).matches()), idsEnOrdre(recharge.search(demande).matches()));
+        }
+        // Un graphe construit avec un autre m est périmé
+        assertNull(IndexHnsw.charger(mappe, IndexHnsw.builder().m(16)));
+    }
+
+    private static float[][] centres(Random aleatoire, int nombre) {
+        float[][] centres = new float[nombre][];
+        for (int c = 0; c < nombre; c++) {
+            centres[c] = gaussien(aleatoire, DIMENSION, 1f);
+        }
+        return centres;
+    }
+
+    private static EmbeddingSearchRequest requete(float[] vecteur, int k) {
+        return EmbeddingSearchRequest.builder().queryEmbedding(Embedding.from(vecteur)).maxResults(k).minScore(0.0).build();
+    }
+
+    private static Set<String> idsDe(List<EmbeddingMatch<TextSegment>> matches) {
+        return new HashSet<>(idsEnOrdre(matches));
+    }
+
+    private static List<String> idsEnOrdre(List<EmbeddingMatch<TextSegment>> matches) {
+        return matches.stream().map(EmbeddingMatch::embeddingId).toList();
+    }
+}
@@ -0,0 +1,119 @@
+package ma.emsi.khairat.index;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static ma.emsi.khairat.index.CorpusSynthetique.bruiter;
+import static ma.emsi.khairat.index.CorpusSynthetique.gaussien;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MagasinQuantifieTest {
+
+    private static final int DIMENSION = 384;
+
+    @TempDir
+    Path dossier;
+
+    private final Random aleatoire = new Random(42);
+    private float[][] centres;
+    private MagasinMappe exact;
+
+    @BeforeEach
+    void indexer() throws IOException {
+        centres = new float[40][];
+        for (int c = 0; c < centres.length; c++) {
+            centres[c] = gaussien(aleatoire, DIMENSION, 1f);
+        }
+        List<String> ids = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < 4_000; i++) {
+            ids.add("id-" + i);
+            embeddings.add(Embedding.from(bruiter(aleatoire, centres[aleatoire.nextInt(centres.length)])));
+            segments.add(TextSegment.from("segment " + i));
+        }
+        Path fichier = dossier.resolve("corpus.idx");
+        FormatIndex.ecrire(fichier, "cd".repeat(FormatIndex.TAILLE_CLE), ids, embeddings, segments);
+        exact = MagasinMappe.ouvrir(fichier);
+    }
+
+    @Test
+    void int8_retrouve_les_voisins_exacts() {
+        assertTrue(rappel(MagasinQuantifie.quantifier(exact, MagasinQuantifie.Mode.INT8, 4)) >= 0.95);
+    }
+
+    @Test
+    void binaire_retrouve_les_voisins_exacts_avec_plus_de_sur_echantillonnage() {
+        assertTrue(rappel(MagasinQuantifie.quantifier(exact, MagasinQuantifie.Mode.BINAIRE, 10)) >= 0.85);
+    }
+
+    @Test
+    void les_scores_rendus_sont_ceux_des_vecteurs_complets() {
+        MagasinQuantifie quantifie = MagasinQuantifie.quantifier(exact, MagasinQuantifie.Mode.INT8, 4);
+        EmbeddingSearchRequest demande = requete(10);
+        Map<String, Double> scoresExacts = exact.search(demande).matches().stream()
+                .collect(Collectors.toMap(EmbeddingMatch::embeddingId, EmbeddingMatch::score));
+        List<EmbeddingMatch<TextSegment>> matches = quantifie.search(demande).matches();
+        for (int rang = 0; rang < matches.size(); rang++) {
+            EmbeddingMatch<TextSegment> match = matches.get(rang);
+            if (scoresExacts.containsKey(match.embeddingId())) {
+                assertEquals(scoresExacts.get(match.embeddingId()), match.score(), 1e-6);
+            }
+            if (rang > 0) {
+                assertTrue(matches.get(rang - 1).score() >= match.score());
+            }
+        }
+
+        int[] rangs = {0, 17, 3_999, 4_000};
+        float[] vecteur = demande.queryEmbedding().vector();
+        assertArrayEquals(exact.similarites(vecteur, rangs), quantifie.similarites(vecteur, rangs), 1e-9);
+    }
+
+    @Test
+    void max_results_tres_grand_rend_tout_le_magasin() {
+        MagasinQuantifie quantifie = MagasinQuantifie.quantifier(exact, MagasinQuantifie.Mode.INT8, 4);
+        assertEquals(exact.taille(), quantifie.search(requete(Integer.MAX_VALUE)).matches().size());
+    }
+
+    @Test
+    void mode_inconnu_ou_sur_echantillonnage_nul_refuses() {
+        assertEquals(MagasinQuantifie.Mode.BINAIRE, MagasinQuantifie.Mode.parNom("binaire"));
+        assertThrows(IllegalArgumentException.class, () -> MagasinQuantifie.Mode.parNom("int4"));
+        assertThrows(IllegalArgumentException.class, () -> MagasinQuantifie.quantifier(exact, MagasinQuantifie.Mode.INT8, 0));
+    }
+
+    private double rappel(MagasinQuantifie quantifie) {
+        double rappel = 0;
+        int requetes = 50;
+        for (int q = 0; q < requetes; q++) {
+            EmbeddingSearchRequest demande = requete(10);
+            Set<String> attendus = exact.search(demande).matches().stream()
+                    .map(EmbeddingMatch::embeddingId).collect(Collectors.toSet());
+            rappel += (double) quantifie.search(demande).matches().stream()
+                    .filter(match -> attendus.contains(match.embeddingId())).count() / attendus.size();
+        }
+        return rappel / requetes;
+    }
+
+    private EmbeddingSearchRequest requete(int k) {
+        float[] vecteur = bruiter(aleatoire, centres[aleatoire.nextInt(centres.length)]);
+        return EmbeddingSearchRequest.builder().queryEmbedding(Embedding.from(vecteur)).maxResults(k).minScore(0.0).build();
+    }
+}
@@ -0,0 +1,98 @@
+package ma.emsi.khairat.recherche;
+
+import ma.emsi.khairat.store.TopK;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexBm25Test {
+
+    private static final List<String> VOCABULAIRE = List.of(
+            "recherche", "vecteur", "embedding", "graphe", "index", "segment", "document", "question",
+            "reponse", "modele", "cache", "latence", "routage", "partition", "quantification", "rappel");
+
+    @Test
+    void decoupage_sans_casse_accents_ni_mots_vides() {
+        assertEquals(List.of("rag", "reponse", "modele", "2024"), IndexBm25.decouper("Le RAG : réponse du modèle, 2024 ?"));
+    }
+
+    @Test
+    void scores_identiques_a_un_calcul_bm25_direct() {
+        Random aleatoire = new Random(9);
+        List<List<String>> corpus = new ArrayList<>();
+        IndexBm25.Constructeur constructeur = IndexBm25.constructeur();
+        for (int d = 0; d < 500; d++) {
+            List<String> mots = new ArrayList<>();
+            int longueur = 5 + aleatoire.nextInt(40);
+            for (int i = 0; i < longueur; i++) {
+                // Loi biaisée : quelques termes fréquents, beaucoup de rares
+                mots.add(VOCABULAIRE.get((int) (VOCABULAIRE.size() * Math.pow(aleatoire.nextDouble(), 2))));
+            }
+            corpus.add(mots);
+            assertEquals(d, constructeur.ajouter(String.join(" ", mots)));
+        }
+        IndexBm25 index = constructeur.construire();
+        assertEquals(500, index.documents());
+
+        for (String question : List.of("graphe rappel", "quantification", "routage partition latence", "recherche")) {
+            TopK meilleurs = index.rechercher(question, 10);
+            double[] attendus = reference(corpus, IndexBm25.decouper(question));
+            List<Double> tries = new ArrayList<>();
+            for (double score : attendus) {
+                if (score > 0) tries.add(score);
+            }
+            tries.sort(Collections.reverseOrder());
+
+            assertEquals(Math.min(10, tries.size()), meilleurs.taille());
+            for (int rang = 0; rang < meilleurs.taille(); rang++) {
+                assertEquals(attendus[meilleurs.indice(rang)], meilleurs.score(rang), 1e-4);
+                assertEquals(tries.get(rang), meilleurs.score(rang), 1e-4);
+            }
+        }
+    }
+
+    @Test
+    void varints_sur_plusieurs_octets() {
+        IndexBm25.Constructeur constructeur = IndexBm25.constructeur();
+        for (int d = 0; d < 20_000; d++) {
+            constructeur.ajouter(d == 300 ? "rare " + "frequent ".repeat(200) : d == 19_999 ? "rare" : "bruit commun");
+        }
+        IndexBm25 index = constructeur.construire();
+
+        TopK meilleurs = index.rechercher("rare", 5);
+        assertEquals(2, meilleurs.taille());
+        assertTrue(meilleurs.indice(0) == 19_999 && meilleurs.indice(1) == 300);
+        TopK frequent = index.rechercher("frequent", 5);
+        assertEquals(1, frequent.taille());
+        assertEquals(300, frequent.indice(0));
+    }
+
+    @Test
+    void question_sans_terme_connu() {
+        IndexBm25.Constructeur constructeur = IndexBm25.constructeur();
+        constructeur.ajouter("graphe de voisinage");
+        assertEquals(0, constructeur.construire().rechercher("le la les inconnu", 3).taille());
+    }
+
+    private static double[] reference(List<List<String>> corpus, List<String> question) {
+        double moyenne = corpus.stream().mapToInt(List::size).average().orElse(1);
+        double[] scores = new double[corpus.size()];
+        for (String terme : question.stream().distinct().toList()) {
+            long df = corpus.stream().filter(document -> document.contains(terme)).count();
+            double idf = Math.log(1 + (corpus.size() - df + 0.5) / (df + 0.5));
+            for (int d = 0; d < corpus.size(); d++) {
+                long tf = Collections.frequency(corpus.get(d), terme);
+                if (tf == 0) continue;
+                double normalisation = 1.2 * (1 - 0.75 + 0.75 * corpus.get(d).size() / moyenne);
+                scores[d] += idf * tf * 2.2 / (tf + normalisation);
+            }
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,121 @@
+package ma.emsi.khairat.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.filter.Filter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MagasinPartitionneTest {
+
+    private static final int DIMENSION = 32;
+    private static final List<String> FICHIERS = List.of("a.pdf", "b.pdf", "c.pdf");
+
+    private final Random aleatoire = new Random(17);
+    private MagasinPartitionne partitionne;
+    private MagasinVectoriel reference;
+
+    @BeforeEach
+    void remplir() {
+        partitionne = new MagasinPartitionne();
+        reference = new MagasinVectoriel();
+        List<String> ids = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            ids.add("id-" + i);
+            embeddings.add(Embedding.from(vecteur()));
+            segments.add(TextSegment.from("segment " + i, Metadata.from("file_name", FICHIERS.get(i % 3)).put("page", i % 10)));
+        }
+        partitionne.addAll(ids, embeddings, segments);
+        reference.addAll(ids, embeddings, segments);
+    }
+
+    @Test
+    void un_segment_par_partition_de_sa_cle() {
+        assertEquals(Set.copyOf(FICHIERS), partitionne.partitions());
+        assertEquals(100, partitionne.partition("b.pdf").taille());
+        assertEquals(300, partitionne.taille());
+        assertThrows(IllegalArgumentException.class, () -> partitionne.partition("z.pdf"));
+    }
+
+    @Test
+    void filtres_sur_la_cle_equivalents_a_un_filtre_applique_partout() {
+        Filter surPage = metadataKey("page").isLessThan(5);
+        List<Filter> filtres = List.of(
+                partitionne.filtre("a.pdf"),
+                partitionne.filtre("a.pdf", "c.pdf"),
+                partitionne.filtre("b.pdf").and(surPage),
+                surPage.and(partitionne.filtre("b.pdf", "c.pdf")),
+                partitionne.filtre("a.pdf", "b.pdf").and(partitionne.filtre("b.pdf", "c.pdf")),
+                partitionne.filtre("a.pdf").and(partitionne.filtre("c.pdf")),
+                partitionne.filtre("a.pdf").or(surPage),
+                surPage,
+                partitionne.filtre("inconnu.pdf"));
+        for (Filter filtre : filtres) {
+            EmbeddingSearchRequest demande = EmbeddingSearchRequest.builder()
+                    .queryEmbedding(Embedding.from(vecteur())).maxResults(20).minScore(0.0).filter(filtre).build();
+            assertEquals(ids(reference.search(demande).matches()), ids(partitionne.search(demande).matches()), filtre.toString());
+        }
+    }
+
+    @Test
+    void une_suppression_filtree_ne_touche_que_les_segments_designes() {
+        partitionne.removeAll(partitionne.filtre("a.pdf").and(metadataKey("page").isEqualTo(0)));
+        assertEquals(90, partitionne.partition("a.pdf").taille());
+        assertEquals(100, partitionne.partition("b.pdf").taille());
+        assertEquals(290, partitionne.taille());
+    }
+
+    @Test
+    void un_id_reecrit_change_de_partition() {
+        partitionne.addAll(List.of("id-0"), List.of(Embedding.from(vecteur())),
+                List.of(TextSegment.from("déplacé", Metadata.from("file_name", "c.pdf"))));
+        assertEquals(99, partitionne.partition("a.pdf").taille());
+        assertEquals(101, partitionne.partition("c.pdf").taille());
+    }
+
+    @Test
+    void similarites_dans_l_ordre_du_parcours() {
+        MagasinParcourable parcoursSeul = new MagasinParcourable() {
+            @Override
+            public int taille() {
+                return partitionne.taille();
+            }
+
+            @Override
+            public void pourChaque(Visiteur visiteur) {
+                partitionne.pourChaque(visiteur);
+            }
+        };
+        int[] rangs = {0, 99, 100, 250, 299, 300, -1, 42};
+        float[] requete = vecteur();
+        assertArrayEquals(parcoursSeul.similarites(requete, rangs), partitionne.similarites(requete, rangs), 1e-9);
+    }
+
+    private float[] vecteur() {
+        float[] vecteur = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++) {
+            vecteur[d] = (float) aleatoire.nextGaussian();
+        }
+        return vecteur;
+    }
+
+    private static List<String> ids(List<EmbeddingMatch<TextSegment>> matches) {
+        return matches.stream().map(EmbeddingMatch::embeddingId).toList();
+    }
+}
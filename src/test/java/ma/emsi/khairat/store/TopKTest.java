@@ -0,0 +1,89 @@
+package ma.emsi.khairat.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopKTest {
+
+    @Test
+    void garde_les_k_meilleurs_tries_par_score_decroissant() {
+        Random aleatoire = new Random(7);
+        double[] scores = new double[1_000];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = aleatoire.nextDouble();
+        }
+        TopK meilleurs = new TopK(10);
+        for (int i = 0; i < scores.length; i++) {
+            meilleurs.proposer(i, scores[i]);
+        }
+        meilleurs.trierDecroissant();
+
+        double[] attendus = scores.clone();
+        Arrays.sort(attendus);
+        assertEquals(10, meilleurs.taille());
+        for (int rang = 0; rang < 10; rang++) {
+            assertEquals(attendus[attendus.length - 1 - rang], meilleurs.score(rang));
+            assertEquals(scores[meilleurs.indice(rang)], meilleurs.score(rang));
+        }
+    }
+
+    @Test
+    void moins_de_candidats_que_la_capacite() {
+        TopK meilleurs = new TopK(5);
+        meilleurs.proposer(0, 0.2);
+        meilleurs.proposer(1, 0.9);
+        meilleurs.proposer(2, 0.5);
+        assertFalse(meilleurs.plein());
+        assertEquals(Double.NEGATIVE_INFINITY, meilleurs.seuil());
+
+        meilleurs.trierDecroissant();
+        assertEquals(3, meilleurs.taille());
+        assertArrayEquals(new int[]{1, 2, 0}, new int[]{meilleurs.indice(0), meilleurs.indice(1), meilleurs.indice(2)});
+    }
+
+    @Test
+    void une_egalite_avec_le_seuil_ne_remplace_pas_le_premier_arrive() {
+        TopK meilleurs = new TopK(2);
+        assertTrue(meilleurs.proposer(0, 0.5));
+        assertTrue(meilleurs.proposer(1, 0.5));
+        assertTrue(meilleurs.plein());
+        assertEquals(0.5, meilleurs.seuil());
+
+        assertFalse(meilleurs.proposer(2, 0.5));
+        assertTrue(meilleurs.proposer(3, 0.7));
+        meilleurs.trierDecroissant();
+
+        assertEquals(3, meilleurs.indice(0));
+        assertEquals(0.5, meilleurs.score(1));
+        assertTrue(meilleurs.indice(1) == 0 || meilleurs.indice(1) == 1);
+    }
+
+    @Test
+    void vider_permet_de_reutiliser_le_tas() {
+        TopK meilleurs = new TopK(3);
+        for (int i = 0; i < 10; i++) {
+            meilleurs.proposer(i, i);
+        }
+        meilleurs.trierDecroissant();
+        meilleurs.vider();
+        assertEquals(0, meilleurs.taille());
+
+        meilleurs.proposer(42, -1.0);
+        meilleurs.trierDecroissant();
+        assertEquals(1, meilleurs.taille());
+        assertEquals(42, meilleurs.indice(0));
+    }
+
+    @Test
+    void capacite_nulle_refusee() {
+        assertThrows(IllegalArgumentException.class, () -> new TopK(0));
+    }
+}